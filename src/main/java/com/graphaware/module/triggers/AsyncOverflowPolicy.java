@@ -0,0 +1,34 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+/**
+ * What to do with an event for an asynchronous {@link PropertyTrigger} when the queue it belongs to is full.
+ */
+public enum AsyncOverflowPolicy {
+
+    /**
+     * Block the committing thread until there is space in the queue, slowing writers down to the pace of triggers.
+     * Events raised by the transactions of asynchronous triggers themselves are dropped instead, as the worker would
+     * otherwise wait on its own queue.
+     */
+    BLOCK,
+
+    /**
+     * Drop the event, counting it in {@link AsyncTriggerMetrics#getDropped()}.
+     */
+    DROP
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An event to be handled by an asynchronous {@link PropertyTrigger} after the transaction that caused it has committed.
+ */
+final class AsyncTriggerEvent {
+
+    final PropertyTrigger trigger;
+    final int event;
+    final long nodeId;
+
+    // Values of the changed properties before and after, only kept for debounced triggers (null otherwise)
+    final Map<String, Object> previous;
+    final Map<String, Object> current;
+
+    AsyncTriggerEvent(PropertyTrigger trigger, int event, long nodeId) {
+        this(trigger, event, nodeId, null, null);
+    }
+
+    AsyncTriggerEvent(PropertyTrigger trigger, int event, long nodeId, Map<String, Object> previous, Map<String, Object> current) {
+        this.trigger = trigger;
+        this.event = event;
+        this.nodeId = nodeId;
+        this.previous = previous;
+        this.current = current;
+    }
+
+    /**
+     * @param trigger debounced trigger.
+     * @param event   the trigger is called for.
+     * @param nodeId  ID of the node.
+     * @param diff    of the node's properties, read now as it can't be read once the transaction has committed.
+     * @return event carrying the values of the changed properties.
+     */
+    static AsyncTriggerEvent debounced(PropertyTrigger trigger, int event, long nodeId, PropertyDiff diff) {
+        Map<String, Object> previous = new HashMap<>();
+        Map<String, Object> current = new HashMap<>();
+        for (String key : diff.getKeys()) {
+            previous.put(key, diff.getPrevious(key));
+            current.put(key, diff.getCurrent(key));
+        }
+        return new AsyncTriggerEvent(trigger, event, nodeId, previous, current);
+    }
+
+    /**
+     * @return true iff the event is to be coalesced with other events of the node.
+     */
+    boolean isDebounced() {
+        return previous != null;
+    }
+
+    /**
+     * @return diff of the properties of a debounced event.
+     */
+    PropertyDiff diff() {
+        return PropertyDiff.detached(previous, current);
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executes asynchronous {@link PropertyTrigger}s after commit on a fixed number of workers, each with its own bounded
+ * queue. Events are partitioned by node ID, so events of one node are handled by one worker, in the order they were
+ * submitted. Each worker handles the events it takes from its queue in batches, one transaction per batch.
+ * <p/>
+ * Events of debounced triggers are first coalesced per node by a {@link TriggerDebouncer}, started with the first such
+ * event.
+ */
+final class AsyncTriggerExecutor implements AsyncTriggerMetrics {
+
+    private static final Logger LOGGER = Logger.getLogger(AsyncTriggerExecutor.class.getName());
+
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final long POLL_MILLIS = 100;
+    private static final long SHUTDOWN_MILLIS = 10000;
+
+    private final GraphDatabaseService database;
+    private final TriggerInvocations invocations;
+    private final AsyncOverflowPolicy overflowPolicy;
+    private final int queueCapacity;
+    private final Worker[] workers;
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger peakQueueDepth = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile TriggerDebouncer debouncer;
+    private volatile boolean accepting = true; // Taking new events, false once shutting down
+    private volatile boolean running = true;   // Queueing events to the workers, including the debouncer's last ones
+
+    AsyncTriggerExecutor(GraphDatabaseService database, TriggerModuleConfiguration configuration, TriggerInvocations invocations) {
+        this.database = database;
+        this.invocations = invocations;
+        this.overflowPolicy = configuration.getAsyncOverflowPolicy();
+        this.workers = new Worker[configuration.getAsyncThreads()];
+        this.queueCapacity = configuration.getAsyncQueueCapacity() / workers.length * workers.length;
+
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Worker(i, queueCapacity / workers.length);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * Submit events for execution, applying the configured {@link AsyncOverflowPolicy} to events that don't fit.
+     *
+     * @param events to submit, in the order they should be handled per node.
+     */
+    void submit(List<AsyncTriggerEvent> events) {
+        for (AsyncTriggerEvent event : events) {
+            if (!accepting) {
+                dropped.incrementAndGet();
+                continue;
+            }
+            if (event.isDebounced()) {
+                TriggerDebouncer debouncer = debouncer();
+                if (debouncer != null && debouncer.submit(event)) {
+                    continue;
+                }
+            }
+            execute(event);
+        }
+    }
+
+    /**
+     * Queue an event on the worker of its node, applying the configured {@link AsyncOverflowPolicy} if it doesn't fit.
+     *
+     * @param event to execute.
+     */
+    void execute(AsyncTriggerEvent event) {
+        if (!running) {
+            dropped.incrementAndGet();
+            return;
+        }
+
+        BlockingQueue<AsyncTriggerEvent> queue = workers[partition(event.nodeId)].queue;
+
+        if (!enqueue(queue, event)) {
+            dropped.incrementAndGet();
+            return;
+        }
+
+        submitted.incrementAndGet();
+        int depth = queueDepth.incrementAndGet();
+        int peak = peakQueueDepth.get();
+        while (depth > peak && !peakQueueDepth.compareAndSet(peak, depth)) {
+            peak = peakQueueDepth.get();
+        }
+    }
+
+    /**
+     * @return the debouncer, started if needed; null once shutting down.
+     */
+    private TriggerDebouncer debouncer() {
+        TriggerDebouncer result = debouncer;
+        if (result == null) {
+            synchronized (this) {
+                result = debouncer;
+                if (result == null && accepting) {
+                    result = new TriggerDebouncer(this);
+                    debouncer = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private boolean enqueue(BlockingQueue<AsyncTriggerEvent> queue, AsyncTriggerEvent event) {
+        if (overflowPolicy == AsyncOverflowPolicy.DROP) {
+            return queue.offer(event);
+        }
+
+        // Events of the workers' own transactions: a worker waiting for space could be waiting for itself
+        if (Thread.currentThread() instanceof Worker) {
+            if (queue.offer(event)) {
+                return true;
+            }
+            LOGGER.log(Level.WARNING, "TRIGGER MODULE: dropping event of asynchronous trigger {0} for node {1}, raised by an asynchronous trigger while the queue is full",
+                    new Object[]{event.trigger.getPropertyName(), event.nodeId});
+            return false;
+        }
+
+        try {
+            while (running) {
+                if (queue.offer(event, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    private int partition(long nodeId) {
+        return (int) ((nodeId ^ (nodeId >>> 32)) & Integer.MAX_VALUE) % workers.length;
+    }
+
+    /**
+     * Stop accepting events, hand the debounced ones over to the workers and wait (for a limited time) for the workers to
+     * handle the ones queued.
+     */
+    void shutdown() {
+        TriggerDebouncer debouncer;
+        synchronized (this) {
+            accepting = false;
+            debouncer = this.debouncer;
+        }
+        if (debouncer != null) {
+            debouncer.shutdown();
+        }
+        running = false;
+        for (Worker worker : workers) {
+            try {
+                worker.join(SHUTDOWN_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getPeakQueueDepth() {
+        return peakQueueDepth.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getSubmitted() {
+        return submitted.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCompleted() {
+        return completed.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getDebouncing() {
+        TriggerDebouncer debouncer = this.debouncer;
+        return debouncer != null ? debouncer.getPending() : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getCoalesced() {
+        TriggerDebouncer debouncer = this.debouncer;
+        return debouncer != null ? debouncer.getCoalesced() : 0;
+    }
+
+    private class Worker extends Thread {
+
+        private final BlockingQueue<AsyncTriggerEvent> queue;
+
+        private Worker(int number, int capacity) {
+            super("TriggerModule-async-" + number);
+            setDaemon(true);
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        @Override
+        public void run() {
+            List<AsyncTriggerEvent> batch = new ArrayList<>();
+
+            while (running || !queue.isEmpty()) {
+                try {
+                    AsyncTriggerEvent first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                queueDepth.addAndGet(-batch.size());
+
+                int failedInBatch = handle(batch);
+                failed.addAndGet(failedInBatch);
+                completed.addAndGet(batch.size() - failedInBatch);
+                batch.clear();
+            }
+        }
+
+        /**
+         * @return number of events of the batch that failed.
+         */
+        private int handle(List<AsyncTriggerEvent> batch) {
+            int failedInBatch = 0;
+            try (Transaction tx = database.beginTx()) {
+                for (AsyncTriggerEvent event : batch) {
+                    long start = System.nanoTime();
+                    try {
+                        if (event.isDebounced()) {
+                            event.trigger.OnDebounced(event.event, event.nodeId, event.diff());
+                        } else {
+                            event.trigger.OnCommitted(event.event, event.nodeId);
+                        }
+                        invocations.completed(event.trigger, event.event, start, null, event.nodeId);
+                    } catch (RuntimeException e) {
+                        invocations.failed(event.trigger, event.event, start, event.nodeId);
+                        failedInBatch++;
+                        LOGGER.log(Level.WARNING, "TRIGGER MODULE: asynchronous trigger " + event.trigger.getPropertyName() + " failed for node " + event.nodeId, e);
+                    }
+                }
+                tx.success();
+            } catch (RuntimeException e) {
+                failedInBatch = batch.size();
+                LOGGER.log(Level.WARNING, "TRIGGER MODULE: transaction of asynchronous triggers failed", e);
+            }
+            return failedInBatch;
+        }
+    }
+}
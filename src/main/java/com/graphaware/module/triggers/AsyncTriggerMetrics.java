@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+import javax.management.MXBean;
+
+/**
+ * Metrics of the execution of asynchronous {@link PropertyTrigger}s, also exposed through JMX.
+ */
+@MXBean
+public interface AsyncTriggerMetrics {
+
+    /**
+     * @return number of events currently waiting to be handled, across all workers.
+     */
+    int getQueueDepth();
+
+    /**
+     * @return highest number of events that have been waiting to be handled at the same time.
+     */
+    int getPeakQueueDepth();
+
+    /**
+     * @return maximum number of events that can wait to be handled, across all workers.
+     */
+    int getQueueCapacity();
+
+    /**
+     * @return number of events accepted for execution.
+     */
+    long getSubmitted();
+
+    /**
+     * @return number of events handled successfully; together with {@link #getFailed()}, the number of events handled.
+     */
+    long getCompleted();
+
+    /**
+     * @return number of events whose trigger threw an exception.
+     */
+    long getFailed();
+
+    /**
+     * @return number of events dropped because a queue was full.
+     */
+    long getDropped();
+
+    /**
+     * @return number of nodes whose events of a debounced trigger are being coalesced.
+     */
+    int getDebouncing();
+
+    /**
+     * @return number of events of debounced triggers merged into earlier events of their node.
+     */
+    long getCoalesced();
+}
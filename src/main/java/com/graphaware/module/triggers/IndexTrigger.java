@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.triggers;
+
+import com.graphaware.runtime.policy.InclusionPoliciesFactory;
+import com.graphaware.module.triggers.index.TriggerIndexer;
+import org.neo4j.graphdb.DynamicLabel;
+import org.neo4j.graphdb.Node;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A {@link PropertyTrigger} maintaining a legacy node index: nodes carrying the property (and one of the labels, if any
+ * are given) are indexed by the property's value.
+ * <p/>
+ * The index is updated once per transaction, with all the created, modified and deleted nodes, through a
+ * {@link TriggerIndexer}. Nodes that existed before the trigger was registered are indexed in the background once the
+ * module has started.
+ */
+public class IndexTrigger extends PropertyTrigger {
+
+    private final TriggerIndexer indexer;
+
+    /**
+     * @param indexer     indexer writing to the index.
+     * @param indexName   name of the node index.
+     * @param propName    property whose value nodes are indexed by.
+     * @param labelNames  only index nodes carrying one of these labels, all nodes if none are given.
+     */
+    public IndexTrigger(TriggerIndexer indexer, String indexName, String propName, String... labelNames) {
+        super(InclusionPoliciesFactory.allBusiness(), propName, indexName);
+        this.indexer = indexer;
+
+        handlesEvent(CREATE).handlesEvent(MODIFY).handlesEvent(DELETE).handlesCollections().backfillsExistingNodes().ignoresBudgets();
+        whenPropertiesChange(propName);
+        if (labelNames.length > 0) {
+            withLabels(labelNames);
+            // Losing the last of the labels removes the node from the index
+            whenLabelsChange(labelNames);
+        }
+    }
+
+    @Override
+    public Boolean OnCreate(Collection<Node> nodes) {
+        update(Collections.<Node>emptyList(), nodes);
+        return true;
+    }
+
+    @Override
+    public Boolean OnModify(Collection<Node> nodes) {
+        update(nodes, nodes);
+        return true;
+    }
+
+    @Override
+    public Boolean OnDelete(Collection<Node> nodes) {
+        update(nodes, Collections.<Node>emptyList());
+        return true;
+    }
+
+    @Override
+    public String getBackfillName() {
+        return "index:" + propIndexName + ":" + propName;
+    }
+
+    @Override
+    public void OnBackfill(Node node) {
+        // Removing first keeps backfilling idempotent when the module is initialized again
+        update(Collections.singletonList(node), Collections.singletonList(node));
+    }
+
+    private void update(Collection<Node> removals, Collection<Node> candidates) {
+        Map<Node, Object> additions = new LinkedHashMap<>();
+        for (Node node : candidates) {
+            Object value = node.getProperty(propName, null);
+            if (value != null && hasIndexedLabel(node)) {
+                additions.put(node, value);
+            }
+        }
+
+        if (!removals.isEmpty() || !additions.isEmpty()) {
+            indexer.updateIndex(propIndexName, propName, removals, additions);
+        }
+    }
+
+    private boolean hasIndexedLabel(Node node) {
+        if (_withLabels.isEmpty()) {
+            return true;
+        }
+        for (String labelName : _withLabels) {
+            if (node.hasLabel(DynamicLabel.label(labelName))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+import com.graphaware.runtime.module.DeliberateTransactionRollbackException;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs read-only validator {@link PropertyTrigger}s over {@link ValidationItem}s, splitting large transactions across a
+ * fork-join pool. The first veto (or exception) stops all remaining checks and is rethrown on the committing thread.
+ * Transactions with few items, or modules configured with a parallelism of 1, are validated on the committing thread.
+ */
+final class ParallelValidation {
+
+    static final int ITEMS_PER_TASK = 256;
+
+    private final TriggerInvocations invocations;
+    private final ForkJoinPool pool;
+
+    ParallelValidation(int parallelism, TriggerInvocations invocations) {
+        this.invocations = invocations;
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+
+    /**
+     * Validate items.
+     *
+     * @param items to validate.
+     * @throws DeliberateTransactionRollbackException if a validator vetoed.
+     * @throws RuntimeException                       thrown by a validator.
+     */
+    void validate(List<ValidationItem> items) {
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        ValidationTask task = new ValidationTask(items, 0, items.size(), failure);
+
+        if (pool == null || items.size() <= ITEMS_PER_TASK) {
+            // Not compute(), which would fork large transactions onto the common pool
+            task.validateAll();
+        } else {
+            pool.invoke(task);
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    private class ValidationTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<ValidationItem> items;
+        private final int from;
+        private final int to;
+        private final AtomicReference<RuntimeException> failure;
+
+        private ValidationTask(List<ValidationItem> items, int from, int to, AtomicReference<RuntimeException> failure) {
+            this.items = items;
+            this.from = from;
+            this.to = to;
+            this.failure = failure;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > ITEMS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ValidationTask(items, from, middle, failure), new ValidationTask(items, middle, to, failure));
+            } else {
+                validateAll();
+            }
+        }
+
+        /**
+         * Validate the task's items on the current thread.
+         */
+        private void validateAll() {
+            for (int i = from; i < to && failure.get() == null; i++) {
+                ValidationItem item = items.get(i);
+                for (PropertyTrigger validator : item.validators) {
+                    if (!validate(validator, item)) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        private boolean validate(PropertyTrigger validator, ValidationItem item) {
+            long start = System.nanoTime();
+            try {
+                Boolean result = validator.Validate(item.event, item.nodeId, item.properties);
+                if (invocations.record(validator, item.event, start, result, item.nodeId)) {
+                    failure.compareAndSet(null, new DeliberateTransactionRollbackException("Transaction vetoed by validator " + validator.getPropertyName() + " on " + PropertyTrigger.eventName(item.event) + " of node " + item.nodeId));
+                    return false;
+                }
+                return true;
+            } catch (RuntimeException e) {
+                invocations.failed(validator, item.event, start, item.nodeId);
+                failure.compareAndSet(null, e);
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+import com.graphaware.tx.event.improved.api.Change;
+import com.graphaware.tx.event.improved.api.ImprovedTransactionData;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.Relationship;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Property changes of a single node (or relationship) in a transaction, shared by all triggers called for it. The diff
+ * is only read from the transaction the first time it is needed, and then at most once, so the number of property
+ * reads per entity doesn't depend on the number of triggers.
+ * <p/>
+ * For created entities, all properties are added; for deleted entities, all properties are removed.
+ */
+public final class PropertyDiff {
+
+    private final ImprovedTransactionData transactionData;
+    private final PropertyContainer entity;
+    private final int event;
+
+    private final Map<String, Object> previousValues;
+    private final Map<String, Object> currentValues;
+
+    private Map<String, Object> added;
+    private Map<String, Object> removed;
+    private Map<String, Change<Object>> changed;
+    private Set<String> keys;
+
+    private PropertyDiff(ImprovedTransactionData transactionData, PropertyContainer entity, int event) {
+        this(transactionData, entity, event, null);
+    }
+
+    private PropertyDiff(ImprovedTransactionData transactionData, PropertyContainer entity, int event, Map<String, Object> previousValues) {
+        this(transactionData, entity, event, previousValues, null);
+    }
+
+    private PropertyDiff(ImprovedTransactionData transactionData, PropertyContainer entity, int event, Map<String, Object> previousValues, Map<String, Object> currentValues) {
+        this.transactionData = transactionData;
+        this.entity = entity;
+        this.event = event;
+        this.previousValues = previousValues;
+        this.currentValues = currentValues;
+    }
+
+    /**
+     * @param entity created node or relationship.
+     * @return diff with all properties of the entity added.
+     */
+    public static PropertyDiff created(PropertyContainer entity) {
+        return new PropertyDiff(null, entity, PropertyTrigger.CREATE);
+    }
+
+    /**
+     * @param transactionData data of the transaction.
+     * @param entity          current state of a changed node or relationship.
+     * @return diff of the entity's created, changed and deleted properties.
+     */
+    public static PropertyDiff modified(ImprovedTransactionData transactionData, PropertyContainer entity) {
+        return new PropertyDiff(transactionData, entity, PropertyTrigger.MODIFY);
+    }
+
+    /**
+     * @param entity         node modified by triggers.
+     * @param previousValues values of the properties the triggers modified, before they did (null if missing).
+     * @return diff of the properties whose values differ from the previous ones.
+     */
+    static PropertyDiff cascaded(PropertyContainer entity, Map<String, Object> previousValues) {
+        return new PropertyDiff(null, entity, PropertyTrigger.MODIFY, previousValues);
+    }
+
+    /**
+     * @param previousValues values of properties before a change (null if missing).
+     * @param currentValues  values of the same properties after the change (null if missing).
+     * @return diff of the properties whose values differ, not backed by any entity or transaction.
+     */
+    static PropertyDiff detached(Map<String, Object> previousValues, Map<String, Object> currentValues) {
+        return new PropertyDiff(null, null, PropertyTrigger.MODIFY, previousValues, currentValues);
+    }
+
+    /**
+     * @param entity deleted node or relationship.
+     * @return diff with all properties the entity had removed.
+     */
+    public static PropertyDiff deleted(PropertyContainer entity) {
+        return new PropertyDiff(null, entity, PropertyTrigger.DELETE);
+    }
+
+    /**
+     * @return keys of properties that didn't exist before, with their current values.
+     */
+    public Map<String, Object> getAdded() {
+        materialize();
+        return added;
+    }
+
+    /**
+     * @return keys of properties that no longer exist, with their previous values.
+     */
+    public Map<String, Object> getRemoved() {
+        materialize();
+        return removed;
+    }
+
+    /**
+     * @return keys of properties whose value changed, with their previous and current values.
+     */
+    public Map<String, Change<Object>> getChanged() {
+        materialize();
+        return changed;
+    }
+
+    /**
+     * @return keys of all added, removed and changed properties.
+     */
+    public Set<String> getKeys() {
+        materialize();
+        return keys;
+    }
+
+    /**
+     * @param key property key.
+     * @return true iff the property has been added, removed or changed.
+     */
+    public boolean hasChanged(String key) {
+        return getKeys().contains(key);
+    }
+
+    /**
+     * @return true iff no property has been added, removed or changed.
+     */
+    public boolean isEmpty() {
+        return getKeys().isEmpty();
+    }
+
+    /**
+     * @param key property key.
+     * @return value of the property before the transaction, null if it didn't exist or hasn't changed.
+     */
+    public Object getPrevious(String key) {
+        materialize();
+        Change<Object> change = changed.get(key);
+        return change != null ? change.getPrevious() : removed.get(key);
+    }
+
+    /**
+     * @param key property key.
+     * @return value of the property after the transaction, null if it has been removed or hasn't changed.
+     */
+    public Object getCurrent(String key) {
+        materialize();
+        Change<Object> change = changed.get(key);
+        return change != null ? change.getCurrent() : added.get(key);
+    }
+
+    private void materialize() {
+        if (keys != null) {
+            return;
+        }
+
+        added = Collections.emptyMap();
+        removed = Collections.emptyMap();
+        changed = Collections.emptyMap();
+
+        switch (event) {
+            case PropertyTrigger.CREATE:
+                added = properties(entity);
+                break;
+            case PropertyTrigger.DELETE:
+                removed = properties(entity);
+                break;
+            default:
+                if (previousValues != null) {
+                    compare();
+                } else if (entity instanceof Node) {
+                    added = transactionData.createdProperties((Node) entity);
+                    removed = transactionData.deletedProperties((Node) entity);
+                    changed = transactionData.changedProperties((Node) entity);
+                } else {
+                    added = transactionData.createdProperties((Relationship) entity);
+                    removed = transactionData.deletedProperties((Relationship) entity);
+                    changed = transactionData.changedProperties((Relationship) entity);
+                }
+        }
+
+        Set<String> result = new HashSet<>(added.keySet());
+        result.addAll(removed.keySet());
+        result.addAll(changed.keySet());
+        keys = Collections.unmodifiableSet(result);
+    }
+
+    private void compare() {
+        added = new HashMap<>();
+        removed = new HashMap<>();
+        changed = new HashMap<>();
+        for (Map.Entry<String, Object> previous : previousValues.entrySet()) {
+            Object current = currentValues != null ? currentValues.get(previous.getKey()) : entity.getProperty(previous.getKey(), null);
+            if (previous.getValue() == null) {
+                if (current != null) {
+                    added.put(previous.getKey(), current);
+                }
+            } else if (current == null) {
+                removed.put(previous.getKey(), previous.getValue());
+            } else if (!Objects.deepEquals(previous.getValue(), current)) {
+                changed.put(previous.getKey(), new Change<>(previous.getValue(), current));
+            }
+        }
+    }
+
+    private static Map<String, Object> properties(PropertyContainer entity) {
+        Map<String, Object> result = new HashMap<>();
+        for (String key : entity.getPropertyKeys()) {
+            result.put(key, entity.getProperty(key));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        materialize();
+        Map<String, Object> result = new HashMap<>();
+        result.put("added", added);
+        result.put("removed", removed);
+        result.put("changed", changed);
+        return result.toString();
+    }
+}
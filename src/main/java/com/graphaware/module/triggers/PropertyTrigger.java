@@ -20,9 +20,17 @@ import com.graphaware.runtime.config.BaseTxDrivenModuleConfiguration;
 import com.graphaware.runtime.policy.InclusionPoliciesFactory;
 
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 //import java.util.HashMap;
 
 /**
@@ -30,6 +38,16 @@ import java.util.ArrayList;
  */
 
 public class PropertyTrigger extends BaseTxDrivenModuleConfiguration<PropertyTrigger> {
+
+	// Triggering events, indexes into Events and the Event argument of OnChange
+	public static final int CREATE = 0;
+	public static final int MODIFY = 1;
+	public static final int DELETE = 2;
+	private static final String[] EVENT_NAMES = {"create", "modify", "delete"};
+
+	// Matches any value in whenPropertyChanges
+	public static final Object ANY_VALUE = new Object();
+
 	InclusionPolicies inclusionPolicies;  // This will be registered with the TriggerModule (How to make this without extending TxConfiguration?)
 	Boolean bHasIndex = false; // Perhaps use a null or empty value on propIndexName instead?
 	String propIndexName;      // Make this a Collection of PropertyName and IndexName?
@@ -40,10 +58,28 @@ public class PropertyTrigger extends BaseTxDrivenModuleConfiguration<PropertyTri
 
 	public final Collection<String> _whenPropertiesChange = new ArrayList<String>();
 	public final Collection<String> _whenLabelsChange = new ArrayList<String>();
+	final Set<String> _withLabels = new HashSet<String>(); // Only nodes carrying one of these labels, all nodes if empty
+	final List<ValueTransition> _whenValuesChange = new ArrayList<ValueTransition>(); // Value conditions on modifications, any of which must hold
+	final Set<String> _modifiesProperties = new LinkedHashSet<String>(); // Properties this trigger writes on the nodes it is called for
+	final Set<String> _withRelationshipTypes = new HashSet<String>(); // Only relationships of these types, all if empty
 
 	String propName; // A Collection of properties?
 	Boolean[] Events = {false, false, false};
-	
+	Boolean[] RelationshipEvents = {false, false, false};
+	Boolean bHandlesChanges = false; // Call OnChange for every handled event
+	Boolean bHandlesCollections = false; // Call OnCreate/OnModify/OnDelete once per transaction with all nodes
+	Boolean bAsynchronous = false; // Call OnCommitted after commit instead of the other callbacks before commit
+	Boolean bReadOnlyValidator = false; // Call Validate, possibly in parallel, instead of the other callbacks
+	Boolean bHandlesLabelChanges = false; // Call OnLabelAdded/OnLabelRemoved for labels added to or removed from existing nodes
+	Boolean bBackfills = false; // Call OnBackfill for the existing nodes when the module initializes
+	Boolean bIgnoresCascades = false; // Don't call again for changes other triggers make to nodes of the transaction
+	Boolean bBudgeted = true; // Subject to time budgets and the circuit breaker; false for built-in integrity triggers
+
+	final TriggerMetrics metrics = new TriggerMetrics(); // Invocation counts and latencies, recorded by the TriggerModule
+	long timeBudgetMillis = -1; // Time this trigger may spend per transaction, -1 for the module's default
+	long debounceMillis = 0; // Window in which events of a node are coalesced after commit, 0 if not debounced
+	private Boolean bHandlesCommitted; // Whether OnCommitted is overridden, i.e. whether the trigger can be demoted; computed on first use
+
     protected PropertyTrigger(InclusionPolicies inclusionPolicies) {
         super(inclusionPolicies);
     }
@@ -69,6 +105,14 @@ public class PropertyTrigger extends BaseTxDrivenModuleConfiguration<PropertyTri
         return new PropertyTrigger(InclusionPoliciesFactory.allBusiness(), propName, indexName);
     }
 
+    /**
+     * @param event one of {@link #CREATE}, {@link #MODIFY} and {@link #DELETE}.
+     * @return name of the event, as used in messages, metrics and scripts.
+     */
+    static String eventName(int event) {
+        return EVENT_NAMES[event];
+    }
+
 
     /**
      * {@inheritDoc}
@@ -94,10 +138,438 @@ public class PropertyTrigger extends BaseTxDrivenModuleConfiguration<PropertyTri
         return propIndexName;
     }
     
+    /**
+     * Register this trigger's per-event callback (OnCreate, OnModify or OnDelete) for an event.
+     *
+     * @param event one of {@link #CREATE}, {@link #MODIFY}, {@link #DELETE}.
+     * @return this trigger.
+     */
+    public PropertyTrigger handlesEvent(int event) {
+        Events[event] = true;
+        return this;
+    }
+
+    /**
+     * Register this trigger's OnChange callback for all events.
+     *
+     * @return this trigger.
+     */
+    public PropertyTrigger handlesChanges() {
+        bHandlesChanges = true;
+        return this;
+    }
+
+    /**
+     * Call this trigger's OnCreate, OnModify and OnDelete callbacks once per transaction with all the nodes the event
+     * applies to, instead of once per node. Useful for triggers doing batched work.
+     *
+     * @return this trigger.
+     */
+    public PropertyTrigger handlesCollections() {
+        bHandlesCollections = true;
+        return this;
+    }
+
+    /**
+     * Call this trigger after commit, on a worker thread, instead of before commit. Asynchronous triggers can't veto
+     * transactions; they receive {@link #OnCommitted(int, long)} for every handled event (all events if
+     * {@link #handlesChanges()} has been called), in order per node.
+     *
+     * @return this trigger.
+     */
+    public PropertyTrigger handlesAsynchronously() {
+        bAsynchronous = true;
+        return this;
+    }
+
+    /**
+     * Call this trigger after commit like {@link #handlesAsynchronously()}, but at most once per node and window: events
+     * of a node are collected for the given time after the first one, then handled by a single call of
+     * {@link #OnDebounced(int, long, PropertyDiff)} with the net event and the net diff of the node's properties. A node
+     * created and modified is created; a node created and deleted, or modified back to its previous properties, isn't
+     * handled at all. For nodes modified very often (counters, sessions) whose side effects only need the outcome.
+     *
+     * @param millis window, from the first event of a node.
+     * @return this trigger.
+     */
+    public PropertyTrigger debouncesFor(long millis) {
+        if (millis <= 0) {
+            throw new IllegalArgumentException("Debounce window must be positive");
+        }
+        debounceMillis = millis;
+        bAsynchronous = true;
+        return this;
+    }
+
+    /**
+     * Declare this trigger a read-only validator. Instead of the other callbacks, {@link #Validate(int, long, Map)} is
+     * called for every handled event (all events if {@link #handlesChanges()} has been called) with a copy of the
+     * node's properties, before any other trigger runs. Validation of large transactions is spread across several
+     * threads, so validators must be thread-safe and must not access the database.
+     * <p/>
+     * The copy only contains the properties in {@link #whenPropertiesChange(String...)}, or all properties if no
+     * validator declares any.
+     *
+     * @return this trigger.
+     */
+    public PropertyTrigger validatesReadOnly() {
+        bReadOnlyValidator = true;
+        return this;
+    }
+
+    /**
+     * Only call this trigger for modifications changing the property from one value to another. Several conditions may
+     * be declared; the trigger is called when any of them holds. The property is added to
+     * {@link #whenPropertiesChange(String...)}. Conditions apply to modified nodes and relationships only, not to
+     * created or deleted ones.
+     *
+     * @param propName property key.
+     * @param from     previous value, {@link #ANY_VALUE} for any, null if the property must not have existed.
+     * @param to       current value, {@link #ANY_VALUE} for any, null if the property must have been removed.
+     * @return this trigger.
+     */
+    public PropertyTrigger whenPropertyChanges(String propName, Object from, Object to) {
+        return whenValueChanges(ValueTransition.between(propName, from, to));
+    }
+
+    /**
+     * Only call this trigger for modifications taking a numeric property above a threshold (a missing or non-numeric
+     * previous value counts as not above). See {@link #whenPropertyChanges(String, Object, Object)}.
+     *
+     * @param propName  property key.
+     * @param threshold the value must go from at most this to more than this.
+     * @return this trigger.
+     */
+    public PropertyTrigger whenPropertyRisesAbove(String propName, double threshold) {
+        return whenValueChanges(ValueTransition.risesAbove(propName, threshold));
+    }
+
+    /**
+     * Only call this trigger for modifications taking a numeric property below a threshold (a missing or non-numeric
+     * previous value counts as not below). See {@link #whenPropertyChanges(String, Object, Object)}.
+     *
+     * @param propName  property key.
+     * @param threshold the value must go from at least this to less than this.
+     * @return this trigger.
+     */
+    public PropertyTrigger whenPropertyFallsBelow(String propName, double threshold) {
+        return whenValueChanges(ValueTransition.fallsBelow(propName, threshold));
+    }
+
+    private PropertyTrigger whenValueChanges(ValueTransition transition) {
+        _whenValuesChange.add(transition);
+        if (!_whenPropertiesChange.contains(transition.key)) {
+            _whenPropertiesChange.add(transition.key);
+        }
+        return this;
+    }
+
+    /**
+     * Only call this trigger for the transaction's own changes, not again for the properties other triggers change on
+     * the same nodes (see {@link #modifiesProperties(String...)}). For triggers deriving a value from the state before
+     * the transaction, which they already saw.
+     *
+     * @return this trigger.
+     */
+    public PropertyTrigger ignoresCascades() {
+        bIgnoresCascades = true;
+        return this;
+    }
+
+    /**
+     * Exempt this trigger from time budgets and the circuit breaker, so that it is always called before commit. Only for
+     * the built-in triggers maintaining the integrity of the graph (UUIDs, revisions, indexes).
+     *
+     * @return this trigger.
+     */
+    PropertyTrigger ignoresBudgets() {
+        bBudgeted = false;
+        return this;
+    }
+
+    /**
+     * Call this trigger's {@link #OnBackfill(Node)} for every existing node (matching its label filter, if any), in the
+     * background once the module has started, unless the trigger has been backfilled before. Nodes are visited on
+     * several threads, and may be visited again when an interrupted backfill resumes.
+     *
+     * @return this trigger.
+     */
+    public PropertyTrigger backfillsExistingNodes() {
+        bBackfills = true;
+        return this;
+    }
+
+    /**
+     * Only call this trigger for modified nodes when at least one of the given properties has been created, changed or
+     * deleted. A trigger without any such properties is called for every modified node.
+     *
+     * @param propNames property keys.
+     * @return this trigger.
+     */
+    public PropertyTrigger whenPropertiesChange(String... propNames) {
+        for (String propName : propNames) {
+            _whenPropertiesChange.add(propName);
+        }
+        return this;
+    }
+
+    /**
+     * Only call this trigger for modified nodes when at least one of the given labels has been added or removed. Can be
+     * combined with {@link #whenPropertiesChange(String...)}, in which case either kind of change calls the trigger.
+     * Also restricts {@link #OnLabelAdded(Node, String)} and {@link #OnLabelRemoved(Node, String)} to these labels.
+     *
+     * @param labelNames label names.
+     * @return this trigger.
+     */
+    public PropertyTrigger whenLabelsChange(String... labelNames) {
+        for (String labelName : labelNames) {
+            _whenLabelsChange.add(labelName);
+        }
+        return this;
+    }
+
+    /**
+     * Declare the properties this trigger writes on the nodes it is called for. Triggers are run after the triggers
+     * writing the properties they watch (see {@link #whenPropertiesChange(String...)}); triggers watching all properties
+     * run after all writers. Declarations forming a cycle between triggers are rejected at registration.
+     * <p/>
+     * Values actually changed by OnModify and OnChange callbacks of modified nodes are dispatched again, as modifications
+     * of just those properties, to the triggers watching them, until no trigger changes anything more. They are also the
+     * only writes by triggers to modified nodes the change log records (see {@link com.graphaware.module.triggers.cdc.ChangeLog}),
+     * and only while the node has them: removals are not recorded.
+     *
+     * @param propNames property keys.
+     * @return this trigger.
+     */
+    public PropertyTrigger modifiesProperties(String... propNames) {
+        Collections.addAll(_modifiesProperties, propNames);
+        return this;
+    }
+
+    /**
+     * Only call this trigger for nodes carrying at least one of the given labels. Deleted nodes are matched by the labels
+     * they had; modified nodes by the labels they have or just had removed. The check is done before any callback, so
+     * nodes without these labels cost the trigger nothing.
+     *
+     * @param labelNames label names.
+     * @return this trigger.
+     */
+    public PropertyTrigger withLabels(String... labelNames) {
+        for (String labelName : labelNames) {
+            _withLabels.add(labelName);
+        }
+        return this;
+    }
+
+    /**
+     * Call this trigger's {@link #OnLabelAdded(Node, String)} and {@link #OnLabelRemoved(Node, String)} callbacks for
+     * every label added to or removed from an existing node (only labels in {@link #whenLabelsChange(String...)} if
+     * any are declared).
+     *
+     * @return this trigger.
+     */
+    public PropertyTrigger handlesLabelChanges() {
+        bHandlesLabelChanges = true;
+        return this;
+    }
+
+    /**
+     * Register this trigger's relationship callback (OnCreate, OnModify or OnDelete taking relationships) for an event.
+     * Relationship callbacks are always called once per relationship before commit; {@link #handlesCollections()} and
+     * {@link #handlesAsynchronously()} only apply to nodes. Modified relationships are routed by
+     * {@link #whenPropertiesChange(String...)} like nodes.
+     *
+     * @param event one of {@link #CREATE}, {@link #MODIFY}, {@link #DELETE}.
+     * @return this trigger.
+     */
+    public PropertyTrigger handlesRelationshipEvent(int event) {
+        RelationshipEvents[event] = true;
+        return this;
+    }
+
+    /**
+     * Only call this trigger for relationships of the given types. Relationships of other types are never routed to it.
+     *
+     * @param typeNames relationship type names.
+     * @return this trigger.
+     */
+    public PropertyTrigger withRelationshipTypes(String... typeNames) {
+        for (String typeName : typeNames) {
+            _withRelationshipTypes.add(typeName);
+        }
+        return this;
+    }
+
+    /**
+     * Override the module's per trigger time budget (see
+     * {@link TriggerModuleConfiguration#withTimeBudgets(long, long, TriggerBudgetPolicy)}) for this trigger.
+     *
+     * @param millis time this trigger may spend in callbacks per transaction, 0 for no limit.
+     * @return this trigger.
+     */
+    public PropertyTrigger withTimeBudget(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Time budget must not be negative");
+        }
+        timeBudgetMillis = millis;
+        return this;
+    }
+
+    public boolean isHandlingEvent(int event) {
+        return Events[event];
+    }
+
+    public boolean isHandlingRelationshipEvent(int event) {
+        return RelationshipEvents[event];
+    }
+
+    public boolean isHandlingChanges() {
+        return bHandlesChanges;
+    }
+
+    public boolean isHandlingCollections() {
+        return bHandlesCollections;
+    }
+
+    public boolean isAsynchronous() {
+        return bAsynchronous;
+    }
+
+    public boolean isDebounced() {
+        return debounceMillis > 0;
+    }
+
+    public long getDebounceMillis() {
+        return debounceMillis;
+    }
+
+    public boolean isReadOnlyValidator() {
+        return bReadOnlyValidator;
+    }
+
+    public boolean isHandlingLabelChanges() {
+        return bHandlesLabelChanges;
+    }
+
+    public boolean isBackfilling() {
+        return bBackfills;
+    }
+
+    /**
+     * @return true iff this trigger overrides {@link #OnCommitted(int, long)}, so that its events can be demoted to after
+     *         commit (see {@link TriggerBudgetPolicy#DEMOTE}).
+     */
+    public boolean isHandlingCommitted() {
+        if (bHandlesCommitted == null) {
+            try {
+                bHandlesCommitted = getClass().getMethod("OnCommitted", int.class, long.class).getDeclaringClass() != PropertyTrigger.class;
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return bHandlesCommitted;
+    }
+
+    public boolean isBudgeted() {
+        return bBudgeted;
+    }
+
+    public boolean isIgnoringCascades() {
+        return bIgnoresCascades;
+    }
+
+    /**
+     * @return name the backfill progress of this trigger is checkpointed under; triggers sharing it are only backfilled
+     *         once.
+     */
+    public String getBackfillName() {
+        return propName;
+    }
+
+    /**
+     * @return what the backfill of this trigger depends on; when it differs from the one the progress has been
+     *         checkpointed with, the trigger is backfilled from scratch. Defaults to the backfill name and label filter.
+     */
+    public String getBackfillDefinition() {
+        return getBackfillName() + " " + new TreeSet<>(_withLabels);
+    }
+
+    public boolean hasLabelFilter() {
+        return !_withLabels.isEmpty();
+    }
+
+    /**
+     * @param labelNames names of the labels a node carries.
+     * @return true iff this trigger has no label filter, or the node carries one of its labels.
+     */
+    boolean matchesLabels(Set<String> labelNames) {
+        if (_withLabels.isEmpty()) {
+            return true;
+        }
+        for (String labelName : _withLabels) {
+            if (labelNames.contains(labelName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean isModifyingProperties() {
+        return !_modifiesProperties.isEmpty();
+    }
+
+    /**
+     * @param propName property key.
+     * @return true iff this trigger is called when the property changes, as it watches it or all properties.
+     */
+    boolean readsProperty(String propName) {
+        return _whenPropertiesChange.contains(propName) || (_whenPropertiesChange.isEmpty() && _whenLabelsChange.isEmpty());
+    }
+
+    public boolean hasValueFilter() {
+        return !_whenValuesChange.isEmpty();
+    }
+
+    /**
+     * @param diff property diff of a modified node or relationship.
+     * @return true iff this trigger has no value conditions, or the diff satisfies one of them.
+     */
+    boolean matchesValues(PropertyDiff diff) {
+        if (_whenValuesChange.isEmpty()) {
+            return true;
+        }
+        for (ValueTransition transition : _whenValuesChange) {
+            if (transition.matches(diff)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return time this trigger may spend per transaction, -1 if the module's default applies.
+     */
+    public long getTimeBudgetMillis() {
+        return timeBudgetMillis;
+    }
+
+    /**
+     * @return context shared by the triggers called for the transaction being committed on this thread, null when called
+     *         outside of a transaction (read-only validators, asynchronous triggers, backfills).
+     */
+    public TriggerContext getContext() {
+        return TriggerContext.current();
+    }
+
+    public TriggerMetrics getMetrics() {
+        return metrics;
+    }
+
     public void addToCreatedNodes(Node node){
     	createdNodes.add(node);
     }
     
+    // Callbacks returning false veto the transaction, which is then rolled back
     public Boolean OnCreate(Node node) {
     	return true;
     }
@@ -109,7 +581,13 @@ public class PropertyTrigger extends BaseTxDrivenModuleConfiguration<PropertyTri
     public Boolean OnModify(Node _previous, Node _current) {
     	return true;
     }
+
+    // Called with the node's property diff, shared by all triggers; override instead of the above to avoid re-reading properties
+    public Boolean OnModify(Node _previous, Node _current, PropertyDiff diff) {
+    	return OnModify(_previous, _current);
+    }
     
+    // Called with the current state of the modified nodes
     public Boolean OnModify(Collection<Node> node) {
     	return true;
     }
@@ -126,5 +604,65 @@ public class PropertyTrigger extends BaseTxDrivenModuleConfiguration<PropertyTri
     	return true;
     }
 
+    public Boolean OnChange(int Event, Node _previous, Node _current, PropertyDiff diff) {
+    	return OnChange(Event, _previous, _current);
+    }
+
+    // Called for relationships, per relationship, before commit
+    public Boolean OnCreate(Relationship relationship) {
+    	return true;
+    }
+
+    public Boolean OnModify(Relationship _previous, Relationship _current, PropertyDiff diff) {
+    	return true;
+    }
+
+    public Boolean OnDelete(Relationship relationship) {
+    	return true;
+    }
+
+    // Called for labels added to or removed from existing nodes, after OnModify/OnChange
+    public Boolean OnLabelAdded(Node node, String labelName) {
+    	return true;
+    }
+
+    public Boolean OnLabelRemoved(Node node, String labelName) {
+    	return true;
+    }
+
+    // Called once per existing node whose labels changed, with the added and removed labels this trigger watches; calls
+    // OnLabelAdded and OnLabelRemoved for each of them unless overridden
+    public Boolean OnLabelsChanged(Node node, Collection<String> addedLabels, Collection<String> removedLabels) {
+    	for (String labelName : addedLabels) {
+    		if (Boolean.FALSE.equals(OnLabelAdded(node, labelName))) {
+    			return false;
+    		}
+    	}
+    	for (String labelName : removedLabels) {
+    		if (Boolean.FALSE.equals(OnLabelRemoved(node, labelName))) {
+    			return false;
+    		}
+    	}
+    	return true;
+    }
+
+    // Called for read-only validators, possibly concurrently, with a copy of the node's (previous for DELETE) properties
+    public Boolean Validate(int Event, long nodeId, Map<String, Object> properties) {
+    	return true;
+    }
+
+    // Called after commit for asynchronous triggers, within a transaction; deleted nodes can no longer be looked up
+    public void OnCommitted(int Event, long nodeId) {
+    }
+
+    // Called after commit for debounced triggers instead of OnCommitted, once per node and window, with the net change
+    public void OnDebounced(int Event, long nodeId, PropertyDiff diff) {
+    	OnCommitted(Event, nodeId);
+    }
+
+    // Called for existing nodes matching the label filter, in batched transactions on several threads; must be idempotent
+    public void OnBackfill(Node node) {
+    }
+
     // OnChange for a Collection should work with the Collection<Change<Node>> type?
 }
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+import org.neo4j.graphdb.RelationshipType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable routing of relationships to {@link PropertyTrigger}s by relationship type, built once when triggers are
+ * registered. Each type any trigger is restricted to gets its own {@link TriggerDispatchTable} containing the triggers
+ * for that type and the triggers without type restrictions; relationships of other types only see the latter.
+ */
+final class RelationshipDispatchTable {
+
+    private static final RelationshipDispatchTable EMPTY = new RelationshipDispatchTable(Collections.<PropertyTrigger>emptyList());
+
+    private final Map<String, TriggerDispatchTable> byType = new HashMap<>();
+    private final TriggerDispatchTable untyped;
+    private final boolean empty;
+
+    RelationshipDispatchTable(Collection<PropertyTrigger> triggers) {
+        Set<String> types = new HashSet<>();
+        List<PropertyTrigger> untypedTriggers = new ArrayList<>();
+        for (PropertyTrigger trigger : triggers) {
+            types.addAll(trigger._withRelationshipTypes);
+            if (trigger._withRelationshipTypes.isEmpty()) {
+                untypedTriggers.add(trigger);
+            }
+        }
+
+        for (String type : types) {
+            List<PropertyTrigger> forType = new ArrayList<>();
+            for (PropertyTrigger trigger : triggers) {
+                if (trigger._withRelationshipTypes.isEmpty() || trigger._withRelationshipTypes.contains(type)) {
+                    forType.add(trigger);
+                }
+            }
+            byType.put(type, new TriggerDispatchTable(forType));
+        }
+
+        untyped = new TriggerDispatchTable(untypedTriggers);
+        empty = triggers.isEmpty();
+    }
+
+    static RelationshipDispatchTable empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @return true iff no trigger is registered in this table.
+     */
+    boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * @param type of a relationship.
+     * @return triggers interested in relationships of the type, routed further by changed property.
+     */
+    TriggerDispatchTable forType(RelationshipType type) {
+        TriggerDispatchTable result = byType.get(type.name());
+        return result != null ? result : untyped;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+/**
+ * Thrown by {@link RevisionTrigger#update(org.neo4j.graphdb.Transaction, org.neo4j.graphdb.Node, long, java.util.Map)}
+ * when a node has been modified since the client read it.
+ */
+public class RevisionConflictException extends RuntimeException {
+
+    private final long expectedRevision;
+    private final long actualRevision;
+
+    public RevisionConflictException(long nodeId, long expectedRevision, long actualRevision) {
+        super("Node " + nodeId + " is at revision " + actualRevision + ", expected " + expectedRevision);
+        this.expectedRevision = expectedRevision;
+        this.actualRevision = actualRevision;
+    }
+
+    public long getExpectedRevision() {
+        return expectedRevision;
+    }
+
+    public long getActualRevision() {
+        return actualRevision;
+    }
+}
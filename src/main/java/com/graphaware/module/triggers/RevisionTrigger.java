@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.Collection;
+import java.util.Map;
+
+import static com.graphaware.runtime.policy.InclusionPoliciesFactory.allBusiness;
+
+/**
+ * A {@link PropertyTrigger} maintaining a revision of every node: 1 when the node is created, incremented once per
+ * transaction that modifies it. Writes to the revision property made outside of this trigger are overwritten.
+ * <p/>
+ * Clients read a node with its revision and write it back through {@link #update(Transaction, Node, long, Map)}, which
+ * only succeeds if nobody modified the node in between (optimistic concurrency).
+ * <p/>
+ * Only nodes the transaction itself changed get a new revision. Writes made by other triggers before commit to nodes
+ * the transaction didn't change (e.g. counters on neighbours, or nodes written through
+ * {@link TriggerContext#batch(String, TriggerContext.BatchWriter)}) don't show in the transaction data, so they leave
+ * the revision as it is and a conditional update based on an earlier read overwrites them. Triggers writing to such
+ * nodes, where that matters, must increment the revision property themselves.
+ */
+public class RevisionTrigger extends PropertyTrigger {
+
+    /**
+     * @param revisionProperty name of the property holding the revision.
+     */
+    public RevisionTrigger(String revisionProperty) {
+        super(allBusiness(), revisionProperty);
+
+        handlesEvent(CREATE).handlesEvent(MODIFY).ignoresCascades().ignoresBudgets();
+    }
+
+    @Override
+    public Boolean OnCreate(Node node) {
+        node.setProperty(propName, 1L);
+        return true;
+    }
+
+    @Override
+    public Boolean OnModify(Node _previous, Node _current) {
+        _current.setProperty(propName, getRevision(_previous) + 1);
+        return true;
+    }
+
+    /**
+     * @param node to get the revision of.
+     * @return revision of the node, 0 if it has none (it was created before revisions were enabled).
+     */
+    public long getRevision(Node node) {
+        Object revision = node.getProperty(propName, null);
+        return revision instanceof Number ? ((Number) revision).longValue() : 0;
+    }
+
+    /**
+     * Set properties of a node, provided it is still at the expected revision. The node is locked until the transaction
+     * finishes, so that concurrent updates expecting the same revision fail instead of overwriting each other.
+     * <p/>
+     * Writes made to the node by triggers of another node's transaction don't change its revision (see the class
+     * documentation), so they are not detected as conflicts.
+     *
+     * @param tx                 transaction to update the node in; the caller is responsible for finishing it.
+     * @param node               to update.
+     * @param expectedRevision   revision the client has read the node at.
+     * @param properties         properties to set; a null value removes the property. The revision property is ignored.
+     * @return revision of the node once the transaction commits.
+     * @throws RevisionConflictException if the node is at a different revision.
+     * @throws IllegalArgumentException  if a property value can't be stored.
+     */
+    public long update(Transaction tx, Node node, long expectedRevision, Map<String, Object> properties) {
+        tx.acquireWriteLock(node);
+
+        long revision = getRevision(node);
+        if (revision != expectedRevision) {
+            throw new RevisionConflictException(node.getId(), expectedRevision, revision);
+        }
+
+        // Bumping the revision here modifies the node even if the properties don't, so that the trigger always sees it
+        node.setProperty(propName, expectedRevision + 1);
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            if (propName.equals(property.getKey())) {
+                continue;
+            }
+            if (property.getValue() == null) {
+                node.removeProperty(property.getKey());
+            } else {
+                node.setProperty(property.getKey(), toPropertyValue(property.getKey(), property.getValue()));
+            }
+        }
+
+        return expectedRevision + 1;
+    }
+
+    private static Object toPropertyValue(String key, Object value) {
+        if (value instanceof Collection) {
+            Collection<?> values = (Collection<?>) value;
+            if (values.isEmpty()) {
+                return new String[0];
+            }
+            Object first = values.iterator().next();
+            if (first instanceof String) {
+                String[] result = new String[values.size()];
+                int i = 0;
+                for (Object element : values) {
+                    result[i++] = (String) toElement(key, element, String.class);
+                }
+                return result;
+            }
+            if (first instanceof Boolean) {
+                boolean[] result = new boolean[values.size()];
+                int i = 0;
+                for (Object element : values) {
+                    result[i++] = (Boolean) toElement(key, element, Boolean.class);
+                }
+                return result;
+            }
+            if (first instanceof Integer || first instanceof Long) {
+                long[] result = new long[values.size()];
+                int i = 0;
+                for (Object element : values) {
+                    result[i++] = ((Number) toElement(key, element, Number.class)).longValue();
+                }
+                return result;
+            }
+            if (first instanceof Number) {
+                double[] result = new double[values.size()];
+                int i = 0;
+                for (Object element : values) {
+                    result[i++] = ((Number) toElement(key, element, Number.class)).doubleValue();
+                }
+                return result;
+            }
+            throw new IllegalArgumentException("Unsupported value of property " + key + ": " + value);
+        }
+        if (value instanceof String || value instanceof Number || value instanceof Boolean) {
+            return value;
+        }
+        throw new IllegalArgumentException("Unsupported value of property " + key + ": " + value);
+    }
+
+    private static Object toElement(String key, Object element, Class<?> type) {
+        if (!type.isInstance(element)) {
+            throw new IllegalArgumentException("Property " + key + " mixes values of different types");
+        }
+        return element;
+    }
+}
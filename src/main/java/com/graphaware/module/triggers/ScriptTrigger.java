@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+import com.graphaware.runtime.module.DeliberateTransactionRollbackException;
+import com.graphaware.runtime.policy.InclusionPoliciesFactory;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptEngine;
+import javax.script.ScriptContext;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * {@link PropertyTrigger} defined by a trigger node (labelled {@link TriggerModuleConfiguration#getTriggerNodeLabel()})
+ * holding JSR-223 scripts for the create, modify and delete events. The scripts are compiled once, when the trigger is
+ * created; a new instance (with a new version) is only compiled when the definition on the trigger node changes.
+ * <p/>
+ * Scripts see the following variables: {@link #DATABASE}, {@link #EVENT}, {@link #NODE} (the created, modified or
+ * deleted node), {@link #PREVIOUS} and {@link #CURRENT} (for modifications), and {@link #CONTEXT} (the
+ * {@link TriggerContext} of the transaction). A script evaluating to <code>false</code> returns <code>false</code> from
+ * the callback.
+ * <p/>
+ * Each trigger has its own script engine. Scripts are evaluated in script contexts taken from a pool, which is much
+ * cheaper than creating fresh bindings on every call; a context is used by one call at a time, so concurrent
+ * transactions call the same trigger in parallel, each in its own context.
+ */
+public class ScriptTrigger extends PropertyTrigger {
+
+    public static final String DATABASE = "database";
+    public static final String EVENT = "event";
+    public static final String NODE = "node";
+    public static final String PREVIOUS = "previous";
+    public static final String CURRENT = "current";
+    public static final String CONTEXT = "context";
+
+    private final long triggerNodeId;
+    private final int version;
+    private final List<Object> definition;
+    private final GraphDatabaseService database;
+    private final ScriptEngine engine;
+    private final CompiledScript[] scripts = new CompiledScript[3];
+    private final Queue<ScriptContext> contexts = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Compile a trigger from its definition.
+     *
+     * @param triggerNode          node defining the trigger.
+     * @param version              of the trigger, increased every time the definition on the node changes.
+     * @param language             name of the scripts' language, as given on the trigger node.
+     * @param engine               script engine for the trigger's language, must be {@link Compilable}. Used by this
+     *                             trigger only.
+     * @param database             the scripts run against.
+     * @param onCreate             script, can be null.
+     * @param onModify             script, can be null.
+     * @param onDelete             script, can be null.
+     * @param whenPropertiesChange properties limiting modifications the trigger is called for, can be empty.
+     * @throws ScriptException          if a script does not compile.
+     * @throws IllegalArgumentException if the engine can't compile scripts.
+     */
+    ScriptTrigger(Node triggerNode, int version, String language, ScriptEngine engine, GraphDatabaseService database, String onCreate, String onModify, String onDelete, String... whenPropertiesChange) throws ScriptException {
+        super(InclusionPoliciesFactory.allBusiness(), (String) triggerNode.getProperty(TriggerProperties.TRIGGER_NAME, "trigger-" + triggerNode.getId()));
+
+        if (!(engine instanceof Compilable)) {
+            throw new IllegalArgumentException("Script engine " + engine.getFactory().getEngineName() + " can't compile scripts");
+        }
+
+        this.triggerNodeId = triggerNode.getId();
+        this.version = version;
+        this.definition = definition(language, onCreate, onModify, onDelete, whenPropertiesChange);
+        this.database = database;
+        this.engine = engine;
+
+        String[] sources = {onCreate, onModify, onDelete};
+        for (int event = CREATE; event <= DELETE; event++) {
+            if (sources[event] != null) {
+                scripts[event] = ((Compilable) engine).compile(sources[event]);
+                handlesEvent(event);
+            }
+        }
+        whenPropertiesChange(whenPropertiesChange);
+    }
+
+    /**
+     * Create a value representing a trigger definition, to find out whether a trigger needs to be recompiled.
+     */
+    static List<Object> definition(String language, String onCreate, String onModify, String onDelete, String... whenPropertiesChange) {
+        return Collections.unmodifiableList(Arrays.<Object>asList(language, onCreate, onModify, onDelete, Arrays.asList(whenPropertiesChange)));
+    }
+
+    public long getTriggerNodeId() {
+        return triggerNodeId;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    List<Object> getDefinition() {
+        return definition;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Boolean OnCreate(Node node) {
+        return evaluate(CREATE, null, node);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Boolean OnModify(Node _previous, Node _current) {
+        return evaluate(MODIFY, _previous, _current);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Boolean OnDelete(Node node) {
+        return evaluate(DELETE, node, null);
+    }
+
+    private Boolean evaluate(int event, Node previous, Node current) {
+        CompiledScript script = scripts[event];
+        if (script == null) {
+            return true;
+        }
+
+        ScriptContext context = contexts.poll();
+        if (context == null) {
+            context = new SimpleScriptContext();
+            context.setBindings(engine.createBindings(), ScriptContext.ENGINE_SCOPE);
+        }
+
+        Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+        bindings.put(DATABASE, database);
+        bindings.put(EVENT, eventName(event));
+        bindings.put(NODE, current != null ? current : previous);
+        bindings.put(PREVIOUS, previous);
+        bindings.put(CURRENT, current);
+        bindings.put(CONTEXT, getContext());
+
+        try {
+            return !Boolean.FALSE.equals(script.eval(context));
+        } catch (ScriptException e) {
+            throw new DeliberateTransactionRollbackException("Script trigger " + getPropertyName() + " failed on " + eventName(event) + ": " + e.getMessage(), e);
+        } finally {
+            bindings.remove(NODE);
+            bindings.remove(PREVIOUS);
+            bindings.remove(CURRENT);
+            bindings.remove(CONTEXT);
+            contexts.offer(context);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.tooling.GlobalGraphOperations;
+
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache of compiled {@link ScriptTrigger}s, one per trigger node. A trigger is only recompiled when its definition on
+ * the trigger node changes. Triggers to call are published as an immutable {@link Snapshot}, replaced when triggers are
+ * added or removed.
+ */
+final class ScriptTriggerCache {
+
+    private static final Logger LOGGER = Logger.getLogger(ScriptTriggerCache.class.getName());
+
+    private final GraphDatabaseService database;
+    private final Label triggerNodeLabel;
+    private final ScriptEngineManager engineManager = new ScriptEngineManager();
+    private final Map<Long, ScriptTrigger> triggers = new HashMap<>();
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    ScriptTriggerCache(GraphDatabaseService database, Label triggerNodeLabel) {
+        this.database = database;
+        this.triggerNodeLabel = triggerNodeLabel;
+    }
+
+    Label getTriggerNodeLabel() {
+        return triggerNodeLabel;
+    }
+
+    /**
+     * Compile triggers from all trigger nodes in the database. Trigger nodes with invalid scripts are skipped.
+     */
+    void load() {
+        Map<Long, ScriptTrigger> loaded = new HashMap<>();
+
+        try (Transaction tx = database.beginTx()) {
+            for (Node node : GlobalGraphOperations.at(database).getAllNodesWithLabel(triggerNodeLabel)) {
+                try {
+                    loaded.put(node.getId(), compile(node));
+                } catch (ScriptException | IllegalArgumentException e) {
+                    LOGGER.log(Level.WARNING, "TRIGGER MODULE: skipping invalid script trigger on node " + node.getId(), e);
+                }
+            }
+            tx.success();
+        }
+
+        apply(loaded, Collections.<Long>emptySet());
+    }
+
+    /**
+     * Get a trigger for a trigger node, compiling it only if it isn't cached or its definition has changed.
+     * The trigger is not published until {@link #apply(Map, Collection)} is called.
+     *
+     * @param triggerNode node defining the trigger.
+     * @return compiled trigger.
+     * @throws ScriptException          if a script does not compile.
+     * @throws IllegalArgumentException if there's no compiling engine for the trigger's language.
+     */
+    synchronized ScriptTrigger compile(Node triggerNode) throws ScriptException {
+        String language = (String) triggerNode.getProperty(TriggerProperties.SCRIPT_LANGUAGE, TriggerProperties.DEFAULT_SCRIPT_LANGUAGE);
+        String onCreate = (String) triggerNode.getProperty(TriggerProperties.ON_CREATE_SCRIPT, null);
+        String onModify = (String) triggerNode.getProperty(TriggerProperties.ON_MODIFY_SCRIPT, null);
+        String onDelete = (String) triggerNode.getProperty(TriggerProperties.ON_DELETE_SCRIPT, null);
+        String[] whenPropertiesChange = (String[]) triggerNode.getProperty(TriggerProperties.WHEN_PROPERTIES_CHANGE, new String[0]);
+
+        ScriptTrigger cached = triggers.get(triggerNode.getId());
+        if (cached != null && cached.getDefinition().equals(ScriptTrigger.definition(language, onCreate, onModify, onDelete, whenPropertiesChange))) {
+            return cached;
+        }
+
+        ScriptEngine engine = engineManager.getEngineByName(language);
+        if (engine == null) {
+            throw new IllegalArgumentException("No script engine for language " + language);
+        }
+
+        int version = cached == null ? 1 : cached.getVersion() + 1;
+        return new ScriptTrigger(triggerNode, version, language, engine, database, onCreate, onModify, onDelete, whenPropertiesChange);
+    }
+
+    /**
+     * Publish compiled triggers and remove the ones whose trigger nodes are gone.
+     *
+     * @param compiled       triggers by trigger node ID.
+     * @param removedNodeIds IDs of trigger nodes no longer defining a trigger.
+     * @return true iff a new snapshot has been published.
+     */
+    synchronized boolean apply(Map<Long, ScriptTrigger> compiled, Collection<Long> removedNodeIds) {
+        boolean changed = false;
+        for (Map.Entry<Long, ScriptTrigger> entry : compiled.entrySet()) {
+            changed |= triggers.put(entry.getKey(), entry.getValue()) != entry.getValue();
+        }
+        for (Long nodeId : removedNodeIds) {
+            changed |= triggers.remove(nodeId) != null;
+        }
+
+        if (!changed) {
+            return false;
+        }
+
+        List<ScriptTrigger> ordered = new ArrayList<>(triggers.values());
+        Collections.sort(ordered, new Comparator<ScriptTrigger>() {
+            @Override
+            public int compare(ScriptTrigger t1, ScriptTrigger t2) {
+                return Long.compare(t1.getTriggerNodeId(), t2.getTriggerNodeId());
+            }
+        });
+        snapshot = new Snapshot(ordered);
+        return true;
+    }
+
+    synchronized ScriptTrigger get(long triggerNodeId) {
+        return triggers.get(triggerNodeId);
+    }
+
+    boolean contains(long triggerNodeId) {
+        return snapshot.nodeIds.contains(triggerNodeId);
+    }
+
+    Snapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Immutable view of the triggers to call, ordered by trigger node ID.
+     */
+    static final class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(Collections.<ScriptTrigger>emptyList());
+
+        final List<PropertyTrigger> all;
+        final List<PropertyTrigger> onCreate = new ArrayList<>();
+        final List<PropertyTrigger> onDelete = new ArrayList<>();
+        final TriggerDispatchTable onModify;
+        private final Set<Long> nodeIds = new HashSet<>();
+
+        private Snapshot(List<ScriptTrigger> triggers) {
+            all = new ArrayList<PropertyTrigger>(triggers);
+            List<PropertyTrigger> onModifyTriggers = new ArrayList<>();
+            for (ScriptTrigger trigger : triggers) {
+                nodeIds.add(trigger.getTriggerNodeId());
+                if (trigger.isHandlingEvent(PropertyTrigger.CREATE)) {
+                    onCreate.add(trigger);
+                }
+                if (trigger.isHandlingEvent(PropertyTrigger.MODIFY)) {
+                    onModifyTriggers.add(trigger);
+                }
+                if (trigger.isHandlingEvent(PropertyTrigger.DELETE)) {
+                    onDelete.add(trigger);
+                }
+            }
+            onModify = new TriggerDispatchTable(onModifyTriggers);
+        }
+
+        boolean isEmpty() {
+            return nodeIds.isEmpty();
+        }
+    }
+}
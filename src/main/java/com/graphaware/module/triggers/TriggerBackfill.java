@@ -0,0 +1,419 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.triggers;
+
+import com.graphaware.runtime.config.RuntimeConfiguration;
+import org.neo4j.graphdb.DynamicLabel;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.GraphDatabaseAPI;
+import org.neo4j.kernel.IdGeneratorFactory;
+import org.neo4j.kernel.IdType;
+import org.neo4j.tooling.GlobalGraphOperations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Applies backfilling triggers (see {@link PropertyTrigger#backfillsExistingNodes()}) to the existing nodes, in the
+ * background once the module has started, on a pool of worker threads. Transactions running meanwhile are handled by
+ * the triggers as usual.
+ * <p/>
+ * Triggers without a label filter get the node id space split into partitions of {@link #PARTITION_SIZE} ids; triggers
+ * with a label filter get the nodes found by label scans, grouped by the same partitions (label scans return nodes in
+ * id order). Each partition is handled by one worker in transactions of {@link #BATCH_SIZE} nodes.
+ * <p/>
+ * Progress is checkpointed per trigger on a framework-internal node: the last transaction of a partition marks it done,
+ * and the trigger is marked complete once all partitions are. An interrupted backfill resumes with the partitions not
+ * yet done; as a partition may then be handled again in part, {@link PropertyTrigger#OnBackfill(Node)} must be
+ * idempotent. Completed triggers are not backfilled again, unless their {@link PropertyTrigger#getBackfillDefinition()}
+ * has changed since.
+ */
+final class TriggerBackfill {
+
+    private static final Logger LOGGER = Logger.getLogger(TriggerBackfill.class.getName());
+
+    static final Label CHECKPOINT_LABEL = DynamicLabel.label(RuntimeConfiguration.GA_PREFIX + "TriggerBackfill");
+    static final String TRIGGER = "trigger";
+    static final String COMPLETE = "complete";
+    static final String DEFINITION = "definition";
+    static final String DONE = "done"; // Partitions done, per scan: "done" for all nodes, "done:<label>" for label scans
+
+    static final int PARTITION_SIZE = 10000;
+    static final int BATCH_SIZE = 1000;
+
+    private final GraphDatabaseService database;
+    private final int threads;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    private Thread coordinator;
+    private volatile ExecutorService workers;
+    private volatile boolean stopped;
+
+    TriggerBackfill(GraphDatabaseService database, int threads) {
+        this.database = database;
+        this.threads = threads;
+    }
+
+    /**
+     * Start backfilling the triggers that haven't been completely backfilled yet, one after the other, on a background
+     * thread. Must be called after the runtime has started (or while it is starting), as transactions of other threads
+     * wait for it to be started.
+     *
+     * @param triggers registered triggers; the ones not backfilling are ignored.
+     */
+    void start(Collection<PropertyTrigger> triggers) {
+        final List<PropertyTrigger> backfilling = new ArrayList<>();
+        for (PropertyTrigger trigger : triggers) {
+            if (trigger.isBackfilling()) {
+                backfilling.add(trigger);
+            }
+        }
+        if (backfilling.isEmpty()) {
+            finished.countDown();
+            return;
+        }
+
+        coordinator = new Thread("TriggerModule-backfill") {
+            @Override
+            public void run() {
+                try {
+                    TriggerBackfill.this.run(backfilling);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.SEVERE, "TRIGGER MODULE: backfilling failed, it will be resumed on next start", e);
+                } finally {
+                    finished.countDown();
+                }
+            }
+        };
+        coordinator.setDaemon(true);
+        coordinator.start();
+    }
+
+    /**
+     * Wait for the backfill to finish, successfully or not.
+     *
+     * @return true iff it has finished within the timeout.
+     */
+    boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+
+    /**
+     * Stop backfilling; progress is kept in the checkpoints.
+     */
+    void stop() {
+        stopped = true;
+        if (coordinator != null) {
+            coordinator.interrupt();
+        }
+        ExecutorService workers = this.workers;
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Forget the backfill progress of the triggers whose definition has changed since it was checkpointed, so that
+     * they are backfilled from scratch on next start. To be called within a transaction.
+     *
+     * @param triggers registered triggers; the ones not backfilling are ignored.
+     */
+    static void reset(GraphDatabaseService database, Collection<PropertyTrigger> triggers) {
+        for (PropertyTrigger trigger : triggers) {
+            if (trigger.isBackfilling()) {
+                Node checkpoint = database.findNode(CHECKPOINT_LABEL, TRIGGER, trigger.getBackfillName());
+                if (checkpoint != null && isStale(checkpoint, trigger)) {
+                    checkpoint.delete();
+                }
+            }
+        }
+    }
+
+    private static boolean isStale(Node checkpoint, PropertyTrigger trigger) {
+        return !trigger.getBackfillDefinition().equals(checkpoint.getProperty(DEFINITION, null));
+    }
+
+    private void run(List<PropertyTrigger> triggers) {
+        workers = Executors.newFixedThreadPool(threads, new BackfillThreadFactory());
+        try {
+            for (PropertyTrigger trigger : triggers) {
+                if (stopped) {
+                    return;
+                }
+                Node checkpoint = checkpoint(trigger);
+                if (checkpoint == null) {
+                    continue;
+                }
+
+                LOGGER.log(Level.INFO, "TRIGGER MODULE: backfilling {0} on {1} threads", new Object[]{trigger.getBackfillName(), threads});
+                long start = System.currentTimeMillis();
+                if (new Run(trigger, checkpoint).execute()) {
+                    complete(checkpoint);
+                    LOGGER.log(Level.INFO, "TRIGGER MODULE: backfilled {0} in {1} ms", new Object[]{trigger.getBackfillName(), System.currentTimeMillis() - start});
+                }
+            }
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * @return the trigger's checkpoint node, created if needed, null if the trigger has been backfilled.
+     */
+    private Node checkpoint(PropertyTrigger trigger) {
+        try (Transaction tx = database.beginTx()) {
+            Node checkpoint = database.findNode(CHECKPOINT_LABEL, TRIGGER, trigger.getBackfillName());
+            if (checkpoint == null) {
+                checkpoint = database.createNode(CHECKPOINT_LABEL);
+                checkpoint.setProperty(TRIGGER, trigger.getBackfillName());
+                checkpoint.setProperty(DEFINITION, trigger.getBackfillDefinition());
+            }
+            tx.success();
+            return (Boolean) checkpoint.getProperty(COMPLETE, false) ? null : checkpoint;
+        }
+    }
+
+    private void complete(Node checkpoint) {
+        try (Transaction tx = database.beginTx()) {
+            checkpoint.setProperty(COMPLETE, true);
+            tx.success();
+        }
+    }
+
+    private long highestNodeId() {
+        return ((GraphDatabaseAPI) database).getDependencyResolver().resolveDependency(IdGeneratorFactory.class).get(IdType.NODE).getHighId();
+    }
+
+    /**
+     * The backfill of one trigger.
+     */
+    private final class Run {
+
+        private final PropertyTrigger trigger;
+        private final Node checkpoint;
+        private final List<Future<?>> partitions = new ArrayList<>();
+        // Bounds the partitions read ahead of the workers
+        private final Semaphore pending = new Semaphore(threads * 2);
+        private volatile boolean failed;
+
+        Run(PropertyTrigger trigger, Node checkpoint) {
+            this.trigger = trigger;
+            this.checkpoint = checkpoint;
+        }
+
+        /**
+         * @return true iff all partitions are done.
+         */
+        boolean execute() {
+            try {
+                if (trigger.hasLabelFilter()) {
+                    scanLabels();
+                } else {
+                    scanIds();
+                }
+            } catch (InterruptedException | RejectedExecutionException e) {
+                failed = true;
+            }
+
+            for (Future<?> partition : partitions) {
+                // Partitions never started after stop() would never complete
+                if (stopped) {
+                    break;
+                }
+                try {
+                    partition.get();
+                } catch (InterruptedException | CancellationException e) {
+                    failed = true;
+                    break;
+                } catch (ExecutionException e) {
+                    LOGGER.log(Level.SEVERE, "TRIGGER MODULE: backfilling " + trigger.getBackfillName() + " failed, it will be resumed on next start", e.getCause());
+                    failed = true;
+                }
+            }
+            return !failed && !stopped;
+        }
+
+        private void scanIds() throws InterruptedException {
+            long highestId = highestNodeId();
+            boolean[] done = done(DONE);
+            for (int partition = 0; (long) partition * PARTITION_SIZE < highestId && !failed; partition++) {
+                if (isDone(done, partition)) {
+                    continue;
+                }
+                long from = (long) partition * PARTITION_SIZE;
+                submit(DONE, partition, ids(from, Math.min(from + PARTITION_SIZE, highestId)), Collections.<Label>emptyList());
+            }
+        }
+
+        // One scan per label; nodes carrying several of the labels are only handled by the scan of the first one
+        private void scanLabels() throws InterruptedException {
+            List<Label> labels = new ArrayList<>();
+            for (String labelName : trigger._withLabels) {
+                labels.add(DynamicLabel.label(labelName));
+            }
+            for (int i = 0; i < labels.size() && !failed; i++) {
+                Label label = labels.get(i);
+                List<Label> visited = labels.subList(0, i);
+                String scan = DONE + ":" + label.name();
+                boolean[] done = done(scan);
+
+                try (Transaction tx = database.beginTx()) {
+                    int current = -1;
+                    List<Long> nodeIds = new ArrayList<>();
+                    for (Node node : GlobalGraphOperations.at(database).getAllNodesWithLabel(label)) {
+                        int partition = (int) (node.getId() / PARTITION_SIZE);
+                        if (partition != current) {
+                            if (!nodeIds.isEmpty()) {
+                                submit(scan, current, toArray(nodeIds), visited);
+                                nodeIds = new ArrayList<>();
+                            }
+                            if (failed) {
+                                break;
+                            }
+                            current = partition;
+                        }
+                        if (!isDone(done, partition)) {
+                            nodeIds.add(node.getId());
+                        }
+                    }
+                    if (!nodeIds.isEmpty() && !failed) {
+                        submit(scan, current, toArray(nodeIds), visited);
+                    }
+                    tx.success();
+                }
+            }
+        }
+
+        private void submit(final String scan, final int partition, final long[] nodeIds, final List<Label> visited) throws InterruptedException {
+            pending.acquire();
+            partitions.add(workers.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        backfill(scan, partition, nodeIds, visited);
+                    } catch (RuntimeException e) {
+                        failed = true;
+                        throw e;
+                    } finally {
+                        pending.release();
+                    }
+                }
+            }));
+        }
+
+        private void backfill(String scan, int partition, long[] nodeIds, List<Label> visited) {
+            for (int from = 0; from < nodeIds.length && !failed && !stopped; from += BATCH_SIZE) {
+                int to = Math.min(from + BATCH_SIZE, nodeIds.length);
+                try (Transaction tx = database.beginTx()) {
+                    for (int i = from; i < to; i++) {
+                        Node node;
+                        try {
+                            node = database.getNodeById(nodeIds[i]);
+                        } catch (NotFoundException e) {
+                            continue;
+                        }
+                        if (!carriesAny(node, visited) && trigger.getInclusionPolicies().getNodeInclusionPolicy().include(node)) {
+                            trigger.OnBackfill(node);
+                        }
+                    }
+                    if (to == nodeIds.length) {
+                        markDone(tx, scan, partition);
+                    }
+                    tx.success();
+                }
+            }
+        }
+
+        private void markDone(Transaction tx, String scan, int partition) {
+            tx.acquireWriteLock(checkpoint);
+            boolean[] done = (boolean[]) checkpoint.getProperty(scan, new boolean[0]);
+            if (done.length <= partition) {
+                done = Arrays.copyOf(done, partition + 1);
+            }
+            done[partition] = true;
+            checkpoint.setProperty(scan, done);
+        }
+
+        private boolean[] done(String scan) {
+            try (Transaction tx = database.beginTx()) {
+                boolean[] done = (boolean[]) checkpoint.getProperty(scan, new boolean[0]);
+                tx.success();
+                return done;
+            }
+        }
+    }
+
+    private static boolean isDone(boolean[] done, int partition) {
+        return partition < done.length && done[partition];
+    }
+
+    private static boolean carriesAny(Node node, List<Label> labels) {
+        for (Label label : labels) {
+            if (node.hasLabel(label)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long[] ids(long from, long to) {
+        long[] result = new long[(int) (to - from)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = from + i;
+        }
+        return result;
+    }
+
+    private static long[] toArray(List<Long> list) {
+        long[] result = new long[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        return result;
+    }
+
+    private static final class BackfillThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "TriggerModule-backfill-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+import com.graphaware.runtime.module.DeliberateTransactionRollbackException;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time spent by {@link PropertyTrigger}s in one transaction, checked against per trigger and per transaction budgets.
+ * Budgets are checked after each invocation, as a callback can't be interrupted while it runs, and the configured
+ * {@link TriggerBudgetPolicy} is applied once one is exceeded. When the transaction ends, each trigger's
+ * {@link TriggerCircuitBreaker} learns whether it stayed within its budget. Used by the committing thread only.
+ */
+final class TriggerBudget {
+
+    private static final TriggerBudget UNLIMITED = new TriggerBudget(null, null);
+
+    private final TriggerModuleConfiguration configuration;
+    private final List<AsyncTriggerEvent> demoted;
+    private final boolean enabled;
+    private final long triggerBudgetNanos;
+    private final long transactionBudgetNanos;
+    private final Map<PropertyTrigger, Spent> spent = new IdentityHashMap<>();
+    private long totalNanos;
+    private boolean transactionExceeded;
+
+    /**
+     * @param configuration of the module.
+     * @param demoted       where to put events of demoted triggers, null if they can't be demoted.
+     */
+    private TriggerBudget(TriggerModuleConfiguration configuration, List<AsyncTriggerEvent> demoted) {
+        this.configuration = configuration;
+        this.demoted = demoted;
+        this.enabled = configuration != null;
+        this.triggerBudgetNanos = enabled ? TimeUnit.MILLISECONDS.toNanos(configuration.getTriggerBudgetMillis()) : 0;
+        this.transactionBudgetNanos = enabled ? TimeUnit.MILLISECONDS.toNanos(configuration.getTransactionBudgetMillis()) : 0;
+    }
+
+    /**
+     * Start tracking a transaction.
+     *
+     * @param configuration of the module.
+     * @param demoted       where to put events of demoted triggers, null if they can't be demoted.
+     * @param perTrigger    true iff any trigger declares its own budget.
+     * @return budget, a no-op one if there are no budgets at all.
+     */
+    static TriggerBudget start(TriggerModuleConfiguration configuration, List<AsyncTriggerEvent> demoted, boolean perTrigger) {
+        if (!perTrigger && configuration.getTriggerBudgetMillis() == 0 && configuration.getTransactionBudgetMillis() == 0) {
+            return UNLIMITED;
+        }
+        return new TriggerBudget(configuration, configuration.getBudgetPolicy() == TriggerBudgetPolicy.DEMOTE ? demoted : null);
+    }
+
+    /**
+     * Decide whether a trigger may be called. Triggers over budget or with an open circuit breaker are skipped, or
+     * demoted if possible (node events of triggers handling them after commit), which is recorded in their metrics. Triggers exempt from budgets are always called.
+     *
+     * @param trigger to call.
+     * @param event   to call it for.
+     * @param nodeId  ID of the node to call it for, -1 if the call is not about a single node (can't be demoted).
+     * @return true iff the trigger should be called now.
+     */
+    boolean admits(PropertyTrigger trigger, int event, long nodeId) {
+        if (!enabled || !trigger.isBudgeted()) {
+            return true;
+        }
+
+        Spent forTrigger = spent.get(trigger);
+        if (forTrigger == null) {
+            if (!trigger.getMetrics().getCircuitBreaker().allows()) {
+                return reject(trigger, event, nodeId);
+            }
+            forTrigger = new Spent();
+            spent.put(trigger, forTrigger);
+        }
+
+        if (forTrigger.exceeded || transactionExceeded) {
+            return reject(trigger, event, nodeId);
+        }
+        return true;
+    }
+
+    private boolean reject(PropertyTrigger trigger, int event, long nodeId) {
+        if (demoted != null && nodeId >= 0 && trigger.isHandlingCommitted()) {
+            demoted.add(new AsyncTriggerEvent(trigger, event, nodeId));
+            trigger.getMetrics().recordDemoted(event);
+        } else {
+            trigger.getMetrics().recordSkipped(event);
+        }
+        return false;
+    }
+
+    /**
+     * Charge a trigger for an invocation that has just returned.
+     *
+     * @param trigger invoked trigger.
+     * @param event   it was invoked for.
+     * @param start   {@link System#nanoTime()} before the invocation.
+     * @throws DeliberateTransactionRollbackException if a budget has been exceeded and the policy is to veto.
+     */
+    void charge(PropertyTrigger trigger, int event, long start) {
+        if (!enabled || !trigger.isBudgeted()) {
+            return;
+        }
+
+        long nanos = System.nanoTime() - start;
+        Spent forTrigger = spent.get(trigger);
+        forTrigger.nanos += nanos;
+        totalNanos += nanos;
+
+        long budget = trigger.getTimeBudgetMillis() >= 0 ? TimeUnit.MILLISECONDS.toNanos(trigger.getTimeBudgetMillis()) : triggerBudgetNanos;
+        boolean overTrigger = budget > 0 && forTrigger.nanos > budget;
+        boolean overTransaction = transactionBudgetNanos > 0 && totalNanos > transactionBudgetNanos;
+        if (!overTrigger && !overTransaction) {
+            return;
+        }
+
+        forTrigger.exceeded = true;
+        transactionExceeded |= overTransaction;
+        trigger.getMetrics().recordOverBudget(event);
+
+        if (configuration.getBudgetPolicy() == TriggerBudgetPolicy.VETO) {
+            throw new DeliberateTransactionRollbackException("Trigger " + trigger.getPropertyName() + " exceeded the "
+                    + (overTrigger ? "trigger" : "transaction") + " time budget on " + PropertyTrigger.eventName(event));
+        }
+    }
+
+    /**
+     * End the transaction, updating the circuit breakers of all triggers called in it.
+     */
+    void finish() {
+        if (!enabled) {
+            return;
+        }
+        for (Map.Entry<PropertyTrigger, Spent> entry : spent.entrySet()) {
+            entry.getKey().getMetrics().getCircuitBreaker().record(entry.getValue().exceeded,
+                    configuration.getCircuitBreakerThreshold(), configuration.getCircuitBreakerOpenMillis());
+        }
+    }
+
+    private static final class Spent {
+        private long nanos;
+        private boolean exceeded;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+/**
+ * What to do with a {@link PropertyTrigger} that has exceeded its time budget, or with all triggers once the
+ * transaction budget has been exceeded (see {@link TriggerModuleConfiguration#withTimeBudgets(long, long, TriggerBudgetPolicy)}).
+ * The same applies to triggers disabled by their circuit breaker, except that those never veto.
+ */
+public enum TriggerBudgetPolicy {
+
+    /**
+     * Roll the transaction back.
+     */
+    VETO,
+
+    /**
+     * Don't call the trigger for the rest of the transaction.
+     */
+    SKIP,
+
+    /**
+     * Call the trigger's {@link PropertyTrigger#OnCommitted(int, long)} after commit, on the asynchronous workers, for
+     * the node events of the rest of the transaction. Other events, and all events of triggers that don't override
+     * <code>OnCommitted</code> (which would do nothing), are skipped.
+     */
+    DEMOTE
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.triggers;
+
+import org.neo4j.graphdb.Node;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Property changes made by triggers to the nodes they are called for, in one transaction. Before a trigger declaring
+ * the properties it modifies (see {@link PropertyTrigger#modifiesProperties(String...)}) is called for a node, the
+ * values of those properties are read; afterwards, the ones that differ are recorded, so that only the properties
+ * triggers actually changed are dispatched again.
+ */
+final class TriggerCascade {
+
+    private Map<Node, Map<String, Object>> pending = new LinkedHashMap<>();
+    // State of changed nodes before the transaction, when known
+    private final Map<Node, Node> previousNodes = new HashMap<>();
+
+    /**
+     * @param trigger about to be called.
+     * @param node    the trigger is called for.
+     * @return values of the properties the trigger modifies, null if it doesn't declare any.
+     */
+    Object[] before(PropertyTrigger trigger, Node node) {
+        if (!trigger.isModifyingProperties()) {
+            return null;
+        }
+        Object[] values = new Object[trigger._modifiesProperties.size()];
+        int i = 0;
+        for (String propName : trigger._modifiesProperties) {
+            values[i++] = node.getProperty(propName, null);
+        }
+        return values;
+    }
+
+    /**
+     * Record the properties a trigger changed.
+     *
+     * @param trigger  that has been called.
+     * @param previous state of the node before the transaction.
+     * @param node     the trigger has been called for.
+     * @param before   values returned by {@link #before(PropertyTrigger, Node)}.
+     */
+    void after(PropertyTrigger trigger, Node previous, Node node, Object[] before) {
+        if (before == null) {
+            return;
+        }
+        int i = 0;
+        for (String propName : trigger._modifiesProperties) {
+            Object value = before[i++];
+            if (!Objects.deepEquals(value, node.getProperty(propName, null))) {
+                Map<String, Object> previousValues = pending.get(node);
+                if (previousValues == null) {
+                    previousValues = new HashMap<>();
+                    pending.put(node, previousValues);
+                }
+                if (!previousNodes.containsKey(node)) {
+                    previousNodes.put(node, previous);
+                }
+                // The value before the first change wins, so that changes reverted within a round cancel out
+                if (!previousValues.containsKey(propName)) {
+                    previousValues.put(propName, value);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param node changed by triggers.
+     * @return state of the node before the transaction.
+     */
+    Node previous(Node node) {
+        Node previous = previousNodes.get(node);
+        return previous != null ? previous : node;
+    }
+
+    /**
+     * @return true iff there are changes not yet dispatched.
+     */
+    boolean hasChanges() {
+        return !pending.isEmpty();
+    }
+
+    /**
+     * @return changed nodes with the previous values of the changed properties, recorded since the last call.
+     */
+    Map<Node, Map<String, Object>> drain() {
+        if (pending.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<Node, Map<String, Object>> result = pending;
+        pending = new LinkedHashMap<>();
+        return result;
+    }
+}
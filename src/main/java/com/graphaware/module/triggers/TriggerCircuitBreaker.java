@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Circuit breaker of a single {@link PropertyTrigger}, part of its {@link TriggerMetrics}. It opens (disabling the
+ * trigger) when the trigger has exceeded its time budget in a number of consecutive transactions, and lets one
+ * transaction through again once it has been open for a while (half-open); others are still rejected until that one has
+ * finished. If it exceeds the budget as well, the breaker opens again straight away, otherwise it closes.
+ */
+public final class TriggerCircuitBreaker {
+
+    private final AtomicInteger consecutive = new AtomicInteger();
+    private final AtomicLong trips = new AtomicLong();
+    private volatile boolean open = false;
+    private volatile long openUntil;
+    private final AtomicBoolean probing = new AtomicBoolean();
+
+    /**
+     * Decide whether a transaction may call the trigger. Once the breaker has been open long enough, only the first
+     * transaction asking is let through, until its outcome is {@link #record}ed.
+     *
+     * @return true iff the trigger may be called, i.e. the breaker is closed or this is the transaction probing it.
+     */
+    boolean allows() {
+        if (!open) {
+            return true;
+        }
+        return System.nanoTime() - openUntil >= 0 && probing.compareAndSet(false, true);
+    }
+
+    /**
+     * Record the outcome of a transaction in which the trigger has been called.
+     *
+     * @param exceeded   true iff the trigger exceeded its budget.
+     * @param threshold  consecutive transactions over budget opening the breaker, 0 to never open it.
+     * @param openMillis how long the breaker stays open.
+     */
+    void record(boolean exceeded, int threshold, long openMillis) {
+        if (!exceeded) {
+            consecutive.set(0);
+            open = false;
+            probing.set(false);
+            return;
+        }
+        if (threshold > 0 && consecutive.incrementAndGet() >= threshold) {
+            consecutive.set(threshold - 1);
+            openUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(openMillis);
+            open = true;
+            probing.set(false);
+            trips.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return true iff the trigger is currently disabled, i.e. the breaker is open and no transaction may probe it.
+     */
+    public boolean isOpen() {
+        return open && (System.nanoTime() - openUntil < 0 || probing.get());
+    }
+
+    /**
+     * @return number of times the breaker has opened.
+     */
+    public long getTrips() {
+        return trips.get();
+    }
+
+    /**
+     * Close the breaker and forget past transactions.
+     */
+    public void reset() {
+        consecutive.set(0);
+        open = false;
+        probing.set(false);
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+import com.graphaware.runtime.module.DeliberateTransactionRollbackException;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+import org.neo4j.graphdb.index.Index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * State shared by all triggers called for one transaction: a memoization cache, lookups of labels, neighbours, nodes and
+ * indexes, and batches of writes flushed once all triggers have been called. Created by the {@link TriggerModule}
+ * before commit and discarded as soon as the module is done with the transaction; triggers get it through
+ * {@link PropertyTrigger#getContext()}, script triggers as the {@link ScriptTrigger#CONTEXT} variable.
+ * <p/>
+ * Reads made for every entity of a large transaction (configuration nodes, neighbours) are thus made once per
+ * transaction. Cached values are not invalidated by writes made in the transaction; triggers caching something they
+ * also change should {@link #forget(Loader, Object)} it.
+ * <p/>
+ * Not thread-safe, and only available on the thread committing the transaction: read-only validators and asynchronous
+ * triggers don't get one.
+ */
+public final class TriggerContext {
+
+    private static final ThreadLocal<TriggerContext> CURRENT = new ThreadLocal<>();
+    private static final int MAX_FLUSH_ROUNDS = 32;
+
+    /**
+     * Loads values memoized by {@link #memoize(Loader, Object)}. Values are cached per loader instance, so loaders are
+     * best kept in constants or fields of the trigger.
+     *
+     * @param <K> type of the key.
+     * @param <V> type of the value.
+     */
+    public interface Loader<K, V> {
+
+        /**
+         * @param key to load the value of.
+         * @return value, can be null (which is cached too).
+         */
+        V load(K key);
+    }
+
+    /**
+     * Writes a batch collected through {@link #batch(String, BatchWriter)}.
+     *
+     * @param <T> type of the items.
+     */
+    public interface BatchWriter<T> {
+
+        /**
+         * @param items collected in the transaction, in the order they were added; never empty.
+         */
+        void write(List<T> items);
+    }
+
+    private final GraphDatabaseService database;
+
+    private final Map<Loader<?, ?>, Map<Object, Object>> memoized = new HashMap<>();
+    private final Map<Long, Set<String>> labels = new HashMap<>();
+    private final Map<List<Object>, List<Node>> neighbours = new HashMap<>();
+    private final Map<List<Object>, Node> nodes = new HashMap<>();
+    private final Map<String, Index<Node>> indexes = new HashMap<>();
+    private final Map<String, Batch<?>> batches = new LinkedHashMap<>();
+
+    TriggerContext(GraphDatabaseService database) {
+        this.database = database;
+    }
+
+    /**
+     * @return context of the transaction being committed on this thread, null if none is.
+     */
+    static TriggerContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Make this the context of the transaction being committed on this thread.
+     */
+    void open() {
+        CURRENT.set(this);
+    }
+
+    /**
+     * Discard this context; batches that haven't been flushed are dropped.
+     */
+    void close() {
+        CURRENT.remove();
+        memoized.clear();
+        labels.clear();
+        neighbours.clear();
+        nodes.clear();
+        indexes.clear();
+        batches.clear();
+    }
+
+    /**
+     * @return database of the transaction.
+     */
+    public GraphDatabaseService getDatabase() {
+        return database;
+    }
+
+    /**
+     * Get a value, loading it the first time it is asked for in the transaction.
+     *
+     * @param loader to load the value with.
+     * @param key    of the value, must implement equals and hashCode.
+     * @return value.
+     */
+    @SuppressWarnings("unchecked")
+    public <K, V> V memoize(Loader<K, V> loader, K key) {
+        Map<Object, Object> values = memoized.get(loader);
+        if (values == null) {
+            values = new HashMap<>();
+            memoized.put(loader, values);
+        }
+        if (values.containsKey(key)) {
+            return (V) values.get(key);
+        }
+        V value = loader.load(key);
+        values.put(key, value);
+        return value;
+    }
+
+    /**
+     * Drop a memoized value, so that it is loaded again the next time it is asked for.
+     *
+     * @param loader the value has been loaded with.
+     * @param key    of the value.
+     */
+    public void forget(Loader<?, ?> loader, Object key) {
+        Map<Object, Object> values = memoized.get(loader);
+        if (values != null) {
+            values.remove(key);
+        }
+    }
+
+    /**
+     * @param node to get the labels of.
+     * @return names of the labels of the node when first asked for in the transaction.
+     */
+    public Set<String> labels(Node node) {
+        Set<String> result = labels.get(node.getId());
+        if (result == null) {
+            result = new HashSet<>();
+            for (Label label : node.getLabels()) {
+                result.add(label.name());
+            }
+            result = Collections.unmodifiableSet(result);
+            labels.put(node.getId(), result);
+        }
+        return result;
+    }
+
+    /**
+     * @param node      to get the neighbours of.
+     * @param type      of the relationships to follow.
+     * @param direction of the relationships to follow.
+     * @return nodes at the other end of the relationships when first asked for in the transaction.
+     */
+    public List<Node> neighbours(Node node, RelationshipType type, Direction direction) {
+        List<Object> key = Arrays.<Object>asList(node.getId(), type.name(), direction);
+        List<Node> result = neighbours.get(key);
+        if (result == null) {
+            result = new ArrayList<>();
+            for (Relationship relationship : node.getRelationships(type, direction)) {
+                result.add(relationship.getOtherNode(node));
+            }
+            result = Collections.unmodifiableList(result);
+            neighbours.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Find a node, typically holding configuration, by a label and a property value.
+     *
+     * @param label of the node.
+     * @param key   of the property.
+     * @param value of the property; not an array.
+     * @return node when first asked for in the transaction, null if there is none.
+     * @throws org.neo4j.graphdb.MultipleFoundException if several nodes match.
+     */
+    public Node findNode(Label label, String key, Object value) {
+        List<Object> lookup = Arrays.asList(label.name(), key, value);
+        if (nodes.containsKey(lookup)) {
+            return nodes.get(lookup);
+        }
+        Node result = database.findNode(label, key, value);
+        nodes.put(lookup, result);
+        return result;
+    }
+
+    /**
+     * @param name of a legacy node index.
+     * @return the index, resolved once per transaction.
+     */
+    public Index<Node> nodeIndex(String name) {
+        Index<Node> result = indexes.get(name);
+        if (result == null) {
+            result = database.index().forNodes(name);
+            indexes.put(name, result);
+        }
+        return result;
+    }
+
+    /**
+     * Get a list to collect writes in, written once all triggers have been called for the transaction (before it
+     * commits). Writes made by the writer are not dispatched to triggers.
+     *
+     * @param name   of the batch, shared by all triggers using it.
+     * @param writer writing the batch; only the one given first is used.
+     * @return items of the batch collected so far, to add to.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> batch(String name, BatchWriter<T> writer) {
+        Batch<T> batch = (Batch<T>) batches.get(name);
+        if (batch == null) {
+            batch = new Batch<>(writer);
+            batches.put(name, batch);
+        }
+        return batch.items;
+    }
+
+    /**
+     * Write the collected batches, in the order they have been created, until no writer adds to any batch.
+     *
+     * @throws DeliberateTransactionRollbackException if writers keep adding to batches.
+     */
+    void flush() {
+        for (int round = 0; round < MAX_FLUSH_ROUNDS; round++) {
+            boolean written = false;
+            for (Batch<?> batch : new ArrayList<>(batches.values())) {
+                written |= batch.flush();
+            }
+            if (!written) {
+                return;
+            }
+        }
+        throw new DeliberateTransactionRollbackException("Trigger batch writers kept adding to batches after " + MAX_FLUSH_ROUNDS + " rounds");
+    }
+
+    private static final class Batch<T> {
+
+        private final BatchWriter<T> writer;
+        private final List<T> items = new ArrayList<>();
+
+        private Batch(BatchWriter<T> writer) {
+            this.writer = writer;
+        }
+
+        private boolean flush() {
+            if (items.isEmpty()) {
+                return false;
+            }
+            List<T> written = new ArrayList<>(items);
+            items.clear();
+            writer.write(written);
+            return true;
+        }
+    }
+}
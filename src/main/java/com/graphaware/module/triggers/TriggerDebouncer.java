@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces the events of debounced {@link PropertyTrigger}s (see {@link PropertyTrigger#debouncesFor(long)}) per
+ * trigger and node. The first event of a node opens a window, in which later events are merged into it; when the window
+ * closes, the net event is handed to the {@link AsyncTriggerExecutor}. Merging takes a lock on the node's pending event
+ * only, and windows are closed by a single timer thread waiting on a {@link DelayQueue}, so committing transactions
+ * never wait for each other here.
+ */
+final class TriggerDebouncer {
+
+    private static final int NONE = -1; // Created and deleted in the window, nothing to handle
+    private static final long POLL_MILLIS = 100;
+
+    private final AsyncTriggerExecutor executor;
+    private final ConcurrentMap<Key, Pending> pending = new ConcurrentHashMap<>();
+    private final DelayQueue<Pending> windows = new DelayQueue<>();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final Thread timer;
+
+    private volatile boolean running = true;
+
+    TriggerDebouncer(AsyncTriggerExecutor executor) {
+        this.executor = executor;
+        this.timer = new Thread("TriggerModule-debounce") {
+            @Override
+            public void run() {
+                while (running) {
+                    try {
+                        Pending next = windows.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                        if (next != null) {
+                            emit(next);
+                        }
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        };
+        timer.setDaemon(true);
+        timer.start();
+    }
+
+    /**
+     * Merge an event into the pending event of its trigger and node, opening a window if there is none.
+     *
+     * @param event of a debounced trigger.
+     * @return false iff the debouncer has been shut down; the event is then to be executed right away.
+     */
+    boolean submit(AsyncTriggerEvent event) {
+        if (!running) {
+            return false;
+        }
+        Key key = new Key(event.trigger, event.nodeId);
+        while (true) {
+            Pending existing = pending.get(key);
+            if (existing == null) {
+                Pending created = new Pending(key, event, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(event.trigger.getDebounceMillis()));
+                if (pending.putIfAbsent(key, created) == null) {
+                    windows.add(created);
+                    // Shut down meanwhile, the window may have been missed by the final hand-over
+                    if (!running) {
+                        emit(created);
+                    }
+                    return true;
+                }
+                continue;
+            }
+            synchronized (existing) {
+                // A window being closed takes no more events, a new one is opened
+                if (!existing.closed) {
+                    existing.merge(event);
+                    coalesced.incrementAndGet();
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Stop taking events, close all windows now and hand their events over. The executor must still be running.
+     */
+    void shutdown() {
+        running = false;
+        timer.interrupt();
+        try {
+            timer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Pending> remaining = new ArrayList<>();
+        windows.drainTo(remaining);
+        remaining.addAll(pending.values());
+        for (Pending next : remaining) {
+            emit(next);
+        }
+    }
+
+    /**
+     * @return number of nodes whose window is open.
+     */
+    int getPending() {
+        return pending.size();
+    }
+
+    /**
+     * @return number of events merged into earlier events of their node.
+     */
+    long getCoalesced() {
+        return coalesced.get();
+    }
+
+    private void emit(Pending window) {
+        if (!pending.remove(window.key, window)) {
+            return;
+        }
+        AsyncTriggerEvent event;
+        synchronized (window) {
+            window.closed = true;
+            event = window.event();
+        }
+        if (event != null) {
+            executor.execute(event);
+        }
+    }
+
+    private static final class Key {
+
+        private final PropertyTrigger trigger;
+        private final long nodeId;
+
+        private Key(PropertyTrigger trigger, long nodeId) {
+            this.trigger = trigger;
+            this.nodeId = nodeId;
+        }
+
+        // Triggers are compared by identity, as triggers with equal inclusion policies are equal
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key that = (Key) o;
+            return trigger == that.trigger && nodeId == that.nodeId;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(trigger) + (int) (nodeId ^ (nodeId >>> 32));
+        }
+    }
+
+    private static final class Pending implements Delayed {
+
+        private final Key key;
+        private final long dueNanos;
+        private boolean closed;
+
+        private int event;
+        private Map<String, Object> previous;
+        private Map<String, Object> current;
+
+        private Pending(Key key, AsyncTriggerEvent first, long dueNanos) {
+            this.key = key;
+            this.dueNanos = dueNanos;
+            reset(first);
+        }
+
+        private void reset(AsyncTriggerEvent first) {
+            event = first.event;
+            previous = new HashMap<>(first.previous);
+            current = new HashMap<>(first.current);
+        }
+
+        private void merge(AsyncTriggerEvent next) {
+            if (event == NONE || event == PropertyTrigger.DELETE) {
+                reset(next);
+                return;
+            }
+            if (next.event == PropertyTrigger.DELETE) {
+                event = event == PropertyTrigger.CREATE ? NONE : PropertyTrigger.DELETE;
+            }
+            // The first previous value of every property and its latest value
+            for (Map.Entry<String, Object> value : next.previous.entrySet()) {
+                if (!previous.containsKey(value.getKey())) {
+                    previous.put(value.getKey(), value.getValue());
+                }
+            }
+            current.putAll(next.current);
+        }
+
+        private AsyncTriggerEvent event() {
+            if (event == NONE) {
+                return null;
+            }
+            AsyncTriggerEvent result = new AsyncTriggerEvent(key.trigger, event, key.nodeId, previous, current);
+            if (event == PropertyTrigger.MODIFY && result.diff().isEmpty()) {
+                return null;
+            }
+            return result;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed o) {
+            return Long.compare(dueNanos, ((Pending) o).dueNanos);
+        }
+    }
+}
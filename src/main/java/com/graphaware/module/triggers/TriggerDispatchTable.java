@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable routing table from changed property keys and label names to the {@link PropertyTrigger}s interested in
+ * them, built once when triggers are registered. Triggers that don't declare any properties or labels to watch are
+ * wildcards and receive every change. Routed triggers are always returned in the order they were given, which is their
+ * execution order.
+ */
+final class TriggerDispatchTable {
+
+    private static final TriggerDispatchTable EMPTY = new TriggerDispatchTable(Collections.<PropertyTrigger>emptyList());
+
+    private final PropertyTrigger[] triggers;
+    private final Map<String, int[]> byProperty = new HashMap<>();
+    private final Map<String, int[]> byLabel = new HashMap<>();
+    private final int[] wildcards;
+    private final List<PropertyTrigger> wildcardTriggers;
+    private final List<PropertyTrigger> allTriggers;
+
+    TriggerDispatchTable(Collection<PropertyTrigger> triggers) {
+        this.triggers = triggers.toArray(new PropertyTrigger[triggers.size()]);
+
+        Map<String, List<Integer>> propertyPositions = new HashMap<>();
+        Map<String, List<Integer>> labelPositions = new HashMap<>();
+        List<Integer> wildcardPositions = new ArrayList<>();
+
+        for (int i = 0; i < this.triggers.length; i++) {
+            Collection<String> propNames = this.triggers[i]._whenPropertiesChange;
+            Collection<String> labelNames = this.triggers[i]._whenLabelsChange;
+            if (propNames.isEmpty() && labelNames.isEmpty()) {
+                wildcardPositions.add(i);
+                continue;
+            }
+            addPosition(propertyPositions, propNames, i);
+            addPosition(labelPositions, labelNames, i);
+        }
+
+        toArrays(propertyPositions, byProperty);
+        toArrays(labelPositions, byLabel);
+        wildcards = toArray(wildcardPositions);
+
+        List<PropertyTrigger> wildcardList = new ArrayList<>(wildcards.length);
+        for (int position : wildcards) {
+            wildcardList.add(this.triggers[position]);
+        }
+        wildcardTriggers = Collections.unmodifiableList(wildcardList);
+        allTriggers = Collections.unmodifiableList(Arrays.asList(this.triggers));
+    }
+
+    static TriggerDispatchTable empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @return true iff no trigger is registered in this table.
+     */
+    boolean isEmpty() {
+        return triggers.length == 0;
+    }
+
+    /**
+     * @return all triggers in this table, regardless of what they watch, in execution order.
+     */
+    List<PropertyTrigger> all() {
+        return allTriggers;
+    }
+
+    /**
+     * @return true iff at least one trigger only wants to be called when certain properties change.
+     */
+    boolean hasPropertyFilters() {
+        return !byProperty.isEmpty();
+    }
+
+    /**
+     * @return true iff at least one trigger only wants to be called when certain labels are added or removed.
+     */
+    boolean hasLabelFilters() {
+        return !byLabel.isEmpty();
+    }
+
+    /**
+     * Find the triggers to call for an entity whose given properties have changed.
+     *
+     * @param changedProperties keys of created, changed and deleted properties.
+     * @return triggers to call, in execution order.
+     */
+    List<PropertyTrigger> route(Collection<String> changedProperties) {
+        return route(changedProperties, Collections.<String>emptySet());
+    }
+
+    /**
+     * Find the triggers to call for a node whose given properties and labels have changed.
+     *
+     * @param changedProperties keys of created, changed and deleted properties.
+     * @param changedLabels     names of added and removed labels.
+     * @return triggers to call, in execution order.
+     */
+    List<PropertyTrigger> route(Collection<String> changedProperties, Collection<String> changedLabels) {
+        boolean byProperties = !byProperty.isEmpty() && !changedProperties.isEmpty();
+        boolean byLabels = !byLabel.isEmpty() && !changedLabels.isEmpty();
+        if (!byProperties && !byLabels) {
+            return wildcardTriggers;
+        }
+
+        BitSet selected = new BitSet(triggers.length);
+        for (int position : wildcards) {
+            selected.set(position);
+        }
+        if (byProperties) {
+            select(selected, byProperty, changedProperties);
+        }
+        if (byLabels) {
+            select(selected, byLabel, changedLabels);
+        }
+
+        List<PropertyTrigger> result = new ArrayList<>(selected.cardinality());
+        for (int i = selected.nextSetBit(0); i >= 0; i = selected.nextSetBit(i + 1)) {
+            result.add(triggers[i]);
+        }
+        return result;
+    }
+
+    private static void select(BitSet selected, Map<String, int[]> index, Collection<String> keys) {
+        for (String key : keys) {
+            int[] positions = index.get(key);
+            if (positions != null) {
+                for (int position : positions) {
+                    selected.set(position);
+                }
+            }
+        }
+    }
+
+    private static void addPosition(Map<String, List<Integer>> positions, Collection<String> keys, int position) {
+        for (String key : keys) {
+            List<Integer> forKey = positions.get(key);
+            if (forKey == null) {
+                forKey = new ArrayList<>();
+                positions.put(key, forKey);
+            }
+            if (!forKey.contains(position)) {
+                forKey.add(position);
+            }
+        }
+    }
+
+    private static void toArrays(Map<String, List<Integer>> positions, Map<String, int[]> index) {
+        for (Map.Entry<String, List<Integer>> entry : positions.entrySet()) {
+            index.put(entry.getKey(), toArray(entry.getValue()));
+        }
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * Immutable snapshot of {@link TriggerMetrics} for one trigger and event. Times are in microseconds.
+ */
+public final class TriggerEventStatistics {
+
+    private final String trigger;
+    private final String event;
+    private final long invocations;
+    private final long vetoes;
+    private final long failures;
+    private final long totalMicros;
+    private final long p50Micros;
+    private final long p95Micros;
+    private final long p99Micros;
+    private final long maxMicros;
+    private final long overBudget;
+    private final long skipped;
+    private final long demoted;
+    private final boolean circuitOpen;
+    private final long circuitTrips;
+
+    @ConstructorProperties({"trigger", "event", "invocations", "vetoes", "failures", "totalMicros", "p50Micros", "p95Micros", "p99Micros", "maxMicros", "overBudget", "skipped", "demoted", "circuitOpen", "circuitTrips"})
+    public TriggerEventStatistics(String trigger, String event, long invocations, long vetoes, long failures, long totalMicros, long p50Micros, long p95Micros, long p99Micros, long maxMicros,
+                                  long overBudget, long skipped, long demoted, boolean circuitOpen, long circuitTrips) {
+        this.trigger = trigger;
+        this.event = event;
+        this.invocations = invocations;
+        this.vetoes = vetoes;
+        this.failures = failures;
+        this.totalMicros = totalMicros;
+        this.p50Micros = p50Micros;
+        this.p95Micros = p95Micros;
+        this.p99Micros = p99Micros;
+        this.maxMicros = maxMicros;
+        this.overBudget = overBudget;
+        this.skipped = skipped;
+        this.demoted = demoted;
+        this.circuitOpen = circuitOpen;
+        this.circuitTrips = circuitTrips;
+    }
+
+    public String getTrigger() {
+        return trigger;
+    }
+
+    public String getEvent() {
+        return event;
+    }
+
+    public long getInvocations() {
+        return invocations;
+    }
+
+    public long getVetoes() {
+        return vetoes;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    public long getTotalMicros() {
+        return totalMicros;
+    }
+
+    public long getMeanMicros() {
+        return invocations == 0 ? 0 : totalMicros / invocations;
+    }
+
+    public long getP50Micros() {
+        return p50Micros;
+    }
+
+    public long getP95Micros() {
+        return p95Micros;
+    }
+
+    public long getP99Micros() {
+        return p99Micros;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+
+    /**
+     * @return number of invocations after which the trigger (or transaction) was over its time budget.
+     */
+    public long getOverBudget() {
+        return overBudget;
+    }
+
+    public long getSkipped() {
+        return skipped;
+    }
+
+    public long getDemoted() {
+        return demoted;
+    }
+
+    /**
+     * @return true iff the trigger's circuit breaker is open, i.e. the trigger is disabled (for all events).
+     */
+    public boolean isCircuitOpen() {
+        return circuitOpen;
+    }
+
+    public long getCircuitTrips() {
+        return circuitTrips;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return trigger + "/" + event + ": " + invocations + " invocations, " + vetoes + " vetoes, " + failures + " failures, "
+                + totalMicros + "us total, p50 " + p50Micros + "us, p95 " + p95Micros + "us, p99 " + p99Micros + "us, max " + maxMicros + "us, "
+                + overBudget + " over budget, " + skipped + " skipped, " + demoted + " demoted" + (circuitOpen ? ", circuit open" : "");
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+import com.graphaware.runtime.module.DeliberateTransactionRollbackException;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Records the outcome of trigger invocations in the triggers' {@link TriggerMetrics}, logs slow invocations and turns
+ * vetoes (callbacks returning <code>false</code>) into transaction rollbacks.
+ */
+final class TriggerInvocations {
+
+    private static final Logger LOGGER = Logger.getLogger(TriggerInvocations.class.getName());
+
+    private volatile long slowThresholdNanos;
+
+    TriggerInvocations(long slowThresholdMillis) {
+        setSlowThresholdMillis(slowThresholdMillis);
+    }
+
+    long getSlowThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(slowThresholdNanos);
+    }
+
+    void setSlowThresholdMillis(long millis) {
+        slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    /**
+     * Record an invocation that returned.
+     *
+     * @param trigger invoked trigger.
+     * @param event   the trigger was invoked for.
+     * @param start   {@link System#nanoTime()} before the invocation.
+     * @param result  returned by the trigger, null for callbacks returning nothing.
+     * @param subject node(s), relationship or node ID the trigger was invoked for, only used in messages.
+     * @throws DeliberateTransactionRollbackException if the trigger returned <code>false</code>.
+     */
+    void completed(PropertyTrigger trigger, int event, long start, Boolean result, Object subject) {
+        if (record(trigger, event, start, result, subject)) {
+            throw new DeliberateTransactionRollbackException("Transaction vetoed by trigger " + trigger.getPropertyName() + " on " + PropertyTrigger.eventName(event) + " of " + describe(subject));
+        }
+    }
+
+    /**
+     * Record an invocation that returned, without acting on a veto.
+     *
+     * @return true iff the trigger returned <code>false</code>, i.e. vetoed the transaction.
+     * @see #completed(PropertyTrigger, int, long, Boolean, Object)
+     */
+    boolean record(PropertyTrigger trigger, int event, long start, Boolean result, Object subject) {
+        long nanos = System.nanoTime() - start;
+        boolean vetoed = Boolean.FALSE.equals(result);
+
+        trigger.getMetrics().record(event, nanos, vetoed);
+        if (nanos > slowThresholdNanos) {
+            logSlow(trigger, event, nanos, subject);
+        }
+
+        return vetoed;
+    }
+
+    /**
+     * Record an invocation that threw an exception.
+     *
+     * @param trigger invoked trigger.
+     * @param event   the trigger was invoked for.
+     * @param start   {@link System#nanoTime()} before the invocation.
+     * @param subject node(s), relationship or node ID the trigger was invoked for, only used in messages.
+     */
+    void failed(PropertyTrigger trigger, int event, long start, Object subject) {
+        long nanos = System.nanoTime() - start;
+
+        trigger.getMetrics().recordFailure(event, nanos);
+        if (nanos > slowThresholdNanos) {
+            logSlow(trigger, event, nanos, subject);
+        }
+    }
+
+    private void logSlow(PropertyTrigger trigger, int event, long nanos, Object subject) {
+        if (LOGGER.isLoggable(Level.WARNING)) {
+            LOGGER.log(Level.WARNING, "TRIGGER MODULE: slow trigger {0} on {1} of {2} took {3} ms",
+                    new Object[]{trigger.getPropertyName(), PropertyTrigger.eventName(event), describe(subject), TimeUnit.NANOSECONDS.toMillis(nanos)});
+        }
+    }
+
+    private static String describe(Object subject) {
+        if (subject instanceof Node) {
+            return "node " + ((Node) subject).getId();
+        }
+        if (subject instanceof Relationship) {
+            return "relationship " + ((Relationship) subject).getId();
+        }
+        if (subject instanceof Collection) {
+            return ((Collection<?>) subject).size() + " nodes";
+        }
+        return "node " + subject;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Invocation metrics of a single {@link PropertyTrigger}, per event. Latencies are recorded in a histogram of power of
+ * two nanosecond buckets, so percentiles are reported as the upper bound of the bucket they fall into (never more than
+ * the maximum latency). Recording is lock-free.
+ */
+public final class TriggerMetrics {
+
+    private static final int BUCKETS = 64;
+
+    private volatile EventMetrics[] events = newEvents();
+    private final TriggerCircuitBreaker circuitBreaker = new TriggerCircuitBreaker();
+
+    /**
+     * Record a completed invocation.
+     *
+     * @param event  one of {@link PropertyTrigger#CREATE}, {@link PropertyTrigger#MODIFY}, {@link PropertyTrigger#DELETE}.
+     * @param nanos  duration of the invocation.
+     * @param vetoed true iff the trigger vetoed the transaction.
+     */
+    void record(int event, long nanos, boolean vetoed) {
+        EventMetrics metrics = events[event];
+        metrics.record(nanos);
+        if (vetoed) {
+            metrics.vetoes.incrementAndGet();
+        }
+    }
+
+    /**
+     * Record an invocation that threw an exception, rolling back the transaction (or failing an asynchronous trigger).
+     *
+     * @param event one of {@link PropertyTrigger#CREATE}, {@link PropertyTrigger#MODIFY}, {@link PropertyTrigger#DELETE}.
+     * @param nanos duration of the invocation.
+     */
+    void recordFailure(int event, long nanos) {
+        EventMetrics metrics = events[event];
+        metrics.record(nanos);
+        metrics.failures.incrementAndGet();
+    }
+
+    /**
+     * Record an invocation that took the trigger over its time budget, or the transaction over its budget.
+     *
+     * @param event one of {@link PropertyTrigger#CREATE}, {@link PropertyTrigger#MODIFY}, {@link PropertyTrigger#DELETE}.
+     */
+    void recordOverBudget(int event) {
+        events[event].overBudget.incrementAndGet();
+    }
+
+    /**
+     * Record an invocation skipped because of a time budget or an open circuit breaker.
+     *
+     * @param event one of {@link PropertyTrigger#CREATE}, {@link PropertyTrigger#MODIFY}, {@link PropertyTrigger#DELETE}.
+     */
+    void recordSkipped(int event) {
+        events[event].skipped.incrementAndGet();
+    }
+
+    /**
+     * Record an invocation demoted to asynchronous execution because of a time budget or an open circuit breaker.
+     *
+     * @param event one of {@link PropertyTrigger#CREATE}, {@link PropertyTrigger#MODIFY}, {@link PropertyTrigger#DELETE}.
+     */
+    void recordDemoted(int event) {
+        events[event].demoted.incrementAndGet();
+    }
+
+    /**
+     * @return the trigger's circuit breaker.
+     */
+    public TriggerCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @param event one of {@link PropertyTrigger#CREATE}, {@link PropertyTrigger#MODIFY}, {@link PropertyTrigger#DELETE}.
+     * @return number of invocations for the event.
+     */
+    public long getInvocations(int event) {
+        return events[event].invocations.get();
+    }
+
+    /**
+     * Take a snapshot of the metrics for an event.
+     *
+     * @param triggerName name of the trigger, included in the result.
+     * @param event       one of {@link PropertyTrigger#CREATE}, {@link PropertyTrigger#MODIFY}, {@link PropertyTrigger#DELETE}.
+     * @return statistics.
+     */
+    public TriggerEventStatistics statistics(String triggerName, int event) {
+        EventMetrics metrics = events[event];
+
+        long[] histogram = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            histogram[i] = metrics.histogram.get(i);
+            count += histogram[i];
+        }
+        long max = metrics.maxNanos.get();
+
+        return new TriggerEventStatistics(triggerName, PropertyTrigger.eventName(event),
+                metrics.invocations.get(), metrics.vetoes.get(), metrics.failures.get(),
+                metrics.totalNanos.get() / 1000,
+                percentile(histogram, count, 0.5, max) / 1000,
+                percentile(histogram, count, 0.95, max) / 1000,
+                percentile(histogram, count, 0.99, max) / 1000,
+                max / 1000,
+                metrics.overBudget.get(), metrics.skipped.get(), metrics.demoted.get(),
+                circuitBreaker.isOpen(), circuitBreaker.getTrips());
+    }
+
+    /**
+     * Reset all metrics to zero. The state of the circuit breaker is kept.
+     */
+    public void reset() {
+        events = newEvents();
+    }
+
+    private static EventMetrics[] newEvents() {
+        return new EventMetrics[]{new EventMetrics(), new EventMetrics(), new EventMetrics()};
+    }
+
+    private static long percentile(long[] histogram, long count, double percentile, long max) {
+        if (count == 0) {
+            return 0;
+        }
+
+        long threshold = (long) Math.ceil(count * percentile);
+        long cumulative = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            cumulative += histogram[i];
+            if (cumulative >= threshold) {
+                return i >= 62 ? max : Math.min(1L << (i + 1), max);
+            }
+        }
+        return max;
+    }
+
+    private static final class EventMetrics {
+
+        private final AtomicLong invocations = new AtomicLong();
+        private final AtomicLong vetoes = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong overBudget = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong demoted = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+        private void record(long nanos) {
+            invocations.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            histogram.incrementAndGet(63 - Long.numberOfLeadingZeros(Math.max(nanos, 1)));
+
+            long max = maxNanos.get();
+            while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+                max = maxNanos.get();
+            }
+        }
+    }
+}
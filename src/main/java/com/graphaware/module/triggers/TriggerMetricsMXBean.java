@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+import java.util.List;
+
+/**
+ * JMX view of the invocation metrics of the triggers of a {@link TriggerModule}.
+ */
+public interface TriggerMetricsMXBean {
+
+    /**
+     * @return statistics per trigger and handled event.
+     */
+    List<TriggerEventStatistics> getStatistics();
+
+    /**
+     * @return duration above which trigger invocations are logged as slow.
+     */
+    long getSlowInvocationThresholdMillis();
+
+    /**
+     * @param millis duration above which trigger invocations are logged as slow.
+     */
+    void setSlowInvocationThresholdMillis(long millis);
+
+    /**
+     * Reset the metrics of all triggers.
+     */
+    void resetStatistics();
+}
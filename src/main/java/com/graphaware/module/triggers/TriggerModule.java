@@ -22,13 +22,9 @@ import com.graphaware.runtime.module.BaseTxDrivenModule;
 import com.graphaware.runtime.module.DeliberateTransactionRollbackException;
 import com.graphaware.tx.event.improved.api.Change;
 import com.graphaware.tx.event.improved.api.ImprovedTransactionData;
-import com.graphaware.tx.executor.batch.IterableInputBatchTransactionExecutor;
-import com.graphaware.tx.executor.batch.UnitOfWork;
-import com.graphaware.tx.executor.single.TransactionCallback;
 
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
-import org.neo4j.tooling.GlobalGraphOperations;
 import org.neo4j.graphdb.Relationship;
 import org.neo4j.shell.kernel.apps.NodeOrRelationship;
 
@@ -36,14 +32,32 @@ import org.neo4j.shell.kernel.apps.NodeOrRelationship;
 import com.graphaware.module.triggers.TriggerModuleConfiguration;
 import com.graphaware.module.triggers.index.TriggerIndexer;
 import com.graphaware.module.triggers.index.LegacyTriggerIndexer;
+import com.graphaware.module.triggers.cdc.ChangeCodec;
+import com.graphaware.module.triggers.cdc.ChangeLog;
+import org.neo4j.graphdb.DynamicLabel;
 import org.neo4j.graphdb.Label;
 
+import javax.script.ScriptException;
 
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
 
 
 /**
@@ -52,43 +66,81 @@ import java.util.Collection;
  * The directory name can be set in the module configuration. (Question:  Should these be implementations of the "PropertyTrigger Interface" instead??) 
  * It should also be possible to add TriggerNodes to the graph, with the proper label (DATABASE_TRIGGER); label can be set in the configuration;
  * Properties on the TriggerNode instruct the framework what to do, easy for creating "simple triggers" that just use framework code.
- * (TODO) properties identify the scripting language, and scripts used for CREATE/DELETE/MODIFY (CHANGE) trigger code.
+ * Properties identify the scripting language, and scripts used for CREATE/DELETE/MODIFY trigger code (see {@link ScriptTrigger}).
  * 
  * Additionally, the framework also supports:
  * simple triggers like preventing create/modify/delete of properties outside the trigger;
- * filtering calls to triggers for only when certain properties have changed;
- * filtering calls to triggers for only when certain properties change to/from certain values (i.e. OnPropertyChanged); (TODO)
+ * filtering calls to triggers for only when certain properties or labels have changed, or for nodes with certain labels;
+ * label added/removed callbacks (see {@link PropertyTrigger#handlesLabelChanges()});
+ * relationship create/modify/delete callbacks, filtered by relationship type and changed properties;
+ * filtering calls to triggers for only when certain properties change to/from certain values or cross thresholds (see {@link PropertyTrigger#whenPropertyChanges(String, Object, Object)});
  * providing canCreate, canDelete, canModify functions in addition to defining simple property tests; (TODO)
- * calls to the onCreate, onDelete, onModify functions on either or both per node and (TODO) collections
+ * calls to the onCreate, onDelete, onModify functions on either per node or collections (once per transaction)
+ * asynchronous triggers, called after commit on workers partitioned by node (see {@link PropertyTrigger#handlesAsynchronously()})
+ * debounced asynchronous triggers, called once per node and window with the net change (see {@link PropertyTrigger#debouncesFor(long)})
+ * read-only validators, run before other triggers and spread across a fork-join pool for large transactions
+ * a context shared by the triggers of a transaction, memoizing their reads and batching their writes (see {@link TriggerContext})
+ * per trigger inclusion policies, grouped by equal policies and evaluated at most once per node or relationship
+ * per trigger and event metrics (see {@link TriggerMetrics}), exposed through JMX and REST, and logging of slow invocations
+ * per trigger and per transaction time budgets with a circuit breaker per trigger (see {@link TriggerBudgetPolicy})
+ * dependency-ordered execution of triggers declaring the properties they modify, with their changes dispatched again to
+ * the triggers watching them until nothing changes (see {@link PropertyTrigger#modifiesProperties(String...)})
+ * UUID assignment (see {@link UuidTrigger}), in the same pass over the transaction data as the other triggers
+ * node revisions for optimistic concurrency (see {@link RevisionTrigger}), with conditional updates through REST
+ * change data capture: a log of the changes of committed transactions for downstream consumers (see {@link ChangeLog})
+ * node indexes maintained by triggers (see {@link IndexTrigger}), and backfilling of existing nodes in the background on
+ * several threads, resumed from checkpoints (see {@link PropertyTrigger#backfillsExistingNodes()})
  * 
  */
-public class TriggerModule extends BaseTxDrivenModule<Void> {
+public class TriggerModule extends BaseTxDrivenModule<TriggerTransactionState> {
 	
 	private final static Logger LOGGER = Logger.getLogger(TriggerModule.class.getName()); 
 
     public static final String DEFAULT_MODULE_ID = "TRGM";
-    private static final int BATCH_SIZE = 1000;
+    private static final int MAX_CASCADE_ROUNDS = 32;
 
     //private final UuidGenerator uuidGenerator;
     private final TriggerModuleConfiguration triggerModuleConfiguration;
     private final TriggerIndexer triggerIndexer;
-    private final Collection<PropertyTrigger> OnCreateTriggers = new ArrayList<PropertyTrigger>();
-    private final Collection<PropertyTrigger> OnDeleteTriggers = new ArrayList<PropertyTrigger>();
-    private final Collection<PropertyTrigger> OnModifyTriggers = new ArrayList<PropertyTrigger>();
-    private final Collection<PropertyTrigger> OnChangeTriggers = new ArrayList<PropertyTrigger>();
+    // All triggers, replaced (copy-on-write) on registration and when trigger nodes change; read once per transaction
+    private volatile TriggerRegistry registry;
+
+    // Metrics recording, slow invocation logging and vetoes; the JMX name is set while the module is started
+    private final TriggerInvocations invocations;
+    private ObjectName metricsName;
+    private ObjectName asyncMetricsName;
+
+    // Triggers defined by scripts on trigger nodes, compiled once per trigger node version
+    private final ScriptTriggerCache scriptTriggers;
+
+    // Read-only validators run in parallel on detached copies of nodes
+    private volatile ParallelValidation validation;
+
+    // Workers for asynchronous triggers, only started if any are registered
+    private final GraphDatabaseService database;
+    private volatile AsyncTriggerExecutor asyncExecutor;
+
+    // Built-in trigger assigning UUIDs, null if not enabled
+    private UuidTrigger uuidTrigger;
+
+    // Built-in trigger maintaining node revisions, null if not enabled
+    private RevisionTrigger revisionTrigger;
+
+    // Change data capture log, null if not enabled; opened on start
+    private volatile ChangeLog changeLog;
+
+    // Applies backfilling triggers to existing nodes after start
+    private volatile TriggerBackfill backfill;
 
     //TODO: Make all of these a Map of String -> Collection<PropertyTrigger> (or String (triggerName)) for reporting which triggers blocked the action 
 	// Block additions created outside of the trigger
 	private final Collection<String> _preventPropertiesCreate = new ArrayList<String>();
-	private final Collection<String> _preventLabelsCreate = new ArrayList<String>();
 
 	// Block modifications made outside of the trigger
 	private final Collection<String> _preventPropertiesModify = new ArrayList<String>();
-	private final Collection<String> _preventLabelsModify = new ArrayList<String>();  // Does this belong here? Is it something other than a Delete and Add in the same change? 
 	
 	// Block deletes made outside of the trigger
 	private final Collection<String> _preventPropertiesDelete = new ArrayList<String>();
-	private final Collection<String> _preventLabelsDelete = new ArrayList<String>();
 
 	// Maintain indexes for trigger?  - A list of index names and a list of property names?
 	// TODO: There has to be something more elegant than this
@@ -116,16 +168,129 @@ public class TriggerModule extends BaseTxDrivenModule<Void> {
         super(moduleId);
         //this.uuidGenerator = new EaioUuidGenerator();
         this.triggerModuleConfiguration = configuration;
+        this.database = database;
+        this.invocations = new TriggerInvocations(configuration.getSlowInvocationThresholdMillis());
         this.triggerIndexer = new LegacyTriggerIndexer(database, configuration);  // Perhaps separate for CREATE, UPDATE, DELETE, ANY?
+        this.scriptTriggers = new ScriptTriggerCache(database, DynamicLabel.label(configuration.getTriggerNodeLabel()));
+        this.registry = TriggerRegistry.empty(configuration.getInclusionPolicies());
+        if (configuration.getUuidConfiguration() != null) {
+            this.uuidTrigger = new UuidTrigger(configuration.getUuidConfiguration(), database);
+            registerTrigger(uuidTrigger);
+        }
+        if (configuration.getRevisionProperty() != null) {
+            this.revisionTrigger = new RevisionTrigger(configuration.getRevisionProperty());
+            registerTrigger(revisionTrigger);
+        }
         
         //TODO: Iterate over jars in configuration.directoryName and populate list of PropertyTriggers
-        //TODO: Search configuration.indexName for PropertyTrigger Nodes and populate list of PropertyTriggers
-        //TODO: Perhaps this should be done in "initialize"?  Or is that a "per txn" initialize call
-        //TODO: Initialize Scripting Engines for executing code on PropertyTrigger Nodes (Using JSR 223?) (Node props identify the languages used)
+        //Script triggers on trigger nodes are compiled in start() and kept up to date in beforeCommit/afterCommit
 
         //Populate PropertyName -> PropertyTrigger maps for create, delete, modify, change
     }
 
+    /**
+     * Register a trigger with this module. Must be called before the module is registered with the runtime.
+     *
+     * @param trigger to register; it is called back for the events it declares as handled.
+     * @throws IllegalStateException if the properties the trigger modifies and watches form a cycle with other triggers.
+     */
+    public synchronized void registerTrigger(PropertyTrigger trigger) {
+        registry = registry.with(trigger);
+    }
+
+    /**
+     * Register an {@link IndexTrigger} maintaining a node index of a property. Must be called before the module is
+     * registered with the runtime.
+     *
+     * @param indexName  name of the node index.
+     * @param propName   property whose value nodes are indexed by.
+     * @param labelNames only index nodes carrying one of these labels, all nodes if none are given.
+     * @return the registered trigger.
+     */
+    public IndexTrigger registerIndex(String indexName, String propName, String... labelNames) {
+        IndexTrigger trigger = new IndexTrigger(triggerIndexer, indexName, propName, labelNames);
+        registerTrigger(trigger);
+        return trigger;
+    }
+
+    /**
+     * @return the current set of triggers.
+     */
+    TriggerRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Get the script trigger currently defined by a trigger node.
+     *
+     * @param triggerNodeId ID of the trigger node.
+     * @return compiled trigger, null if the node doesn't define one (yet).
+     */
+    ScriptTrigger getScriptTrigger(long triggerNodeId) {
+        return scriptTriggers.get(triggerNodeId);
+    }
+
+    /**
+     * Get invocation statistics of all registered and script triggers, for each event they handle or have been invoked for.
+     *
+     * @return statistics, in registration order (script triggers last).
+     */
+    public List<TriggerEventStatistics> getStatistics() {
+        List<TriggerEventStatistics> result = new ArrayList<>();
+        for (PropertyTrigger trigger : registry.all()) {
+            boolean all = trigger.isHandlingChanges();
+            for (int event = PropertyTrigger.CREATE; event <= PropertyTrigger.DELETE; event++) {
+                if (all || trigger.isHandlingEvent(event) || trigger.isHandlingRelationshipEvent(event) || trigger.getMetrics().getInvocations(event) > 0) {
+                    result.add(trigger.getMetrics().statistics(trigger.getPropertyName(), event));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return metrics of asynchronous trigger execution, null if no asynchronous triggers are registered.
+     */
+    public AsyncTriggerMetrics getAsyncMetrics() {
+        return asyncExecutor;
+    }
+
+    /**
+     * @return the built-in trigger assigning UUIDs, null if not enabled in the configuration.
+     */
+    public UuidTrigger getUuidTrigger() {
+        return uuidTrigger;
+    }
+
+    /**
+     * @return the built-in trigger maintaining node revisions, null if not enabled in the configuration.
+     */
+    public RevisionTrigger getRevisionTrigger() {
+        return revisionTrigger;
+    }
+
+    /**
+     * @return log of the changes of committed transactions, null if not enabled in the configuration or the module
+     *         hasn't started.
+     */
+    public ChangeLog getChangeLog() {
+        return changeLog;
+    }
+
+    /**
+     * Wait for backfilling triggers to be applied to the existing nodes, which starts in the background when the module
+     * starts (see {@link PropertyTrigger#backfillsExistingNodes()}).
+     *
+     * @param timeout maximum time to wait.
+     * @param unit    unit of the timeout.
+     * @return true iff the backfill has finished, false if the module hasn't started or the timeout elapsed.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public boolean awaitBackfill(long timeout, TimeUnit unit) throws InterruptedException {
+        TriggerBackfill backfill = this.backfill;
+        return backfill != null && backfill.await(timeout, unit);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -138,41 +303,147 @@ public class TriggerModule extends BaseTxDrivenModule<Void> {
      * {@inheritDoc}
      */
     @Override
+    public void start(GraphDatabaseService database) {
+        super.start(database);
+        scriptTriggers.load();
+
+        synchronized (this) {
+            registry = registry.with(scriptTriggers.snapshot());
+            boolean demotes = triggerModuleConfiguration.getBudgetPolicy() == TriggerBudgetPolicy.DEMOTE
+                    && (registry.hasTriggerBudgets || triggerModuleConfiguration.getTriggerBudgetMillis() > 0 || triggerModuleConfiguration.getTransactionBudgetMillis() > 0);
+            if ((registry.hasAsyncTriggers || demotes) && asyncExecutor == null) {
+                asyncExecutor = new AsyncTriggerExecutor(database, triggerModuleConfiguration, invocations);
+            }
+            if (validation == null) {
+                validation = new ParallelValidation(triggerModuleConfiguration.getValidationParallelism(), invocations);
+            }
+        }
+
+        // Triggers not backfilled yet, and backfills that have been interrupted, continue in the background
+        backfill = new TriggerBackfill(database, triggerModuleConfiguration.getBackfillThreads());
+        backfill.start(registry.registered);
+
+        String changeLogDirectory = triggerModuleConfiguration.getChangeLogDirectory();
+        if (changeLogDirectory != null && changeLog == null) {
+            try {
+                changeLog = new ChangeLog(new File(changeLogDirectory), triggerModuleConfiguration.getChangeLogSegmentSize(),
+                        triggerModuleConfiguration.getChangeLogRetainedSegments(), triggerModuleConfiguration.getChangeLogRetentionMillis());
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not open change log in " + changeLogDirectory, e);
+            }
+        }
+
+        metricsName = registerMBean("TriggerMetrics", new MetricsMXBean(), TriggerMetricsMXBean.class);
+        if (asyncExecutor != null) {
+            asyncMetricsName = registerMBean("AsyncTriggers", asyncExecutor, AsyncTriggerMetrics.class);
+        }
+    }
+
+    private <T> ObjectName registerMBean(String type, T bean, Class<T> beanInterface) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName("com.graphaware.module.triggers:type=" + type + ",module=" + ObjectName.quote(getId()));
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new StandardMBean(bean, beanInterface, true), name);
+            return name;
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "TRIGGER MODULE: could not register " + type + " MBean", e);
+            return null;
+        }
+    }
+
+    private void unregisterMBean(ObjectName name) {
+        if (name == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (Exception e) {
+            LOGGER.log(Level.FINE, "TRIGGER MODULE: could not unregister MBean " + name, e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void shutdown() {
+        AsyncTriggerExecutor executor = asyncExecutor;
+        if (executor != null) {
+            executor.shutdown();
+        }
+        if (validation != null) {
+            validation.shutdown();
+        }
+        if (backfill != null) {
+            backfill.stop();
+        }
+        if (changeLog != null) {
+            changeLog.close();
+        }
+        unregisterMBean(metricsName);
+        unregisterMBean(asyncMetricsName);
+        super.shutdown();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * Forgets the progress of backfilling triggers whose definition has changed (see
+     * {@link PropertyTrigger#getBackfillDefinition()}), which are then applied to all existing nodes again once the
+     * module has started. The backfill itself can't run here, as the runtime initializes modules within a transaction.
+     */
+    @Override
     public void initialize(GraphDatabaseService database) {
-        new IterableInputBatchTransactionExecutor<>(
-                database,
-                BATCH_SIZE,
-                new TransactionCallback<Iterable<Node>>() {
-                    @Override
-                    public Iterable<Node> doInTransaction(GraphDatabaseService database) throws Exception {
-                        return GlobalGraphOperations.at(database).getAllNodes();
-                    }
-                },
-                new UnitOfWork<Node>() {
-                    @Override
-                    public void execute(GraphDatabaseService database, Node node, int batchNumber, int stepNumber) {
-                	    // What does this execute function within initialize do versus the beforeCommit call? both call assignUuid(node)?
-                    	// This test should move to a per PropertyTrigger inclusion test...
-                	    LOGGER.finer("TRIGGER MODULE: looping over nodes in txn batch " +  String.valueOf(batchNumber));
-                		for (PropertyTrigger trigger : OnCreateTriggers) {
-                			if (trigger.getInclusionPolicies().getNodeInclusionPolicy().include(node)) {
-                				//trigger.assignUuid(node);                			}                		
-                			}
-                		}
-                    }
-                }
-        ).execute();
+        TriggerBackfill.reset(database, registry.registered);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public Void beforeCommit(ImprovedTransactionData transactionData) throws DeliberateTransactionRollbackException {
+    public TriggerTransactionState beforeCommit(ImprovedTransactionData transactionData) throws DeliberateTransactionRollbackException {
 	    LOGGER.finer("TRIGGER MODULE: entered beforeCommit");
-		int CREATE = 0;
-		int MODIFY = 1;
-		int DELETE = 2;
+		TriggerTransactionState state = new TriggerTransactionState();
+		TriggerRegistry registry = this.registry;
+
+		// Events of demoted triggers go to the asynchronous workers with the other after-commit events
+		TriggerBudget budget = TriggerBudget.start(triggerModuleConfiguration, asyncExecutor != null ? state.asyncEvents : null, registry.hasTriggerBudgets);
+		// Shared by the triggers of this transaction only
+		TriggerContext context = new TriggerContext(database);
+		context.open();
+		try {
+			beforeCommit(transactionData, registry, state, budget, context);
+		} finally {
+			budget.finish();
+			context.close();
+		}
+
+		return state.isEmpty() ? null : state;
+    }
+
+    private void beforeCommit(ImprovedTransactionData transactionData, TriggerRegistry registry, TriggerTransactionState state, TriggerBudget budget, TriggerContext context) {
+		int CREATE = PropertyTrigger.CREATE;
+		int MODIFY = PropertyTrigger.MODIFY;
+		int DELETE = PropertyTrigger.DELETE;
+
+		// Nodes collected for triggers handling collections, keyed by trigger identity (triggers with equal policies are equal)
+		Map<PropertyTrigger, List<Node>> createdBatches = new IdentityHashMap<>();
+		Map<PropertyTrigger, List<Node>> modifiedBatches = new IdentityHashMap<>();
+		Map<PropertyTrigger, List<Node>> deletedBatches = new IdentityHashMap<>();
+
+		ScriptTriggerCache.Snapshot scripts = registry.scripts;
+
+		// Properties triggers change on modified nodes, dispatched again once all changed nodes have been handled
+		TriggerCascade cascade = new TriggerCascade();
+
+		// Inclusion policies of triggers, evaluated once per entity and policy
+		TriggerPolicies.Evaluation included = registry.policies.evaluation();
+
+		// Read-only validators first, so that a veto stops the transaction before any other trigger runs
+		Map<Long, PropertyDiff> validatedDiffs = validate(transactionData, registry, context);
 	    
 	    //TODO: iterate through the created nodes, test nodes for registered property/label existence, call per node OnCreate/OnChange Handlers
 	    //TODO: iterate through the deleted nodes, test nodes for registered property/label existence, call per node OnDelete/OnChange Handlers
@@ -186,42 +457,53 @@ public class TriggerModule extends BaseTxDrivenModule<Void> {
         //Iterate through all created nodes, for each trigger enforce NoCreate, test for registered hasProperty, call OnCreate
 	    LOGGER.finer("TRIGGER MODULE: looping over Created Nodes");
         for (Node node : transactionData.getAllCreatedNodes()) {
+    		Set<String> labels = registry.hasLabelFilters ? context.labels(node) : null;
+    		included.of(node);
+
     	    LOGGER.finest("TRIGGER MODULE: looping through _preventPropertiesCreate");
     		for (String propName : this._preventPropertiesCreate) {
                 //TODO: Enable PropertyTriggers to register for calling a "CanCreate" function
                 if (node.hasProperty(propName)) {
-            	    LOGGER.finest("TRIGGER MODULE: Found property: " + propName);
+            	    LOGGER.log(Level.FINEST, "TRIGGER MODULE: Found property: {0}", propName);
                     throw new DeliberateTransactionRollbackException("Creating nodes with the " + propName + " property blocked by trigger framework.");
                     //TODO: Add trigger name to above message
                 }
     		}
-// TODO: Enable triggers for only nodes with a particular label
-//    		for (String labelName : this._preventLabelsCreate) {
-//                if (node.hasLabel(labelName)) {
-//                    throw new DeliberateTransactionRollbackException("Creating nodes with the " + labelName + " label has been blocked.");                    	
-//                }
-//    		}
 
     	    LOGGER.finer("TRIGGER MODULE: looping over OnCreate triggers for changed nodes");
-    		for (PropertyTrigger trigger : this.OnCreateTriggers) {
-  				trigger.OnCreate(node);
+    		for (PropertyTrigger trigger : registry.onCreate) {
+    			if (skips(trigger, labels, included)) {
+    				continue;
+    			}
+    			if (trigger.isAsynchronous()) {
+    				state.asyncEvents.add(asyncEvent(trigger, CREATE, node, null));
+    				continue;
+    			}
+    			if (trigger.isHandlingCollections()) {
+    				addToBatch(createdBatches, trigger, node);
+    				continue;
+    			}
+  				invokeOnCreate(budget, trigger, node);
    				//trigger.OnCreate(NodeOrRelationship.wrap(node));
   	            //trigger.Indexer.addNodeToIndex(node);
         	}
     	    LOGGER.finer("TRIGGER MODULE: looping over OnChange per node triggers for created nodes");
-    		for (PropertyTrigger trigger : this.OnChangeTriggers) {
-  				trigger.OnChange(CREATE, null, node);
+    		for (PropertyTrigger trigger : registry.onChange) {
+    			if (skips(trigger, labels, included)) {
+    				continue;
+    			}
+  				invokeOnChange(budget, trigger, CREATE, null, node, PropertyDiff.created(node));
    				//trigger.OnCreate(NodeOrRelationship.wrap(node));
   	            //trigger.Indexer.indexNode(node);
         	}
+    	    LOGGER.finer("TRIGGER MODULE: looping over OnCreate script triggers for created nodes");
+    		for (PropertyTrigger trigger : scripts.onCreate) {
+    			if (!included.includes(trigger)) {
+    				continue;
+    			}
+    			invokeOnCreate(budget, trigger, node);
+    		}
         }
-/*      
-  		// Create on relationships
-        for (Relationship rel : transactionData.getAllCreatedRelationships()) {
-            assignUuid(rel);
-        	assignRev(NodeOrRelationship.wrap(rel));
-        }
-*/        
 
         
         
@@ -230,35 +512,53 @@ public class TriggerModule extends BaseTxDrivenModule<Void> {
 		 */
         LOGGER.finer("TRIGGER MODULE: looping over Deleted Nodes");
         for (Node node : transactionData.getAllDeletedNodes()) {
+    		Set<String> labels = registry.hasLabelFilters ? context.labels(node) : null;
+    		included.of(node);
+
     	    LOGGER.finest("TRIGGER MODULE: looping through _preventPropertiesDelete");
     		for (String propName : this._preventPropertiesDelete) {
                 //TODO: Enable PropertyTriggers to register for calling a "CanDelete" function 
                 if (node.hasProperty(propName)) {
-            	    LOGGER.finest("TRIGGER MODULE: Found property: " + propName);
+            	    LOGGER.log(Level.FINEST, "TRIGGER MODULE: Found property: {0}", propName);
                     throw new DeliberateTransactionRollbackException("Deleting nodes with the " + propName + " property blocked by trigger framework.");
                     //TODO: Add trigger name to above message
                 }
     		}
-// TODO: Enable triggers for only nodes with a particular label
-//    		for (String labelName : this._preventLabelsCreate) {
-//                if (node.hasLabel(labelName)) {
-//                    throw new DeliberateTransactionRollbackException("Deleting nodes with the " + labelName + " label has been blocked.");                    	
-//                }
-//    		}
     		
     	    LOGGER.finer("TRIGGER MODULE: looping over OnDelete triggers for deleted nodes");
-    		for (PropertyTrigger trigger : this.OnDeleteTriggers) {
-  				trigger.OnDelete(node);
+    		for (PropertyTrigger trigger : registry.onDelete) {
+    			if (skips(trigger, labels, included)) {
+    				continue;
+    			}
+    			if (trigger.isAsynchronous()) {
+    				state.asyncEvents.add(asyncEvent(trigger, DELETE, node, null));
+    				continue;
+    			}
+    			if (trigger.isHandlingCollections()) {
+    				addToBatch(deletedBatches, trigger, node);
+    				continue;
+    			}
+  				invokeOnDelete(budget, trigger, node);
    				//trigger.OnDelete(NodeOrRelationship.wrap(node));
   				
   	            //trigger.Indexer.deleteNodeFromIndex(node);
         	}
     	    LOGGER.finer("TRIGGER MODULE: looping over OnChange per node triggers for deleted nodes");
-    		for (PropertyTrigger trigger : this.OnChangeTriggers) {
-  				trigger.OnChange(DELETE, node, null);
+    		for (PropertyTrigger trigger : registry.onChange) {
+    			if (skips(trigger, labels, included)) {
+    				continue;
+    			}
+  				invokeOnChange(budget, trigger, DELETE, node, null, PropertyDiff.deleted(node));
    				//trigger.OnCreate(NodeOrRelationship.wrap(node));
   	            //trigger.Indexer.addNodeToIndex(node);
         	}
+    	    LOGGER.finer("TRIGGER MODULE: looping over OnDelete script triggers for deleted nodes");
+    		for (PropertyTrigger trigger : scripts.onDelete) {
+    			if (!included.includes(trigger)) {
+    				continue;
+    			}
+    			invokeOnDelete(budget, trigger, node);
+    		}
         }
 
         
@@ -268,55 +568,699 @@ public class TriggerModule extends BaseTxDrivenModule<Void> {
          */
         //Check if the locked properties have been modified or removed from the node and throw an error
         LOGGER.finer("TRIGGER MODULE: looping over Changed Nodes");
+        TriggerDispatchTable onModifyDispatch = registry.onModifyDispatch;
+        TriggerDispatchTable onChangeDispatch = registry.onChangeDispatch;
         for (Change<Node> change : transactionData.getAllChangedNodes()) {
+    		// One diff per node, read on first use and shared by all triggers (and validators, if they needed it)
+    		PropertyDiff diff = validatedDiffs.get(change.getCurrent().getId());
+    		if (diff == null) {
+    			diff = PropertyDiff.modified(transactionData, change.getCurrent());
+    		}
+    		included.of(change.getCurrent());
+
     	    LOGGER.finest("TRIGGER MODULE: looping through _preventPropertiesModify");
     		for (String propName : this._preventPropertiesModify) {
-    			if (!change.getCurrent().hasProperty(propName)) {
-    				throw new DeliberateTransactionRollbackException("Changing property " + propName + " has been blocked by Trigger framework.");  // Add Trigger Name
-    			}
-        
-    			if (!change.getCurrent().hasProperty(propName)) {
+    			if (diff.getRemoved().containsKey(propName)) {
     				throw new DeliberateTransactionRollbackException("Removing property " + propName + " has been blocked by Trigger framework."); // Add Trigger Name
     			}
-
-                if (!change.getPrevious().getProperty(propName).equals(change.getCurrent().getProperty(propName))) {
+                if (diff.hasChanged(propName)) {
                     throw new DeliberateTransactionRollbackException("Attempt to modify the property " + propName + " has been blocked by Trigger framework.");
                 }
     		}
     		
+    		Collection<String> changedProperties = Collections.emptySet();
+    		if (onModifyDispatch.hasPropertyFilters() || onChangeDispatch.hasPropertyFilters() || scripts.onModify.hasPropertyFilters()) {
+    			changedProperties = diff.getKeys();
+    		}
+
+    		// Label transitions, and the labels the node has or just lost, only read when some trigger needs them
+    		Set<String> addedLabels = Collections.emptySet();
+    		Set<String> removedLabels = Collections.emptySet();
+    		if (onModifyDispatch.hasLabelFilters() || onChangeDispatch.hasLabelFilters() || registry.hasLabelFilters || !registry.onLabelChange.isEmpty()) {
+    			addedLabels = labelNames(transactionData.assignedLabels(change.getCurrent()));
+    			removedLabels = labelNames(transactionData.removedLabels(change.getCurrent()));
+    		}
+    		Collection<String> changedLabels = changedLabels(addedLabels, removedLabels);
+    		Set<String> labels = null;
+    		if (registry.hasLabelFilters) {
+    			labels = new HashSet<>(context.labels(change.getCurrent()));
+    			labels.addAll(removedLabels);
+    		}
+
     	    LOGGER.finer("TRIGGER MODULE: looping over OnModify triggers for changed nodes");
-    		for (PropertyTrigger trigger : this.OnModifyTriggers) {
-    			boolean bHasChanged = false;
-    			for (String propName : trigger._whenPropertiesChange) {
-    				bHasChanged = (!change.getPrevious().getProperty(propName).equals(change.getCurrent().getProperty(propName)));
-    				if (bHasChanged) { break; }  // Should we add propName to a changed property list and not break?
+    		for (PropertyTrigger trigger : onModifyDispatch.route(changedProperties, changedLabels)) {
+    			if (skips(trigger, labels, included) || !trigger.matchesValues(diff)) {
+    				continue;
     			}
-    			if (bHasChanged || trigger._whenPropertiesChange.isEmpty()) {
-    				trigger.OnModify(change.getPrevious(), change.getCurrent());
-       				//trigger.OnModify(NodeOrRelationship.wrap(node));
+    			if (trigger.isAsynchronous()) {
+    				state.asyncEvents.add(asyncEvent(trigger, MODIFY, change.getCurrent(), diff));
+    				continue;
     			}
-  				
+    			if (trigger.isHandlingCollections()) {
+    				addToBatch(modifiedBatches, trigger, change.getCurrent());
+    				continue;
+    			}
+    			Object[] before = cascade.before(trigger, change.getCurrent());
+    			invokeOnModify(budget, trigger, change.getPrevious(), change.getCurrent(), diff);
+    			cascade.after(trigger, change.getPrevious(), change.getCurrent(), before);
+       			//trigger.OnModify(NodeOrRelationship.wrap(node));
   	            //trigger.Indexer.indexNode(node);
         	}
     	    LOGGER.finer("TRIGGER MODULE: looping over OnChange per node triggers for changed nodes");
-    		for (PropertyTrigger trigger : this.OnChangeTriggers) {
-    			boolean bHasChanged = false;
-    			for (String propName : trigger._whenPropertiesChange) {
-    				bHasChanged = (!change.getPrevious().getProperty(propName).equals(change.getCurrent().getProperty(propName)));
-    				if (bHasChanged) { break; }  // Should we add propName to a changed property list and not break?
-    			}
-    			if (bHasChanged || trigger._whenPropertiesChange.isEmpty()) {
-    				trigger.OnChange(MODIFY, change.getPrevious(), change.getCurrent());
-       				//trigger.OnChange(NodeOrRelationship.wrap(MODIFY, change.getPrevious(), change.getCurrent()));
+    		for (PropertyTrigger trigger : onChangeDispatch.route(changedProperties, changedLabels)) {
+    			if (skips(trigger, labels, included) || !trigger.matchesValues(diff)) {
+    				continue;
     			}
+    			Object[] before = cascade.before(trigger, change.getCurrent());
+    			invokeOnChange(budget, trigger, MODIFY, change.getPrevious(), change.getCurrent(), diff);
+    			cascade.after(trigger, change.getPrevious(), change.getCurrent(), before);
+       			//trigger.OnChange(NodeOrRelationship.wrap(MODIFY, change.getPrevious(), change.getCurrent()));
   	            //trigger.Indexer.updateNodeOnIndex(node);
         	}
+    	    LOGGER.finer("TRIGGER MODULE: looping over OnModify script triggers for changed nodes");
+    		for (PropertyTrigger trigger : scripts.onModify.route(changedProperties)) {
+    			if (!included.includes(trigger)) {
+    				continue;
+    			}
+    			invokeOnModify(budget, trigger, change.getPrevious(), change.getCurrent(), diff);
+    		}
+    	    LOGGER.finer("TRIGGER MODULE: looping over label change triggers for changed nodes");
+    		if (!changedLabels.isEmpty()) {
+    			for (PropertyTrigger trigger : registry.onLabelChange) {
+    				if (!skips(trigger, labels, included)) {
+    					invokeOnLabelChanges(budget, trigger, change.getCurrent(), addedLabels, removedLabels);
+    				}
+    			}
+    		}
+        }
+
+        if (cascade.hasChanges()) {
+            cascade(registry, state, budget, cascade, modifiedBatches);
         }
 
-        return null;
+        /*
+         * Relationships, routed by type and (modified relationships) changed property
+         */
+        RelationshipDispatchTable onCreateRelationshipDispatch = registry.onCreateRelationship;
+        if (!onCreateRelationshipDispatch.isEmpty()) {
+            LOGGER.finer("TRIGGER MODULE: looping over Created Relationships");
+            for (Relationship relationship : transactionData.getAllCreatedRelationships()) {
+                included.of(relationship);
+                for (PropertyTrigger trigger : onCreateRelationshipDispatch.forType(relationship.getType()).all()) {
+                    if (!included.includes(trigger)) {
+                        continue;
+                    }
+                    invokeOnCreate(budget, trigger, relationship);
+                }
+            }
+        }
+
+        RelationshipDispatchTable onDeleteRelationshipDispatch = registry.onDeleteRelationship;
+        if (!onDeleteRelationshipDispatch.isEmpty()) {
+            LOGGER.finer("TRIGGER MODULE: looping over Deleted Relationships");
+            for (Relationship relationship : transactionData.getAllDeletedRelationships()) {
+                included.of(relationship);
+                for (PropertyTrigger trigger : onDeleteRelationshipDispatch.forType(relationship.getType()).all()) {
+                    if (!included.includes(trigger)) {
+                        continue;
+                    }
+                    invokeOnDelete(budget, trigger, relationship);
+                }
+            }
+        }
+
+        RelationshipDispatchTable onModifyRelationshipDispatch = registry.onModifyRelationship;
+        if (!onModifyRelationshipDispatch.isEmpty()) {
+            LOGGER.finer("TRIGGER MODULE: looping over Changed Relationships");
+            for (Change<Relationship> change : transactionData.getAllChangedRelationships()) {
+                TriggerDispatchTable dispatch = onModifyRelationshipDispatch.forType(change.getCurrent().getType());
+                if (dispatch.isEmpty()) {
+                    continue;
+                }
+                PropertyDiff diff = PropertyDiff.modified(transactionData, change.getCurrent());
+                Collection<String> changedProperties = dispatch.hasPropertyFilters() ? diff.getKeys() : Collections.<String>emptySet();
+                included.of(change.getCurrent());
+                for (PropertyTrigger trigger : dispatch.route(changedProperties)) {
+                    if (!included.includes(trigger) || !trigger.matchesValues(diff)) {
+                        continue;
+                    }
+                    invokeOnModify(budget, trigger, change.getPrevious(), change.getCurrent(), diff);
+                }
+            }
+        }
+
+        /*
+         * Collection callbacks, once per transaction per trigger, in execution order
+         */
+        LOGGER.finer("TRIGGER MODULE: calling collection triggers");
+        for (PropertyTrigger trigger : registry.onCreate) {
+            List<Node> nodes = createdBatches.get(trigger);
+            if (nodes != null) {
+                invokeOnCreate(budget, trigger, nodes);
+            }
+        }
+        for (PropertyTrigger trigger : registry.onDelete) {
+            List<Node> nodes = deletedBatches.get(trigger);
+            if (nodes != null) {
+                invokeOnDelete(budget, trigger, nodes);
+            }
+        }
+        for (PropertyTrigger trigger : registry.onModify) {
+            List<Node> nodes = modifiedBatches.get(trigger);
+            if (nodes != null) {
+                invokeOnModify(budget, trigger, nodes);
+            }
+        }
+
+        context.flush();
+
+        collectScriptTriggerChanges(transactionData, state);
+
+        // Last, so that the record includes the properties triggers declare writing (see ChangeCodec#encode for what it misses)
+        if (changeLog != null) {
+            state.changeRecord = ChangeCodec.encode(transactionData, writtenProperties(registry));
+        }
+    }
+
+    private Collection<String> writtenProperties(TriggerRegistry registry) {
+        if (revisionTrigger == null) {
+            return registry.modifiedProperties;
+        }
+        Set<String> properties = new HashSet<>(registry.modifiedProperties);
+        properties.add(triggerModuleConfiguration.getRevisionProperty());
+        return properties;
+    }
+
+    /**
+     * Run read-only validators over detached copies of created, deleted and changed nodes.
+     *
+     * @return diffs of changed nodes read to route validators, by node ID, to be reused by the other triggers.
+     */
+    private Map<Long, PropertyDiff> validate(ImprovedTransactionData transactionData, TriggerRegistry registry, TriggerContext context) {
+        ParallelValidation validation = this.validation;
+        TriggerDispatchTable modifyValidators = registry.modifyValidators;
+        if (validation == null || !registry.hasValidators()) {
+            return Collections.emptyMap();
+        }
+
+        String[] properties = registry.validatedProperties;
+        boolean hasLabelFilters = registry.hasLabelFilters;
+        boolean filters = hasLabelFilters || registry.policies.groups() > 0;
+        TriggerPolicies.Evaluation included = registry.policies.evaluation();
+        List<ValidationItem> items = new ArrayList<>();
+        Map<Long, PropertyDiff> diffs = Collections.emptyMap();
+
+        if (!registry.createValidators.isEmpty()) {
+            for (Node node : transactionData.getAllCreatedNodes()) {
+                List<PropertyTrigger> validators = filters ? applicable(registry.createValidators, hasLabelFilters ? context.labels(node) : null, included.of(node)) : registry.createValidators;
+                if (!validators.isEmpty()) {
+                    items.add(new ValidationItem(PropertyTrigger.CREATE, node.getId(), detach(node, properties), validators));
+                }
+            }
+        }
+
+        if (!registry.deleteValidators.isEmpty()) {
+            for (Node node : transactionData.getAllDeletedNodes()) {
+                List<PropertyTrigger> validators = filters ? applicable(registry.deleteValidators, hasLabelFilters ? context.labels(node) : null, included.of(node)) : registry.deleteValidators;
+                if (!validators.isEmpty()) {
+                    items.add(new ValidationItem(PropertyTrigger.DELETE, node.getId(), detach(node, properties), validators));
+                }
+            }
+        }
+
+        if (!modifyValidators.isEmpty()) {
+            for (Change<Node> change : transactionData.getAllChangedNodes()) {
+                Collection<String> changedProperties = Collections.emptySet();
+                if (modifyValidators.hasPropertyFilters()) {
+                    if (diffs.isEmpty()) {
+                        diffs = new HashMap<>();
+                    }
+                    PropertyDiff diff = PropertyDiff.modified(transactionData, change.getCurrent());
+                    diffs.put(change.getCurrent().getId(), diff);
+                    changedProperties = diff.getKeys();
+                }
+                Set<String> removedLabels = Collections.emptySet();
+                Collection<String> changedLabels = Collections.emptySet();
+                if (modifyValidators.hasLabelFilters() || hasLabelFilters) {
+                    removedLabels = labelNames(transactionData.removedLabels(change.getCurrent()));
+                    changedLabels = changedLabels(labelNames(transactionData.assignedLabels(change.getCurrent())), removedLabels);
+                }
+                List<PropertyTrigger> validators = modifyValidators.route(changedProperties, changedLabels);
+                if (filters && !validators.isEmpty()) {
+                    Set<String> labels = null;
+                    if (hasLabelFilters) {
+                        labels = new HashSet<>(context.labels(change.getCurrent()));
+                        labels.addAll(removedLabels);
+                    }
+                    validators = applicable(validators, labels, included.of(change.getCurrent()));
+                }
+                if (!validators.isEmpty()) {
+                    items.add(new ValidationItem(PropertyTrigger.MODIFY, change.getCurrent().getId(), detach(change.getCurrent(), properties), validators));
+                }
+            }
+        }
+
+        if (!items.isEmpty()) {
+            validation.validate(items);
+        }
+        return diffs;
+    }
+
+    private static List<PropertyTrigger> applicable(List<PropertyTrigger> triggers, Set<String> labels, TriggerPolicies.Evaluation included) {
+        List<PropertyTrigger> result = new ArrayList<>(triggers.size());
+        for (PropertyTrigger trigger : triggers) {
+            if (!skips(trigger, labels, included)) {
+                result.add(trigger);
+            }
+        }
+        return result;
+    }
+
+    private static Map<String, Object> detach(Node node, String[] properties) {
+        Map<String, Object> result = new HashMap<>();
+        if (properties == null) {
+            for (String key : node.getPropertyKeys()) {
+                result.put(key, node.getProperty(key));
+            }
+        } else {
+            for (String key : properties) {
+                Object value = node.getProperty(key, null);
+                if (value != null) {
+                    result.put(key, value);
+                }
+            }
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Compile script triggers of created and changed trigger nodes, to be published after commit. Invalid scripts
+     * roll the transaction back.
+     */
+    private void collectScriptTriggerChanges(ImprovedTransactionData transactionData, TriggerTransactionState state) {
+        Label label = scriptTriggers.getTriggerNodeLabel();
+
+        for (Node node : transactionData.getAllCreatedNodes()) {
+            if (node.hasLabel(label)) {
+                state.compiledScriptTriggers.put(node.getId(), compileScriptTrigger(node));
+            }
+        }
+
+        for (Change<Node> change : transactionData.getAllChangedNodes()) {
+            Node node = change.getCurrent();
+            if (node.hasLabel(label)) {
+                state.compiledScriptTriggers.put(node.getId(), compileScriptTrigger(node));
+            } else if (transactionData.hasLabelBeenRemoved(node, label)) {
+                state.removedScriptTriggers.add(node.getId());
+            }
+        }
+
+        for (Node node : transactionData.getAllDeletedNodes()) {
+            if (scriptTriggers.contains(node.getId())) {
+                state.removedScriptTriggers.add(node.getId());
+            }
+        }
+    }
+
+    private ScriptTrigger compileScriptTrigger(Node node) {
+        try {
+            return scriptTriggers.compile(node);
+        } catch (ScriptException | IllegalArgumentException e) {
+            throw new DeliberateTransactionRollbackException("Invalid script trigger on node " + node.getId() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterCommit(TriggerTransactionState state) {
+        if (state == null) {
+            return;
+        }
+        if (!state.compiledScriptTriggers.isEmpty() || !state.removedScriptTriggers.isEmpty()) {
+            if (scriptTriggers.apply(state.compiledScriptTriggers, state.removedScriptTriggers)) {
+                synchronized (this) {
+                    registry = registry.with(scriptTriggers.snapshot());
+                }
+            }
+        }
+        if (state.changeRecord != null) {
+            try {
+                changeLog.append(state.changeRecord);
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "TRIGGER MODULE: could not append committed transaction to the change log", e);
+            }
+        }
+        if (!state.asyncEvents.isEmpty()) {
+            AsyncTriggerExecutor executor = asyncExecutor;
+            if (executor == null) {
+                LOGGER.warning("TRIGGER MODULE: asynchronous triggers registered after start are not executed");
+                return;
+            }
+            executor.submit(state.asyncEvents);
+        }
+    }
+
+    /*
+     * Invocations of trigger callbacks, recording metrics and turning vetoes into rollbacks
+     */
+    private void invokeOnCreate(TriggerBudget budget, PropertyTrigger trigger, Node node) {
+        if (!budget.admits(trigger, PropertyTrigger.CREATE, node.getId())) {
+            return;
+        }
+        long start = System.nanoTime();
+        Boolean result;
+        try {
+            result = trigger.OnCreate(node);
+        } catch (RuntimeException e) {
+            invocations.failed(trigger, PropertyTrigger.CREATE, start, node);
+            throw e;
+        }
+        invocations.completed(trigger, PropertyTrigger.CREATE, start, result, node);
+        budget.charge(trigger, PropertyTrigger.CREATE, start);
+    }
+
+    private void invokeOnCreate(TriggerBudget budget, PropertyTrigger trigger, Collection<Node> nodes) {
+        if (!budget.admits(trigger, PropertyTrigger.CREATE, -1)) {
+            return;
+        }
+        long start = System.nanoTime();
+        Boolean result;
+        try {
+            result = trigger.OnCreate(nodes);
+        } catch (RuntimeException e) {
+            invocations.failed(trigger, PropertyTrigger.CREATE, start, nodes);
+            throw e;
+        }
+        invocations.completed(trigger, PropertyTrigger.CREATE, start, result, nodes);
+        budget.charge(trigger, PropertyTrigger.CREATE, start);
+    }
+
+    /**
+     * Dispatch the properties triggers changed on modified nodes to the triggers watching them, as modifications of just
+     * those properties, in rounds until no trigger changes anything more. Callbacks get the node as it was before the
+     * transaction and as it is now; the diff holds the values before and after the triggers' change.
+     */
+    private void cascade(TriggerRegistry registry, TriggerTransactionState state, TriggerBudget budget, TriggerCascade cascade, Map<PropertyTrigger, List<Node>> modifiedBatches) {
+        int MODIFY = PropertyTrigger.MODIFY;
+
+        // Asynchronous and collection triggers see the final state of a node, so they get at most one event per node
+        Map<PropertyTrigger, Set<Long>> notified = new IdentityHashMap<>();
+        for (AsyncTriggerEvent event : state.asyncEvents) {
+            if (event.event == MODIFY) {
+                notified(notified, event.trigger).add(event.nodeId);
+            }
+        }
+        for (Map.Entry<PropertyTrigger, List<Node>> batch : modifiedBatches.entrySet()) {
+            for (Node node : batch.getValue()) {
+                notified(notified, batch.getKey()).add(node.getId());
+            }
+        }
+
+        TriggerPolicies.Evaluation included = registry.policies.evaluation();
+        for (int round = 1; cascade.hasChanges(); round++) {
+            if (round > MAX_CASCADE_ROUNDS) {
+                throw new DeliberateTransactionRollbackException("Triggers kept modifying each other's properties after " + MAX_CASCADE_ROUNDS + " rounds");
+            }
+            LOGGER.log(Level.FINER, "TRIGGER MODULE: cascade round {0}", round);
+
+            for (Map.Entry<Node, Map<String, Object>> entry : cascade.drain().entrySet()) {
+                Node node = entry.getKey();
+                Node previous = cascade.previous(node);
+                PropertyDiff diff = PropertyDiff.cascaded(node, entry.getValue());
+                if (diff.isEmpty()) {
+                    continue;
+                }
+                Set<String> labels = registry.hasLabelFilters ? labelNames(node.getLabels()) : null;
+                included.of(node);
+
+                for (PropertyTrigger trigger : registry.onModifyDispatch.route(diff.getKeys())) {
+                    if (trigger.isIgnoringCascades() || skips(trigger, labels, included) || !trigger.matchesValues(diff)) {
+                        continue;
+                    }
+                    if (trigger.isAsynchronous() || trigger.isHandlingCollections()) {
+                        if (notified(notified, trigger).add(node.getId())) {
+                            if (trigger.isAsynchronous()) {
+                                state.asyncEvents.add(asyncEvent(trigger, MODIFY, node, diff));
+                            } else {
+                                addToBatch(modifiedBatches, trigger, node);
+                            }
+                        }
+                        continue;
+                    }
+                    Object[] before = cascade.before(trigger, node);
+                    invokeOnModify(budget, trigger, previous, node, diff);
+                    cascade.after(trigger, previous, node, before);
+                }
+                for (PropertyTrigger trigger : registry.onChangeDispatch.route(diff.getKeys())) {
+                    if (trigger.isIgnoringCascades() || skips(trigger, labels, included) || !trigger.matchesValues(diff)) {
+                        continue;
+                    }
+                    Object[] before = cascade.before(trigger, node);
+                    invokeOnChange(budget, trigger, MODIFY, previous, node, diff);
+                    cascade.after(trigger, previous, node, before);
+                }
+            }
+        }
+    }
+
+    private static Set<Long> notified(Map<PropertyTrigger, Set<Long>> notified, PropertyTrigger trigger) {
+        Set<Long> nodeIds = notified.get(trigger);
+        if (nodeIds == null) {
+            nodeIds = new HashSet<>();
+            notified.put(trigger, nodeIds);
+        }
+        return nodeIds;
+    }
+
+    private void invokeOnModify(TriggerBudget budget, PropertyTrigger trigger, Node previous, Node current, PropertyDiff diff) {
+        if (!budget.admits(trigger, PropertyTrigger.MODIFY, current.getId())) {
+            return;
+        }
+        long start = System.nanoTime();
+        Boolean result;
+        try {
+            result = trigger.OnModify(previous, current, diff);
+        } catch (RuntimeException e) {
+            invocations.failed(trigger, PropertyTrigger.MODIFY, start, current);
+            throw e;
+        }
+        invocations.completed(trigger, PropertyTrigger.MODIFY, start, result, current);
+        budget.charge(trigger, PropertyTrigger.MODIFY, start);
+    }
+
+    private void invokeOnModify(TriggerBudget budget, PropertyTrigger trigger, Collection<Node> nodes) {
+        if (!budget.admits(trigger, PropertyTrigger.MODIFY, -1)) {
+            return;
+        }
+        long start = System.nanoTime();
+        Boolean result;
+        try {
+            result = trigger.OnModify(nodes);
+        } catch (RuntimeException e) {
+            invocations.failed(trigger, PropertyTrigger.MODIFY, start, nodes);
+            throw e;
+        }
+        invocations.completed(trigger, PropertyTrigger.MODIFY, start, result, nodes);
+        budget.charge(trigger, PropertyTrigger.MODIFY, start);
+    }
+
+    private void invokeOnDelete(TriggerBudget budget, PropertyTrigger trigger, Node node) {
+        if (!budget.admits(trigger, PropertyTrigger.DELETE, node.getId())) {
+            return;
+        }
+        long start = System.nanoTime();
+        Boolean result;
+        try {
+            result = trigger.OnDelete(node);
+        } catch (RuntimeException e) {
+            invocations.failed(trigger, PropertyTrigger.DELETE, start, node);
+            throw e;
+        }
+        invocations.completed(trigger, PropertyTrigger.DELETE, start, result, node);
+        budget.charge(trigger, PropertyTrigger.DELETE, start);
+    }
+
+    private void invokeOnDelete(TriggerBudget budget, PropertyTrigger trigger, Collection<Node> nodes) {
+        if (!budget.admits(trigger, PropertyTrigger.DELETE, -1)) {
+            return;
+        }
+        long start = System.nanoTime();
+        Boolean result;
+        try {
+            result = trigger.OnDelete(nodes);
+        } catch (RuntimeException e) {
+            invocations.failed(trigger, PropertyTrigger.DELETE, start, nodes);
+            throw e;
+        }
+        invocations.completed(trigger, PropertyTrigger.DELETE, start, result, nodes);
+        budget.charge(trigger, PropertyTrigger.DELETE, start);
+    }
+
+    private void invokeOnCreate(TriggerBudget budget, PropertyTrigger trigger, Relationship relationship) {
+        if (!budget.admits(trigger, PropertyTrigger.CREATE, -1)) {
+            return;
+        }
+        long start = System.nanoTime();
+        Boolean result;
+        try {
+            result = trigger.OnCreate(relationship);
+        } catch (RuntimeException e) {
+            invocations.failed(trigger, PropertyTrigger.CREATE, start, relationship);
+            throw e;
+        }
+        invocations.completed(trigger, PropertyTrigger.CREATE, start, result, relationship);
+        budget.charge(trigger, PropertyTrigger.CREATE, start);
+    }
+
+    private void invokeOnModify(TriggerBudget budget, PropertyTrigger trigger, Relationship previous, Relationship current, PropertyDiff diff) {
+        if (!budget.admits(trigger, PropertyTrigger.MODIFY, -1)) {
+            return;
+        }
+        long start = System.nanoTime();
+        Boolean result;
+        try {
+            result = trigger.OnModify(previous, current, diff);
+        } catch (RuntimeException e) {
+            invocations.failed(trigger, PropertyTrigger.MODIFY, start, current);
+            throw e;
+        }
+        invocations.completed(trigger, PropertyTrigger.MODIFY, start, result, current);
+        budget.charge(trigger, PropertyTrigger.MODIFY, start);
+    }
+
+    private void invokeOnDelete(TriggerBudget budget, PropertyTrigger trigger, Relationship relationship) {
+        if (!budget.admits(trigger, PropertyTrigger.DELETE, -1)) {
+            return;
+        }
+        long start = System.nanoTime();
+        Boolean result;
+        try {
+            result = trigger.OnDelete(relationship);
+        } catch (RuntimeException e) {
+            invocations.failed(trigger, PropertyTrigger.DELETE, start, relationship);
+            throw e;
+        }
+        invocations.completed(trigger, PropertyTrigger.DELETE, start, result, relationship);
+        budget.charge(trigger, PropertyTrigger.DELETE, start);
+    }
+
+    private void invokeOnChange(TriggerBudget budget, PropertyTrigger trigger, int event, Node previous, Node current, PropertyDiff diff) {
+        if (!budget.admits(trigger, event, (current != null ? current : previous).getId())) {
+            return;
+        }
+        long start = System.nanoTime();
+        Boolean result;
+        try {
+            result = trigger.OnChange(event, previous, current, diff);
+        } catch (RuntimeException e) {
+            invocations.failed(trigger, event, start, current != null ? current : previous);
+            throw e;
+        }
+        invocations.completed(trigger, event, start, result, current != null ? current : previous);
+        budget.charge(trigger, event, start);
+    }
+
+    private void invokeOnLabelChanges(TriggerBudget budget, PropertyTrigger trigger, Node node, Set<String> addedLabels, Set<String> removedLabels) {
+        Collection<String> watched = trigger._whenLabelsChange;
+        Collection<String> added = addedLabels;
+        Collection<String> removed = removedLabels;
+        if (!watched.isEmpty()) {
+            added = new ArrayList<>(addedLabels);
+            added.retainAll(watched);
+            removed = new ArrayList<>(removedLabels);
+            removed.retainAll(watched);
+        }
+        if ((added.isEmpty() && removed.isEmpty()) || !budget.admits(trigger, PropertyTrigger.MODIFY, -1)) {
+            return;
+        }
+        long start = System.nanoTime();
+        Boolean result;
+        try {
+            result = trigger.OnLabelsChanged(node, added, removed);
+        } catch (RuntimeException e) {
+            invocations.failed(trigger, PropertyTrigger.MODIFY, start, node);
+            throw e;
+        }
+        invocations.completed(trigger, PropertyTrigger.MODIFY, start, result, node);
+        budget.charge(trigger, PropertyTrigger.MODIFY, start);
+    }
+
+    // Label filters are only evaluated when labels have been read, i.e. when some trigger declares one; inclusion
+    // policies last, as they may need to read the entity
+    private static boolean skips(PropertyTrigger trigger, Set<String> labels, TriggerPolicies.Evaluation included) {
+        return (labels != null && !trigger.matchesLabels(labels)) || !included.includes(trigger);
+    }
+
+    // Debounced triggers get the values of the changed properties, which can't be read once the transaction has committed
+    private static AsyncTriggerEvent asyncEvent(PropertyTrigger trigger, int event, Node node, PropertyDiff diff) {
+        if (!trigger.isDebounced()) {
+            return new AsyncTriggerEvent(trigger, event, node.getId());
+        }
+        if (diff == null) {
+            diff = event == PropertyTrigger.CREATE ? PropertyDiff.created(node) : PropertyDiff.deleted(node);
+        }
+        return AsyncTriggerEvent.debounced(trigger, event, node.getId(), diff);
+    }
+
+    private static void addToBatch(Map<PropertyTrigger, List<Node>> batches, PropertyTrigger trigger, Node node) {
+        List<Node> nodes = batches.get(trigger);
+        if (nodes == null) {
+            nodes = new ArrayList<>();
+            batches.put(trigger, nodes);
+        }
+        nodes.add(node);
+    }
+
+    /**
+     * JMX view of this module's trigger metrics.
+     */
+    private class MetricsMXBean implements TriggerMetricsMXBean {
+
+        @Override
+        public List<TriggerEventStatistics> getStatistics() {
+            return TriggerModule.this.getStatistics();
+        }
+
+        @Override
+        public long getSlowInvocationThresholdMillis() {
+            return invocations.getSlowThresholdMillis();
+        }
+
+        @Override
+        public void setSlowInvocationThresholdMillis(long millis) {
+            invocations.setSlowThresholdMillis(millis);
+        }
+
+        @Override
+        public void resetStatistics() {
+            for (PropertyTrigger trigger : registry.all()) {
+                trigger.getMetrics().reset();
+            }
+        }
+    }
+
+    private static Set<String> labelNames(Iterable<Label> labels) {
+        Set<String> result = new HashSet<String>();
+        for (Label label : labels) {
+            result.add(label.name());
+        }
+        return result;
+    }
+
+    private static Collection<String> changedLabels(Set<String> addedLabels, Set<String> removedLabels) {
+        if (removedLabels.isEmpty()) {
+            return addedLabels;
+        }
+        if (addedLabels.isEmpty()) {
+            return removedLabels;
+        }
+        Set<String> result = new HashSet<String>(addedLabels);
+        result.addAll(removedLabels);
+        return result;
     }
 
-    
 // Originally pass at conception for example code; for reference only until it gets deleted 
 /*
  * This now goes into class UuidTrigger extends PropertyTrigger class 
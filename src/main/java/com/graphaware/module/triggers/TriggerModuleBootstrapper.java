@@ -17,6 +17,9 @@
 package com.graphaware.module.triggers;
 
 import com.graphaware.common.policy.NodeInclusionPolicy;
+import com.graphaware.module.uuid.IndexSharding;
+import com.graphaware.module.uuid.UuidConfiguration;
+import com.graphaware.module.uuid.policy.StringToCompiledNodeInclusionPolicy;
 import com.graphaware.runtime.config.function.StringToNodeInclusionPolicy;
 import com.graphaware.runtime.module.RuntimeModule;
 import com.graphaware.runtime.module.RuntimeModuleBootstrapper;
@@ -39,6 +42,27 @@ public class TriggerModuleBootstrapper implements RuntimeModuleBootstrapper {
     private static final String TRIGGER_NODE_LABEL = TriggerProperties.DATABASE_TRIGGER_NODE_LABEL;
     private static final String TRIGGER_INDEX_NAME = TriggerProperties.TRIGGER_NODEX_INDEX_NAME;
     private static final String NODE = "node";
+    private static final String ASYNC_THREADS = "asyncThreads";
+    private static final String ASYNC_QUEUE_CAPACITY = "asyncQueueCapacity";
+    private static final String ASYNC_OVERFLOW_POLICY = "asyncOverflowPolicy";
+    private static final String SLOW_INVOCATION_THRESHOLD = "slowInvocationThresholdMillis";
+    private static final String VALIDATION_PARALLELISM = "validationParallelism";
+    private static final String TRIGGER_BUDGET = "triggerBudgetMillis";
+    private static final String TRANSACTION_BUDGET = "transactionBudgetMillis";
+    private static final String BUDGET_POLICY = "budgetPolicy";
+    private static final String CIRCUIT_BREAKER_THRESHOLD = "circuitBreakerThreshold";
+    private static final String CIRCUIT_BREAKER_OPEN = "circuitBreakerOpenMillis";
+    private static final String BACKFILL_THREADS = "backfillThreads";
+    private static final String REVISION_PROPERTY = "revisionProperty";
+    private static final String UUID_PROPERTY = "uuidProperty";
+    private static final String UUID_INDEX = "uuidIndex";
+    private static final String UUID_INDEX_SHARDING = "uuidIndexSharding";
+    private static final String UUID_INDEX_SHARDS = "uuidIndexShards";
+    private static final String UUID_NODE = "uuidNode";
+    private static final String CHANGE_LOG_DIRECTORY = "changeLogDirectory";
+    private static final String CHANGE_LOG_SEGMENT_SIZE = "changeLogSegmentSize";
+    private static final String CHANGE_LOG_RETAINED_SEGMENTS = "changeLogRetainedSegments";
+    private static final String CHANGE_LOG_RETENTION = "changeLogRetentionMillis";
 
     /**
      * @{inheritDoc}
@@ -65,6 +89,53 @@ public class TriggerModuleBootstrapper implements RuntimeModuleBootstrapper {
             LOG.info(TRIGGER_INDEX_NAME + " set to {}", configuration.getTriggerIndexName());
         }
     	configuration = configuration.withAllProperties(directoryName, triggerNodeLabel, triggerIndexName);
+        if (config.get(ASYNC_THREADS) != null || config.get(ASYNC_QUEUE_CAPACITY) != null || config.get(ASYNC_OVERFLOW_POLICY) != null) {
+            int threads = config.get(ASYNC_THREADS) != null ? Integer.valueOf(config.get(ASYNC_THREADS)) : configuration.getAsyncThreads();
+            int queueCapacity = config.get(ASYNC_QUEUE_CAPACITY) != null ? Integer.valueOf(config.get(ASYNC_QUEUE_CAPACITY)) : configuration.getAsyncQueueCapacity();
+            AsyncOverflowPolicy overflowPolicy = config.get(ASYNC_OVERFLOW_POLICY) != null ? AsyncOverflowPolicy.valueOf(config.get(ASYNC_OVERFLOW_POLICY).toUpperCase()) : configuration.getAsyncOverflowPolicy();
+            configuration = configuration.withAsyncExecution(threads, queueCapacity, overflowPolicy);
+            LOG.info("Asynchronous triggers run on {} threads with queue capacity {} and overflow policy {}", threads, queueCapacity, overflowPolicy);
+        }
+        if (config.get(SLOW_INVOCATION_THRESHOLD) != null) {
+            configuration = configuration.withSlowInvocationThreshold(Long.valueOf(config.get(SLOW_INVOCATION_THRESHOLD)));
+            LOG.info(SLOW_INVOCATION_THRESHOLD + " set to {}", configuration.getSlowInvocationThresholdMillis());
+        }
+        if (config.get(VALIDATION_PARALLELISM) != null) {
+            configuration = configuration.withValidationParallelism(Integer.valueOf(config.get(VALIDATION_PARALLELISM)));
+            LOG.info(VALIDATION_PARALLELISM + " set to {}", configuration.getValidationParallelism());
+        }
+        if (config.get(TRIGGER_BUDGET) != null || config.get(TRANSACTION_BUDGET) != null || config.get(BUDGET_POLICY) != null) {
+            long triggerBudget = config.get(TRIGGER_BUDGET) != null ? Long.valueOf(config.get(TRIGGER_BUDGET)) : configuration.getTriggerBudgetMillis();
+            long transactionBudget = config.get(TRANSACTION_BUDGET) != null ? Long.valueOf(config.get(TRANSACTION_BUDGET)) : configuration.getTransactionBudgetMillis();
+            TriggerBudgetPolicy policy = config.get(BUDGET_POLICY) != null ? TriggerBudgetPolicy.valueOf(config.get(BUDGET_POLICY).toUpperCase()) : configuration.getBudgetPolicy();
+            configuration = configuration.withTimeBudgets(triggerBudget, transactionBudget, policy);
+            LOG.info("Trigger time budget {} ms, transaction time budget {} ms, policy {}", triggerBudget, transactionBudget, policy);
+        }
+        if (config.get(CIRCUIT_BREAKER_THRESHOLD) != null || config.get(CIRCUIT_BREAKER_OPEN) != null) {
+            int threshold = config.get(CIRCUIT_BREAKER_THRESHOLD) != null ? Integer.valueOf(config.get(CIRCUIT_BREAKER_THRESHOLD)) : configuration.getCircuitBreakerThreshold();
+            long openMillis = config.get(CIRCUIT_BREAKER_OPEN) != null ? Long.valueOf(config.get(CIRCUIT_BREAKER_OPEN)) : configuration.getCircuitBreakerOpenMillis();
+            configuration = configuration.withCircuitBreaker(threshold, openMillis);
+            LOG.info("Triggers over budget in {} consecutive transactions are disabled for {} ms", threshold, openMillis);
+        }
+        if (config.get(BACKFILL_THREADS) != null) {
+            configuration = configuration.withBackfillThreads(Integer.valueOf(config.get(BACKFILL_THREADS)));
+            LOG.info(BACKFILL_THREADS + " set to {}", configuration.getBackfillThreads());
+        }
+        if (config.get(REVISION_PROPERTY) != null && config.get(REVISION_PROPERTY).length() > 0) {
+            configuration = configuration.withRevisionProperty(config.get(REVISION_PROPERTY));
+            LOG.info(REVISION_PROPERTY + " set to {}", configuration.getRevisionProperty());
+        }
+        if (config.get(UUID_PROPERTY) != null && config.get(UUID_PROPERTY).length() > 0) {
+            configuration = configuration.withUuid(uuidConfiguration(config));
+            LOG.info("UUIDs assigned in {} by the trigger module", configuration.getUuidConfiguration().getUuidProperty());
+        }
+        if (config.get(CHANGE_LOG_DIRECTORY) != null && config.get(CHANGE_LOG_DIRECTORY).length() > 0) {
+            int segmentSize = config.get(CHANGE_LOG_SEGMENT_SIZE) != null ? Integer.valueOf(config.get(CHANGE_LOG_SEGMENT_SIZE)) : configuration.getChangeLogSegmentSize();
+            int retainedSegments = config.get(CHANGE_LOG_RETAINED_SEGMENTS) != null ? Integer.valueOf(config.get(CHANGE_LOG_RETAINED_SEGMENTS)) : configuration.getChangeLogRetainedSegments();
+            long retentionMillis = config.get(CHANGE_LOG_RETENTION) != null ? Long.valueOf(config.get(CHANGE_LOG_RETENTION)) : configuration.getChangeLogRetentionMillis();
+            configuration = configuration.withChangeLog(config.get(CHANGE_LOG_DIRECTORY), segmentSize, retainedSegments, retentionMillis);
+            LOG.info("Change log in {} with {} byte segments, keeping {} segments for {} ms", config.get(CHANGE_LOG_DIRECTORY), segmentSize, retainedSegments, retentionMillis);
+        }
         if (config.get(NODE) != null) {
             NodeInclusionPolicy policy = StringToNodeInclusionPolicy.getInstance().apply(config.get(NODE));
             LOG.info(NODE + " Inclusion Strategy set to {}", policy);
@@ -73,4 +144,25 @@ public class TriggerModuleBootstrapper implements RuntimeModuleBootstrapper {
 
         return new TriggerModule(moduleId, configuration, database);
     }
+
+    // Same keys as the UUID module's, the inclusion policy of nodes assigned UUIDs under its own key
+    private static UuidConfiguration uuidConfiguration(Map<String, String> config) {
+        UuidConfiguration configuration = UuidConfiguration.defaultConfiguration().withUuidProperty(config.get(UUID_PROPERTY));
+        if (config.get(UUID_INDEX) != null && config.get(UUID_INDEX).length() > 0) {
+            configuration = configuration.withUuidIndex(config.get(UUID_INDEX));
+        }
+        if (config.get(UUID_INDEX_SHARDING) != null && config.get(UUID_INDEX_SHARDING).length() > 0) {
+            IndexSharding sharding = IndexSharding.valueOf(config.get(UUID_INDEX_SHARDING).trim().toUpperCase());
+            int shards = configuration.getIndexShards();
+            if (config.get(UUID_INDEX_SHARDS) != null && config.get(UUID_INDEX_SHARDS).length() > 0) {
+                shards = Integer.parseInt(config.get(UUID_INDEX_SHARDS).trim());
+            }
+            configuration = configuration.withIndexSharding(sharding, shards);
+        }
+        if (config.get(UUID_NODE) != null) {
+            NodeInclusionPolicy policy = StringToCompiledNodeInclusionPolicy.getInstance().apply(config.get(UUID_NODE));
+            configuration = configuration.with(policy);
+        }
+        return configuration;
+    }
 }
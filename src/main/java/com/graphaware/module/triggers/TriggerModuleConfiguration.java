@@ -16,6 +16,7 @@
 package com.graphaware.module.triggers;
 
 import com.graphaware.common.policy.InclusionPolicies;
+import com.graphaware.module.uuid.UuidConfiguration;
 import com.graphaware.runtime.config.BaseTxDrivenModuleConfiguration;
 import com.graphaware.runtime.policy.InclusionPoliciesFactory;
 
@@ -29,11 +30,39 @@ public class TriggerModuleConfiguration extends BaseTxDrivenModuleConfiguration<
     private static final String DEFAULT_DIRECTORY_NAME = TriggerProperties.DIRECTORY_NAME;
     private static final String DEFAULT_TRIGGER_NODE_LABEL = TriggerProperties.DATABASE_TRIGGER_NODE_LABEL;
     private static final String DEFAULT_INDEX_NAME = TriggerProperties.TRIGGER_NODEX_INDEX_NAME;
+    private static final int DEFAULT_ASYNC_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int DEFAULT_ASYNC_QUEUE_CAPACITY = 10000;
+    private static final AsyncOverflowPolicy DEFAULT_ASYNC_OVERFLOW_POLICY = AsyncOverflowPolicy.BLOCK;
+    private static final long DEFAULT_SLOW_INVOCATION_THRESHOLD_MILLIS = 100;
+    private static final int DEFAULT_VALIDATION_PARALLELISM = Runtime.getRuntime().availableProcessors();
+    private static final TriggerBudgetPolicy DEFAULT_BUDGET_POLICY = TriggerBudgetPolicy.SKIP;
+    private static final int DEFAULT_CIRCUIT_BREAKER_THRESHOLD = 5;
+    private static final long DEFAULT_CIRCUIT_BREAKER_OPEN_MILLIS = 60000;
+    private static final int DEFAULT_BACKFILL_THREADS = Runtime.getRuntime().availableProcessors();
+    private static final int DEFAULT_CHANGE_LOG_SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int DEFAULT_CHANGE_LOG_RETAINED_SEGMENTS = 16;
 
     private ArrayList<PropertyTrigger> propList = new ArrayList<PropertyTrigger>();
     private String directoryName;
     private String triggerNodeLabel;
     private String triggerIndexName;
+    private int asyncThreads = DEFAULT_ASYNC_THREADS;
+    private int asyncQueueCapacity = DEFAULT_ASYNC_QUEUE_CAPACITY;
+    private AsyncOverflowPolicy asyncOverflowPolicy = DEFAULT_ASYNC_OVERFLOW_POLICY;
+    private long slowInvocationThresholdMillis = DEFAULT_SLOW_INVOCATION_THRESHOLD_MILLIS;
+    private int validationParallelism = DEFAULT_VALIDATION_PARALLELISM;
+    private long triggerBudgetMillis = 0; // Per trigger and transaction, 0 for no budget
+    private long transactionBudgetMillis = 0; // For all triggers of a transaction, 0 for no budget
+    private TriggerBudgetPolicy budgetPolicy = DEFAULT_BUDGET_POLICY;
+    private int circuitBreakerThreshold = DEFAULT_CIRCUIT_BREAKER_THRESHOLD;
+    private long circuitBreakerOpenMillis = DEFAULT_CIRCUIT_BREAKER_OPEN_MILLIS;
+    private int backfillThreads = DEFAULT_BACKFILL_THREADS;
+    private String revisionProperty = null; // Property maintained by the built-in RevisionTrigger, null when disabled
+    private UuidConfiguration uuidConfiguration = null; // UUIDs assigned by the built-in UuidTrigger, null when disabled
+    private String changeLogDirectory = null; // Directory of the change data capture log, null when disabled
+    private int changeLogSegmentSize = DEFAULT_CHANGE_LOG_SEGMENT_SIZE;
+    private int changeLogRetainedSegments = DEFAULT_CHANGE_LOG_RETAINED_SEGMENTS; // 0 for no limit
+    private long changeLogRetentionMillis = 0; // 0 for no limit
 
     protected TriggerModuleConfiguration(InclusionPolicies inclusionPolicies) {
         super(inclusionPolicies);
@@ -46,6 +75,34 @@ public class TriggerModuleConfiguration extends BaseTxDrivenModuleConfiguration<
         this.triggerIndexName = triggerIndexName;
     }
 
+    protected TriggerModuleConfiguration(InclusionPolicies inclusionPolicies, String directoryName, String triggerNodeLabel, String triggerIndexName, int asyncThreads, int asyncQueueCapacity, AsyncOverflowPolicy asyncOverflowPolicy, long slowInvocationThresholdMillis, int validationParallelism) {
+        this(inclusionPolicies, directoryName, triggerNodeLabel, triggerIndexName);
+        this.asyncThreads = asyncThreads;
+        this.asyncQueueCapacity = asyncQueueCapacity;
+        this.asyncOverflowPolicy = asyncOverflowPolicy;
+        this.slowInvocationThresholdMillis = slowInvocationThresholdMillis;
+        this.validationParallelism = validationParallelism;
+    }
+
+    /**
+     * Copy another configuration, with different inclusion policies.
+     */
+    protected TriggerModuleConfiguration(InclusionPolicies inclusionPolicies, TriggerModuleConfiguration other) {
+        this(inclusionPolicies, other.directoryName, other.triggerNodeLabel, other.triggerIndexName, other.asyncThreads, other.asyncQueueCapacity, other.asyncOverflowPolicy, other.slowInvocationThresholdMillis, other.validationParallelism);
+        this.triggerBudgetMillis = other.triggerBudgetMillis;
+        this.transactionBudgetMillis = other.transactionBudgetMillis;
+        this.budgetPolicy = other.budgetPolicy;
+        this.circuitBreakerThreshold = other.circuitBreakerThreshold;
+        this.circuitBreakerOpenMillis = other.circuitBreakerOpenMillis;
+        this.backfillThreads = other.backfillThreads;
+        this.revisionProperty = other.revisionProperty;
+        this.uuidConfiguration = other.uuidConfiguration;
+        this.changeLogDirectory = other.changeLogDirectory;
+        this.changeLogSegmentSize = other.changeLogSegmentSize;
+        this.changeLogRetainedSegments = other.changeLogRetainedSegments;
+        this.changeLogRetentionMillis = other.changeLogRetentionMillis;
+    }
+
     /**
      * Create a default configuration with default trigger_directory property = {@link #DEFAULT_DIRECTORY_NAME}, trigger index = {@link #DEFAULT_TRIGGER_NODEX_INDEX}
      * labels=all (including nodes with no labels)
@@ -65,7 +122,7 @@ public class TriggerModuleConfiguration extends BaseTxDrivenModuleConfiguration<
      */
     @Override
     protected TriggerModuleConfiguration newInstance(InclusionPolicies inclusionPolicies) {
-        return new TriggerModuleConfiguration(inclusionPolicies, getDirectoryName(), getTriggerNodeLabel(), getTriggerIndexName());
+        return new TriggerModuleConfiguration(inclusionPolicies, this);
     }
 
     public String getDirectoryName() {
@@ -80,6 +137,74 @@ public class TriggerModuleConfiguration extends BaseTxDrivenModuleConfiguration<
         return this.triggerIndexName;
     }
 
+    public int getAsyncThreads() {
+        return asyncThreads;
+    }
+
+    public int getAsyncQueueCapacity() {
+        return asyncQueueCapacity;
+    }
+
+    public AsyncOverflowPolicy getAsyncOverflowPolicy() {
+        return asyncOverflowPolicy;
+    }
+
+    public long getSlowInvocationThresholdMillis() {
+        return slowInvocationThresholdMillis;
+    }
+
+    public int getValidationParallelism() {
+        return validationParallelism;
+    }
+
+    public long getTriggerBudgetMillis() {
+        return triggerBudgetMillis;
+    }
+
+    public long getTransactionBudgetMillis() {
+        return transactionBudgetMillis;
+    }
+
+    public TriggerBudgetPolicy getBudgetPolicy() {
+        return budgetPolicy;
+    }
+
+    public int getCircuitBreakerThreshold() {
+        return circuitBreakerThreshold;
+    }
+
+    public long getCircuitBreakerOpenMillis() {
+        return circuitBreakerOpenMillis;
+    }
+
+    public int getBackfillThreads() {
+        return backfillThreads;
+    }
+
+    public String getRevisionProperty() {
+        return revisionProperty;
+    }
+
+    public UuidConfiguration getUuidConfiguration() {
+        return uuidConfiguration;
+    }
+
+    public String getChangeLogDirectory() {
+        return changeLogDirectory;
+    }
+
+    public int getChangeLogSegmentSize() {
+        return changeLogSegmentSize;
+    }
+
+    public int getChangeLogRetainedSegments() {
+        return changeLogRetainedSegments;
+    }
+
+    public long getChangeLogRetentionMillis() {
+        return changeLogRetentionMillis;
+    }
+
     /**
      * Create a new instance of this {@link TriggerModuleConfiguration} with different directory, trigger, and indexName property.
      *
@@ -97,11 +222,177 @@ public class TriggerModuleConfiguration extends BaseTxDrivenModuleConfiguration<
 		if (triggerIndexName == null || triggerIndexName.length() == 0) {
 			triggerIndexName = getTriggerIndexName();
 		}
-		return new TriggerModuleConfiguration(getInclusionPolicies(), directoryName, triggerNodeLabel, triggerIndexName);
+		TriggerModuleConfiguration result = new TriggerModuleConfiguration(getInclusionPolicies(), this);
+		result.directoryName = directoryName;
+		result.triggerNodeLabel = triggerNodeLabel;
+		result.triggerIndexName = triggerIndexName;
+		return result;
 	}
 
+    /**
+     * Create a new instance of this {@link TriggerModuleConfiguration} with different settings for the execution of
+     * asynchronous triggers.
+     *
+     * @param threads        number of worker threads; events of the same node are always handled by the same worker.
+     * @param queueCapacity  maximum number of events waiting to be handled, across all workers.
+     * @param overflowPolicy what to do with events when the queue of a worker is full.
+     * @return new instance.
+     */
+    public TriggerModuleConfiguration withAsyncExecution(int threads, int queueCapacity, AsyncOverflowPolicy overflowPolicy) {
+        if (threads < 1 || queueCapacity < threads) {
+            throw new IllegalArgumentException("There must be at least one thread and one queue slot per thread");
+        }
+        TriggerModuleConfiguration result = new TriggerModuleConfiguration(getInclusionPolicies(), this);
+        result.asyncThreads = threads;
+        result.asyncQueueCapacity = queueCapacity;
+        result.asyncOverflowPolicy = overflowPolicy;
+        return result;
+    }
+
+    /**
+     * Create a new instance of this {@link TriggerModuleConfiguration} with a different threshold above which trigger
+     * invocations are logged as slow.
+     *
+     * @param millis threshold in milliseconds.
+     * @return new instance.
+     */
+    public TriggerModuleConfiguration withSlowInvocationThreshold(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Slow invocation threshold must not be negative");
+        }
+        TriggerModuleConfiguration result = new TriggerModuleConfiguration(getInclusionPolicies(), this);
+        result.slowInvocationThresholdMillis = millis;
+        return result;
+    }
+
+    /**
+     * Create a new instance of this {@link TriggerModuleConfiguration} with a different number of threads validating
+     * large transactions with read-only validators.
+     *
+     * @param parallelism number of threads; 1 validates on the committing thread.
+     * @return new instance.
+     */
+    public TriggerModuleConfiguration withValidationParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Validation parallelism must be at least 1");
+        }
+        TriggerModuleConfiguration result = new TriggerModuleConfiguration(getInclusionPolicies(), this);
+        result.validationParallelism = parallelism;
+        return result;
+    }
+
+    /**
+     * Create a new instance of this {@link TriggerModuleConfiguration} with time budgets for triggers running before
+     * commit. Budgets are checked after each invocation (a running callback can't be interrupted); once a trigger has
+     * spent more than its budget in a transaction, or all triggers together more than the transaction budget, the
+     * policy is applied to the rest of the transaction.
+     *
+     * @param triggerMillis     time each trigger may spend per transaction, 0 for no limit; triggers can override it
+     *                          with {@link PropertyTrigger#withTimeBudget(long)}.
+     * @param transactionMillis time all triggers together may spend per transaction, 0 for no limit.
+     * @param policy            what to do when a budget is exceeded.
+     * @return new instance.
+     */
+    public TriggerModuleConfiguration withTimeBudgets(long triggerMillis, long transactionMillis, TriggerBudgetPolicy policy) {
+        if (triggerMillis < 0 || transactionMillis < 0) {
+            throw new IllegalArgumentException("Time budgets must not be negative");
+        }
+        TriggerModuleConfiguration result = new TriggerModuleConfiguration(getInclusionPolicies(), this);
+        result.triggerBudgetMillis = triggerMillis;
+        result.transactionBudgetMillis = transactionMillis;
+        result.budgetPolicy = policy;
+        return result;
+    }
+
+    /**
+     * Create a new instance of this {@link TriggerModuleConfiguration} with different circuit breaker settings. A
+     * trigger exceeding its time budget in the given number of consecutive transactions is disabled (skipped, or
+     * demoted with {@link TriggerBudgetPolicy#DEMOTE}) for the given time, after which it gets one more chance.
+     *
+     * @param threshold  consecutive transactions over budget before a trigger is disabled, 0 to never disable.
+     * @param openMillis how long a disabled trigger stays disabled.
+     * @return new instance.
+     */
+    public TriggerModuleConfiguration withCircuitBreaker(int threshold, long openMillis) {
+        if (threshold < 0 || openMillis < 0) {
+            throw new IllegalArgumentException("Circuit breaker threshold and time must not be negative");
+        }
+        TriggerModuleConfiguration result = new TriggerModuleConfiguration(getInclusionPolicies(), this);
+        result.circuitBreakerThreshold = threshold;
+        result.circuitBreakerOpenMillis = openMillis;
+        return result;
+    }
+
+    /**
+     * Create a new instance of this {@link TriggerModuleConfiguration} with a different number of threads applying
+     * backfilling triggers to existing nodes (see {@link PropertyTrigger#backfillsExistingNodes()}).
+     *
+     * @param threads number of worker threads.
+     * @return new instance.
+     */
+    public TriggerModuleConfiguration withBackfillThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("There must be at least one backfill thread");
+        }
+        TriggerModuleConfiguration result = new TriggerModuleConfiguration(getInclusionPolicies(), this);
+        result.backfillThreads = threads;
+        return result;
+    }
+
+    /**
+     * Create a new instance of this {@link TriggerModuleConfiguration} with the built-in {@link RevisionTrigger}
+     * maintaining node revisions.
+     *
+     * @param property name of the revision property, usually {@link TriggerProperties#REVISION}; null to disable.
+     * @return new instance.
+     */
+    public TriggerModuleConfiguration withRevisionProperty(String property) {
+        TriggerModuleConfiguration result = new TriggerModuleConfiguration(getInclusionPolicies(), this);
+        result.revisionProperty = property;
+        return result;
+    }
+
+    /**
+     * Create a new instance of this {@link TriggerModuleConfiguration} with the built-in {@link UuidTrigger} assigning
+     * UUIDs to nodes, instead of a separate {@link com.graphaware.module.uuid.UuidModule}.
+     *
+     * @param configuration of the UUIDs, as for the UUID module; null to disable.
+     * @return new instance.
+     */
+    public TriggerModuleConfiguration withUuid(UuidConfiguration configuration) {
+        TriggerModuleConfiguration result = new TriggerModuleConfiguration(getInclusionPolicies(), this);
+        result.uuidConfiguration = configuration;
+        return result;
+    }
+
+    /**
+     * Create a new instance of this {@link TriggerModuleConfiguration} recording the changes of committed transactions
+     * in a {@link com.graphaware.module.triggers.cdc.ChangeLog}.
+     *
+     * @param directory        directory of the log; null to disable.
+     * @param segmentSize      size of a log segment in bytes.
+     * @param retainedSegments number of segments to keep, 0 for no limit.
+     * @param retentionMillis  how long to keep segments after they have last been appended to, 0 for no limit.
+     * @return new instance.
+     */
+    public TriggerModuleConfiguration withChangeLog(String directory, int segmentSize, int retainedSegments, long retentionMillis) {
+        if (segmentSize < 1024 || retainedSegments < 0 || retentionMillis < 0) {
+            throw new IllegalArgumentException("Change log segments must be at least 1 KB and retention must not be negative");
+        }
+        TriggerModuleConfiguration result = new TriggerModuleConfiguration(getInclusionPolicies(), this);
+        result.changeLogDirectory = directory;
+        result.changeLogSegmentSize = segmentSize;
+        result.changeLogRetainedSegments = retainedSegments;
+        result.changeLogRetentionMillis = retentionMillis;
+        return result;
+    }
+
     /**
      * {@inheritDoc}
+     * <p/>
+     * Operational settings (threads, queues, budgets, circuit breaker, slow invocation threshold, change log retention)
+     * are left out: the runtime initializes the module again whenever the stored configuration differs, and tuning
+     * them must not cause that.
      */
     @Override
     public boolean equals(Object o) {
@@ -114,6 +405,9 @@ public class TriggerModuleConfiguration extends BaseTxDrivenModuleConfiguration<
         if (!directoryName.equals(that.directoryName)) return false;
         if (!triggerNodeLabel.equals(that.triggerNodeLabel)) return false;
         if (!triggerIndexName.equals(that.triggerIndexName)) return false;
+        if (revisionProperty != null ? !revisionProperty.equals(that.revisionProperty) : that.revisionProperty != null) return false;
+        if (uuidConfiguration != null ? !uuidConfiguration.equals(that.uuidConfiguration) : that.uuidConfiguration != null) return false;
+        if (changeLogDirectory != null ? !changeLogDirectory.equals(that.changeLogDirectory) : that.changeLogDirectory != null) return false;
 
         return true;
     }
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+import com.graphaware.common.policy.InclusionPolicies;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Inclusion policies of the triggers of a {@link TriggerRegistry}, grouped so that triggers with equal policies share
+ * a group. A group's policy is evaluated at most once per node or relationship, and only when one of its triggers is
+ * about to be called for it. Triggers with the module's own policies aren't grouped, as the module only sees what
+ * those policies include.
+ */
+final class TriggerPolicies {
+
+    private static final byte UNKNOWN = 0, INCLUDED = 1, EXCLUDED = 2;
+
+    // Distinct policies other than the module's
+    private final InclusionPolicies[] groups;
+
+    // Group index of triggers with policies other than the module's
+    private final Map<PropertyTrigger, Integer> groupOf = new IdentityHashMap<>();
+
+    TriggerPolicies(Collection<PropertyTrigger> triggers, InclusionPolicies modulePolicies) {
+        List<InclusionPolicies> distinct = new ArrayList<>();
+        for (PropertyTrigger trigger : triggers) {
+            InclusionPolicies policies = trigger.getInclusionPolicies();
+            if (policies == null || policies.equals(modulePolicies)) {
+                continue;
+            }
+            int group = distinct.indexOf(policies);
+            if (group < 0) {
+                group = distinct.size();
+                distinct.add(policies);
+            }
+            groupOf.put(trigger, group);
+        }
+        groups = distinct.toArray(new InclusionPolicies[distinct.size()]);
+    }
+
+    /**
+     * @return number of distinct policies that need to be evaluated.
+     */
+    int groups() {
+        return groups.length;
+    }
+
+    /**
+     * @return a new evaluation, to be reused for the entities of one transaction.
+     */
+    Evaluation evaluation() {
+        return new Evaluation();
+    }
+
+    /**
+     * Memoized results of the policies for one node or relationship at a time.
+     */
+    final class Evaluation {
+
+        private final byte[] results = new byte[groups.length];
+        private Node node;
+        private Relationship relationship;
+
+        Evaluation of(Node node) {
+            this.node = node;
+            this.relationship = null;
+            Arrays.fill(results, UNKNOWN);
+            return this;
+        }
+
+        Evaluation of(Relationship relationship) {
+            this.node = null;
+            this.relationship = relationship;
+            Arrays.fill(results, UNKNOWN);
+            return this;
+        }
+
+        /**
+         * @param trigger about to be called.
+         * @return true iff the trigger's policy includes the current node or relationship.
+         */
+        boolean includes(PropertyTrigger trigger) {
+            if (groups.length == 0) {
+                return true;
+            }
+            Integer group = groupOf.get(trigger);
+            if (group == null) {
+                return true;
+            }
+            byte result = results[group];
+            if (result == UNKNOWN) {
+                InclusionPolicies policies = groups[group];
+                boolean included = node != null
+                        ? policies.getNodeInclusionPolicy().include(node)
+                        : policies.getRelationshipInclusionPolicy().include(relationship);
+                result = included ? INCLUDED : EXCLUDED;
+                results[group] = result;
+            }
+            return result == INCLUDED;
+        }
+    }
+}
@@ -24,6 +24,18 @@ public final class TriggerProperties {
     public static final String DATABASE_TRIGGER_NODE_LABEL = "DATABASE_TRIGGER";
     public static final String TRIGGER_NODEX_INDEX_NAME = "triggerNodeIndex";
 
+    // Properties of trigger nodes (DATABASE_TRIGGER) defining script triggers
+    public static final String TRIGGER_NAME = "name";
+    public static final String SCRIPT_LANGUAGE = "language";
+    public static final String DEFAULT_SCRIPT_LANGUAGE = "javascript";
+    public static final String ON_CREATE_SCRIPT = "onCreate";
+    public static final String ON_MODIFY_SCRIPT = "onModify";
+    public static final String ON_DELETE_SCRIPT = "onDelete";
+    public static final String WHEN_PROPERTIES_CHANGE = "whenPropertiesChange";
+
+    // Revision of nodes, maintained by the RevisionTrigger when enabled
+    public static final String REVISION = "_rev";
+
     private TriggerProperties() {
     }
 }
@@ -0,0 +1,260 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+import com.graphaware.common.policy.InclusionPolicies;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Immutable set of all triggers of a {@link TriggerModule}, registered and defined by trigger nodes, with everything
+ * needed to dispatch to them precomputed. A new registry is built (copy-on-write) when a trigger is registered or when
+ * a committed transaction has created, changed or deleted trigger nodes; transactions read the current registry once,
+ * without locking, and use it throughout.
+ * <p/>
+ * Triggers are dispatched in execution order: triggers declaring properties they modify (see
+ * {@link PropertyTrigger#modifiesProperties(String...)}) run before the triggers watching those properties, and
+ * registration order decides otherwise.
+ */
+final class TriggerRegistry {
+
+
+    // Registered triggers (including validators), in registration order
+    final List<PropertyTrigger> registered;
+
+    // Registered triggers in execution order
+    final List<PropertyTrigger> ordered;
+
+    // Registered triggers by event, in execution order; asynchronous triggers handling changes are in all event lists
+    final List<PropertyTrigger> onCreate = new ArrayList<>();
+    final List<PropertyTrigger> onDelete = new ArrayList<>();
+    final List<PropertyTrigger> onModify = new ArrayList<>();
+    final List<PropertyTrigger> onChange = new ArrayList<>();
+    final List<PropertyTrigger> onLabelChange = new ArrayList<>();
+    final TriggerDispatchTable onModifyDispatch;
+    final TriggerDispatchTable onChangeDispatch;
+
+    // Relationship triggers, routed by type
+    final RelationshipDispatchTable onCreateRelationship;
+    final RelationshipDispatchTable onModifyRelationship;
+    final RelationshipDispatchTable onDeleteRelationship;
+
+    // Read-only validators; properties to copy for them (null for all)
+    final List<PropertyTrigger> createValidators = new ArrayList<>();
+    final List<PropertyTrigger> deleteValidators = new ArrayList<>();
+    final TriggerDispatchTable modifyValidators;
+    final String[] validatedProperties;
+
+    // Triggers defined by trigger nodes
+    final ScriptTriggerCache.Snapshot scripts;
+
+    // Inclusion policies of all triggers, grouped; the module's own are kept to regroup when triggers change
+    final TriggerPolicies policies;
+    private final InclusionPolicies modulePolicies;
+
+    // Properties triggers declare they modify
+    final Set<String> modifiedProperties = new HashSet<>();
+
+    final boolean hasAsyncTriggers;
+    final boolean hasLabelFilters;
+    final boolean hasTriggerBudgets;
+
+    private TriggerRegistry(List<PropertyTrigger> registered, ScriptTriggerCache.Snapshot scripts, InclusionPolicies modulePolicies) {
+        this.registered = Collections.unmodifiableList(registered);
+        this.ordered = Collections.unmodifiableList(order(registered));
+        this.scripts = scripts;
+        this.modulePolicies = modulePolicies;
+        this.policies = new TriggerPolicies(all(), modulePolicies);
+
+        List<PropertyTrigger> onCreateRelationshipTriggers = new ArrayList<>();
+        List<PropertyTrigger> onModifyRelationshipTriggers = new ArrayList<>();
+        List<PropertyTrigger> onDeleteRelationshipTriggers = new ArrayList<>();
+        List<PropertyTrigger> modifyValidatorTriggers = new ArrayList<>();
+        Set<String> properties = new HashSet<>();
+        boolean allProperties = false;
+        boolean async = false;
+        boolean labelFilters = false;
+        boolean budgets = false;
+
+        for (PropertyTrigger trigger : ordered) {
+            labelFilters |= trigger.hasLabelFilter();
+            modifiedProperties.addAll(trigger._modifiesProperties);
+
+            if (trigger.isReadOnlyValidator()) {
+                boolean all = trigger.isHandlingChanges();
+                add(createValidators, trigger, all || trigger.isHandlingEvent(PropertyTrigger.CREATE));
+                add(modifyValidatorTriggers, trigger, all || trigger.isHandlingEvent(PropertyTrigger.MODIFY));
+                add(deleteValidators, trigger, all || trigger.isHandlingEvent(PropertyTrigger.DELETE));
+                allProperties |= trigger._whenPropertiesChange.isEmpty();
+                properties.addAll(trigger._whenPropertiesChange);
+                continue;
+            }
+
+            // Asynchronous triggers get a single OnCommitted per event, so OnChange means all events for them
+            boolean isAsync = trigger.isAsynchronous();
+            boolean all = isAsync && trigger.isHandlingChanges();
+            async |= isAsync;
+            budgets |= trigger.getTimeBudgetMillis() > 0;
+
+            add(onCreate, trigger, all || trigger.isHandlingEvent(PropertyTrigger.CREATE));
+            add(onModify, trigger, all || trigger.isHandlingEvent(PropertyTrigger.MODIFY));
+            add(onDelete, trigger, all || trigger.isHandlingEvent(PropertyTrigger.DELETE));
+            add(onChange, trigger, !isAsync && trigger.isHandlingChanges());
+            add(onLabelChange, trigger, !isAsync && trigger.isHandlingLabelChanges());
+
+            add(onCreateRelationshipTriggers, trigger, trigger.isHandlingRelationshipEvent(PropertyTrigger.CREATE));
+            add(onModifyRelationshipTriggers, trigger, trigger.isHandlingRelationshipEvent(PropertyTrigger.MODIFY));
+            add(onDeleteRelationshipTriggers, trigger, trigger.isHandlingRelationshipEvent(PropertyTrigger.DELETE));
+        }
+
+        onModifyDispatch = new TriggerDispatchTable(onModify);
+        onChangeDispatch = new TriggerDispatchTable(onChange);
+        onCreateRelationship = new RelationshipDispatchTable(onCreateRelationshipTriggers);
+        onModifyRelationship = new RelationshipDispatchTable(onModifyRelationshipTriggers);
+        onDeleteRelationship = new RelationshipDispatchTable(onDeleteRelationshipTriggers);
+        modifyValidators = new TriggerDispatchTable(modifyValidatorTriggers);
+        validatedProperties = allProperties ? null : properties.toArray(new String[properties.size()]);
+
+        hasAsyncTriggers = async;
+        hasLabelFilters = labelFilters;
+        hasTriggerBudgets = budgets;
+    }
+
+    /**
+     * @param modulePolicies inclusion policies of the module, which filter what all triggers see.
+     * @return registry without any triggers.
+     */
+    static TriggerRegistry empty(InclusionPolicies modulePolicies) {
+        return new TriggerRegistry(Collections.<PropertyTrigger>emptyList(), ScriptTriggerCache.Snapshot.EMPTY, modulePolicies);
+    }
+
+    /**
+     * @param trigger to register.
+     * @return new registry with the trigger added.
+     * @throws IllegalStateException if the trigger's declared reads and writes form a cycle with other triggers.
+     */
+    TriggerRegistry with(PropertyTrigger trigger) {
+        List<PropertyTrigger> triggers = new ArrayList<>(registered);
+        triggers.add(trigger);
+        return new TriggerRegistry(triggers, scripts, modulePolicies);
+    }
+
+    /**
+     * @param scripts current triggers defined by trigger nodes.
+     * @return new registry with the script triggers replaced, this one if they haven't changed.
+     */
+    TriggerRegistry with(ScriptTriggerCache.Snapshot scripts) {
+        return scripts == this.scripts ? this : new TriggerRegistry(registered, scripts, modulePolicies);
+    }
+
+    /**
+     * @return true iff there are any read-only validators.
+     */
+    boolean hasValidators() {
+        return !createValidators.isEmpty() || !deleteValidators.isEmpty() || !modifyValidators.isEmpty();
+    }
+
+    /**
+     * @return all triggers, registered ones first, then the ones defined by trigger nodes.
+     */
+    List<PropertyTrigger> all() {
+        List<PropertyTrigger> result = new ArrayList<>(registered);
+        result.addAll(scripts.all);
+        return result;
+    }
+
+    /**
+     * Sort triggers topologically by the properties they modify and watch, always running the earliest registered
+     * trigger that doesn't wait for any other one next.
+     *
+     * @param triggers in registration order.
+     * @return triggers in execution order.
+     * @throws IllegalStateException if the dependencies form a cycle.
+     */
+    static List<PropertyTrigger> order(List<PropertyTrigger> triggers) {
+        int count = triggers.size();
+        List<List<Integer>> readers = new ArrayList<>(count);
+        int[] writers = new int[count];
+        boolean dependencies = false;
+
+        for (int w = 0; w < count; w++) {
+            List<Integer> dependants = new ArrayList<>();
+            for (int r = 0; r < count; r++) {
+                if (r != w && dependsOn(triggers.get(r), triggers.get(w))) {
+                    dependants.add(r);
+                    writers[r]++;
+                    dependencies = true;
+                }
+            }
+            readers.add(dependants);
+        }
+        if (!dependencies) {
+            return triggers;
+        }
+
+        PriorityQueue<Integer> ready = new PriorityQueue<>();
+        for (int i = 0; i < count; i++) {
+            if (writers[i] == 0) {
+                ready.add(i);
+            }
+        }
+        List<PropertyTrigger> result = new ArrayList<>(count);
+        while (!ready.isEmpty()) {
+            int next = ready.poll();
+            result.add(triggers.get(next));
+            for (int reader : readers.get(next)) {
+                if (--writers[reader] == 0) {
+                    ready.add(reader);
+                }
+            }
+        }
+
+        if (result.size() < count) {
+            List<String> cycle = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                if (writers[i] > 0) {
+                    cycle.add(triggers.get(i).getPropertyName());
+                }
+            }
+            throw new IllegalStateException("Triggers " + cycle + " modify properties watched by each other in a cycle");
+        }
+        return result;
+    }
+
+    // Read-only validators run before everything else and asynchronous triggers after commit, so neither orders others
+    private static boolean dependsOn(PropertyTrigger reader, PropertyTrigger writer) {
+        if (reader.isReadOnlyValidator() || writer.isReadOnlyValidator() || writer.isAsynchronous()) {
+            return false;
+        }
+        for (String propName : writer._modifiesProperties) {
+            if (reader.readsProperty(propName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void add(List<PropertyTrigger> triggers, PropertyTrigger trigger, boolean condition) {
+        if (condition) {
+            triggers.add(trigger);
+        }
+    }
+}
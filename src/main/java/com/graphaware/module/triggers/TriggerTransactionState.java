@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * State of a transaction collected by {@link TriggerModule#beforeCommit} and acted upon once the transaction has
+ * committed.
+ */
+final class TriggerTransactionState {
+
+    // Script triggers (re)compiled from created or changed trigger nodes, by trigger node ID
+    final Map<Long, ScriptTrigger> compiledScriptTriggers = new HashMap<>();
+
+    // IDs of deleted trigger nodes, or nodes that are no longer trigger nodes
+    final Set<Long> removedScriptTriggers = new HashSet<>();
+
+    // Events for asynchronous triggers, submitted in this order after commit
+    final List<AsyncTriggerEvent> asyncEvents = new ArrayList<>();
+
+    // Encoded changes of the transaction, appended to the change log after commit
+    byte[] changeRecord;
+
+    boolean isEmpty() {
+        return compiledScriptTriggers.isEmpty() && removedScriptTriggers.isEmpty() && asyncEvents.isEmpty() && changeRecord == null;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+import com.graphaware.common.uuid.EaioUuidGenerator;
+import com.graphaware.common.uuid.UuidGenerator;
+import com.graphaware.module.uuid.IndexSharding;
+import com.graphaware.module.uuid.UuidConfiguration;
+import com.graphaware.module.uuid.index.UuidIndexer;
+import com.graphaware.module.uuid.index.UuidIndexerFactory;
+import com.graphaware.runtime.module.DeliberateTransactionRollbackException;
+import org.neo4j.graphdb.DynamicLabel;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A {@link PropertyTrigger} doing what the {@link com.graphaware.module.uuid.UuidModule} does, as part of the trigger
+ * module's single pass over the transaction data: created nodes are assigned a UUID (unless they already have one) and
+ * indexed, the UUID of existing nodes can't be modified or removed, and deleted nodes are removed from the index.
+ * Label-sharded indexes follow the labels of the nodes. Existing nodes without a UUID are assigned one in the background
+ * once the module has started.
+ * <p/>
+ * Nodes are indexed the way the UUID module indexes them, so {@link com.graphaware.module.uuid.UuidReader} finds them
+ * given the same {@link UuidConfiguration}.
+ */
+public class UuidTrigger extends PropertyTrigger {
+
+    private final UuidConfiguration configuration;
+    private final UuidGenerator uuidGenerator;
+    private final UuidIndexer uuidIndexer;
+
+    /**
+     * @param configuration UUID property, index, sharding and inclusion policies, as for the UUID module.
+     * @param database      to index nodes in.
+     */
+    public UuidTrigger(UuidConfiguration configuration, GraphDatabaseService database) {
+        super(configuration.getInclusionPolicies(), configuration.getUuidProperty(), configuration.getUuidIndex());
+        this.configuration = configuration;
+        this.uuidGenerator = new EaioUuidGenerator();
+        this.uuidIndexer = UuidIndexerFactory.createIndexer(database, configuration);
+
+        // Other triggers watching the UUID run after it has been assigned
+        handlesEvent(CREATE).handlesEvent(MODIFY).handlesEvent(DELETE).modifiesProperties(propName).backfillsExistingNodes().ignoresBudgets();
+        whenPropertiesChange(propName);
+        if (IndexSharding.LABEL.equals(configuration.getIndexSharding())) {
+            handlesLabelChanges();
+        }
+    }
+
+    /**
+     * @return configuration of the UUIDs this trigger assigns.
+     */
+    public UuidConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    @Override
+    public Boolean OnCreate(Node node) {
+        if (!node.hasProperty(propName)) {
+            node.setProperty(propName, uuidGenerator.generateUuid());
+        }
+        uuidIndexer.indexNode(node);
+        return true;
+    }
+
+    @Override
+    public Boolean OnModify(Node _previous, Node _current, PropertyDiff diff) {
+        if (diff.getRemoved().containsKey(propName)) {
+            throw new DeliberateTransactionRollbackException("You are not allowed to remove the " + propName + " property");
+        }
+        if (diff.getChanged().containsKey(propName)) {
+            throw new DeliberateTransactionRollbackException("You are not allowed to modify the " + propName + " property");
+        }
+
+        // Assigned to a node that didn't have one, e.g. by the backfill
+        uuidIndexer.indexNode(_current);
+        return true;
+    }
+
+    @Override
+    public Boolean OnDelete(Node node) {
+        uuidIndexer.deleteNodeFromIndex(node);
+        return true;
+    }
+
+    @Override
+    public Boolean OnLabelsChanged(Node node, Collection<String> addedLabels, Collection<String> removedLabels) {
+        uuidIndexer.updateLabels(node, labels(addedLabels), labels(removedLabels));
+        return true;
+    }
+
+    @Override
+    public String getBackfillName() {
+        return "uuid:" + propIndexName + ":" + propName;
+    }
+
+    @Override
+    public void OnBackfill(Node node) {
+        // Indexed by OnModify when the backfill transaction commits
+        if (!node.hasProperty(propName)) {
+            node.setProperty(propName, uuidGenerator.generateUuid());
+        }
+    }
+
+    private static List<Label> labels(Collection<String> labelNames) {
+        List<Label> result = new ArrayList<>(labelNames.size());
+        for (String labelName : labelNames) {
+            result.add(DynamicLabel.label(labelName));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A node to be checked by read-only validator {@link PropertyTrigger}s, detached from the transaction so that it can
+ * be checked on any thread.
+ */
+final class ValidationItem {
+
+    final int event;
+    final long nodeId;
+    final Map<String, Object> properties;
+    final List<PropertyTrigger> validators;
+
+    ValidationItem(int event, long nodeId, Map<String, Object> properties, List<PropertyTrigger> validators) {
+        this.event = event;
+        this.nodeId = nodeId;
+        this.properties = properties;
+        this.validators = validators;
+    }
+}
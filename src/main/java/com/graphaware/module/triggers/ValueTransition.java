@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.triggers;
+
+import java.util.Objects;
+
+/**
+ * A condition on the previous and current values of one property, compiled when a trigger declares it (see
+ * {@link PropertyTrigger#whenPropertyChanges(String, Object, Object)}) and evaluated against the shared
+ * {@link PropertyDiff} before the trigger is called.
+ * <p/>
+ * A missing value (property created or removed) is passed as null.
+ */
+abstract class ValueTransition {
+
+    final String key;
+
+    private ValueTransition(String key) {
+        this.key = key;
+    }
+
+    /**
+     * @param previous value before the transaction, null if the property didn't exist.
+     * @param current  value after the transaction, null if the property has been removed.
+     * @return true iff the change satisfies this condition.
+     */
+    abstract boolean matches(Object previous, Object current);
+
+    /**
+     * @param diff the entity's property diff.
+     * @return true iff the property has changed and the change satisfies this condition.
+     */
+    final boolean matches(PropertyDiff diff) {
+        return diff.hasChanged(key) && matches(diff.getPrevious(key), diff.getCurrent(key));
+    }
+
+    /**
+     * @return condition satisfied when the value changes from one value to another; {@link PropertyTrigger#ANY_VALUE}
+     *         matches any value, null a missing one.
+     */
+    static ValueTransition between(String key, final Object from, final Object to) {
+        return new ValueTransition(key) {
+            @Override
+            boolean matches(Object previous, Object current) {
+                return matchesValue(from, previous) && matchesValue(to, current);
+            }
+        };
+    }
+
+    /**
+     * @return condition satisfied when a numeric value goes from at most the threshold (or missing) to above it.
+     */
+    static ValueTransition risesAbove(String key, final double threshold) {
+        return new ValueTransition(key) {
+            @Override
+            boolean matches(Object previous, Object current) {
+                return !isAbove(previous, threshold) && isAbove(current, threshold);
+            }
+        };
+    }
+
+    /**
+     * @return condition satisfied when a numeric value goes from at least the threshold (or missing) to below it.
+     */
+    static ValueTransition fallsBelow(String key, final double threshold) {
+        return new ValueTransition(key) {
+            @Override
+            boolean matches(Object previous, Object current) {
+                return !isBelow(previous, threshold) && isBelow(current, threshold);
+            }
+        };
+    }
+
+    private static boolean matchesValue(Object expected, Object actual) {
+        return expected == PropertyTrigger.ANY_VALUE || Objects.deepEquals(expected, actual);
+    }
+
+    private static boolean isAbove(Object value, double threshold) {
+        return value instanceof Number && ((Number) value).doubleValue() > threshold;
+    }
+
+    private static boolean isBelow(Object value, double threshold) {
+        return value instanceof Number && ((Number) value).doubleValue() < threshold;
+    }
+}
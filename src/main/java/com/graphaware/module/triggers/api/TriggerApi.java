@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers.api;
+
+import com.graphaware.module.triggers.AsyncTriggerMetrics;
+import com.graphaware.module.triggers.RevisionConflictException;
+import com.graphaware.module.triggers.RevisionTrigger;
+import com.graphaware.module.triggers.TriggerEventStatistics;
+import com.graphaware.module.triggers.TriggerModule;
+import com.graphaware.module.triggers.UuidTrigger;
+import com.graphaware.module.triggers.cdc.ChangeLog;
+import com.graphaware.module.triggers.cdc.ChangeRecord;
+import com.graphaware.module.uuid.UuidConfiguration;
+import com.graphaware.module.uuid.UuidModule;
+import com.graphaware.module.uuid.UuidReader;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Transaction;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+import static com.graphaware.module.triggers.TriggerModule.DEFAULT_MODULE_ID;
+import static com.graphaware.runtime.RuntimeRegistry.getStartedRuntime;
+
+/**
+ * REST API for {@link TriggerModule}.
+ */
+@Controller
+@RequestMapping("/trigger")
+public class TriggerApi {
+
+    private final GraphDatabaseService database;
+
+    @Autowired
+    public TriggerApi(GraphDatabaseService database) {
+        this.database = database;
+    }
+
+    /**
+     * Get invocation statistics of all triggers.
+     *
+     * @return statistics per trigger and event.
+     */
+    @RequestMapping(value = "/metrics", method = RequestMethod.GET)
+    @ResponseBody
+    public List<TriggerEventStatistics> getStatistics() {
+        return getStatisticsByModule(DEFAULT_MODULE_ID);
+    }
+
+    /**
+     * Get invocation statistics of all triggers.
+     *
+     * @param moduleId module id (used in the unlikely event that there are multiple modules, or if the module has a non-default ID).
+     * @return statistics per trigger and event.
+     */
+    @RequestMapping(value = "/{moduleId}/metrics", method = RequestMethod.GET)
+    @ResponseBody
+    public List<TriggerEventStatistics> getStatisticsByModule(@PathVariable(value = "moduleId") String moduleId) {
+        return getStartedRuntime(database).getModule(moduleId, TriggerModule.class).getStatistics();
+    }
+
+    /**
+     * Get metrics of asynchronous trigger execution.
+     *
+     * @return metrics.
+     * @throws NotFoundException if there are no asynchronous triggers.
+     */
+    @RequestMapping(value = "/metrics/async", method = RequestMethod.GET)
+    @ResponseBody
+    public AsyncTriggerMetrics getAsyncMetrics() {
+        return getAsyncMetricsByModule(DEFAULT_MODULE_ID);
+    }
+
+    /**
+     * Get metrics of asynchronous trigger execution.
+     *
+     * @param moduleId module id (used in the unlikely event that there are multiple modules, or if the module has a non-default ID).
+     * @return metrics.
+     * @throws NotFoundException if there are no asynchronous triggers.
+     */
+    @RequestMapping(value = "/{moduleId}/metrics/async", method = RequestMethod.GET)
+    @ResponseBody
+    public AsyncTriggerMetrics getAsyncMetricsByModule(@PathVariable(value = "moduleId") String moduleId) {
+        AsyncTriggerMetrics metrics = getStartedRuntime(database).getModule(moduleId, TriggerModule.class).getAsyncMetrics();
+        if (metrics == null) {
+            throw new NotFoundException("Module " + moduleId + " has no asynchronous triggers");
+        }
+        return metrics;
+    }
+
+    /**
+     * Read records of the change log.
+     *
+     * @param from  offset of the first record, usually the next offset of the last record read.
+     * @param limit maximum number of records.
+     * @return records, empty if there are none from the offset yet.
+     * @throws NotFoundException if the change log is not enabled.
+     */
+    @RequestMapping(value = "/changes", method = RequestMethod.GET)
+    @ResponseBody
+    public List<ChangeRecord> getChanges(@RequestParam(value = "from", defaultValue = "0") long from, @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        return getChangesByModule(DEFAULT_MODULE_ID, from, limit);
+    }
+
+    /**
+     * Read records of the change log.
+     *
+     * @param moduleId module id (used in the unlikely event that there are multiple modules, or if the module has a non-default ID).
+     * @param from     offset of the first record, usually the next offset of the last record read.
+     * @param limit    maximum number of records.
+     * @return records, empty if there are none from the offset yet.
+     * @throws NotFoundException if the change log is not enabled.
+     */
+    @RequestMapping(value = "/{moduleId}/changes", method = RequestMethod.GET)
+    @ResponseBody
+    public List<ChangeRecord> getChangesByModule(@PathVariable(value = "moduleId") String moduleId, @RequestParam(value = "from", defaultValue = "0") long from, @RequestParam(value = "limit", defaultValue = "100") int limit) {
+        ChangeLog changeLog = getStartedRuntime(database).getModule(moduleId, TriggerModule.class).getChangeLog();
+        if (changeLog == null) {
+            throw new NotFoundException("Module " + moduleId + " has no change log");
+        }
+        return changeLog.read(from, limit);
+    }
+
+    /**
+     * Set properties of the node with the given uuid, provided it is still at the given revision.
+     *
+     * @param uuid       uuid of the node, assigned by the UUID module with the default ID.
+     * @param revision   revision the client has read the node at.
+     * @param properties properties to set; a null value removes the property.
+     * @return new revision of the node.
+     * @throws NotFoundException         if no node has the uuid, or revisions are not enabled.
+     * @throws RevisionConflictException if the node has been modified since (409 Conflict).
+     */
+    @RequestMapping(value = "/node/{uuid}/revision/{revision}", method = RequestMethod.PUT)
+    @ResponseBody
+    public long updateNode(@PathVariable(value = "uuid") String uuid, @PathVariable(value = "revision") long revision, @RequestBody Map<String, Object> properties) {
+        return updateNodeByModule(DEFAULT_MODULE_ID, uuid, revision, UuidModule.DEFAULT_MODULE_ID, properties);
+    }
+
+    /**
+     * Set properties of the node with the given uuid, provided it is still at the given revision.
+     *
+     * @param moduleId     module id (used in the unlikely event that there are multiple modules, or if the module has a non-default ID).
+     * @param uuid         uuid of the node.
+     * @param revision     revision the client has read the node at.
+     * @param uuidModuleId id of the UUID module that assigned the uuid, unless the trigger module assigns them itself.
+     * @param properties   properties to set; a null value removes the property.
+     * @return new revision of the node.
+     * @throws NotFoundException         if no node has the uuid, or revisions are not enabled.
+     * @throws RevisionConflictException if the node has been modified since (409 Conflict).
+     */
+    @RequestMapping(value = "/{moduleId}/node/{uuid}/revision/{revision}", method = RequestMethod.PUT)
+    @ResponseBody
+    public long updateNodeByModule(@PathVariable(value = "moduleId") String moduleId, @PathVariable(value = "uuid") String uuid, @PathVariable(value = "revision") long revision,
+                                   @RequestParam(value = "uuidModuleId", defaultValue = UuidModule.DEFAULT_MODULE_ID) String uuidModuleId, @RequestBody Map<String, Object> properties) {
+        RevisionTrigger revisions = getStartedRuntime(database).getModule(moduleId, TriggerModule.class).getRevisionTrigger();
+        if (revisions == null) {
+            throw new NotFoundException("Module " + moduleId + " does not maintain revisions");
+        }
+        UuidTrigger uuids = getStartedRuntime(database).getModule(moduleId, TriggerModule.class).getUuidTrigger();
+        UuidConfiguration uuidConfiguration = uuids != null ? uuids.getConfiguration() : getStartedRuntime(database).getModule(uuidModuleId, UuidModule.class).getConfiguration();
+
+        try (Transaction tx = database.beginTx()) {
+            Node node = new UuidReader(uuidConfiguration, database).getNodeByUuid(uuid);
+            long result = revisions.update(tx, node, revision, properties);
+            tx.success();
+            return result;
+        }
+    }
+
+    @ExceptionHandler(RevisionConflictException.class)
+    @ResponseStatus(HttpStatus.CONFLICT)
+    public void handleConflict() {
+
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    public void handleBadRequest() {
+
+    }
+
+    @ExceptionHandler(NotFoundException.class)
+    @ResponseStatus(HttpStatus.NOT_FOUND)
+    public void handleNotFound() {
+
+    }
+}
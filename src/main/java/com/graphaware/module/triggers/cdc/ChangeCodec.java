@@ -0,0 +1,474 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers.cdc;
+
+import com.graphaware.tx.event.improved.api.Change;
+import com.graphaware.tx.event.improved.api.ImprovedTransactionData;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.PropertyContainer;
+import org.neo4j.graphdb.Relationship;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.graphaware.module.triggers.cdc.ChangeEvent.Type.*;
+
+/**
+ * Binary encoding of the changes of a transaction. A record is a sequence of events, each a type byte followed by the
+ * variable-length ID of the entity and, depending on the type, a name (property key, label, relationship type), a
+ * typed property value and the relationship's start and end nodes. Names are written once per record and referred to
+ * by their index afterwards.
+ */
+public final class ChangeCodec {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    // Property value tags
+    private static final int FALSE = 0, TRUE = 1, BYTE = 2, SHORT = 3, INT = 4, LONG = 5, FLOAT = 6, DOUBLE = 7, CHAR = 8, STRING = 9, ARRAY = 10;
+
+    private static final ChangeEvent.Type[] TYPES = ChangeEvent.Type.values();
+
+    private ChangeCodec() {
+    }
+
+    /**
+     * Encode the changes of a transaction about to commit, after triggers have run. Created nodes and relationships are
+     * recorded as they are now; changed ones with the properties and labels the transaction changed, and the given
+     * properties written by triggers.
+     * <p/>
+     * The transaction data is the one the transaction had before triggers ran, so changes made by triggers are only
+     * recorded as far as they show in the current state of those entities: the properties of created entities, and the
+     * written keys that changed nodes still have. Entities triggers create or delete, labels they change, properties
+     * they remove, and properties they write without declaring them are not recorded.
+     *
+     * @param data          the transaction's changes.
+     * @param writtenKeys   properties triggers may have set on changed nodes, recorded with their current values.
+     * @return encoded record, null if nothing has changed.
+     */
+    public static byte[] encode(ImprovedTransactionData data, Collection<String> writtenKeys) {
+        Encoder encoder = new Encoder();
+
+        for (Node node : data.getAllCreatedNodes()) {
+            encoder.event(NODE_CREATED, node.getId());
+            for (Label label : node.getLabels()) {
+                encoder.event(LABEL_ADDED, node.getId()).name(label.name());
+            }
+            encoder.properties(NODE_PROPERTY_SET, node);
+        }
+        for (Relationship relationship : data.getAllCreatedRelationships()) {
+            encoder.event(RELATIONSHIP_CREATED, relationship.getId()).name(relationship.getType().name())
+                    .id(relationship.getStartNode().getId()).id(relationship.getEndNode().getId());
+            encoder.properties(RELATIONSHIP_PROPERTY_SET, relationship);
+        }
+
+        for (Change<Node> change : data.getAllChangedNodes()) {
+            Node node = change.getCurrent();
+            Set<String> set = encoder.changedProperties(NODE_PROPERTY_SET, NODE_PROPERTY_REMOVED, node,
+                    data.createdProperties(node).keySet(), data.changedProperties(node).keySet(), data.deletedProperties(node).keySet());
+            for (String key : writtenKeys) {
+                if (!set.contains(key) && node.hasProperty(key)) {
+                    encoder.event(NODE_PROPERTY_SET, node.getId()).name(key).value(node.getProperty(key));
+                }
+            }
+            for (Label label : data.assignedLabels(node)) {
+                encoder.event(LABEL_ADDED, node.getId()).name(label.name());
+            }
+            for (Label label : data.removedLabels(node)) {
+                encoder.event(LABEL_REMOVED, node.getId()).name(label.name());
+            }
+        }
+        for (Change<Relationship> change : data.getAllChangedRelationships()) {
+            Relationship relationship = change.getCurrent();
+            encoder.changedProperties(RELATIONSHIP_PROPERTY_SET, RELATIONSHIP_PROPERTY_REMOVED, relationship,
+                    data.createdProperties(relationship).keySet(), data.changedProperties(relationship).keySet(), data.deletedProperties(relationship).keySet());
+        }
+
+        for (Relationship relationship : data.getAllDeletedRelationships()) {
+            encoder.event(RELATIONSHIP_DELETED, relationship.getId());
+        }
+        for (Node node : data.getAllDeletedNodes()) {
+            encoder.event(NODE_DELETED, node.getId());
+        }
+
+        return encoder.isEmpty() ? null : encoder.toByteArray();
+    }
+
+    /**
+     * @param payload encoded record.
+     * @return events of the record.
+     * @throws IllegalArgumentException if the record is malformed.
+     */
+    static List<ChangeEvent> decode(ByteBuffer payload) {
+        List<ChangeEvent> events = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        try {
+            while (payload.hasRemaining()) {
+                ChangeEvent.Type type = TYPES[payload.get()];
+                long id = readVarLong(payload);
+                String name = null;
+                Object value = null;
+                long start = -1, end = -1;
+                switch (type) {
+                    case RELATIONSHIP_CREATED:
+                        name = readName(payload, names);
+                        start = readVarLong(payload);
+                        end = readVarLong(payload);
+                        break;
+                    case NODE_PROPERTY_SET:
+                    case RELATIONSHIP_PROPERTY_SET:
+                        name = readName(payload, names);
+                        value = readValue(payload);
+                        break;
+                    case NODE_PROPERTY_REMOVED:
+                    case RELATIONSHIP_PROPERTY_REMOVED:
+                    case LABEL_ADDED:
+                    case LABEL_REMOVED:
+                        name = readName(payload, names);
+                        break;
+                    default:
+                }
+                events.add(new ChangeEvent(type, id, name, value, start, end));
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Malformed change record", e);
+        }
+        return events;
+    }
+
+    /**
+     * Growable buffer the events of a record are written to.
+     */
+    private static final class Encoder {
+
+        private byte[] bytes = new byte[256];
+        private int size;
+        private final Map<String, Integer> names = new HashMap<>();
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+        Encoder event(ChangeEvent.Type type, long id) {
+            write(type.ordinal());
+            return id(id);
+        }
+
+        Encoder id(long id) {
+            writeVarLong(id);
+            return this;
+        }
+
+        Encoder name(String name) {
+            Integer index = names.get(name);
+            if (index != null) {
+                writeVarLong(index);
+            } else {
+                writeVarLong(names.size());
+                names.put(name, names.size());
+                string(name);
+            }
+            return this;
+        }
+
+        void properties(ChangeEvent.Type type, PropertyContainer container) {
+            long id = id(container);
+            for (String key : container.getPropertyKeys()) {
+                event(type, id).name(key).value(container.getProperty(key));
+            }
+        }
+
+        /**
+         * @return keys of the properties recorded as set.
+         */
+        Set<String> changedProperties(ChangeEvent.Type set, ChangeEvent.Type removed, PropertyContainer container, Collection<String> created, Collection<String> changed, Collection<String> deleted) {
+            long id = id(container);
+            Set<String> keys = new LinkedHashSet<>(created);
+            keys.addAll(changed);
+            keys.addAll(deleted);
+            Set<String> result = new HashSet<>();
+            // Current values, which include whatever triggers did to the same properties
+            for (String key : keys) {
+                Object value = container.getProperty(key, null);
+                if (value != null) {
+                    event(set, id).name(key).value(value);
+                    result.add(key);
+                } else {
+                    event(removed, id).name(key);
+                }
+            }
+            return result;
+        }
+
+        private static long id(PropertyContainer container) {
+            return container instanceof Node ? ((Node) container).getId() : ((Relationship) container).getId();
+        }
+
+        Encoder value(Object value) {
+            if (value.getClass().isArray()) {
+                write(ARRAY);
+                arrayValue(value);
+                return this;
+            }
+            int tag = tag(value.getClass());
+            if (tag == FALSE) {
+                write((Boolean) value ? TRUE : FALSE);
+                return this;
+            }
+            write(tag);
+            scalar(tag, value);
+            return this;
+        }
+
+        private void arrayValue(Object array) {
+            int tag = tag(array.getClass().getComponentType());
+            write(tag);
+            int length = java.lang.reflect.Array.getLength(array);
+            writeVarLong(length);
+            switch (tag) {
+                case BYTE:
+                    ensure(length);
+                    System.arraycopy(array, 0, bytes, size, length);
+                    size += length;
+                    return;
+                case FALSE:
+                    for (boolean element : (boolean[]) array) {
+                        write(element ? TRUE : FALSE);
+                    }
+                    return;
+                default:
+                    for (int i = 0; i < length; i++) {
+                        scalar(tag, java.lang.reflect.Array.get(array, i));
+                    }
+            }
+        }
+
+        private void scalar(int tag, Object value) {
+            switch (tag) {
+                case BYTE:
+                    write((Byte) value);
+                    break;
+                case SHORT:
+                case INT:
+                case LONG:
+                    long number = ((Number) value).longValue();
+                    writeVarLong((number << 1) ^ (number >> 63));
+                    break;
+                case FLOAT:
+                    writeInt(Float.floatToIntBits((Float) value));
+                    break;
+                case DOUBLE:
+                    long bits = Double.doubleToLongBits((Double) value);
+                    writeInt((int) (bits >>> 32));
+                    writeInt((int) bits);
+                    break;
+                case CHAR:
+                    writeVarLong((Character) value);
+                    break;
+                case STRING:
+                    string((String) value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported property value " + value);
+            }
+        }
+
+        private static int tag(Class<?> type) {
+            if (type == Boolean.class || type == boolean.class) return FALSE;
+            if (type == Byte.class || type == byte.class) return BYTE;
+            if (type == Short.class || type == short.class) return SHORT;
+            if (type == Integer.class || type == int.class) return INT;
+            if (type == Long.class || type == long.class) return LONG;
+            if (type == Float.class || type == float.class) return FLOAT;
+            if (type == Double.class || type == double.class) return DOUBLE;
+            if (type == Character.class || type == char.class) return CHAR;
+            if (type == String.class) return STRING;
+            throw new IllegalArgumentException("Unsupported property type " + type.getName());
+        }
+
+        private void string(String value) {
+            byte[] utf8 = value.getBytes(UTF_8);
+            writeVarLong(utf8.length);
+            ensure(utf8.length);
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+
+        private void writeInt(int value) {
+            ensure(4);
+            bytes[size++] = (byte) (value >>> 24);
+            bytes[size++] = (byte) (value >>> 16);
+            bytes[size++] = (byte) (value >>> 8);
+            bytes[size++] = (byte) value;
+        }
+
+        private void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        private void write(int value) {
+            ensure(1);
+            bytes[size++] = (byte) value;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+    }
+
+    private static String readName(ByteBuffer payload, List<String> names) {
+        int index = (int) readVarLong(payload);
+        if (index == names.size()) {
+            names.add(readString(payload));
+        }
+        return names.get(index);
+    }
+
+    private static Object readValue(ByteBuffer payload) {
+        int tag = payload.get();
+        if (tag != ARRAY) {
+            return readScalar(payload, tag);
+        }
+        int elementTag = payload.get();
+        int length = (int) readVarLong(payload);
+        switch (elementTag) {
+            case FALSE:
+                boolean[] booleans = new boolean[length];
+                for (int i = 0; i < length; i++) {
+                    booleans[i] = payload.get() == TRUE;
+                }
+                return booleans;
+            case BYTE:
+                byte[] bytes = new byte[length];
+                payload.get(bytes);
+                return bytes;
+            case SHORT:
+                short[] shorts = new short[length];
+                for (int i = 0; i < length; i++) {
+                    shorts[i] = (Short) readScalar(payload, SHORT);
+                }
+                return shorts;
+            case INT:
+                int[] ints = new int[length];
+                for (int i = 0; i < length; i++) {
+                    ints[i] = (Integer) readScalar(payload, INT);
+                }
+                return ints;
+            case LONG:
+                long[] longs = new long[length];
+                for (int i = 0; i < length; i++) {
+                    longs[i] = (Long) readScalar(payload, LONG);
+                }
+                return longs;
+            case FLOAT:
+                float[] floats = new float[length];
+                for (int i = 0; i < length; i++) {
+                    floats[i] = payload.getFloat();
+                }
+                return floats;
+            case DOUBLE:
+                double[] doubles = new double[length];
+                for (int i = 0; i < length; i++) {
+                    doubles[i] = payload.getDouble();
+                }
+                return doubles;
+            case CHAR:
+                char[] chars = new char[length];
+                for (int i = 0; i < length; i++) {
+                    chars[i] = (char) readVarLong(payload);
+                }
+                return chars;
+            case STRING:
+                String[] strings = new String[length];
+                for (int i = 0; i < length; i++) {
+                    strings[i] = readString(payload);
+                }
+                return strings;
+            default:
+                throw new IllegalArgumentException("Unknown array type " + elementTag);
+        }
+    }
+
+    private static Object readScalar(ByteBuffer payload, int tag) {
+        switch (tag) {
+            case FALSE:
+                return false;
+            case TRUE:
+                return true;
+            case BYTE:
+                return payload.get();
+            case SHORT:
+                return (short) readZigZag(payload);
+            case INT:
+                return (int) readZigZag(payload);
+            case LONG:
+                return readZigZag(payload);
+            case FLOAT:
+                return payload.getFloat();
+            case DOUBLE:
+                return payload.getDouble();
+            case CHAR:
+                return (char) readVarLong(payload);
+            case STRING:
+                return readString(payload);
+            default:
+                throw new IllegalArgumentException("Unknown value type " + tag);
+        }
+    }
+
+    private static long readZigZag(ByteBuffer payload) {
+        long value = readVarLong(payload);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long readVarLong(ByteBuffer payload) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = payload.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed variable-length number");
+    }
+
+    private static String readString(ByteBuffer payload) {
+        byte[] utf8 = new byte[(int) readVarLong(payload)];
+        payload.get(utf8);
+        return new String(utf8, UTF_8);
+    }
+}
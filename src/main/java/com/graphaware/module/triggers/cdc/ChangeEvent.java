@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers.cdc;
+
+/**
+ * A single change of a node or relationship, as recorded in the {@link ChangeLog}.
+ */
+public class ChangeEvent {
+
+    public enum Type {
+        NODE_CREATED,
+        NODE_DELETED,
+        NODE_PROPERTY_SET,
+        NODE_PROPERTY_REMOVED,
+        LABEL_ADDED,
+        LABEL_REMOVED,
+        RELATIONSHIP_CREATED,
+        RELATIONSHIP_DELETED,
+        RELATIONSHIP_PROPERTY_SET,
+        RELATIONSHIP_PROPERTY_REMOVED
+    }
+
+    private final Type type;
+    private final long id;
+    private final String key;
+    private final Object value;
+    private final long startNodeId;
+    private final long endNodeId;
+
+    ChangeEvent(Type type, long id, String key, Object value, long startNodeId, long endNodeId) {
+        this.type = type;
+        this.id = id;
+        this.key = key;
+        this.value = value;
+        this.startNodeId = startNodeId;
+        this.endNodeId = endNodeId;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return ID of the changed node or relationship.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return property key, label or relationship type; null for other events.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return new value of a set property, null for other events.
+     */
+    public Object getValue() {
+        return value;
+    }
+
+    /**
+     * @return start node of a created relationship, -1 for other events.
+     */
+    public long getStartNodeId() {
+        return startNodeId;
+    }
+
+    /**
+     * @return end node of a created relationship, -1 for other events.
+     */
+    public long getEndNodeId() {
+        return endNodeId;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder().append(type).append('(').append(id);
+        if (key != null) {
+            result.append(", ").append(key);
+        }
+        if (value != null) {
+            result.append('=').append(value);
+        }
+        if (type == Type.RELATIONSHIP_CREATED) {
+            result.append(", ").append(startNodeId).append("->").append(endNodeId);
+        }
+        return result.append(')').toString();
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers.cdc;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only log of the changes of committed transactions (change data capture), kept in a directory on local disk
+ * as a sequence of memory-mapped segments. Each record is identified by its offset, a position in the log that keeps
+ * growing across segments; consumers read, or tail with a {@link ChangeLogReader}, from an offset of their choice.
+ * <p/>
+ * A new segment is started when a record doesn't fit into the current one; older segments are then deleted beyond
+ * the retained number of segments or age. Records are appended after commit, in the order transactions finish
+ * committing. Appended records survive a crash of the process, but only the segments that have been rolled have been
+ * forced to disk.
+ * <p/>
+ * Records hold the changes the transaction made itself; of the changes made by triggers before commit, only the ones
+ * on entities the transaction created, and the properties triggers declare writing (see
+ * {@link com.graphaware.module.triggers.PropertyTrigger#modifiesProperties(String...)}) are recorded.
+ */
+public class ChangeLog {
+
+    private static final Logger LOGGER = Logger.getLogger(ChangeLog.class.getName());
+
+    private final File directory;
+    private final int segmentSize;
+    private final int retainedSegments;
+    private final long retentionMillis;
+
+    // Retained segments, oldest first, the last one being appended to; replaced on roll
+    private volatile List<ChangeLogSegment> segments;
+    private volatile boolean closed;
+
+    /**
+     * Open the log in a directory, recovering the records of existing segments.
+     *
+     * @param directory        to keep segments in; created if it doesn't exist.
+     * @param segmentSize      size of a segment in bytes; larger records get a segment of their own.
+     * @param retainedSegments number of segments to keep, 0 for no limit.
+     * @param retentionMillis  how long to keep segments after their last append, 0 for no limit.
+     * @throws IOException if the directory or segments can't be read or written.
+     */
+    public ChangeLog(File directory, int segmentSize, int retainedSegments, long retentionMillis) throws IOException {
+        if (segmentSize <= ChangeLogSegment.HEADER_SIZE || retainedSegments < 0 || retentionMillis < 0) {
+            throw new IllegalArgumentException("Invalid change log segment size or retention");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create change log directory " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.retainedSegments = retainedSegments;
+        this.retentionMillis = retentionMillis;
+
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return ChangeLogSegment.isSegment(file);
+            }
+        });
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return a.getName().compareTo(b.getName());
+            }
+        });
+
+        List<ChangeLogSegment> opened = new ArrayList<>();
+        for (int i = 0; i < files.length; i++) {
+            opened.add(ChangeLogSegment.open(files[i], i == files.length - 1));
+        }
+        if (opened.isEmpty()) {
+            opened.add(ChangeLogSegment.create(directory, 0, segmentSize));
+        }
+        segments = Collections.unmodifiableList(opened);
+    }
+
+    /**
+     * Append the record of a committed transaction.
+     *
+     * @param payload record encoded by {@link ChangeCodec#encode}.
+     * @return offset of the record.
+     * @throws IOException if a new segment can't be created.
+     */
+    public synchronized long append(byte[] payload) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Change log " + directory + " has been closed");
+        }
+        ChangeLogSegment active = active();
+        int size = ChangeLogSegment.HEADER_SIZE + payload.length;
+        if (active.remaining() < size) {
+            active = roll(active, size);
+        }
+        long offset = active.baseOffset + active.end();
+        active.append(System.currentTimeMillis(), payload);
+        notifyAll();
+        return offset;
+    }
+
+    private ChangeLogSegment roll(ChangeLogSegment active, int size) throws IOException {
+        active.force();
+        ChangeLogSegment next = ChangeLogSegment.create(directory, active.baseOffset + active.end(), Math.max(segmentSize, size));
+
+        List<ChangeLogSegment> rolled = new ArrayList<>(segments);
+        rolled.add(next);
+        long expiry = retentionMillis > 0 ? System.currentTimeMillis() - retentionMillis : Long.MIN_VALUE;
+        while (rolled.size() > 1 && ((retainedSegments > 0 && rolled.size() > retainedSegments) || rolled.get(0).lastAppendMillis() < expiry)) {
+            ChangeLogSegment expired = rolled.remove(0);
+            // Readers still holding the mapping can finish reading it
+            if (!expired.file.delete()) {
+                LOGGER.log(Level.WARNING, "Could not delete expired change log segment {0}", expired.file);
+            }
+        }
+        segments = Collections.unmodifiableList(rolled);
+        return next;
+    }
+
+    private ChangeLogSegment active() {
+        List<ChangeLogSegment> segments = this.segments;
+        return segments.get(segments.size() - 1);
+    }
+
+    /**
+     * @return offset of the oldest retained record.
+     */
+    public long getStartOffset() {
+        return segments.get(0).baseOffset;
+    }
+
+    /**
+     * @return offset the next record will be appended at (unless it starts a new segment).
+     */
+    public long getEndOffset() {
+        ChangeLogSegment active = active();
+        return active.baseOffset + active.end();
+    }
+
+    /**
+     * Read records.
+     *
+     * @param offset     of the first record to read, usually the next offset of the last record read; an offset of a
+     *                   record that is no longer retained reads from the oldest retained record.
+     * @param maxRecords maximum number of records to read.
+     * @return records, empty if there are none from the offset yet.
+     * @throws IllegalArgumentException if the offset isn't the offset of a record.
+     */
+    public List<ChangeRecord> read(long offset, int maxRecords) {
+        List<ChangeLogSegment> segments = this.segments;
+        int index = 0;
+        if (offset < segments.get(0).baseOffset) {
+            offset = segments.get(0).baseOffset;
+        }
+        while (index + 1 < segments.size() && segments.get(index + 1).baseOffset <= offset) {
+            index++;
+        }
+
+        List<ChangeRecord> records = new ArrayList<>();
+        ChangeLogSegment segment = segments.get(index);
+        long position = offset - segment.baseOffset;
+        while (records.size() < maxRecords) {
+            if (position > segment.end()) {
+                throw new IllegalArgumentException("There is no record at offset " + offset);
+            }
+            if (position == segment.end()) {
+                if (++index == segments.size()) {
+                    break;
+                }
+                segment = segments.get(index);
+                position = 0;
+                continue;
+            }
+            ChangeRecord record = segment.read((int) position);
+            records.add(record);
+            position = record.getNextOffset() - segment.baseOffset;
+        }
+        return records;
+    }
+
+    /**
+     * Wait for a record to be appended at or after an offset.
+     *
+     * @return true iff there are records from the offset.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public synchronized boolean await(long offset, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (getEndOffset() <= offset && !closed) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return getEndOffset() > offset;
+    }
+
+    /**
+     * @param offset to start reading from.
+     * @return reader tailing this log from the offset.
+     */
+    public ChangeLogReader reader(long offset) {
+        return new ChangeLogReader(this, offset);
+    }
+
+    /**
+     * Force the segment being appended to to disk and stop appending.
+     */
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            active().force();
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers.cdc;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cursor of a consumer tailing a {@link ChangeLog}. Not thread-safe; consumers keep their offset (see
+ * {@link #getOffset()}) to resume from after a restart.
+ */
+public class ChangeLogReader {
+
+    private final ChangeLog log;
+    private long offset;
+
+    ChangeLogReader(ChangeLog log, long offset) {
+        this.log = log;
+        this.offset = offset;
+    }
+
+    /**
+     * @return offset of the next record to read.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Read the next records, if there are any.
+     *
+     * @param maxRecords maximum number of records to read.
+     * @return records, empty if there are none yet.
+     */
+    public List<ChangeRecord> poll(int maxRecords) {
+        List<ChangeRecord> records = log.read(offset, maxRecords);
+        if (!records.isEmpty()) {
+            offset = records.get(records.size() - 1).getNextOffset();
+        }
+        return records;
+    }
+
+    /**
+     * Read the next records, waiting for them to be appended if there are none yet.
+     *
+     * @param maxRecords maximum number of records to read.
+     * @return records, empty if none have been appended within the timeout.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public List<ChangeRecord> poll(int maxRecords, long timeout, TimeUnit unit) throws InterruptedException {
+        log.await(offset, timeout, unit);
+        return poll(maxRecords);
+    }
+}
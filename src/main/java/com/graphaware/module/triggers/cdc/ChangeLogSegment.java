@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers.cdc;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * A file of the {@link ChangeLog}, mapped into memory. Records are framed by their payload length, a checksum of the
+ * payload and a timestamp; a zero length marks the end of the written part. The segment's name is the log offset of
+ * its first record.
+ */
+final class ChangeLogSegment {
+
+    static final String SUFFIX = ".cdc";
+    static final int HEADER_SIZE = 16; // length, checksum, timestamp
+
+    final File file;
+    final long baseOffset;
+    private final MappedByteBuffer buffer;
+
+    // End of the written part; records are complete before it is published
+    private volatile int end;
+    private volatile long lastAppendMillis;
+
+    private ChangeLogSegment(File file, long baseOffset, MappedByteBuffer buffer) {
+        this.file = file;
+        this.baseOffset = baseOffset;
+        this.buffer = buffer;
+        this.lastAppendMillis = file.lastModified();
+    }
+
+    /**
+     * Create an empty segment.
+     */
+    static ChangeLogSegment create(File directory, long baseOffset, int capacity) throws IOException {
+        File file = new File(directory, String.format("%020d%s", baseOffset, SUFFIX));
+        return new ChangeLogSegment(file, baseOffset, map(file, capacity, FileChannel.MapMode.READ_WRITE));
+    }
+
+    /**
+     * Open an existing segment, and find the end of the records that have been completely written.
+     *
+     * @param writable true to append to the segment; what follows the last complete record is then erased.
+     */
+    static ChangeLogSegment open(File file, boolean writable) throws IOException {
+        long baseOffset = Long.parseLong(file.getName().substring(0, file.getName().length() - SUFFIX.length()));
+        ChangeLogSegment segment = new ChangeLogSegment(file, baseOffset, map(file, (int) file.length(), writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY));
+        segment.end = segment.recover();
+        if (writable) {
+            for (int i = segment.end; i < segment.buffer.capacity(); i++) {
+                segment.buffer.put(i, (byte) 0);
+            }
+        }
+        return segment;
+    }
+
+    static boolean isSegment(File file) {
+        return file.getName().matches("\\d{20}" + SUFFIX.replace(".", "\\."));
+    }
+
+    private static MappedByteBuffer map(File file, int capacity, FileChannel.MapMode mode) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, mode == FileChannel.MapMode.READ_ONLY ? "r" : "rw")) {
+            return raf.getChannel().map(mode, 0, capacity);
+        }
+    }
+
+    private int recover() {
+        int position = 0;
+        int capacity = buffer.capacity();
+        while (position + HEADER_SIZE <= capacity) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || position + HEADER_SIZE + length > capacity) {
+                break;
+            }
+            ByteBuffer payload = payload(position, length);
+            if (checksum(payload) != buffer.getInt(position + 4)) {
+                break;
+            }
+            position += HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    int end() {
+        return end;
+    }
+
+    int remaining() {
+        return buffer.capacity() - end;
+    }
+
+    long lastAppendMillis() {
+        return lastAppendMillis;
+    }
+
+    /**
+     * Append a record; the caller makes sure it fits and that there's a single writer.
+     */
+    void append(long timestamp, byte[] payload) {
+        int position = end;
+        ByteBuffer target = buffer.duplicate();
+        target.position(position + HEADER_SIZE);
+        target.put(payload);
+        buffer.putInt(position + 4, checksum(ByteBuffer.wrap(payload)));
+        buffer.putLong(position + 8, timestamp);
+        buffer.putInt(position, payload.length);
+        lastAppendMillis = timestamp;
+        end = position + HEADER_SIZE + payload.length;
+    }
+
+    /**
+     * Read the record at a position below {@link #end()}.
+     */
+    ChangeRecord read(int position) {
+        int length = buffer.getInt(position);
+        long timestamp = buffer.getLong(position + 8);
+        int next = position + HEADER_SIZE + length;
+        return new ChangeRecord(baseOffset + position, baseOffset + next, timestamp, ChangeCodec.decode(payload(position, length)));
+    }
+
+    private ByteBuffer payload(int position, int length) {
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(position + HEADER_SIZE);
+        payload.limit(position + HEADER_SIZE + length);
+        return payload.slice();
+    }
+
+    private static int checksum(ByteBuffer payload) {
+        CRC32 crc = new CRC32();
+        byte[] bytes = new byte[payload.remaining()];
+        payload.duplicate().get(bytes);
+        crc.update(bytes, 0, bytes.length);
+        return (int) crc.getValue();
+    }
+
+    void force() {
+        buffer.force();
+    }
+}
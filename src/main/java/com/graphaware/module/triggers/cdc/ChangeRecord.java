@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers.cdc;
+
+import java.util.List;
+
+/**
+ * The changes of one committed transaction, read from the {@link ChangeLog}.
+ */
+public class ChangeRecord {
+
+    private final long offset;
+    private final long nextOffset;
+    private final long timestamp;
+    private final List<ChangeEvent> events;
+
+    ChangeRecord(long offset, long nextOffset, long timestamp, List<ChangeEvent> events) {
+        this.offset = offset;
+        this.nextOffset = nextOffset;
+        this.timestamp = timestamp;
+        this.events = events;
+    }
+
+    /**
+     * @return position of this record in the log.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return position of the record following this one, to continue reading from.
+     */
+    public long getNextOffset() {
+        return nextOffset;
+    }
+
+    /**
+     * @return time the record was appended, in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return changes of the transaction: created nodes and relationships first (with their labels and properties),
+     *         then changes of existing ones, then deletions.
+     */
+    public List<ChangeEvent> getEvents() {
+        return events;
+    }
+}
@@ -22,6 +22,9 @@ import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.index.Index;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * Legacy Index implementation for indexing and finding nodes assigned a UUID
  */
@@ -59,4 +62,18 @@ public class LegacyTriggerIndexer implements TriggerIndexer {
     public void deleteNodeFromIndex(Node node) {
         database.index().forNodes(configuration.getTriggerIndexName()).remove(node, configuration.getTriggerNodeLabel());
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateIndex(String indexName, String key, Collection<Node> removals, Map<Node, Object> additions) {
+        Index<Node> index = database.index().forNodes(indexName);
+        for (Node node : removals) {
+            index.remove(node, key);
+        }
+        for (Map.Entry<Node, Object> addition : additions.entrySet()) {
+            index.add(addition.getKey(), key, addition.getValue());
+        }
+    }
 }
@@ -19,6 +19,9 @@ package com.graphaware.module.triggers.index;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.index.Index;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * Indexer for nodes assigned a UUID
  */
@@ -43,4 +46,13 @@ public interface TriggerIndexer {
 	 */
 	Index<Node> getTriggerNodes(String triggerLabel);
 
+	/**
+	 * Apply a batch of updates to one key of an index: first remove the entries of the given nodes, then add the new ones.
+	 * @param indexName name of the node index
+	 * @param key the key nodes are indexed by
+	 * @param removals nodes whose entries for the key should be removed
+	 * @param additions nodes to index, with the value to index them by
+	 */
+	void updateIndex(String indexName, String key, Collection<Node> removals, Map<Node, Object> additions);
+
 }
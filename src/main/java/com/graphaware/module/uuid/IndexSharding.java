@@ -0,0 +1,38 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.uuid;
+
+/**
+ * Strategies for spreading the UUID index maintained by {@link com.graphaware.module.uuid.UuidModule} over multiple
+ * legacy indexes.
+ */
+public enum IndexSharding {
+
+    /**
+     * All nodes are kept in a single index.
+     */
+    NONE,
+
+    /**
+     * Every node is kept in one index per label it carries, nodes without labels are kept in the configured index.
+     */
+    LABEL,
+
+    /**
+     * Nodes are spread over a fixed number of indexes by the hash of their UUID.
+     */
+    HASH
+}
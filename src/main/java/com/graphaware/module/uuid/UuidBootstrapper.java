@@ -17,7 +17,7 @@
 package com.graphaware.module.uuid;
 
 import com.graphaware.common.policy.NodeInclusionPolicy;
-import com.graphaware.runtime.config.function.StringToNodeInclusionPolicy;
+import com.graphaware.module.uuid.policy.StringToCompiledNodeInclusionPolicy;
 import com.graphaware.runtime.module.RuntimeModule;
 import com.graphaware.runtime.module.RuntimeModuleBootstrapper;
 import org.neo4j.graphdb.GraphDatabaseService;
@@ -36,6 +36,8 @@ public class UuidBootstrapper implements RuntimeModuleBootstrapper {
     //keys to use when configuring using neo4j.properties
     private static final String UUID_PROPERTY = "uuidProperty";
     private static final String UUID_INDEX = "uuidIndex";
+    private static final String UUID_INDEX_SHARDING = "uuidIndexSharding";
+    private static final String UUID_INDEX_SHARDS = "uuidIndexShards";
     private static final String NODE = "node";
 
     /**
@@ -55,8 +57,18 @@ public class UuidBootstrapper implements RuntimeModuleBootstrapper {
             LOG.info("uuidIndex set to {}", configuration.getUuidIndex());
         }
 
+        if (config.get(UUID_INDEX_SHARDING) != null && config.get(UUID_INDEX_SHARDING).length() > 0) {
+            IndexSharding sharding = IndexSharding.valueOf(config.get(UUID_INDEX_SHARDING).trim().toUpperCase());
+            int shards = configuration.getIndexShards();
+            if (config.get(UUID_INDEX_SHARDS) != null && config.get(UUID_INDEX_SHARDS).length() > 0) {
+                shards = Integer.parseInt(config.get(UUID_INDEX_SHARDS).trim());
+            }
+            configuration = configuration.withIndexSharding(sharding, shards);
+            LOG.info("uuidIndexSharding set to {} with {} shards", configuration.getIndexSharding(), configuration.getIndexShards());
+        }
+
         if (config.get(NODE) != null) {
-            NodeInclusionPolicy policy = StringToNodeInclusionPolicy.getInstance().apply(config.get(NODE));
+            NodeInclusionPolicy policy = StringToCompiledNodeInclusionPolicy.getInstance().apply(config.get(NODE));
             LOG.info("Node Inclusion Strategy set to {}", policy);
             configuration = configuration.with(policy);
         }
@@ -27,23 +27,33 @@ public class UuidConfiguration extends BaseTxDrivenModuleConfiguration<UuidConfi
 
     private static final String DEFAULT_UUID_PROPERTY = Properties.UUID;
     private static final String DEFAULT_UUID_NODEX_INDEX = Indexes.UUID_NODE_INDEX;
+    private static final IndexSharding DEFAULT_INDEX_SHARDING = IndexSharding.NONE;
+    private static final int DEFAULT_INDEX_SHARDS = 1;
 
     private String uuidProperty;
     private String uuidIndex;
+    private IndexSharding indexSharding = DEFAULT_INDEX_SHARDING;
+    private int indexShards = DEFAULT_INDEX_SHARDS;
 
     protected UuidConfiguration(InclusionPolicies inclusionPolicies) {
         super(inclusionPolicies);
     }
 
     public UuidConfiguration(InclusionPolicies inclusionPolicies, String uuidProperty, String uuidIndex) {
+        this(inclusionPolicies, uuidProperty, uuidIndex, DEFAULT_INDEX_SHARDING, DEFAULT_INDEX_SHARDS);
+    }
+
+    public UuidConfiguration(InclusionPolicies inclusionPolicies, String uuidProperty, String uuidIndex, IndexSharding indexSharding, int indexShards) {
         super(inclusionPolicies);
         this.uuidProperty = uuidProperty;
         this.uuidIndex = uuidIndex;
+        this.indexSharding = indexSharding;
+        this.indexShards = indexShards;
     }
 
     /**
      * Create a default configuration with default uuid property = {@link #DEFAULT_UUID_PROPERTY}, uuid index = {@link #DEFAULT_UUID_NODEX_INDEX}
-     * labels=all (including nodes with no labels)
+     * labels=all (including nodes with no labels), index sharding = {@link IndexSharding#NONE}
      * inclusion strategies = {@link com.graphaware.runtime.policy.InclusionPoliciesFactory#allBusiness()},
      * (nothing is excluded except for framework-internal nodes and relationships)
      * <p/>
@@ -59,7 +69,7 @@ public class UuidConfiguration extends BaseTxDrivenModuleConfiguration<UuidConfi
      */
     @Override
     protected UuidConfiguration newInstance(InclusionPolicies inclusionPolicies) {
-        return new UuidConfiguration(inclusionPolicies, getUuidProperty(), getUuidIndex());
+        return new UuidConfiguration(inclusionPolicies, getUuidProperty(), getUuidIndex(), getIndexSharding(), getIndexShards());
     }
 
     public String getUuidProperty() {
@@ -70,6 +80,14 @@ public class UuidConfiguration extends BaseTxDrivenModuleConfiguration<UuidConfi
         return uuidIndex;
     }
 
+    public IndexSharding getIndexSharding() {
+        return indexSharding;
+    }
+
+    public int getIndexShards() {
+        return indexShards;
+    }
+
     /**
      * Create a new instance of this {@link UuidConfiguration} with different uuid property.
      *
@@ -77,7 +95,7 @@ public class UuidConfiguration extends BaseTxDrivenModuleConfiguration<UuidConfi
      * @return new instance.
      */
     public UuidConfiguration withUuidProperty(String uuidProperty) {
-        return new UuidConfiguration(getInclusionPolicies(), uuidProperty, getUuidIndex());
+        return new UuidConfiguration(getInclusionPolicies(), uuidProperty, getUuidIndex(), getIndexSharding(), getIndexShards());
     }
 
     /**
@@ -87,7 +105,23 @@ public class UuidConfiguration extends BaseTxDrivenModuleConfiguration<UuidConfi
      * @return new instance.
      */
     public UuidConfiguration withUuidIndex(String uuidIndex) {
-        return new UuidConfiguration(getInclusionPolicies(), getUuidProperty(), uuidIndex);
+        return new UuidConfiguration(getInclusionPolicies(), getUuidProperty(), uuidIndex, getIndexSharding(), getIndexShards());
+    }
+
+    /**
+     * Create a new instance of this {@link UuidConfiguration} with different index sharding. The configured uuid index
+     * name is used as a prefix of the shard index names.
+     *
+     * @param indexSharding of the new instance.
+     * @param indexShards   number of shards, only relevant for {@link IndexSharding#HASH}.
+     * @return new instance.
+     */
+    public UuidConfiguration withIndexSharding(IndexSharding indexSharding, int indexShards) {
+        if (indexShards < 1) {
+            throw new IllegalArgumentException("Number of index shards must be at least 1, was " + indexShards);
+        }
+
+        return new UuidConfiguration(getInclusionPolicies(), getUuidProperty(), getUuidIndex(), indexSharding, indexShards);
     }
 
     /**
@@ -103,6 +137,8 @@ public class UuidConfiguration extends BaseTxDrivenModuleConfiguration<UuidConfi
 
         if (!uuidProperty.equals(that.uuidProperty)) return false;
         if (!uuidIndex.equals(that.uuidIndex)) return false;
+        if (indexSharding != that.indexSharding) return false;
+        if (indexShards != that.indexShards) return false;
 
         return true;
     }
@@ -115,6 +151,8 @@ public class UuidConfiguration extends BaseTxDrivenModuleConfiguration<UuidConfi
         int result = super.hashCode();
         result = 31 * result + uuidProperty.hashCode();
         result = 31 * result + uuidIndex.hashCode();
+        result = 31 * result + indexSharding.hashCode();
+        result = 31 * result + indexShards;
         return result;
     }
 }
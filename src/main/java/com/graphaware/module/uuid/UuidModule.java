@@ -15,21 +15,29 @@
  */
 package com.graphaware.module.uuid;
 
+import com.graphaware.common.policy.NodeInclusionPolicy;
 import com.graphaware.common.uuid.EaioUuidGenerator;
 import com.graphaware.common.uuid.UuidGenerator;
-import com.graphaware.module.uuid.index.LegacyIndexer;
 import com.graphaware.module.uuid.index.UuidIndexer;
+import com.graphaware.module.uuid.index.UuidIndexerFactory;
+import com.graphaware.module.uuid.policy.LabelSetNodeInclusionPolicy;
 import com.graphaware.runtime.module.BaseTxDrivenModule;
 import com.graphaware.runtime.module.DeliberateTransactionRollbackException;
 import com.graphaware.tx.event.improved.api.Change;
 import com.graphaware.tx.event.improved.api.ImprovedTransactionData;
 import com.graphaware.tx.executor.batch.IterableInputBatchTransactionExecutor;
 import com.graphaware.tx.executor.batch.UnitOfWork;
+import com.graphaware.tx.executor.callback.AllNodesWithLabel;
 import com.graphaware.tx.executor.single.TransactionCallback;
+import org.neo4j.graphdb.DynamicLabel;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
 import org.neo4j.tooling.GlobalGraphOperations;
 
+import java.util.Set;
+
 /**
  * {@link com.graphaware.runtime.module.TxDrivenModule} that assigns UUID's to nodes in the graph.
  */
@@ -51,7 +59,7 @@ public class UuidModule extends BaseTxDrivenModule<Void> {
         super(moduleId);
         this.uuidGenerator = new EaioUuidGenerator();
         this.uuidConfiguration = configuration;
-        this.uuidIndexer = new LegacyIndexer(database, configuration);
+        this.uuidIndexer = UuidIndexerFactory.createIndexer(database, configuration);
     }
 
     /**
@@ -64,27 +72,34 @@ public class UuidModule extends BaseTxDrivenModule<Void> {
 
     /**
      * {@inheritDoc}
+     * <p/>
+     * When the node inclusion policy is a {@link LabelSetNodeInclusionPolicy}, only nodes with the included labels are
+     * visited (through the label scan store), rather than all nodes in the database.
+     * <p/>
+     * Nodes that already have a UUID are indexed again, as the runtime initializes the module whenever its configuration
+     * changes, including the index sharding; indexes the new sharding doesn't use are deleted afterwards.
      */
     @Override
     public void initialize(GraphDatabaseService database) {
-        new IterableInputBatchTransactionExecutor<>(
-                database,
-                BATCH_SIZE,
-                new TransactionCallback<Iterable<Node>>() {
-                    @Override
-                    public Iterable<Node> doInTransaction(GraphDatabaseService database) throws Exception {
-                        return GlobalGraphOperations.at(database).getAllNodes();
-                    }
-                },
-                new UnitOfWork<Node>() {
-                    @Override
-                    public void execute(GraphDatabaseService database, Node node, int batchNumber, int stepNumber) {
-                        if (getConfiguration().getInclusionPolicies().getNodeInclusionPolicy().include(node)) {
-                            assignUuid(node);
-                        }
-                    }
+        NodeInclusionPolicy policy = getConfiguration().getInclusionPolicies().getNodeInclusionPolicy();
+
+        if (policy instanceof LabelSetNodeInclusionPolicy) {
+            for (String label : ((LabelSetNodeInclusionPolicy) policy).getLabels()) {
+                assignUuids(database, new AllNodesWithLabel(DynamicLabel.label(label)));
+            }
+        } else {
+            assignUuids(database, new TransactionCallback<Iterable<Node>>() {
+                @Override
+                public Iterable<Node> doInTransaction(GraphDatabaseService database) throws Exception {
+                    return GlobalGraphOperations.at(database).getAllNodes();
                 }
-        ).execute();
+            });
+        }
+
+        try (Transaction tx = database.beginTx()) {
+            uuidIndexer.deleteUnusedIndexes();
+            tx.success();
+        }
     }
 
     /**
@@ -111,11 +126,40 @@ public class UuidModule extends BaseTxDrivenModule<Void> {
             if (!change.getPrevious().getProperty(uuidConfiguration.getUuidProperty()).equals(change.getCurrent().getProperty(uuidConfiguration.getUuidProperty()))) {
                 throw new DeliberateTransactionRollbackException("You are not allowed to modify the " + uuidConfiguration.getUuidProperty() + " property");
             }
+
+            if (IndexSharding.LABEL.equals(uuidConfiguration.getIndexSharding())) {
+                Set<Label> assignedLabels = transactionData.assignedLabels(change.getCurrent());
+                Set<Label> removedLabels = transactionData.removedLabels(change.getCurrent());
+                if (!assignedLabels.isEmpty() || !removedLabels.isEmpty()) {
+                    uuidIndexer.updateLabels(change.getCurrent(), assignedLabels, removedLabels);
+                }
+            }
         }
 
         return null;
     }
 
+    private void assignUuids(GraphDatabaseService database, TransactionCallback<Iterable<Node>> nodes) {
+        new IterableInputBatchTransactionExecutor<>(
+                database,
+                BATCH_SIZE,
+                nodes,
+                new UnitOfWork<Node>() {
+                    @Override
+                    public void execute(GraphDatabaseService database, Node node, int batchNumber, int stepNumber) {
+                        if (!getConfiguration().getInclusionPolicies().getNodeInclusionPolicy().include(node)) {
+                            return;
+                        }
+                        if (node.hasProperty(uuidConfiguration.getUuidProperty())) {
+                            uuidIndexer.reindexNode(node);
+                        } else {
+                            assignUuid(node);
+                        }
+                    }
+                }
+        ).execute();
+    }
+
     private void assignUuid(Node node) {
         if (!node.hasProperty(uuidConfiguration.getUuidProperty())) {
             String uuid = uuidGenerator.generateUuid();
@@ -17,8 +17,9 @@
 package com.graphaware.module.uuid;
 
 
-import com.graphaware.module.uuid.index.LegacyIndexer;
 import com.graphaware.module.uuid.index.UuidIndexer;
+import com.graphaware.module.uuid.index.UuidIndexerFactory;
+import org.neo4j.graphdb.DynamicLabel;
 import org.neo4j.graphdb.GraphDatabaseService;
 import org.neo4j.graphdb.Node;
 import org.neo4j.graphdb.NotFoundException;
@@ -31,7 +32,7 @@ public class UuidReader {
 
     public UuidReader(UuidConfiguration configuration, GraphDatabaseService database) {
         this.database = database;
-        this.indexer = new LegacyIndexer(database, configuration);
+        this.indexer = UuidIndexerFactory.createIndexer(database, configuration);
     }
 
     /**
@@ -74,4 +75,48 @@ public class UuidReader {
 
         return nodeId;
     }
+
+    /**
+     * Get a node by its UUID and one of its labels. With label-sharded indexes, only the index of the given label is
+     * searched.
+     *
+     * @param uuid  uuid.
+     * @param label name of a label the node must have.
+     * @return Node object.
+     * @throws org.neo4j.graphdb.NotFoundException in case no node exists with such UUID and label.
+     */
+    public Node getNodeByUuid(String uuid, String label) {
+        Node node;
+
+        try (Transaction tx = database.beginTx()) {
+            node = indexer.getNodeByUuid(uuid, DynamicLabel.label(label));
+            tx.success();
+        }
+
+        if (node == null) {
+            throw new NotFoundException("Node with UUID " + uuid + " and label " + label + " does not exist");
+        }
+
+        return node;
+    }
+
+    /**
+     * Get a node ID by its UUID and one of its labels.
+     *
+     * @param uuid  uuid.
+     * @param label name of a label the node must have.
+     * @return Node ID.
+     * @throws org.neo4j.graphdb.NotFoundException in case no node exists with such UUID and label.
+     */
+    public long getNodeIdByUuid(String uuid, String label) {
+        Node node = getNodeByUuid(uuid, label);
+        long nodeId;
+
+        try (Transaction tx = database.beginTx()) {
+            nodeId = node.getId();
+            tx.success();
+        }
+
+        return nodeId;
+    }
 }
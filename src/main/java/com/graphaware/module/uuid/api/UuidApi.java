@@ -70,6 +70,36 @@ public class UuidApi {
         return new UuidReader(configuration, database).getNodeIdByUuid(uuid);
     }
 
+    /**
+     * Get the node id of the node which has the given uuid and label.
+     *
+     * @param label name of a label the node must have.
+     * @param uuid  the uuid.
+     * @return node id of the node which has the given uuid and label.
+     * @throws org.neo4j.graphdb.NotFoundException if none exist.
+     */
+    @RequestMapping(value = "/label/{label}/node/{uuid}", method = RequestMethod.GET)
+    @ResponseBody
+    public Long getNodeIdByLabelAndUuid(@PathVariable(value = "label") String label, @PathVariable(value = "uuid") String uuid) {
+        return getNodeIdByModuleLabelAndUuid(DEFAULT_MODULE_ID, label, uuid);
+    }
+
+    /**
+     * Get the node id of the node which has the given uuid and label.
+     *
+     * @param moduleId module id (used in the unlikely event that there are multiple modules, or if the module has a non-default ID).
+     * @param label    name of a label the node must have.
+     * @param uuid     the uuid.
+     * @return node id of the node which has the given uuid and label.
+     * @throws org.neo4j.graphdb.NotFoundException if none exist.
+     */
+    @RequestMapping(value = "/{moduleId}/label/{label}/node/{uuid}", method = RequestMethod.GET)
+    @ResponseBody
+    public Long getNodeIdByModuleLabelAndUuid(@PathVariable(value = "moduleId") String moduleId, @PathVariable(value = "label") String label, @PathVariable(value = "uuid") String uuid) {
+        UuidConfiguration configuration = getStartedRuntime(database).getModule(moduleId, UuidModule.class).getConfiguration();
+        return new UuidReader(configuration, database).getNodeIdByUuid(uuid, label);
+    }
+
     @ExceptionHandler(NotFoundException.class)
     @ResponseStatus(HttpStatus.NOT_FOUND)
     public void handleNotFound() {
@@ -18,8 +18,11 @@ package com.graphaware.module.uuid.index;
 
 import com.graphaware.module.uuid.UuidConfiguration;
 import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
 
+import java.util.Collection;
+
 /**
  * Legacy Index implementation for indexing and finding nodes assigned a UUID
  */
@@ -49,6 +52,20 @@ public class LegacyIndexer implements UuidIndexer {
         return database.index().forNodes(configuration.getUuidIndex()).get(configuration.getUuidProperty(), uuid).getSingle();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Node getNodeByUuid(String uuid, Label label) {
+        Node node = getNodeByUuid(uuid);
+
+        if (node == null || !node.hasLabel(label)) {
+            return null;
+        }
+
+        return node;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -56,4 +73,33 @@ public class LegacyIndexer implements UuidIndexer {
     public void deleteNodeFromIndex(Node node) {
         database.index().forNodes(configuration.getUuidIndex()).remove(node, configuration.getUuidProperty());
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateLabels(Node node, Collection<Label> assignedLabels, Collection<Label> removedLabels) {
+        //labels play no role in a single index
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reindexNode(Node node) {
+        UuidIndexNames.removeFromAll(database, configuration, node);
+        indexNode(node);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deleteUnusedIndexes() {
+        for (String indexName : UuidIndexNames.existing(database, configuration)) {
+            if (!indexName.equals(configuration.getUuidIndex())) {
+                database.index().forNodes(indexName).delete();
+            }
+        }
+    }
 }
@@ -0,0 +1,235 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.uuid.index;
+
+import com.graphaware.module.uuid.IndexSharding;
+import com.graphaware.module.uuid.UuidConfiguration;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.index.Index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static com.graphaware.module.uuid.index.UuidIndexNames.SHARD_SEPARATOR;
+
+/**
+ * Legacy Index implementation spreading nodes assigned a UUID over multiple indexes, as determined by
+ * {@link UuidConfiguration#getIndexSharding()}.
+ * <p/>
+ * With {@link IndexSharding#HASH}, a node lives in exactly one of {@link UuidConfiguration#getIndexShards()} indexes,
+ * chosen by the hash of its UUID, so that lookups go straight to the right shard. With {@link IndexSharding#LABEL},
+ * a node lives in one index per label it carries (nodes without labels live in the configured index), so that
+ * writers on unrelated labels don't touch the same index and label-qualified lookups only hit a single shard.
+ */
+public class ShardedLegacyIndexer implements UuidIndexer {
+
+    private final GraphDatabaseService database;
+    private final UuidConfiguration configuration;
+
+    public ShardedLegacyIndexer(GraphDatabaseService database, UuidConfiguration configuration) {
+        this.database = database;
+        this.configuration = configuration;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void indexNode(Node node) {
+        Object uuid = node.getProperty(configuration.getUuidProperty());
+        for (String indexName : indexNames(node, uuid)) {
+            database.index().forNodes(indexName).add(node, configuration.getUuidProperty(), uuid);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void deleteNodeFromIndex(Node node) {
+        Object uuid = node.getProperty(configuration.getUuidProperty(), null);
+        if (uuid == null) {
+            return;
+        }
+
+        for (String indexName : indexNames(node, uuid)) {
+            database.index().forNodes(indexName).remove(node, configuration.getUuidProperty());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Node getNodeByUuid(String uuid) {
+        if (IndexSharding.HASH.equals(configuration.getIndexSharding())) {
+            return getSingle(hashShard(uuid), uuid);
+        }
+
+        Node node = getSingle(configuration.getUuidIndex(), uuid);
+        if (node != null) {
+            return node;
+        }
+
+        String prefix = configuration.getUuidIndex() + SHARD_SEPARATOR;
+        for (String indexName : database.index().nodeIndexNames()) {
+            if (indexName.startsWith(prefix)) {
+                node = getSingle(indexName, uuid);
+                if (node != null) {
+                    return node;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Node getNodeByUuid(String uuid, Label label) {
+        Node node;
+
+        if (IndexSharding.LABEL.equals(configuration.getIndexSharding())) {
+            node = getSingle(labelShard(label), uuid);
+        } else {
+            node = getNodeByUuid(uuid);
+        }
+
+        if (node == null || !node.hasLabel(label)) {
+            return null;
+        }
+
+        return node;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void updateLabels(Node node, Collection<Label> assignedLabels, Collection<Label> removedLabels) {
+        if (!IndexSharding.LABEL.equals(configuration.getIndexSharding())) {
+            return;
+        }
+
+        Object uuid = node.getProperty(configuration.getUuidProperty(), null);
+        if (uuid == null) {
+            return;
+        }
+
+        for (Label label : removedLabels) {
+            database.index().forNodes(labelShard(label)).remove(node, configuration.getUuidProperty());
+        }
+
+        for (Label label : assignedLabels) {
+            database.index().forNodes(labelShard(label)).add(node, configuration.getUuidProperty(), uuid);
+        }
+
+        int labels = countLabels(node);
+        boolean hasLabels = labels > 0;
+        boolean hadLabels = labels - assignedLabels.size() + removedLabels.size() > 0;
+
+        if (hasLabels && !hadLabels) {
+            database.index().forNodes(configuration.getUuidIndex()).remove(node, configuration.getUuidProperty());
+        } else if (!hasLabels && hadLabels) {
+            database.index().forNodes(configuration.getUuidIndex()).add(node, configuration.getUuidProperty(), uuid);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reindexNode(Node node) {
+        UuidIndexNames.removeFromAll(database, configuration, node);
+        indexNode(node);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p/>
+     * With {@link IndexSharding#HASH}, these are the configured index and the shards beyond the configured number. With
+     * {@link IndexSharding#LABEL}, no index is deleted, as shards of former labels can't be told apart from the others;
+     * re-indexing leaves them empty.
+     */
+    @Override
+    public void deleteUnusedIndexes() {
+        if (!IndexSharding.HASH.equals(configuration.getIndexSharding())) {
+            return;
+        }
+
+        Set<String> shards = new HashSet<>();
+        for (int shard = 0; shard < configuration.getIndexShards(); shard++) {
+            shards.add(configuration.getUuidIndex() + SHARD_SEPARATOR + shard);
+        }
+        for (String indexName : UuidIndexNames.existing(database, configuration)) {
+            if (!shards.contains(indexName)) {
+                database.index().forNodes(indexName).delete();
+            }
+        }
+    }
+
+    private List<String> indexNames(Node node, Object uuid) {
+        List<String> result = new ArrayList<>();
+
+        if (IndexSharding.HASH.equals(configuration.getIndexSharding())) {
+            result.add(hashShard(String.valueOf(uuid)));
+            return result;
+        }
+
+        for (Label label : node.getLabels()) {
+            result.add(labelShard(label));
+        }
+
+        if (result.isEmpty()) {
+            result.add(configuration.getUuidIndex());
+        }
+
+        return result;
+    }
+
+    private String hashShard(String uuid) {
+        return configuration.getUuidIndex() + SHARD_SEPARATOR + ((uuid.hashCode() & Integer.MAX_VALUE) % configuration.getIndexShards());
+    }
+
+    private String labelShard(Label label) {
+        return configuration.getUuidIndex() + SHARD_SEPARATOR + label.name();
+    }
+
+    private Node getSingle(String indexName, String uuid) {
+        if (!database.index().existsForNodes(indexName)) {
+            return null;
+        }
+
+        Index<Node> index = database.index().forNodes(indexName);
+        return index.get(configuration.getUuidProperty(), uuid).getSingle();
+    }
+
+    private int countLabels(Node node) {
+        int count = 0;
+        for (Label ignored : node.getLabels()) {
+            count++;
+        }
+        return count;
+    }
+}
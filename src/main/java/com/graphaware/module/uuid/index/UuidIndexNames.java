@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.uuid.index;
+
+import com.graphaware.module.uuid.UuidConfiguration;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Names of the legacy indexes nodes assigned a UUID are kept in: the configured index and its shards, named after the
+ * configured index followed by {@link #SHARD_SEPARATOR}.
+ */
+final class UuidIndexNames {
+
+    static final String SHARD_SEPARATOR = "_";
+
+    private UuidIndexNames() {
+    }
+
+    /**
+     * @return names of the existing indexes of the configured index, sharded or not, whatever sharding they were
+     *         created with.
+     */
+    static List<String> existing(GraphDatabaseService database, UuidConfiguration configuration) {
+        List<String> result = new ArrayList<>();
+        String prefix = configuration.getUuidIndex() + SHARD_SEPARATOR;
+        for (String indexName : database.index().nodeIndexNames()) {
+            if (indexName.equals(configuration.getUuidIndex()) || indexName.startsWith(prefix)) {
+                result.add(indexName);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Remove a node from all existing indexes of the configured index.
+     */
+    static void removeFromAll(GraphDatabaseService database, UuidConfiguration configuration, Node node) {
+        for (String indexName : existing(database, configuration)) {
+            database.index().forNodes(indexName).remove(node, configuration.getUuidProperty());
+        }
+    }
+}
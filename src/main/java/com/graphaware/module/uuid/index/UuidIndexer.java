@@ -16,8 +16,11 @@
 
 package com.graphaware.module.uuid.index;
 
+import org.neo4j.graphdb.Label;
 import org.neo4j.graphdb.Node;
 
+import java.util.Collection;
+
 /**
  * Indexer for nodes assigned a UUID
  */
@@ -42,4 +45,32 @@ public interface UuidIndexer {
 	 */
 	Node getNodeByUuid(String uuid);
 
+	/**
+	 * Find a node given its UUID and one of its labels
+	 * @param uuid the uuid
+	 * @param label label the node must have
+	 * @return the Node with the given UUID and label or null
+	 */
+	Node getNodeByUuid(String uuid, Label label);
+
+	/**
+	 * Keep the index in sync after labels have been assigned to or removed from an indexed node
+	 * @param node the node
+	 * @param assignedLabels labels assigned to the node
+	 * @param removedLabels labels removed from the node
+	 */
+	void updateLabels(Node node, Collection<Label> assignedLabels, Collection<Label> removedLabels);
+
+	/**
+	 * Index a node that may have been indexed with another sharding before, removing it from the indexes it no longer
+	 * belongs to
+	 * @param node the node to index
+	 */
+	void reindexNode(Node node);
+
+	/**
+	 * Delete the indexes left over from another sharding, once all nodes have been re-indexed
+	 */
+	void deleteUnusedIndexes();
+
 }
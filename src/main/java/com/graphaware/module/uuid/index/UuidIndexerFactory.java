@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+
+package com.graphaware.module.uuid.index;
+
+import com.graphaware.module.uuid.IndexSharding;
+import com.graphaware.module.uuid.UuidConfiguration;
+import org.neo4j.graphdb.GraphDatabaseService;
+
+/**
+ * Factory producing the {@link UuidIndexer} matching a {@link UuidConfiguration}.
+ */
+public final class UuidIndexerFactory {
+
+    private UuidIndexerFactory() {
+    }
+
+    /**
+     * Create an indexer for the given configuration.
+     *
+     * @param database      to index nodes in.
+     * @param configuration of the module.
+     * @return indexer, sharded if the configuration asks for it.
+     */
+    public static UuidIndexer createIndexer(GraphDatabaseService database, UuidConfiguration configuration) {
+        if (configuration.getIndexSharding() == null || IndexSharding.NONE.equals(configuration.getIndexSharding())) {
+            return new LegacyIndexer(database, configuration);
+        }
+
+        return new ShardedLegacyIndexer(database, configuration);
+    }
+}
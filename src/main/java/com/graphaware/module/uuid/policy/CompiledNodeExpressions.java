@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.uuid.policy;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.DynamicLabel;
+import org.neo4j.graphdb.DynamicRelationshipType;
+import org.neo4j.graphdb.Node;
+
+/**
+ * Root object of the expressions evaluated by {@link CompiledSpelNodeInclusionPolicy}. It mirrors the functions available
+ * to the framework's SpEL node inclusion policies, but is public, which SpEL's compiler requires.
+ */
+public class CompiledNodeExpressions {
+
+    private final Node node;
+
+    public CompiledNodeExpressions(Node node) {
+        this.node = node;
+    }
+
+    public boolean hasProperty(String key) {
+        return node.hasProperty(key);
+    }
+
+    public Object getProperty(String key, Object defaultValue) {
+        return node.getProperty(key, defaultValue);
+    }
+
+    public boolean hasLabel(String label) {
+        return node.hasLabel(DynamicLabel.label(label));
+    }
+
+    public int getDegree() {
+        return node.getDegree();
+    }
+
+    public int getDegree(String typeOrDirection) {
+        for (Direction direction : Direction.values()) {
+            if (direction.name().equalsIgnoreCase(typeOrDirection)) {
+                return node.getDegree(direction);
+            }
+        }
+
+        return node.getDegree(DynamicRelationshipType.withName(typeOrDirection));
+    }
+
+    public int getDegree(String type, String direction) {
+        return node.getDegree(DynamicRelationshipType.withName(type), Direction.valueOf(direction.toUpperCase()));
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.uuid.policy;
+
+import com.graphaware.common.policy.NodeInclusionPolicy;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.neo4j.graphdb.Node;
+
+/**
+ * {@link NodeInclusionPolicy} based on a Spring Expression Language expression, evaluated in SpEL's compiled mode.
+ * After the first few evaluations, expressions that SpEL can compile are turned into bytecode; expressions (or parts of
+ * expressions) it can't compile keep being interpreted, just like with
+ * {@link com.graphaware.common.policy.spel.SpelNodeInclusionPolicy}.
+ * <p/>
+ * The expression is evaluated against {@link CompiledNodeExpressions}, which offers the same functions as the
+ * framework's SpEL policies.
+ */
+public class CompiledSpelNodeInclusionPolicy implements NodeInclusionPolicy {
+
+    private final String expression;
+    private final transient Expression exp;
+
+    public CompiledSpelNodeInclusionPolicy(String expression) {
+        this.expression = expression;
+        SpelParserConfiguration configuration = new SpelParserConfiguration(SpelCompilerMode.MIXED, CompiledSpelNodeInclusionPolicy.class.getClassLoader());
+        this.exp = new SpelExpressionParser(configuration).parseExpression(expression);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean include(Node node) {
+        return Boolean.TRUE.equals(exp.getValue(new CompiledNodeExpressions(node), Boolean.class));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        CompiledSpelNodeInclusionPolicy that = (CompiledSpelNodeInclusionPolicy) o;
+
+        return expression.equals(that.expression);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return expression.hashCode();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.uuid.policy;
+
+import com.graphaware.common.policy.NodeInclusionPolicy;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.graphaware.runtime.config.RuntimeConfiguration.GA_PREFIX;
+
+/**
+ * {@link NodeInclusionPolicy} including business (i.e. not framework-internal) nodes that have at least one of a
+ * pre-computed set of labels. It is equivalent to a {@code hasLabel('A') || hasLabel('B')} Spring Expression Language
+ * expression combined with {@link com.graphaware.runtime.policy.all.IncludeAllBusinessNodes}, but decides with a single
+ * pass over the node's labels and a set lookup, instead of evaluating an expression tree per node.
+ */
+public class LabelSetNodeInclusionPolicy implements NodeInclusionPolicy {
+
+    private static final String HAS_LABEL = "hasLabel\\(\\s*(?:'([^']+)'|\"([^\"]+)\")\\s*\\)";
+    private static final Pattern HAS_LABEL_PATTERN = Pattern.compile(HAS_LABEL);
+    private static final Pattern DISJUNCTION_PATTERN = Pattern.compile("\\s*" + HAS_LABEL + "(?:\\s*(?:\\|\\||\\sor\\s)\\s*" + HAS_LABEL + ")*\\s*");
+
+    private final HashSet<String> labels;
+
+    public LabelSetNodeInclusionPolicy(Collection<String> labels) {
+        this.labels = new HashSet<>(labels);
+    }
+
+    /**
+     * Recognise a disjunction of {@code hasLabel} calls, e.g. {@code hasLabel('Person') || hasLabel('Company')}.
+     *
+     * @param expression Spring Expression Language expression.
+     * @return policy equivalent to the expression, null if the expression isn't a plain disjunction of labels.
+     */
+    public static LabelSetNodeInclusionPolicy parse(String expression) {
+        if (!DISJUNCTION_PATTERN.matcher(expression).matches()) {
+            return null;
+        }
+
+        Set<String> labels = new HashSet<>();
+        Matcher matcher = HAS_LABEL_PATTERN.matcher(expression);
+        while (matcher.find()) {
+            labels.add(matcher.group(1) != null ? matcher.group(1) : matcher.group(2));
+        }
+
+        return new LabelSetNodeInclusionPolicy(labels);
+    }
+
+    /**
+     * @return names of the labels included by this policy.
+     */
+    public Set<String> getLabels() {
+        return Collections.unmodifiableSet(labels);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean include(Node node) {
+        boolean result = false;
+
+        for (Label label : node.getLabels()) {
+            String name = label.name();
+            if (name.startsWith(GA_PREFIX)) {
+                return false;
+            }
+            if (!result && labels.contains(name)) {
+                result = true;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        LabelSetNodeInclusionPolicy that = (LabelSetNodeInclusionPolicy) o;
+
+        return labels.equals(that.labels);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return labels.hashCode();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "LabelSetNodeInclusionPolicy" + labels;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2014 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.uuid.policy;
+
+import com.graphaware.common.policy.NodeInclusionPolicy;
+import com.graphaware.common.policy.composite.CompositeNodeInclusionPolicy;
+import com.graphaware.runtime.config.function.StringToInclusionPolicy;
+import com.graphaware.runtime.policy.all.IncludeAllBusinessNodes;
+
+/**
+ * A drop-in replacement for {@link com.graphaware.runtime.config.function.StringToNodeInclusionPolicy}, which avoids
+ * interpreting an expression tree for every node. Disjunctions of {@code hasLabel} calls become a
+ * {@link LabelSetNodeInclusionPolicy}, other expressions become a {@link CompiledSpelNodeInclusionPolicy}. Fully
+ * qualified class names are handled exactly like the framework does.
+ */
+public final class StringToCompiledNodeInclusionPolicy extends StringToInclusionPolicy<NodeInclusionPolicy> {
+
+    private static final StringToCompiledNodeInclusionPolicy INSTANCE = new StringToCompiledNodeInclusionPolicy();
+
+    public static StringToCompiledNodeInclusionPolicy getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected NodeInclusionPolicy compositePolicy(NodeInclusionPolicy policy) {
+        if (policy instanceof LabelSetNodeInclusionPolicy) {
+            //already excludes framework-internal nodes
+            return policy;
+        }
+
+        return CompositeNodeInclusionPolicy.of(IncludeAllBusinessNodes.getInstance(), policy);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected NodeInclusionPolicy spelPolicy(String expression) {
+        LabelSetNodeInclusionPolicy labelSetPolicy = LabelSetNodeInclusionPolicy.parse(expression);
+        if (labelSetPolicy != null) {
+            return labelSetPolicy;
+        }
+
+        return new CompiledSpelNodeInclusionPolicy(expression);
+    }
+}
@@ -0,0 +1,1979 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+import com.graphaware.common.policy.InclusionPolicies;
+import com.graphaware.common.policy.NodeInclusionPolicy;
+import com.graphaware.module.uuid.IndexSharding;
+import com.graphaware.module.uuid.UuidConfiguration;
+import com.graphaware.module.uuid.UuidReader;
+import com.graphaware.runtime.GraphAwareRuntime;
+import com.graphaware.runtime.GraphAwareRuntimeFactory;
+import com.graphaware.runtime.policy.InclusionPoliciesFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.neo4j.graphdb.*;
+import org.neo4j.helpers.collection.Iterables;
+import org.neo4j.test.TestGraphDatabaseFactory;
+import org.neo4j.tooling.GlobalGraphOperations;
+
+import com.graphaware.module.triggers.cdc.ChangeEvent;
+import com.graphaware.module.triggers.cdc.ChangeLog;
+import com.graphaware.module.triggers.cdc.ChangeLogReader;
+import com.graphaware.module.triggers.cdc.ChangeRecord;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.script.ScriptEngineManager;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeNotNull;
+
+public class TriggerModuleEmbeddedProgrammaticTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private GraphDatabaseService database;
+    private TriggerModule module;
+
+    @Before
+    public void setUp() {
+        database = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        module = new TriggerModule(TriggerModule.DEFAULT_MODULE_ID, TriggerModuleConfiguration.defaultConfiguration(), database);
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    public void createdAndDeletedNodesShouldBeDispatchedToRegisteredTriggers() {
+        RecordingTrigger onCreate = new RecordingTrigger("onCreate");
+        onCreate.handlesEvent(PropertyTrigger.CREATE);
+        RecordingTrigger onDelete = new RecordingTrigger("onDelete");
+        onDelete.handlesEvent(PropertyTrigger.DELETE);
+        RecordingTrigger onChange = new RecordingTrigger("onChange");
+        onChange.handlesChanges();
+        start(onCreate, onDelete, onChange);
+
+        long nodeId;
+        try (Transaction tx = database.beginTx()) {
+            nodeId = database.createNode().getId();
+            tx.success();
+        }
+
+        assertEquals(1, onCreate.created.size());
+        assertEquals(0, onDelete.deleted.size());
+        assertEquals(1, onChange.created.size());
+
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(nodeId).delete();
+            tx.success();
+        }
+
+        assertEquals(1, onCreate.created.size());
+        assertEquals(1, onDelete.deleted.size());
+        assertEquals(1, onChange.deleted.size());
+    }
+
+    @Test
+    public void modifiedNodesShouldOnlyBeDispatchedToInterestedTriggers() {
+        RecordingTrigger nameWatcher = new RecordingTrigger("name");
+        nameWatcher.handlesEvent(PropertyTrigger.MODIFY).whenPropertiesChange("name");
+        RecordingTrigger ageWatcher = new RecordingTrigger("age");
+        ageWatcher.handlesEvent(PropertyTrigger.MODIFY).whenPropertiesChange("age", "born");
+        RecordingTrigger wildcard = new RecordingTrigger("wildcard");
+        wildcard.handlesEvent(PropertyTrigger.MODIFY);
+        RecordingTrigger ageChangeWatcher = new RecordingTrigger("ageChange");
+        ageChangeWatcher.handlesChanges().whenPropertiesChange("age");
+        start(nameWatcher, ageWatcher, wildcard, ageChangeWatcher);
+
+        long nodeId;
+        try (Transaction tx = database.beginTx()) {
+            Node node = database.createNode();
+            node.setProperty("name", "Michal");
+            node.setProperty("age", 30);
+            nodeId = node.getId();
+            tx.success();
+        }
+
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(nodeId).setProperty("name", "Luanne");
+            tx.success();
+        }
+
+        assertEquals(1, nameWatcher.modified.size());
+        assertEquals(0, ageWatcher.modified.size());
+        assertEquals(1, wildcard.modified.size());
+        assertEquals(0, ageChangeWatcher.modified.size());
+
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(nodeId).removeProperty("age");
+            tx.success();
+        }
+
+        assertEquals(1, nameWatcher.modified.size());
+        assertEquals(1, ageWatcher.modified.size());
+        assertEquals(2, wildcard.modified.size());
+        assertEquals(1, ageChangeWatcher.modified.size());
+
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(nodeId).setProperty("born", 1985);
+            tx.success();
+        }
+
+        assertEquals(1, nameWatcher.modified.size());
+        assertEquals(2, ageWatcher.modified.size());
+        assertEquals(3, wildcard.modified.size());
+        assertEquals(1, ageChangeWatcher.modified.size());
+    }
+
+    @Test
+    public void allTriggersShouldShareOnePropertyDiffPerModifiedNode() {
+        RecordingTrigger first = new RecordingTrigger("first");
+        first.handlesEvent(PropertyTrigger.MODIFY).whenPropertiesChange("name");
+        RecordingTrigger second = new RecordingTrigger("second");
+        second.handlesChanges().whenPropertiesChange("age");
+        start(first, second);
+
+        long nodeId = createNode();
+
+        try (Transaction tx = database.beginTx()) {
+            Node node = database.getNodeById(nodeId);
+            node.setProperty("name", "Luanne");
+            node.setProperty("age", 30);
+            tx.success();
+        }
+
+        assertEquals(1, first.diffs.size());
+        assertEquals(2, second.diffs.size());
+        PropertyDiff diff = first.diffs.get(0);
+        assertSame(diff, second.diffs.get(1));
+        assertEquals(Collections.<String, Object>singletonMap("age", 30), diff.getAdded());
+        assertTrue(diff.getRemoved().isEmpty());
+        assertEquals(Collections.singleton("name"), diff.getChanged().keySet());
+        assertEquals("Michal", diff.getPrevious("name"));
+        assertEquals("Luanne", diff.getCurrent("name"));
+        assertNull(diff.getPrevious("age"));
+        assertEquals(new HashSet<>(Arrays.asList("name", "age")), diff.getKeys());
+
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(nodeId).removeProperty("age");
+            tx.success();
+        }
+
+        diff = second.diffs.get(2);
+        assertEquals(Collections.singleton("age"), diff.getKeys());
+        assertEquals(30, diff.getPrevious("age"));
+        assertNull(diff.getCurrent("age"));
+        assertEquals(1, first.diffs.size());
+    }
+
+    @Test
+    public void triggersWithLabelFiltersShouldOnlySeeNodesWithThoseLabels() {
+        RecordingTrigger people = new RecordingTrigger("people");
+        people.handlesEvent(PropertyTrigger.CREATE).handlesEvent(PropertyTrigger.MODIFY).handlesEvent(PropertyTrigger.DELETE).withLabels("Person");
+        RecordingTrigger everything = new RecordingTrigger("everything");
+        everything.handlesEvent(PropertyTrigger.CREATE).handlesEvent(PropertyTrigger.MODIFY).handlesEvent(PropertyTrigger.DELETE);
+        start(people, everything);
+
+        long personId, companyId;
+        try (Transaction tx = database.beginTx()) {
+            personId = database.createNode(DynamicLabel.label("Person")).getId();
+            companyId = database.createNode(DynamicLabel.label("Company")).getId();
+            tx.success();
+        }
+
+        assertEquals(1, people.created.size());
+        assertEquals(2, everything.created.size());
+
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(personId).setProperty("name", "Michal");
+            database.getNodeById(companyId).setProperty("name", "GraphAware");
+            tx.success();
+        }
+
+        assertEquals(1, people.modified.size());
+        assertEquals(2, everything.modified.size());
+
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(personId).removeLabel(DynamicLabel.label("Person"));
+            tx.success();
+        }
+
+        assertEquals(2, people.modified.size());
+        assertEquals(3, everything.modified.size());
+
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(companyId).addLabel(DynamicLabel.label("Person"));
+            tx.success();
+        }
+
+        assertEquals(3, people.modified.size());
+
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(personId).delete();
+            database.getNodeById(companyId).delete();
+            tx.success();
+        }
+
+        assertEquals(1, people.deleted.size());
+        assertEquals(2, everything.deleted.size());
+    }
+
+    @Test
+    public void valueTransitionsShouldFilterModifiedNodes() {
+        RecordingTrigger completed = new RecordingTrigger("completed");
+        completed.handlesEvent(PropertyTrigger.MODIFY).whenPropertyChanges("status", "PENDING", "DONE");
+        RecordingTrigger reopened = new RecordingTrigger("reopened");
+        reopened.handlesEvent(PropertyTrigger.MODIFY).whenPropertyChanges("status", PropertyTrigger.ANY_VALUE, "PENDING");
+        RecordingTrigger highScore = new RecordingTrigger("highScore");
+        highScore.handlesEvent(PropertyTrigger.MODIFY).whenPropertyRisesAbove("score", 10);
+        start(completed, reopened, highScore);
+
+        long nodeId;
+        try (Transaction tx = database.beginTx()) {
+            Node node = database.createNode();
+            node.setProperty("status", "PENDING");
+            node.setProperty("score", 5);
+            nodeId = node.getId();
+            tx.success();
+        }
+
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(nodeId).setProperty("status", "DONE");
+            tx.success();
+        }
+        assertEquals(1, completed.modified.size());
+        assertEquals(0, reopened.modified.size());
+        assertEquals(0, highScore.modified.size());
+
+        try (Transaction tx = database.beginTx()) {
+            Node node = database.getNodeById(nodeId);
+            node.setProperty("status", "PENDING");
+            node.setProperty("score", 20);
+            tx.success();
+        }
+        assertEquals(1, completed.modified.size());
+        assertEquals(1, reopened.modified.size());
+        assertEquals(1, highScore.modified.size());
+
+        try (Transaction tx = database.beginTx()) {
+            Node node = database.getNodeById(nodeId);
+            node.setProperty("status", "DONE");
+            node.setProperty("score", 30);
+            tx.success();
+        }
+        assertEquals(2, completed.modified.size());
+        assertEquals(1, reopened.modified.size());
+        assertEquals(1, highScore.modified.size());
+    }
+
+    @Test
+    public void triggersShouldRunInDependencyOrderAndCascadeTheirChanges() {
+        final List<String> calls = new ArrayList<>();
+        RecordingTrigger slugWatcher = new RecordingTrigger("slugWatcher") {
+            @Override
+            public Boolean OnModify(Node _previous, Node _current, PropertyDiff diff) {
+                calls.add("slugWatcher");
+                return super.OnModify(_previous, _current, diff);
+            }
+        };
+        slugWatcher.handlesEvent(PropertyTrigger.MODIFY).whenPropertiesChange("name", "slug");
+        RecordingTrigger slugger = new RecordingTrigger("slugger") {
+            @Override
+            public Boolean OnModify(Node _previous, Node _current, PropertyDiff diff) {
+                calls.add("slugger");
+                _current.setProperty("slug", ((String) _current.getProperty("name")).toLowerCase());
+                return true;
+            }
+        };
+        slugger.handlesEvent(PropertyTrigger.MODIFY).whenPropertiesChange("name").modifiesProperties("slug");
+        RecordingTrigger trimmer = new RecordingTrigger("trimmer") {
+            @Override
+            public Boolean OnModify(Node _previous, Node _current, PropertyDiff diff) {
+                calls.add("trimmer");
+                _current.setProperty("name", ((String) _current.getProperty("name")).trim());
+                return true;
+            }
+        };
+        trimmer.handlesEvent(PropertyTrigger.MODIFY).whenPropertiesChange("name").modifiesProperties("name");
+        start(slugWatcher, slugger, trimmer);
+
+        assertEquals(Arrays.<PropertyTrigger>asList(trimmer, slugger, slugWatcher), module.getRegistry().ordered);
+
+        long nodeId = createNode();
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(nodeId).setProperty("name", "  Vince ");
+            tx.success();
+        }
+
+        // The transaction's changes, then the ones the trimmer and the slugger made; nothing changes in the second round
+        assertEquals(Arrays.asList("trimmer", "slugger", "slugWatcher", "trimmer", "slugger", "slugWatcher"), calls);
+        assertEquals(new HashSet<>(Arrays.asList("name", "slug")), slugWatcher.diffs.get(1).getKeys());
+        assertEquals("  Vince ", slugWatcher.diffs.get(1).getPrevious("name"));
+        assertEquals("vince", slugWatcher.diffs.get(1).getCurrent("slug"));
+
+        try (Transaction tx = database.beginTx()) {
+            assertEquals("Vince", database.getNodeById(nodeId).getProperty("name"));
+            assertEquals("vince", database.getNodeById(nodeId).getProperty("slug"));
+            tx.success();
+        }
+    }
+
+    @Test
+    public void cyclicTriggersShouldBeRejectedAndRunawayCascadesRolledBack() {
+        RecordingTrigger first = new RecordingTrigger("first");
+        first.handlesEvent(PropertyTrigger.MODIFY).whenPropertiesChange("x").modifiesProperties("y");
+        RecordingTrigger second = new RecordingTrigger("second");
+        second.handlesEvent(PropertyTrigger.MODIFY).whenPropertiesChange("y").modifiesProperties("x");
+        module.registerTrigger(first);
+        try {
+            module.registerTrigger(second);
+            fail();
+        } catch (IllegalStateException e) {
+            //ok
+        }
+        assertEquals(Collections.<PropertyTrigger>singletonList(first), module.getRegistry().registered);
+
+        RecordingTrigger counter = new RecordingTrigger("counter") {
+            @Override
+            public Boolean OnModify(Node _previous, Node _current, PropertyDiff diff) {
+                _current.setProperty("count", (int) _current.getProperty("count", 0) + 1);
+                return true;
+            }
+        };
+        counter.handlesEvent(PropertyTrigger.MODIFY).whenPropertiesChange("count").modifiesProperties("count");
+        start(counter);
+
+        long nodeId = createNode();
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(nodeId).setProperty("count", 1);
+            tx.success();
+        } catch (TransactionFailureException e) {
+            //ok
+        }
+
+        try (Transaction tx = database.beginTx()) {
+            assertFalse(database.getNodeById(nodeId).hasProperty("count"));
+            tx.success();
+        }
+    }
+
+    @Test
+    public void labelTransitionsShouldBeDispatchedToInterestedTriggers() {
+        RecordingTrigger personWatcher = new RecordingTrigger("person");
+        personWatcher.handlesEvent(PropertyTrigger.MODIFY).whenLabelsChange("Person").handlesLabelChanges();
+        RecordingTrigger nameWatcher = new RecordingTrigger("name");
+        nameWatcher.handlesEvent(PropertyTrigger.MODIFY).whenPropertiesChange("name");
+        RecordingTrigger allLabels = new RecordingTrigger("allLabels");
+        allLabels.handlesLabelChanges();
+        start(personWatcher, nameWatcher, allLabels);
+
+        long nodeId = createNode();
+
+        try (Transaction tx = database.beginTx()) {
+            Node node = database.getNodeById(nodeId);
+            node.addLabel(DynamicLabel.label("Person"));
+            node.addLabel(DynamicLabel.label("Employee"));
+            tx.success();
+        }
+
+        assertEquals(1, personWatcher.modified.size());
+        assertEquals(Collections.singletonList("+Person"), personWatcher.labelChanges);
+        assertEquals(0, nameWatcher.modified.size());
+        assertEquals(2, allLabels.labelChanges.size());
+        assertTrue(allLabels.labelChanges.containsAll(Arrays.asList("+Person", "+Employee")));
+
+        try (Transaction tx = database.beginTx()) {
+            Node node = database.getNodeById(nodeId);
+            node.removeLabel(DynamicLabel.label("Employee"));
+            node.setProperty("name", "Luanne");
+            tx.success();
+        }
+
+        assertEquals(1, personWatcher.modified.size());
+        assertEquals(1, nameWatcher.modified.size());
+        assertEquals("-Employee", allLabels.labelChanges.get(2));
+
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(nodeId).removeLabel(DynamicLabel.label("Person"));
+            tx.success();
+        }
+
+        assertEquals(2, personWatcher.modified.size());
+        assertEquals(Arrays.asList("+Person", "-Person"), personWatcher.labelChanges);
+    }
+
+    @Test
+    public void relationshipsShouldBeRoutedByTypeAndChangedProperty() {
+        RecordingTrigger knows = new RecordingTrigger("knows");
+        knows.handlesRelationshipEvent(PropertyTrigger.CREATE).handlesRelationshipEvent(PropertyTrigger.DELETE).withRelationshipTypes("KNOWS");
+        RecordingTrigger since = new RecordingTrigger("since");
+        since.handlesRelationshipEvent(PropertyTrigger.MODIFY).whenPropertiesChange("since");
+        RecordingTrigger nodesOnly = new RecordingTrigger("nodesOnly");
+        nodesOnly.handlesEvent(PropertyTrigger.CREATE).handlesEvent(PropertyTrigger.MODIFY);
+        start(knows, since, nodesOnly);
+
+        long knowsId, worksForId;
+        try (Transaction tx = database.beginTx()) {
+            Node first = database.createNode();
+            Node second = database.createNode();
+            knowsId = first.createRelationshipTo(second, DynamicRelationshipType.withName("KNOWS")).getId();
+            worksForId = first.createRelationshipTo(second, DynamicRelationshipType.withName("WORKS_FOR")).getId();
+            tx.success();
+        }
+
+        assertEquals(Collections.singletonList(knowsId), ids(knows.createdRelationships));
+        assertEquals(0, nodesOnly.createdRelationships.size());
+        assertEquals(2, nodesOnly.created.size());
+
+        try (Transaction tx = database.beginTx()) {
+            database.getRelationshipById(knowsId).setProperty("weight", 1);
+            database.getRelationshipById(worksForId).setProperty("since", 2010);
+            tx.success();
+        }
+
+        assertEquals(Collections.singletonList(worksForId), ids(since.modifiedRelationships));
+        assertEquals(0, nodesOnly.modified.size());
+
+        try (Transaction tx = database.beginTx()) {
+            database.getRelationshipById(knowsId).delete();
+            database.getRelationshipById(worksForId).delete();
+            tx.success();
+        }
+
+        assertEquals(Collections.singletonList(knowsId), ids(knows.deletedRelationships));
+        assertEquals(1, knows.getMetrics().getInvocations(PropertyTrigger.DELETE));
+    }
+
+    @Test
+    public void collectionTriggersShouldBeCalledOncePerTransaction() {
+        RecordingTrigger batching = new RecordingTrigger("batching");
+        batching.handlesEvent(PropertyTrigger.CREATE).handlesEvent(PropertyTrigger.MODIFY).handlesEvent(PropertyTrigger.DELETE)
+                .whenPropertiesChange("name").handlesCollections();
+        RecordingTrigger perNode = new RecordingTrigger("perNode");
+        perNode.handlesEvent(PropertyTrigger.CREATE);
+        start(batching, perNode);
+
+        List<Long> ids = new ArrayList<>();
+        try (Transaction tx = database.beginTx()) {
+            for (int i = 0; i < 3; i++) {
+                ids.add(database.createNode().getId());
+            }
+            tx.success();
+        }
+
+        assertEquals(1, batching.createdBatches.size());
+        assertEquals(3, batching.createdBatches.get(0).size());
+        assertEquals(0, batching.created.size());
+        assertEquals(3, perNode.created.size());
+        assertEquals(0, perNode.createdBatches.size());
+
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(ids.get(0)).setProperty("name", "Michal");
+            database.getNodeById(ids.get(1)).setProperty("name", "Luanne");
+            database.getNodeById(ids.get(2)).setProperty("age", 30);
+            tx.success();
+        }
+
+        assertEquals(1, batching.modifiedBatches.size());
+        assertEquals(2, batching.modifiedBatches.get(0).size());
+        assertEquals(0, batching.modified.size());
+
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(ids.get(2)).setProperty("age", 31);
+            tx.success();
+        }
+
+        assertEquals(1, batching.modifiedBatches.size());
+
+        try (Transaction tx = database.beginTx()) {
+            for (Long id : ids) {
+                database.getNodeById(id).delete();
+            }
+            tx.success();
+        }
+
+        assertEquals(1, batching.deletedBatches.size());
+        assertEquals(3, batching.deletedBatches.get(0).size());
+        assertEquals(0, batching.deleted.size());
+    }
+
+    @Test
+    public void scriptTriggersShouldBeLoadedFromTriggerNodesOnStart() {
+        assumeScriptEngine();
+
+        long triggerNodeId = createTriggerNode("node.setProperty('created', event)", null);
+
+        start();
+
+        assertEquals(1, module.getScriptTrigger(triggerNodeId).getVersion());
+
+        long nodeId = createNode();
+
+        try (Transaction tx = database.beginTx()) {
+            assertEquals("create", database.getNodeById(nodeId).getProperty("created"));
+            tx.success();
+        }
+    }
+
+    @Test
+    public void scriptTriggersShouldOnlyBeRecompiledWhenTriggerNodeChanges() {
+        assumeScriptEngine();
+
+        start();
+
+        long triggerNodeId = createTriggerNode("node.setProperty('created', 1)", "current.setProperty('modified', previous.getProperty('name'))");
+        ScriptTrigger compiled = module.getScriptTrigger(triggerNodeId);
+        assertEquals(1, compiled.getVersion());
+
+        long nodeId = createNode();
+
+        try (Transaction tx = database.beginTx()) {
+            Node node = database.getNodeById(nodeId);
+            assertEquals(1, node.getProperty("created"));
+            node.setProperty("name", "Luanne");
+            tx.success();
+        }
+
+        try (Transaction tx = database.beginTx()) {
+            Node triggerNode = database.getNodeById(triggerNodeId);
+            triggerNode.setProperty("description", "unrelated change");
+            tx.success();
+        }
+
+        assertSame(compiled, module.getScriptTrigger(triggerNodeId));
+
+        try (Transaction tx = database.beginTx()) {
+            Node triggerNode = database.getNodeById(triggerNodeId);
+            triggerNode.setProperty(TriggerProperties.ON_CREATE_SCRIPT, "node.setProperty('created', 2)");
+            triggerNode.setProperty(TriggerProperties.WHEN_PROPERTIES_CHANGE, new String[]{"name"});
+            tx.success();
+        }
+
+        assertEquals(2, module.getScriptTrigger(triggerNodeId).getVersion());
+
+        long secondNodeId = createNode();
+
+        try (Transaction tx = database.beginTx()) {
+            assertEquals(2, database.getNodeById(secondNodeId).getProperty("created"));
+            Node node = database.getNodeById(nodeId);
+            assertEquals("Michal", node.getProperty("modified"));
+            node.setProperty("age", 30);
+            tx.success();
+        }
+
+        try (Transaction tx = database.beginTx()) {
+            assertEquals("Michal", database.getNodeById(nodeId).getProperty("modified"));
+            database.getNodeById(triggerNodeId).delete();
+            tx.success();
+        }
+
+        assertNull(module.getScriptTrigger(triggerNodeId));
+
+        long thirdNodeId = createNode();
+
+        try (Transaction tx = database.beginTx()) {
+            assertFalse(database.getNodeById(thirdNodeId).hasProperty("created"));
+            tx.success();
+        }
+    }
+
+    @Test
+    public void triggerRegistryShouldOnlyBeRebuiltWhenTriggersChange() {
+        assumeScriptEngine();
+
+        RecordingTrigger trigger = new RecordingTrigger("trigger");
+        trigger.handlesEvent(PropertyTrigger.CREATE);
+        start(trigger);
+
+        TriggerRegistry registry = module.getRegistry();
+        long nodeId = createNode();
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(nodeId).setProperty("name", "Luanne");
+            database.getNodeById(nodeId).delete();
+            tx.success();
+        }
+        assertSame(registry, module.getRegistry());
+
+        long triggerNodeId = createTriggerNode("node.setProperty('created', event)", null);
+        assertNotSame(registry, module.getRegistry());
+        registry = module.getRegistry();
+        assertEquals(1, registry.scripts.all.size());
+        assertEquals(Collections.singletonList(trigger), registry.registered);
+
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(triggerNodeId).delete();
+            tx.success();
+        }
+        assertTrue(module.getRegistry().scripts.isEmpty());
+    }
+
+    @Test
+    public void invalidScriptTriggersShouldRollBackTransaction() {
+        assumeScriptEngine();
+
+        start();
+
+        try {
+            createTriggerNode("node.setProperty(", null);
+            fail();
+        } catch (TransactionFailureException e) {
+            //ok
+        }
+
+        try (Transaction tx = database.beginTx()) {
+            assertFalse(database.findNodes(DynamicLabel.label(TriggerProperties.DATABASE_TRIGGER_NODE_LABEL)).hasNext());
+            tx.success();
+        }
+    }
+
+    @Test
+    public void failedAsyncTriggersShouldNotCountAsCompleted() throws InterruptedException {
+        AsyncRecordingTrigger async = new AsyncRecordingTrigger() {
+            @Override
+            public void OnCommitted(int Event, long nodeId) {
+                if (Event == MODIFY) {
+                    throw new IllegalStateException("Failing on purpose");
+                }
+                super.OnCommitted(Event, nodeId);
+            }
+        };
+        async.handlesAsynchronously().handlesChanges();
+        start(async);
+
+        long nodeId = createNode();
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(nodeId).setProperty("count", 1);
+            tx.success();
+        }
+
+        awaitAsyncTriggers();
+
+        assertEquals(2, module.getAsyncMetrics().getSubmitted());
+        assertEquals(1, module.getAsyncMetrics().getCompleted());
+        assertEquals(1, module.getAsyncMetrics().getFailed());
+        assertEquals(Collections.singletonList("0:" + nodeId), async.events);
+    }
+
+    @Test(timeout = 60000)
+    public void asyncTriggersWritingToTheirNodesShouldNotBlockOnFullQueues() throws InterruptedException {
+        module = new TriggerModule(TriggerModule.DEFAULT_MODULE_ID, TriggerModuleConfiguration.defaultConfiguration()
+                .withAsyncExecution(1, 1, AsyncOverflowPolicy.BLOCK), database);
+        AsyncRecordingTrigger touching = new AsyncRecordingTrigger() {
+            @Override
+            public void OnCommitted(int Event, long nodeId) {
+                Node node = database.getNodeById(nodeId);
+                if (!node.hasProperty("touched")) {
+                    node.setProperty("touched", true);
+                }
+            }
+        };
+        touching.handlesAsynchronously().handlesChanges();
+        start(touching);
+
+        for (int i = 0; i < 50; i++) {
+            createNode();
+        }
+        awaitAsyncTriggers();
+
+        try (Transaction tx = database.beginTx()) {
+            for (Node node : GlobalGraphOperations.at(database).getAllNodes()) {
+                assertTrue(node.hasProperty("touched"));
+            }
+            tx.success();
+        }
+    }
+
+    @Test
+    public void asyncTriggersShouldBeCalledAfterCommitInOrderPerNode() throws InterruptedException {
+        AsyncRecordingTrigger async = new AsyncRecordingTrigger();
+        async.handlesAsynchronously().handlesChanges();
+        start(async);
+
+        long nodeId = createNode();
+        for (int i = 0; i < 5; i++) {
+            try (Transaction tx = database.beginTx()) {
+                database.getNodeById(nodeId).setProperty("count", i);
+                tx.success();
+            }
+        }
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(nodeId).setProperty("count", -1);
+            tx.failure();
+        }
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(nodeId).delete();
+            tx.success();
+        }
+
+        awaitAsyncTriggers();
+
+        assertEquals(7, module.getAsyncMetrics().getSubmitted());
+        assertEquals(0, module.getAsyncMetrics().getQueueDepth());
+        assertEquals(Arrays.asList("0:" + nodeId, "1:" + nodeId, "1:" + nodeId, "1:" + nodeId, "1:" + nodeId, "1:" + nodeId, "2:" + nodeId), async.events);
+        assertTrue(async.threads.iterator().next().startsWith("TriggerModule-async-"));
+    }
+
+    @Test
+    public void debouncedTriggersShouldBeCalledOncePerNodeAndWindowWithTheNetChange() throws InterruptedException {
+        AsyncRecordingTrigger debounced = new AsyncRecordingTrigger() {
+            @Override
+            public void OnDebounced(int Event, long nodeId, PropertyDiff diff) {
+                events.add(Event + ":" + nodeId + ":" + diff.getPrevious("count") + "->" + diff.getCurrent("count"));
+            }
+        };
+        debounced.debouncesFor(2000).handlesChanges();
+        start(debounced);
+
+        long counterId;
+        long temporaryId;
+        try (Transaction tx = database.beginTx()) {
+            Node counter = database.createNode();
+            counter.setProperty("count", 0);
+            counterId = counter.getId();
+            temporaryId = database.createNode().getId();
+            tx.success();
+        }
+        for (int i = 1; i <= 20; i++) {
+            increment(counterId);
+        }
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(temporaryId).delete();
+            tx.success();
+        }
+
+        awaitAsyncTriggers();
+        assertEquals(Collections.singletonList("0:" + counterId + ":null->20"), debounced.events);
+        assertEquals(21, module.getAsyncMetrics().getCoalesced());
+
+        for (int i = 21; i <= 30; i++) {
+            increment(counterId);
+        }
+        awaitAsyncTriggers();
+        assertEquals(Arrays.asList("0:" + counterId + ":null->20", "1:" + counterId + ":20->30"), debounced.events);
+
+        // Back where it was, nothing to handle
+        increment(counterId);
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(counterId).setProperty("count", 30);
+            tx.success();
+        }
+        awaitAsyncTriggers();
+        assertEquals(2, debounced.events.size());
+        assertEquals(2, module.getAsyncMetrics().getSubmitted());
+    }
+
+    @Test
+    public void debouncedEventsShouldBeHandedOverOnShutdown() {
+        AsyncRecordingTrigger debounced = new AsyncRecordingTrigger() {
+            @Override
+            public void OnDebounced(int Event, long nodeId, PropertyDiff diff) {
+                events.add(Event + ":" + nodeId);
+            }
+        };
+        debounced.debouncesFor(60000).handlesChanges();
+        start(debounced);
+
+        createNode();
+        assertEquals(1, module.getAsyncMetrics().getDebouncing());
+
+        database.shutdown();
+
+        // Handed over to the workers rather than lost, even though the database no longer takes their transaction
+        AsyncTriggerMetrics metrics = module.getAsyncMetrics();
+        assertEquals(0, metrics.getDebouncing());
+        assertEquals(1, metrics.getSubmitted());
+        assertEquals(1, metrics.getCompleted() + metrics.getFailed());
+        assertEquals(0, metrics.getDropped());
+    }
+
+    private void increment(long nodeId) {
+        try (Transaction tx = database.beginTx()) {
+            Node node = database.getNodeById(nodeId);
+            node.setProperty("count", (Integer) node.getProperty("count") + 1);
+            tx.success();
+        }
+    }
+
+    @Test
+    public void asyncEventsShouldBeDroppedWhenQueueIsFull() throws InterruptedException {
+        module = new TriggerModule(TriggerModule.DEFAULT_MODULE_ID, TriggerModuleConfiguration.defaultConfiguration().withAsyncExecution(1, 1, AsyncOverflowPolicy.DROP), database);
+        AsyncRecordingTrigger async = new AsyncRecordingTrigger();
+        async.latch = new CountDownLatch(1);
+        async.handlesAsynchronously().handlesEvent(PropertyTrigger.CREATE);
+        start(async);
+
+        try (Transaction tx = database.beginTx()) {
+            for (int i = 0; i < 5; i++) {
+                database.createNode();
+            }
+            tx.success();
+        }
+
+        AsyncTriggerMetrics metrics = module.getAsyncMetrics();
+        assertTrue(metrics.getDropped() >= 2);
+        assertEquals(5, metrics.getSubmitted() + metrics.getDropped());
+        assertEquals(1, metrics.getQueueCapacity());
+
+        async.latch.countDown();
+        awaitAsyncTriggers();
+
+        assertEquals(metrics.getSubmitted(), async.events.size());
+    }
+
+    @Test
+    public void triggersReturningFalseShouldVetoTransactions() {
+        RecordingTrigger veto = new RecordingTrigger("veto") {
+            @Override
+            public Boolean OnCreate(Node node) {
+                super.OnCreate(node);
+                return !node.hasProperty("forbidden");
+            }
+        };
+        veto.handlesEvent(PropertyTrigger.CREATE);
+        start(veto);
+
+        createNode();
+
+        try (Transaction tx = database.beginTx()) {
+            database.createNode().setProperty("forbidden", true);
+            tx.success();
+        } catch (TransactionFailureException e) {
+            //ok
+        }
+
+        try (Transaction tx = database.beginTx()) {
+            assertEquals(1, Iterables.count(GlobalGraphOperations.at(database).getAllNodes()));
+            tx.success();
+        }
+
+        TriggerEventStatistics statistics = module.getStatistics().get(0);
+        assertEquals("veto", statistics.getTrigger());
+        assertEquals("create", statistics.getEvent());
+        assertEquals(2, statistics.getInvocations());
+        assertEquals(1, statistics.getVetoes());
+        assertEquals(0, statistics.getFailures());
+        assertTrue(statistics.getMaxMicros() >= statistics.getP99Micros());
+        assertTrue(statistics.getP99Micros() >= statistics.getP50Micros());
+    }
+
+    @Test
+    public void failingTriggersShouldBeCountedPerEvent() {
+        RecordingTrigger failing = new RecordingTrigger("failing") {
+            @Override
+            public Boolean OnModify(Node _previous, Node _current) {
+                throw new IllegalStateException("failing");
+            }
+        };
+        failing.handlesEvent(PropertyTrigger.CREATE).handlesEvent(PropertyTrigger.MODIFY);
+        start(failing);
+
+        long nodeId = createNode();
+
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(nodeId).setProperty("name", "Luanne");
+            tx.success();
+        } catch (TransactionFailureException e) {
+            //ok
+        }
+
+        List<TriggerEventStatistics> statistics = module.getStatistics();
+        assertEquals(2, statistics.size());
+        assertEquals(1, statistics.get(0).getInvocations());
+        assertEquals(0, statistics.get(0).getFailures());
+        assertEquals("modify", statistics.get(1).getEvent());
+        assertEquals(1, statistics.get(1).getInvocations());
+        assertEquals(1, statistics.get(1).getFailures());
+    }
+
+    @Test
+    public void metricsShouldBeExposedThroughJmx() throws Exception {
+        RecordingTrigger trigger = new RecordingTrigger("jmx");
+        trigger.handlesEvent(PropertyTrigger.CREATE);
+        start(trigger);
+
+        createNode();
+
+        ObjectName name = new ObjectName("com.graphaware.module.triggers:type=TriggerMetrics,module=\"" + TriggerModule.DEFAULT_MODULE_ID + "\"");
+        CompositeData[] statistics = (CompositeData[]) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Statistics");
+        assertEquals(1, statistics.length);
+        assertEquals("jmx", statistics[0].get("trigger"));
+        assertEquals(1L, statistics[0].get("invocations"));
+
+        database.shutdown();
+
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
+    @Test
+    public void triggersOverBudgetShouldBeSkippedAndEventuallyDisabled() {
+        module = new TriggerModule(TriggerModule.DEFAULT_MODULE_ID, TriggerModuleConfiguration.defaultConfiguration()
+                .withTimeBudgets(5, 0, TriggerBudgetPolicy.SKIP).withCircuitBreaker(2, 60000), database);
+        SlowTrigger slow = new SlowTrigger(20);
+        slow.handlesEvent(PropertyTrigger.CREATE);
+        RecordingTrigger fast = new RecordingTrigger("fast");
+        fast.handlesEvent(PropertyTrigger.CREATE);
+        start(slow, fast);
+
+        for (int i = 0; i < 2; i++) {
+            createNodes(3);
+        }
+
+        TriggerEventStatistics statistics = slow.getMetrics().statistics("slow", PropertyTrigger.CREATE);
+        assertEquals(2, statistics.getInvocations());
+        assertEquals(2, statistics.getOverBudget());
+        assertEquals(4, statistics.getSkipped());
+        assertTrue(statistics.isCircuitOpen());
+        assertEquals(1, statistics.getCircuitTrips());
+        assertEquals(6, fast.created.size());
+
+        createNodes(3);
+
+        statistics = slow.getMetrics().statistics("slow", PropertyTrigger.CREATE);
+        assertEquals(2, statistics.getInvocations());
+        assertEquals(7, statistics.getSkipped());
+        assertEquals(9, fast.created.size());
+    }
+
+    @Test
+    public void openCircuitBreakersShouldLetASingleTransactionProbeThem() throws InterruptedException {
+        final TriggerCircuitBreaker breaker = new TriggerCircuitBreaker();
+        breaker.record(true, 1, 0);
+        assertFalse(breaker.isOpen());
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger admitted = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    if (breaker.allows()) {
+                        admitted.incrementAndGet();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, admitted.get());
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.allows());
+
+        // The probe exceeding the budget again opens the breaker, to be probed again
+        breaker.record(true, 1, 0);
+        assertEquals(2, breaker.getTrips());
+        assertTrue(breaker.allows());
+        assertFalse(breaker.allows());
+
+        breaker.record(false, 1, 0);
+        assertFalse(breaker.isOpen());
+        assertTrue(breaker.allows());
+        assertTrue(breaker.allows());
+    }
+
+    @Test
+    public void triggersOverTransactionBudgetShouldBeDemotedToAsynchronous() throws InterruptedException {
+        module = new TriggerModule(TriggerModule.DEFAULT_MODULE_ID, TriggerModuleConfiguration.defaultConfiguration()
+                .withTimeBudgets(0, 5, TriggerBudgetPolicy.DEMOTE), database);
+        SlowTrigger slow = new SlowTrigger(20);
+        slow.handlesEvent(PropertyTrigger.CREATE);
+        // Without an after-commit callback there is nothing to demote to
+        RecordingTrigger recording = new RecordingTrigger("recording");
+        recording.handlesEvent(PropertyTrigger.CREATE);
+        start(slow, recording);
+
+        createNodes(3);
+        awaitAsyncTriggers();
+
+        TriggerEventStatistics statistics = slow.getMetrics().statistics("slow", PropertyTrigger.CREATE);
+        assertEquals(1, statistics.getOverBudget());
+        assertEquals(2, statistics.getDemoted());
+        assertEquals(2, slow.committed.size());
+
+        statistics = recording.getMetrics().statistics("recording", PropertyTrigger.CREATE);
+        assertEquals(0, statistics.getDemoted());
+        assertEquals(3, statistics.getSkipped());
+        assertEquals(0, recording.created.size());
+    }
+
+    @Test
+    public void triggersOverBudgetShouldVetoWhenConfiguredTo() {
+        module = new TriggerModule(TriggerModule.DEFAULT_MODULE_ID, TriggerModuleConfiguration.defaultConfiguration()
+                .withTimeBudgets(100, 0, TriggerBudgetPolicy.VETO), database);
+        SlowTrigger slow = new SlowTrigger(20);
+        slow.handlesEvent(PropertyTrigger.DELETE).withTimeBudget(5);
+        start(slow);
+
+        long nodeId = createNode();
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(nodeId).delete();
+            tx.success();
+        } catch (TransactionFailureException e) {
+            //ok
+        }
+
+        try (Transaction tx = database.beginTx()) {
+            assertNotNull(database.getNodeById(nodeId));
+            tx.success();
+        }
+        assertEquals(1, slow.getMetrics().statistics("slow", PropertyTrigger.DELETE).getOverBudget());
+    }
+
+    @Test
+    public void readOnlyValidatorsShouldRunInParallelAndVeto() {
+        module = new TriggerModule(TriggerModule.DEFAULT_MODULE_ID, TriggerModuleConfiguration.defaultConfiguration().withValidationParallelism(4), database);
+        AgeValidator validator = new AgeValidator();
+        validator.validatesReadOnly().handlesEvent(PropertyTrigger.CREATE).handlesEvent(PropertyTrigger.MODIFY).whenPropertiesChange("age");
+        RecordingTrigger trigger = new RecordingTrigger("trigger");
+        trigger.handlesEvent(PropertyTrigger.CREATE);
+        start(validator, trigger);
+
+        try (Transaction tx = database.beginTx()) {
+            for (int i = 0; i < 2000; i++) {
+                Node node = database.createNode();
+                node.setProperty("age", i);
+                node.setProperty("name", "Michal");
+            }
+            tx.success();
+        }
+
+        assertEquals(2000, validator.getMetrics().getInvocations(PropertyTrigger.CREATE));
+        assertEquals(2000, trigger.created.size());
+        assertEquals(Collections.singleton("age"), validator.keys);
+        assertFalse(validator.threads.contains(Thread.currentThread().getName()));
+
+        try (Transaction tx = database.beginTx()) {
+            for (int i = 0; i < 2000; i++) {
+                database.createNode().setProperty("age", i == 1000 ? -1 : i);
+            }
+            tx.success();
+        } catch (TransactionFailureException e) {
+            //ok
+        }
+
+        assertEquals(1, validator.getMetrics().statistics("age", PropertyTrigger.CREATE).getVetoes());
+        assertEquals(2000, trigger.created.size());
+
+        try (Transaction tx = database.beginTx()) {
+            assertEquals(2000, Iterables.count(GlobalGraphOperations.at(database).getAllNodes()));
+            tx.success();
+        }
+    }
+
+    @Test
+    public void largeTransactionsShouldBeValidatedOnCommittingThreadWithoutParallelism() {
+        module = new TriggerModule(TriggerModule.DEFAULT_MODULE_ID, TriggerModuleConfiguration.defaultConfiguration().withValidationParallelism(1), database);
+        AgeValidator validator = new AgeValidator();
+        validator.validatesReadOnly().handlesEvent(PropertyTrigger.CREATE);
+        start(validator);
+
+        try (Transaction tx = database.beginTx()) {
+            for (int i = 0; i < ParallelValidation.ITEMS_PER_TASK * 4; i++) {
+                database.createNode().setProperty("age", i);
+            }
+            tx.success();
+        }
+
+        assertEquals(ParallelValidation.ITEMS_PER_TASK * 4, validator.getMetrics().getInvocations(PropertyTrigger.CREATE));
+        assertEquals(Collections.singleton(Thread.currentThread().getName()), validator.threads);
+    }
+
+    @Test
+    public void smallTransactionsShouldBeValidatedOnCommittingThread() {
+        AgeValidator validator = new AgeValidator();
+        validator.validatesReadOnly().handlesChanges();
+        start(validator);
+
+        long nodeId = createNode();
+
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(nodeId).setProperty("age", -1);
+            tx.success();
+        } catch (TransactionFailureException e) {
+            //ok
+        }
+
+        try (Transaction tx = database.beginTx()) {
+            assertFalse(database.getNodeById(nodeId).hasProperty("age"));
+            tx.success();
+        }
+
+        assertEquals(Collections.singleton(Thread.currentThread().getName()), validator.threads);
+        assertEquals(1, validator.getMetrics().statistics("age", PropertyTrigger.MODIFY).getVetoes());
+    }
+
+    @Test
+    public void indexTriggerShouldMaintainIndexAndBackfillExistingNodes() throws InterruptedException {
+        long existingId, unlabelledId;
+        try (Transaction tx = database.beginTx()) {
+            Node existing = database.createNode(DynamicLabel.label("Person"));
+            existing.setProperty("name", "Adam");
+            existingId = existing.getId();
+            Node unlabelled = database.createNode();
+            unlabelled.setProperty("name", "Adam");
+            unlabelledId = unlabelled.getId();
+            tx.success();
+        }
+
+        module.registerIndex("people", "name", "Person");
+        start();
+        assertTrue(module.awaitBackfill(10, TimeUnit.SECONDS));
+
+        assertEquals(Collections.singletonList(existingId), indexed("people", "name", "Adam"));
+
+        long personId;
+        try (Transaction tx = database.beginTx()) {
+            Node person = database.createNode(DynamicLabel.label("Person"));
+            person.setProperty("name", "Michal");
+            personId = person.getId();
+            database.createNode(DynamicLabel.label("Company")).setProperty("name", "Michal");
+            tx.success();
+        }
+        assertEquals(Collections.singletonList(personId), indexed("people", "name", "Michal"));
+
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(personId).setProperty("name", "Vince");
+            database.getNodeById(unlabelledId).addLabel(DynamicLabel.label("Person"));
+            tx.success();
+        }
+        assertTrue(indexed("people", "name", "Michal").isEmpty());
+        assertEquals(Collections.singletonList(personId), indexed("people", "name", "Vince"));
+        assertEquals(new HashSet<>(Arrays.asList(existingId, unlabelledId)), new HashSet<>(indexed("people", "name", "Adam")));
+
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(existingId).removeLabel(DynamicLabel.label("Person"));
+            database.getNodeById(personId).delete();
+            tx.success();
+        }
+        assertEquals(Collections.singletonList(unlabelledId), indexed("people", "name", "Adam"));
+        assertTrue(indexed("people", "name", "Vince").isEmpty());
+    }
+
+    @Test
+    public void triggerInclusionPoliciesShouldBeEvaluatedOncePerNodeAndPolicy() {
+        final List<Long> evaluated = new ArrayList<>();
+        InclusionPolicies vips = InclusionPoliciesFactory.allBusiness().with(new NodeInclusionPolicy() {
+            @Override
+            public boolean include(Node node) {
+                evaluated.add(node.getId());
+                return node.hasProperty("vip");
+            }
+        });
+        RecordingTrigger greeter = new RecordingTrigger("greeter", vips);
+        greeter.handlesEvent(PropertyTrigger.CREATE).handlesEvent(PropertyTrigger.MODIFY);
+        RecordingTrigger batcher = new RecordingTrigger("batcher", vips);
+        batcher.handlesEvent(PropertyTrigger.CREATE).handlesCollections();
+        RecordingTrigger everyone = new RecordingTrigger("everyone");
+        everyone.handlesEvent(PropertyTrigger.CREATE);
+        start(greeter, batcher, everyone);
+
+        long vipId, otherId;
+        try (Transaction tx = database.beginTx()) {
+            Node vip = database.createNode();
+            vip.setProperty("vip", true);
+            vipId = vip.getId();
+            otherId = database.createNode().getId();
+            tx.success();
+        }
+
+        assertEquals(Arrays.asList(vipId, otherId), evaluated);
+        assertEquals(1, greeter.created.size());
+        assertEquals(vipId, greeter.created.get(0).getId());
+        assertEquals(1, batcher.createdBatches.size());
+        assertEquals(1, batcher.createdBatches.get(0).size());
+        assertEquals(2, everyone.created.size());
+
+        // Only the greeter handles modifications, so the policy is evaluated once for the modified node
+        evaluated.clear();
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(otherId).setProperty("name", "Luanne");
+            tx.success();
+        }
+        assertEquals(Collections.singletonList(otherId), evaluated);
+        assertTrue(greeter.modified.isEmpty());
+    }
+
+    @Test
+    public void builtInTriggersShouldNotBeSubjectToTimeBudgets() {
+        module = new TriggerModule(TriggerModule.DEFAULT_MODULE_ID, TriggerModuleConfiguration.defaultConfiguration()
+                .withUuid(UuidConfiguration.defaultConfiguration()).withRevisionProperty(TriggerProperties.REVISION)
+                .withTimeBudgets(0, 5, TriggerBudgetPolicy.SKIP).withCircuitBreaker(1, 60000), database);
+        SlowTrigger slow = new SlowTrigger(20);
+        slow.handlesEvent(PropertyTrigger.CREATE);
+        start(slow);
+
+        // The transaction budget is exceeded by the first node, and the circuit breakers open after the transaction
+        List<Long> nodeIds = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            try (Transaction tx = database.beginTx()) {
+                for (int j = 0; j < 3; j++) {
+                    nodeIds.add(database.createNode().getId());
+                }
+                tx.success();
+            }
+        }
+
+        assertTrue(slow.getMetrics().statistics("slow", PropertyTrigger.CREATE).getSkipped() > 0);
+        try (Transaction tx = database.beginTx()) {
+            for (long nodeId : nodeIds) {
+                assertTrue(database.getNodeById(nodeId).hasProperty("uuid"));
+                assertEquals(1L, database.getNodeById(nodeId).getProperty(TriggerProperties.REVISION));
+            }
+            tx.success();
+        }
+    }
+
+    @Test
+    public void triggersShouldShareAContextMemoizingReadsAndBatchingWritesPerTransaction() {
+        try (Transaction tx = database.beginTx()) {
+            Node config = database.createNode(DynamicLabel.label("Config"));
+            config.setProperty("name", "defaults");
+            config.setProperty("category", "book");
+            tx.success();
+        }
+
+        final List<String> loaded = new ArrayList<>();
+        final TriggerContext.Loader<String, Object> categories = new TriggerContext.Loader<String, Object>() {
+            @Override
+            public Object load(String name) {
+                loaded.add(name);
+                return TriggerContext.current().findNode(DynamicLabel.label("Config"), "name", name).getProperty("category");
+            }
+        };
+        final List<List<Long>> written = new ArrayList<>();
+        final List<TriggerContext> contexts = new ArrayList<>();
+        RecordingTrigger categorize = new RecordingTrigger("categorize") {
+            @Override
+            public Boolean OnCreate(Node node) {
+                TriggerContext context = getContext();
+                contexts.add(context);
+                node.setProperty("category", context.memoize(categories, "defaults"));
+                context.batch("created", new TriggerContext.BatchWriter<Long>() {
+                    @Override
+                    public void write(List<Long> items) {
+                        written.add(items);
+                    }
+                }).add(node.getId());
+                return true;
+            }
+        };
+        categorize.handlesEvent(PropertyTrigger.CREATE).withLabels("Item");
+        start(categorize);
+
+        try (Transaction tx = database.beginTx()) {
+            for (int i = 0; i < 100; i++) {
+                database.createNode(DynamicLabel.label("Item"));
+            }
+            tx.success();
+        }
+
+        assertEquals(Collections.singletonList("defaults"), loaded);
+        assertEquals(1, written.size());
+        assertEquals(100, written.get(0).size());
+        assertEquals(1, new HashSet<>(contexts).size());
+        assertNull(categorize.getContext());
+        try (Transaction tx = database.beginTx()) {
+            assertEquals("book", database.getNodeById(written.get(0).get(99)).getProperty("category"));
+            tx.success();
+        }
+
+        try (Transaction tx = database.beginTx()) {
+            database.createNode(DynamicLabel.label("Item"));
+            tx.success();
+        }
+        assertEquals(Arrays.asList("defaults", "defaults"), loaded);
+        assertEquals(2, new HashSet<>(contexts).size());
+    }
+
+    @Test
+    public void uuidsShouldBeAssignedIndexedAndProtectedByTheUuidTrigger() throws InterruptedException {
+        long existingId;
+        try (Transaction tx = database.beginTx()) {
+            existingId = database.createNode(DynamicLabel.label("Person")).getId();
+            tx.success();
+        }
+
+        UuidConfiguration uuidConfiguration = UuidConfiguration.defaultConfiguration().withIndexSharding(IndexSharding.LABEL, 1);
+        module = new TriggerModule(TriggerModule.DEFAULT_MODULE_ID, TriggerModuleConfiguration.defaultConfiguration().withUuid(uuidConfiguration), database);
+        // Runs after the UUID has been assigned, in the same pass
+        final List<Object> seen = new ArrayList<>();
+        RecordingTrigger reader = new RecordingTrigger("reader") {
+            @Override
+            public Boolean OnCreate(Node node) {
+                seen.add(node.getProperty("uuid", null));
+                return true;
+            }
+        };
+        reader.handlesEvent(PropertyTrigger.CREATE).whenPropertiesChange("uuid");
+        start(reader);
+        assertTrue(module.awaitBackfill(10, TimeUnit.SECONDS));
+        UuidReader uuids = new UuidReader(uuidConfiguration, database);
+
+        long nodeId;
+        String uuid;
+        try (Transaction tx = database.beginTx()) {
+            Node node = database.createNode(DynamicLabel.label("Person"));
+            nodeId = node.getId();
+            tx.success();
+        }
+        try (Transaction tx = database.beginTx()) {
+            uuid = (String) database.getNodeById(nodeId).getProperty("uuid");
+            assertEquals(Collections.<Object>singletonList(uuid), seen);
+            assertEquals(existingId, uuids.getNodeIdByUuid((String) database.getNodeById(existingId).getProperty("uuid"), "Person"));
+            tx.success();
+        }
+        assertEquals(nodeId, uuids.getNodeIdByUuid(uuid, "Person"));
+
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(nodeId).addLabel(DynamicLabel.label("Employee"));
+            tx.success();
+        }
+        assertEquals(nodeId, uuids.getNodeIdByUuid(uuid, "Employee"));
+
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(nodeId).setProperty("uuid", "other");
+            tx.success();
+        } catch (TransactionFailureException e) {
+            //ok
+        }
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(nodeId).removeProperty("uuid");
+            tx.success();
+        } catch (TransactionFailureException e) {
+            //ok
+        }
+        assertEquals(nodeId, uuids.getNodeIdByUuid(uuid));
+
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(nodeId).delete();
+            tx.success();
+        }
+        try {
+            uuids.getNodeByUuid(uuid);
+            fail();
+        } catch (NotFoundException e) {
+            //ok
+        }
+    }
+
+    @Test
+    public void revisionsShouldBeMaintainedAndCheckedOnConditionalUpdates() {
+        module = new TriggerModule(TriggerModule.DEFAULT_MODULE_ID, TriggerModuleConfiguration.defaultConfiguration().withRevisionProperty(TriggerProperties.REVISION), database);
+        // Its change is dispatched again in a second round, which must not bump the revision twice
+        RecordingTrigger initials = new RecordingTrigger("initials") {
+            @Override
+            public Boolean OnModify(Node _previous, Node _current, PropertyDiff diff) {
+                _current.setProperty("initial", ((String) _current.getProperty("name")).substring(0, 1));
+                return true;
+            }
+        };
+        initials.handlesEvent(PropertyTrigger.MODIFY).whenPropertiesChange("name").modifiesProperties("initial");
+        start(initials);
+        RevisionTrigger revisions = module.getRevisionTrigger();
+
+        long nodeId;
+        try (Transaction tx = database.beginTx()) {
+            Node node = database.createNode();
+            node.setProperty("name", "Michal");
+            nodeId = node.getId();
+            tx.success();
+        }
+        assertEquals(1L, revision(nodeId));
+
+        try (Transaction tx = database.beginTx()) {
+            Node node = database.getNodeById(nodeId);
+            node.setProperty("name", "Adam");
+            node.setProperty(TriggerProperties.REVISION, 100L);
+            tx.success();
+        }
+        assertEquals(2L, revision(nodeId));
+
+        try (Transaction tx = database.beginTx()) {
+            database.getNodeById(nodeId).addLabel(DynamicLabel.label("Person"));
+            tx.success();
+        }
+        assertEquals(3L, revision(nodeId));
+
+        try (Transaction tx = database.beginTx()) {
+            Node node = database.getNodeById(nodeId);
+            assertEquals(4L, revisions.update(tx, node, 3L, Collections.<String, Object>singletonMap("name", "Vince")));
+            tx.success();
+        }
+        assertEquals(4L, revision(nodeId));
+
+        // Updates leaving the properties as they are still move the node to the returned revision
+        try (Transaction tx = database.beginTx()) {
+            assertEquals(5L, revisions.update(tx, database.getNodeById(nodeId), 4L, Collections.<String, Object>emptyMap()));
+            tx.success();
+        }
+        assertEquals(5L, revision(nodeId));
+
+        try (Transaction tx = database.beginTx()) {
+            assertEquals(6L, revisions.update(tx, database.getNodeById(nodeId), 5L, Collections.<String, Object>singletonMap("name", "Vince")));
+            tx.success();
+        }
+        assertEquals(6L, revision(nodeId));
+
+        try (Transaction tx = database.beginTx()) {
+            assertEquals(7L, revisions.update(tx, database.getNodeById(nodeId), 6L, Collections.<String, Object>singletonMap(TriggerProperties.REVISION, 100L)));
+            tx.success();
+        }
+        assertEquals(7L, revision(nodeId));
+
+        try (Transaction tx = database.beginTx()) {
+            revisions.update(tx, database.getNodeById(nodeId), 3L, Collections.<String, Object>singletonMap("name", "Luanne"));
+            fail();
+        } catch (RevisionConflictException e) {
+            assertEquals(3L, e.getExpectedRevision());
+            assertEquals(7L, e.getActualRevision());
+        }
+
+        try (Transaction tx = database.beginTx()) {
+            revisions.update(tx, database.getNodeById(nodeId), 7L, Collections.<String, Object>singletonMap("tags", Arrays.<Object>asList("a", 1)));
+            fail();
+        } catch (IllegalArgumentException e) {
+            //ok
+        }
+
+        try (Transaction tx = database.beginTx()) {
+            Node node = database.getNodeById(nodeId);
+            assertFalse(node.hasProperty("tags"));
+            assertEquals("Vince", node.getProperty("name"));
+            assertEquals("V", node.getProperty("initial"));
+            assertEquals(7L, revisions.getRevision(node));
+            tx.success();
+        }
+    }
+
+    @Test
+    public void committedChangesShouldBeLoggedAndTailed() throws Exception {
+        File directory = temporaryFolder.newFolder("cdc");
+        module = new TriggerModule(TriggerModule.DEFAULT_MODULE_ID, TriggerModuleConfiguration.defaultConfiguration()
+                .withRevisionProperty(TriggerProperties.REVISION).withChangeLog(directory.getAbsolutePath(), 1024, 3, 0), database);
+        start();
+        ChangeLogReader reader = module.getChangeLog().reader(0);
+        assertTrue(reader.poll(10).isEmpty());
+
+        long michalId, adamId, relationshipId;
+        try (Transaction tx = database.beginTx()) {
+            Node michal = database.createNode(DynamicLabel.label("Person"));
+            michal.setProperty("name", "Michal");
+            michal.setProperty("scores", new int[]{1, 2});
+            michalId = michal.getId();
+            Node adam = database.createNode();
+            adamId = adam.getId();
+            relationshipId = michal.createRelationshipTo(adam, DynamicRelationshipType.withName("KNOWS")).getId();
+            tx.success();
+        }
+
+        // Rolled back transactions are not logged
+        try (Transaction tx = database.beginTx()) {
+            database.createNode();
+            tx.failure();
+        }
+
+        try (Transaction tx = database.beginTx()) {
+            Node michal = database.getNodeById(michalId);
+            michal.setProperty("name", "Michal B");
+            michal.removeProperty("scores");
+            michal.removeLabel(DynamicLabel.label("Person"));
+            database.getRelationshipById(relationshipId).delete();
+            database.getNodeById(adamId).delete();
+            tx.success();
+        }
+
+        List<ChangeRecord> records = reader.poll(10, 1, TimeUnit.SECONDS);
+        assertEquals(2, records.size());
+        assertEquals(0, records.get(0).getOffset());
+        assertEquals(records.get(0).getNextOffset(), records.get(1).getOffset());
+        assertEquals(records.get(1).getNextOffset(), reader.getOffset());
+
+        Set<String> created = new HashSet<>();
+        for (ChangeEvent event : records.get(0).getEvents()) {
+            created.add(event.toString());
+        }
+        assertEquals(new HashSet<>(Arrays.asList(
+                "NODE_CREATED(" + michalId + ")", "LABEL_ADDED(" + michalId + ", Person)", "NODE_PROPERTY_SET(" + michalId + ", name=Michal)",
+                "NODE_PROPERTY_SET(" + michalId + ", _rev=1)", "NODE_CREATED(" + adamId + ")", "NODE_PROPERTY_SET(" + adamId + ", _rev=1)",
+                "RELATIONSHIP_CREATED(" + relationshipId + ", KNOWS, " + michalId + "->" + adamId + ")")), withoutArrays(created));
+        ChangeEvent scores = findEvent(records.get(0), "scores");
+        assertArrayEquals(new int[]{1, 2}, (int[]) scores.getValue());
+
+        assertEquals(Arrays.asList(
+                "NODE_PROPERTY_SET(" + michalId + ", name=Michal B)", "NODE_PROPERTY_REMOVED(" + michalId + ", scores)",
+                "NODE_PROPERTY_SET(" + michalId + ", _rev=2)", "LABEL_REMOVED(" + michalId + ", Person)",
+                "RELATIONSHIP_DELETED(" + relationshipId + ")", "NODE_DELETED(" + adamId + ")"), eventStrings(records.get(1)));
+
+        // Segments roll over and only the last three are retained
+        for (int i = 0; i < 100; i++) {
+            try (Transaction tx = database.beginTx()) {
+                database.getNodeById(michalId).setProperty("name", "Michal " + i);
+                tx.success();
+            }
+        }
+        ChangeLog changeLog = module.getChangeLog();
+        assertTrue(changeLog.getStartOffset() > 0);
+        assertEquals(3, directory.listFiles().length);
+        List<ChangeRecord> retained = changeLog.read(0, 1000);
+        assertEquals(changeLog.getStartOffset(), retained.get(0).getOffset());
+        assertEquals(changeLog.getEndOffset(), retained.get(retained.size() - 1).getNextOffset());
+        assertEquals("NODE_PROPERTY_SET(" + michalId + ", name=Michal 99)", retained.get(retained.size() - 1).getEvents().get(0).toString());
+
+        // The log is recovered when reopened
+        long end = changeLog.getEndOffset();
+        changeLog.close();
+        ChangeLog reopened = new ChangeLog(directory, 1024, 3, 0);
+        assertEquals(end, reopened.getEndOffset());
+        assertEquals(retained.size(), reopened.read(changeLog.getStartOffset(), 1000).size());
+        reopened.close();
+    }
+
+    private static Set<String> withoutArrays(Set<String> events) {
+        Set<String> result = new HashSet<>();
+        for (String event : events) {
+            if (!event.contains("scores")) {
+                result.add(event);
+            }
+        }
+        return result;
+    }
+
+    private static ChangeEvent findEvent(ChangeRecord record, String key) {
+        for (ChangeEvent event : record.getEvents()) {
+            if (key.equals(event.getKey())) {
+                return event;
+            }
+        }
+        throw new AssertionError("No event for " + key);
+    }
+
+    private static List<String> eventStrings(ChangeRecord record) {
+        List<String> result = new ArrayList<>();
+        for (ChangeEvent event : record.getEvents()) {
+            result.add(event.toString());
+        }
+        return result;
+    }
+
+    private long revision(long nodeId) {
+        try (Transaction tx = database.beginTx()) {
+            long revision = (Long) database.getNodeById(nodeId).getProperty(TriggerProperties.REVISION);
+            tx.success();
+            return revision;
+        }
+    }
+
+    @Test
+    public void backfillShouldCoverAllPartitionsInParallelAndResumeFromCheckpoints() throws InterruptedException {
+        int count = TriggerBackfill.PARTITION_SIZE * 2 + 500;
+        try (Transaction tx = database.beginTx()) {
+            for (int i = 0; i < count; i++) {
+                Node node = i % 3 == 0 ? database.createNode(DynamicLabel.label("Person")) : database.createNode();
+                node.setProperty("name", "n" + i);
+            }
+            // The first partition has been done before, the people trigger is complete
+            Node counterCheckpoint = database.createNode(TriggerBackfill.CHECKPOINT_LABEL);
+            counterCheckpoint.setProperty(TriggerBackfill.TRIGGER, "counter");
+            counterCheckpoint.setProperty(TriggerBackfill.DONE, new boolean[]{true});
+            Node peopleCheckpoint = database.createNode(TriggerBackfill.CHECKPOINT_LABEL);
+            peopleCheckpoint.setProperty(TriggerBackfill.TRIGGER, "done");
+            peopleCheckpoint.setProperty(TriggerBackfill.COMPLETE, true);
+            tx.success();
+        }
+
+        BackfillTrigger counter = new BackfillTrigger("counter");
+        BackfillTrigger done = new BackfillTrigger("done");
+        BackfillTrigger people = new BackfillTrigger("people");
+        people.withLabels("Person");
+        module = new TriggerModule(TriggerModule.DEFAULT_MODULE_ID, TriggerModuleConfiguration.defaultConfiguration().withBackfillThreads(3), database);
+        for (PropertyTrigger trigger : Arrays.asList(counter, done, people)) {
+            module.registerTrigger(trigger);
+        }
+        GraphAwareRuntime runtime = GraphAwareRuntimeFactory.createRuntime(database);
+        runtime.registerModule(module);
+        // Initializing the module would reset the checkpoints
+        runtime.start(true);
+        assertTrue(module.awaitBackfill(60, TimeUnit.SECONDS));
+
+        assertEquals(count - TriggerBackfill.PARTITION_SIZE, counter.backfilled.size());
+        for (long nodeId : counter.backfilled) {
+            assertTrue(nodeId >= TriggerBackfill.PARTITION_SIZE);
+        }
+        assertTrue(done.backfilled.isEmpty());
+        assertEquals((count + 2) / 3, people.backfilled.size());
+
+        try (Transaction tx = database.beginTx()) {
+            for (String name : Arrays.asList("counter", "people")) {
+                assertTrue((Boolean) database.findNode(TriggerBackfill.CHECKPOINT_LABEL, TriggerBackfill.TRIGGER, name).getProperty(TriggerBackfill.COMPLETE));
+            }
+            tx.success();
+        }
+    }
+
+    @Test
+    public void initializingShouldOnlyResetBackfillOfChangedTriggers() throws InterruptedException {
+        createNodes(3);
+        BackfillTrigger unchanged = new BackfillTrigger("unchanged");
+        BackfillTrigger changed = new BackfillTrigger("changed");
+        try (Transaction tx = database.beginTx()) {
+            Node unchangedCheckpoint = database.createNode(TriggerBackfill.CHECKPOINT_LABEL);
+            unchangedCheckpoint.setProperty(TriggerBackfill.TRIGGER, "unchanged");
+            unchangedCheckpoint.setProperty(TriggerBackfill.DEFINITION, unchanged.getBackfillDefinition());
+            unchangedCheckpoint.setProperty(TriggerBackfill.COMPLETE, true);
+            Node changedCheckpoint = database.createNode(TriggerBackfill.CHECKPOINT_LABEL);
+            changedCheckpoint.setProperty(TriggerBackfill.TRIGGER, "changed");
+            changedCheckpoint.setProperty(TriggerBackfill.DEFINITION, changed.getBackfillDefinition());
+            changedCheckpoint.setProperty(TriggerBackfill.COMPLETE, true);
+            tx.success();
+        }
+        changed.withLabels("Person");
+
+        start(unchanged, changed);
+        assertTrue(module.awaitBackfill(60, TimeUnit.SECONDS));
+
+        assertTrue(unchanged.backfilled.isEmpty());
+        try (Transaction tx = database.beginTx()) {
+            Node checkpoint = database.findNode(TriggerBackfill.CHECKPOINT_LABEL, TriggerBackfill.TRIGGER, "changed");
+            assertEquals(changed.getBackfillDefinition(), checkpoint.getProperty(TriggerBackfill.DEFINITION));
+            assertTrue((Boolean) checkpoint.getProperty(TriggerBackfill.COMPLETE));
+            tx.success();
+        }
+    }
+
+    @Test
+    public void operationalSettingsShouldNotAffectConfigurationEquality() {
+        TriggerModuleConfiguration configuration = TriggerModuleConfiguration.defaultConfiguration();
+
+        assertEquals(configuration, configuration.withAsyncExecution(7, 100, AsyncOverflowPolicy.DROP).withBackfillThreads(5).withValidationParallelism(3)
+                .withTimeBudgets(10, 100, TriggerBudgetPolicy.SKIP).withCircuitBreaker(3, 1000));
+        assertFalse(configuration.equals(configuration.withRevisionProperty("_rev")));
+    }
+
+    private List<Long> indexed(String indexName, String key, Object value) {
+        List<Long> result = new ArrayList<>();
+        try (Transaction tx = database.beginTx()) {
+            for (Node node : database.index().forNodes(indexName).get(key, value)) {
+                result.add(node.getId());
+            }
+            tx.success();
+        }
+        return result;
+    }
+
+    private static List<Long> ids(List<Relationship> relationships) {
+        List<Long> result = new ArrayList<>();
+        for (Relationship relationship : relationships) {
+            result.add(relationship.getId());
+        }
+        return result;
+    }
+
+    private void awaitAsyncTriggers() throws InterruptedException {
+        AsyncTriggerMetrics metrics = module.getAsyncMetrics();
+        for (int i = 0; i < 100 && metrics.getDebouncing() > 0; i++) {
+            Thread.sleep(50);
+        }
+        for (int i = 0; i < 100 && metrics.getCompleted() + metrics.getFailed() < metrics.getSubmitted(); i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(metrics.getSubmitted(), metrics.getCompleted() + metrics.getFailed());
+    }
+
+    static void assumeScriptEngine() {
+        assumeNotNull(new ScriptEngineManager().getEngineByName(TriggerProperties.DEFAULT_SCRIPT_LANGUAGE));
+    }
+
+    private long createTriggerNode(String onCreate, String onModify) {
+        try (Transaction tx = database.beginTx()) {
+            Node triggerNode = database.createNode(DynamicLabel.label(TriggerProperties.DATABASE_TRIGGER_NODE_LABEL));
+            triggerNode.setProperty(TriggerProperties.TRIGGER_NAME, "test");
+            if (onCreate != null) {
+                triggerNode.setProperty(TriggerProperties.ON_CREATE_SCRIPT, onCreate);
+            }
+            if (onModify != null) {
+                triggerNode.setProperty(TriggerProperties.ON_MODIFY_SCRIPT, onModify);
+            }
+            tx.success();
+            return triggerNode.getId();
+        }
+    }
+
+    private void createNodes(int count) {
+        try (Transaction tx = database.beginTx()) {
+            for (int i = 0; i < count; i++) {
+                database.createNode();
+            }
+            tx.success();
+        }
+    }
+
+    private long createNode() {
+        try (Transaction tx = database.beginTx()) {
+            Node node = database.createNode();
+            node.setProperty("name", "Michal");
+            tx.success();
+            return node.getId();
+        }
+    }
+
+    private void start(PropertyTrigger... triggers) {
+        for (PropertyTrigger trigger : triggers) {
+            module.registerTrigger(trigger);
+        }
+        GraphAwareRuntime runtime = GraphAwareRuntimeFactory.createRuntime(database);
+        runtime.registerModule(module);
+        runtime.start();
+    }
+
+    static class BackfillTrigger extends PropertyTrigger {
+
+        final Set<Long> backfilled = Collections.newSetFromMap(new ConcurrentHashMap<Long, Boolean>());
+
+        BackfillTrigger(String name) {
+            super(InclusionPoliciesFactory.allBusiness(), name);
+            backfillsExistingNodes();
+        }
+
+        @Override
+        public void OnBackfill(Node node) {
+            assertTrue(backfilled.add(node.getId()));
+        }
+    }
+
+    static class SlowTrigger extends PropertyTrigger {
+
+        final List<Long> committed = Collections.synchronizedList(new ArrayList<Long>());
+        private final long millis;
+
+        SlowTrigger(long millis) {
+            super(InclusionPoliciesFactory.allBusiness(), "slow");
+            this.millis = millis;
+        }
+
+        @Override
+        public Boolean OnCreate(Node node) {
+            sleep();
+            return true;
+        }
+
+        @Override
+        public Boolean OnDelete(Node node) {
+            sleep();
+            return true;
+        }
+
+        @Override
+        public void OnCommitted(int Event, long nodeId) {
+            committed.add(nodeId);
+        }
+
+        private void sleep() {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    static class AgeValidator extends PropertyTrigger {
+
+        final Set<String> threads = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final Set<String> keys = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+        AgeValidator() {
+            super(InclusionPoliciesFactory.allBusiness(), "age");
+        }
+
+        @Override
+        public Boolean Validate(int Event, long nodeId, Map<String, Object> properties) {
+            threads.add(Thread.currentThread().getName());
+            keys.addAll(properties.keySet());
+            Integer age = (Integer) properties.get("age");
+            return age == null || age >= 0;
+        }
+    }
+
+    static class AsyncRecordingTrigger extends PropertyTrigger {
+
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+        CountDownLatch latch = new CountDownLatch(0);
+
+        AsyncRecordingTrigger() {
+            super(InclusionPoliciesFactory.allBusiness(), "async");
+        }
+
+        @Override
+        public void OnCommitted(int Event, long nodeId) {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            events.add(Event + ":" + nodeId);
+            threads.add(Thread.currentThread().getName());
+        }
+    }
+
+    static class RecordingTrigger extends PropertyTrigger {
+
+        final List<Node> created = new ArrayList<>();
+        final List<Node> modified = new ArrayList<>();
+        final List<Node> deleted = new ArrayList<>();
+        final List<Collection<Node>> createdBatches = new ArrayList<>();
+        final List<Collection<Node>> modifiedBatches = new ArrayList<>();
+        final List<Collection<Node>> deletedBatches = new ArrayList<>();
+        final List<String> labelChanges = new ArrayList<>();
+        final List<PropertyDiff> diffs = new ArrayList<>();
+        final List<Relationship> createdRelationships = new ArrayList<>();
+        final List<Relationship> modifiedRelationships = new ArrayList<>();
+        final List<Relationship> deletedRelationships = new ArrayList<>();
+
+        RecordingTrigger(String name) {
+            super(InclusionPoliciesFactory.allBusiness(), name);
+        }
+
+        RecordingTrigger(String name, InclusionPolicies inclusionPolicies) {
+            super(inclusionPolicies, name);
+        }
+
+        @Override
+        public Boolean OnCreate(Node node) {
+            created.add(node);
+            return true;
+        }
+
+        @Override
+        public Boolean OnModify(Node _previous, Node _current) {
+            modified.add(_current);
+            return true;
+        }
+
+        @Override
+        public Boolean OnDelete(Node node) {
+            deleted.add(node);
+            return true;
+        }
+
+        @Override
+        public Boolean OnCreate(Collection<Node> nodes) {
+            createdBatches.add(nodes);
+            return true;
+        }
+
+        @Override
+        public Boolean OnModify(Collection<Node> nodes) {
+            modifiedBatches.add(nodes);
+            return true;
+        }
+
+        @Override
+        public Boolean OnDelete(Collection<Node> nodes) {
+            deletedBatches.add(nodes);
+            return true;
+        }
+
+        @Override
+        public Boolean OnModify(Node _previous, Node _current, PropertyDiff diff) {
+            diffs.add(diff);
+            return super.OnModify(_previous, _current, diff);
+        }
+
+        @Override
+        public Boolean OnChange(int Event, Node _previous, Node _current, PropertyDiff diff) {
+            diffs.add(diff);
+            return super.OnChange(Event, _previous, _current, diff);
+        }
+
+        @Override
+        public Boolean OnCreate(Relationship relationship) {
+            createdRelationships.add(relationship);
+            return true;
+        }
+
+        @Override
+        public Boolean OnModify(Relationship _previous, Relationship _current, PropertyDiff diff) {
+            modifiedRelationships.add(_current);
+            return true;
+        }
+
+        @Override
+        public Boolean OnDelete(Relationship relationship) {
+            deletedRelationships.add(relationship);
+            return true;
+        }
+
+        @Override
+        public Boolean OnLabelAdded(Node node, String labelName) {
+            labelChanges.add("+" + labelName);
+            return true;
+        }
+
+        @Override
+        public Boolean OnLabelRemoved(Node node, String labelName) {
+            labelChanges.add("-" + labelName);
+            return true;
+        }
+
+        @Override
+        public Boolean OnChange(int Event, Node _previous, Node _current) {
+            switch (Event) {
+                case CREATE:
+                    created.add(_current);
+                    break;
+                case MODIFY:
+                    modified.add(_current);
+                    break;
+                default:
+                    deleted.add(_previous);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers;
+
+import com.graphaware.test.integration.NeoServerIntegrationTest;
+import org.junit.Test;
+
+import static org.apache.http.HttpStatus.SC_CONFLICT;
+import static org.apache.http.HttpStatus.SC_NOT_FOUND;
+import static org.apache.http.HttpStatus.SC_OK;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TriggerModuleEndToEndTest extends NeoServerIntegrationTest {
+
+    @Override
+    protected String neo4jConfigFile() {
+        return "neo4j-triggers.properties";
+    }
+
+    @Test
+    public void scriptTriggerInvocationsShouldBeReported() {
+        TriggerModuleEmbeddedProgrammaticTest.assumeScriptEngine();
+
+        httpClient.executeCypher(baseUrl(), "CREATE (t:DATABASE_TRIGGER {name:'stamp', onCreate:'node.setProperty(event, true)'})");
+        httpClient.executeCypher(baseUrl(), "CREATE (p:Person {name:'Luanne'})");
+
+        String response = httpClient.executeCypher(baseUrl(), "MATCH (p:Person) RETURN p");
+        assertTrue(response, response.contains("\"create\":true"));
+
+        response = httpClient.get(baseUrl() + "/graphaware/trigger/metrics", SC_OK);
+        assertTrue(response, response.contains("\"trigger\":\"stamp\""));
+        assertTrue(response, response.contains("\"invocations\":1"));
+
+        response = httpClient.get(baseUrl() + "/graphaware/trigger/TRGM/metrics", SC_OK);
+        assertTrue(response, response.contains("\"trigger\":\"stamp\""));
+    }
+
+    @Test
+    public void shouldReturn404WhenNoAsyncTriggers() {
+        httpClient.get(baseUrl() + "/graphaware/trigger/metrics/async", SC_NOT_FOUND);
+    }
+
+    @Test
+    public void shouldReturn404WhenModuleNotExists() {
+        httpClient.get(baseUrl() + "/graphaware/trigger/non-existing-module/metrics", SC_NOT_FOUND);
+    }
+
+    @Test
+    public void staleConditionalUpdatesShouldBeRejected() {
+        httpClient.executeCypher(baseUrl(), "CREATE (p:Person {name:'Luanne'})");
+        String response = httpClient.executeCypher(baseUrl(), "MATCH (p:Person) RETURN p.uuid");
+        String uuid = response.substring(response.indexOf("\"row\":[\"") + 8, response.indexOf("\"]}"));
+
+        assertEquals("2", httpClient.put(baseUrl() + "/graphaware/trigger/node/" + uuid + "/revision/1", "{\"name\":\"Michal\"}", SC_OK));
+        httpClient.put(baseUrl() + "/graphaware/trigger/node/" + uuid + "/revision/1", "{\"name\":\"Vince\"}", SC_CONFLICT);
+
+        response = httpClient.executeCypher(baseUrl(), "MATCH (p:Person) RETURN p.name, p._rev");
+        assertTrue(response, response.contains("[\"Michal\",2]"));
+    }
+
+    @Test
+    public void shouldReturn404WhenNodeNotExists() {
+        httpClient.put(baseUrl() + "/graphaware/trigger/node/non-existing-uuid/revision/1", "{\"name\":\"Michal\"}", SC_NOT_FOUND);
+    }
+}
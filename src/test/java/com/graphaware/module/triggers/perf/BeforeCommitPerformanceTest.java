@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers.perf;
+
+import com.graphaware.module.triggers.PropertyTrigger;
+import com.graphaware.test.performance.EnumParameter;
+import com.graphaware.test.performance.ObjectParameter;
+import com.graphaware.test.performance.Parameter;
+import com.graphaware.test.performance.PerformanceTest;
+import org.neo4j.graphdb.GraphDatabaseService;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures the time (in microseconds) the GraphAware runtime, and so the trigger framework, spends before commit of a
+ * transaction of a varying size, creating, changing and deleting nodes in a varying mix, with a varying number of
+ * registered {@link PropertyTrigger}s (see {@link TriggerWorkload}).
+ */
+public class BeforeCommitPerformanceTest implements PerformanceTest {
+
+    private static final int SEED_NODES = 10000;
+    private static final String TRIGGERS = "triggers";
+    private static final String TX_SIZE = "txSize";
+    private static final String MIX = "mix";
+
+    private final Random random = new Random(42);
+    private TriggerWorkload workload;
+    private List<Long> nodes;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String shortName() {
+        return "before-commit";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String longName() {
+        return "Time spent before commit by the trigger framework";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Parameter> parameters() {
+        List<Parameter> result = new LinkedList<>();
+        result.add(new ObjectParameter<>(TRIGGERS, 0, 10, 100));
+        result.add(new ObjectParameter<>(TX_SIZE, 10, 100, 1000));
+        result.add(new EnumParameter(MIX, TriggerWorkload.Mix.class));
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int dryRuns(Map<String, Object> params) {
+        return 20;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int measuredRuns() {
+        return 100;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, String> databaseParameters(Map<String, Object> params) {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prepareDatabase(GraphDatabaseService database, Map<String, Object> params) {
+        workload = new TriggerWorkload(database, (Integer) params.get(TRIGGERS));
+        nodes = workload.seed(database, random, SEED_NODES);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RebuildDatabase rebuildDatabase() {
+        return RebuildDatabase.AFTER_PARAM_CHANGE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean rebuildDatabase(Map<String, Object> params) {
+        throw new UnsupportedOperationException("never");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long run(GraphDatabaseService database, Map<String, Object> params) {
+        workload.transaction(database, random, nodes, (Integer) params.get(TX_SIZE), (TriggerWorkload.Mix) params.get(MIX));
+        return workload.timer().lastNanos() / 1000;
+    }
+}
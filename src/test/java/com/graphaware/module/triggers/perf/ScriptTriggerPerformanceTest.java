@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers.perf;
+
+import com.graphaware.module.triggers.PropertyTrigger;
+import com.graphaware.module.triggers.TriggerModule;
+import com.graphaware.module.triggers.TriggerModuleConfiguration;
+import com.graphaware.module.triggers.TriggerProperties;
+import com.graphaware.runtime.GraphAwareRuntime;
+import com.graphaware.runtime.GraphAwareRuntimeFactory;
+import com.graphaware.runtime.policy.InclusionPoliciesFactory;
+import com.graphaware.test.performance.EnumParameter;
+import com.graphaware.test.performance.Parameter;
+import com.graphaware.test.performance.PerformanceTest;
+import org.neo4j.graphdb.DynamicLabel;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+import javax.script.Bindings;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the time (in nanoseconds) per created node of a transaction creating {@link #NODES} nodes, with no trigger,
+ * a compiled script trigger defined on a trigger node, and a trigger interpreting the same script on every call.
+ */
+public class ScriptTriggerPerformanceTest implements PerformanceTest {
+
+    private static final int NODES = 1000;
+    private static final String SCRIPT = "node.setProperty('touched', true)";
+    private static final String MODE = "mode";
+
+    enum Mode {
+        NO_TRIGGER, COMPILED_SCRIPT, INTERPRETED_SCRIPT
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String shortName() {
+        return "script-trigger";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String longName() {
+        return "Script trigger overhead per created node";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Parameter> parameters() {
+        List<Parameter> result = new LinkedList<>();
+        result.add(new EnumParameter(MODE, Mode.class));
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int dryRuns(Map<String, Object> params) {
+        return 20;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int measuredRuns() {
+        return 50;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, String> databaseParameters(Map<String, Object> params) {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prepareDatabase(GraphDatabaseService database, Map<String, Object> params) {
+        TriggerModule module = new TriggerModule(TriggerModule.DEFAULT_MODULE_ID, TriggerModuleConfiguration.defaultConfiguration(), database);
+
+        switch ((Mode) params.get(MODE)) {
+            case COMPILED_SCRIPT:
+                try (Transaction tx = database.beginTx()) {
+                    Node triggerNode = database.createNode(DynamicLabel.label(TriggerProperties.DATABASE_TRIGGER_NODE_LABEL));
+                    triggerNode.setProperty(TriggerProperties.ON_CREATE_SCRIPT, SCRIPT);
+                    tx.success();
+                }
+                break;
+            case INTERPRETED_SCRIPT:
+                module.registerTrigger(new InterpretingTrigger().handlesEvent(PropertyTrigger.CREATE));
+                break;
+            default:
+        }
+
+        GraphAwareRuntime runtime = GraphAwareRuntimeFactory.createRuntime(database);
+        runtime.registerModule(module);
+        runtime.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RebuildDatabase rebuildDatabase() {
+        return RebuildDatabase.AFTER_PARAM_CHANGE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean rebuildDatabase(Map<String, Object> params) {
+        throw new UnsupportedOperationException("never");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long run(GraphDatabaseService database, Map<String, Object> params) {
+        long start = System.nanoTime();
+
+        try (Transaction tx = database.beginTx()) {
+            for (int i = 0; i < NODES; i++) {
+                database.createNode();
+            }
+            tx.success();
+        }
+
+        return (System.nanoTime() - start) / NODES;
+    }
+
+    /**
+     * Trigger evaluating {@link #SCRIPT} from source on every call, as a baseline for compiled script triggers.
+     */
+    static class InterpretingTrigger extends PropertyTrigger {
+
+        private final ScriptEngine engine = new ScriptEngineManager().getEngineByName(TriggerProperties.DEFAULT_SCRIPT_LANGUAGE);
+
+        InterpretingTrigger() {
+            super(InclusionPoliciesFactory.allBusiness(), "interpreting");
+        }
+
+        @Override
+        public synchronized Boolean OnCreate(Node node) {
+            Bindings bindings = new SimpleBindings();
+            bindings.put("node", node);
+            try {
+                engine.eval(SCRIPT, bindings);
+            } catch (ScriptException e) {
+                throw new RuntimeException(e);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers.perf;
+
+import com.graphaware.module.triggers.PropertyTrigger;
+import com.graphaware.module.triggers.TriggerModule;
+import com.graphaware.module.triggers.TriggerModuleConfiguration;
+import com.graphaware.runtime.GraphAwareRuntime;
+import com.graphaware.runtime.GraphAwareRuntimeFactory;
+import com.graphaware.runtime.policy.InclusionPoliciesFactory;
+import com.graphaware.test.performance.ObjectParameter;
+import com.graphaware.test.performance.Parameter;
+import com.graphaware.test.performance.PerformanceTest;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.tooling.GlobalGraphOperations;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the time (in microseconds) of a transaction modifying a property on {@link #NODES} nodes, with a varying
+ * number of registered {@link PropertyTrigger}s, each watching a different property. Only one of the triggers is
+ * interested in the modified property.
+ */
+public class TriggerDispatchPerformanceTest implements PerformanceTest {
+
+    private static final int NODES = 1000;
+    private static final String TRIGGERS = "triggers";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String shortName() {
+        return "trigger-dispatch";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String longName() {
+        return "Dispatch of modified nodes to property-filtered triggers";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Parameter> parameters() {
+        List<Parameter> result = new LinkedList<>();
+        result.add(new ObjectParameter<>(TRIGGERS, 0, 50, 100, 200, 400));
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int dryRuns(Map<String, Object> params) {
+        return 10;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int measuredRuns() {
+        return 50;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, String> databaseParameters(Map<String, Object> params) {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prepareDatabase(GraphDatabaseService database, Map<String, Object> params) {
+        TriggerModule module = new TriggerModule(TriggerModule.DEFAULT_MODULE_ID, TriggerModuleConfiguration.defaultConfiguration(), database);
+        int triggers = (Integer) params.get(TRIGGERS);
+        for (int i = 0; i < triggers; i++) {
+            module.registerTrigger(new CountingTrigger("p" + i).handlesEvent(PropertyTrigger.MODIFY).whenPropertiesChange("p" + i));
+        }
+
+        GraphAwareRuntime runtime = GraphAwareRuntimeFactory.createRuntime(database);
+        runtime.registerModule(module);
+        runtime.start();
+
+        try (Transaction tx = database.beginTx()) {
+            for (int i = 0; i < NODES; i++) {
+                database.createNode().setProperty("p0", 0);
+            }
+            tx.success();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RebuildDatabase rebuildDatabase() {
+        return RebuildDatabase.AFTER_PARAM_CHANGE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean rebuildDatabase(Map<String, Object> params) {
+        throw new UnsupportedOperationException("never");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long run(GraphDatabaseService database, Map<String, Object> params) {
+        int value = RANDOM.nextInt();
+        long start = System.nanoTime();
+
+        try (Transaction tx = database.beginTx()) {
+            for (Node node : GlobalGraphOperations.at(database).getAllNodes()) {
+                node.setProperty("p0", value);
+            }
+            tx.success();
+        }
+
+        return (System.nanoTime() - start) / 1000;
+    }
+
+    static class CountingTrigger extends PropertyTrigger {
+
+        int calls;
+
+        CountingTrigger(String name) {
+            super(InclusionPoliciesFactory.allBusiness(), name);
+        }
+
+        @Override
+        public Boolean OnModify(Node _previous, Node _current) {
+            calls++;
+            return true;
+        }
+    }
+}
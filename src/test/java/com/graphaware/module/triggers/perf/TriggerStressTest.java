@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers.perf;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.test.TestGraphDatabaseFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Multi-threaded stress test of the trigger framework: threads run transactions of the {@link TriggerWorkload} for a
+ * while, for every combination of the number of triggers, transaction size and mix, and report throughput, the time
+ * spent before commit and transaction latencies. Not run as part of the build, run it manually when needed; the
+ * dimensions can be set with system properties, e.g.
+ * <pre>
+ * mvn test -Dtest=TriggerStressTest -Dstress.threads=8 -Dstress.seconds=30 -Dstress.triggers=0,100 -Dstress.txSizes=100 -Dstress.mixes=CHANGE_HEAVY
+ * </pre>
+ */
+@Ignore
+public class TriggerStressTest {
+
+    private static final Logger LOGGER = Logger.getLogger(TriggerStressTest.class.getName());
+
+    private static final int SEED_NODES_PER_THREAD = 1000;
+
+    @Test
+    public void stress() throws Exception {
+        int threads = Integer.getInteger("stress.threads", Runtime.getRuntime().availableProcessors());
+        int seconds = Integer.getInteger("stress.seconds", 5);
+        List<Integer> triggerCounts = integers(System.getProperty("stress.triggers", "0,10,100"));
+        List<Integer> txSizes = integers(System.getProperty("stress.txSizes", "10,100,1000"));
+        List<TriggerWorkload.Mix> mixes = mixes(System.getProperty("stress.mixes", "CREATE_HEAVY,CHANGE_HEAVY,DELETE_HEAVY"));
+
+        LOGGER.info(String.format("%d threads, %d s per run", threads, seconds));
+        LOGGER.info(String.format("%8s %7s %13s %10s %12s %16s %15s %12s %12s",
+                "triggers", "txSize", "mix", "tx/s", "ops/s", "beforeCommit us", "beforeCommit %", "mean tx us", "p99 tx us"));
+        for (int triggers : triggerCounts) {
+            for (int txSize : txSizes) {
+                for (TriggerWorkload.Mix mix : mixes) {
+                    LOGGER.info(run(threads, seconds, triggers, txSize, mix));
+                }
+            }
+        }
+    }
+
+    private String run(int threads, int seconds, int triggers, final int txSize, final TriggerWorkload.Mix mix) throws Exception {
+        final GraphDatabaseService database = new TestGraphDatabaseFactory().newImpermanentDatabase();
+        try {
+            final TriggerWorkload workload = new TriggerWorkload(database, triggers);
+            final long deadline = System.nanoTime() + seconds * 1000000000L;
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<List<Long>>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final Random random = new Random(t);
+                final List<Long> nodes = workload.seed(database, random, SEED_NODES_PER_THREAD);
+                futures.add(executor.submit(new Callable<List<Long>>() {
+                    @Override
+                    public List<Long> call() {
+                        List<Long> latencies = new ArrayList<>();
+                        while (System.nanoTime() < deadline) {
+                            long start = System.nanoTime();
+                            workload.transaction(database, random, nodes, txSize, mix);
+                            latencies.add(System.nanoTime() - start);
+                        }
+                        return latencies;
+                    }
+                }));
+            }
+            long startNanos = workload.timer().totalNanos();
+            long startTransactions = workload.timer().transactions();
+
+            List<Long> latencies = new ArrayList<>();
+            for (Future<List<Long>> future : futures) {
+                latencies.addAll(future.get());
+            }
+            executor.shutdown();
+
+            assertTrue("No transactions completed", !latencies.isEmpty());
+            Collections.sort(latencies);
+            long totalLatency = 0;
+            for (long latency : latencies) {
+                totalLatency += latency;
+            }
+            long transactions = workload.timer().transactions() - startTransactions;
+            long beforeCommitNanos = workload.timer().totalNanos() - startNanos;
+
+            return String.format("%8d %7d %13s %10.1f %12.1f %16.1f %15.1f %12.1f %12.1f",
+                    triggers, txSize, mix,
+                    latencies.size() / (double) seconds,
+                    latencies.size() * (double) txSize / seconds,
+                    beforeCommitNanos / 1000.0 / Math.max(transactions, 1),
+                    100.0 * beforeCommitNanos / totalLatency,
+                    totalLatency / 1000.0 / latencies.size(),
+                    latencies.get((int) (latencies.size() * 0.99)) / 1000.0);
+        } finally {
+            database.shutdown();
+        }
+    }
+
+    private static List<Integer> integers(String values) {
+        List<Integer> result = new ArrayList<>();
+        for (String value : values.split(",")) {
+            result.add(Integer.valueOf(value.trim()));
+        }
+        return result;
+    }
+
+    private static List<TriggerWorkload.Mix> mixes(String values) {
+        List<TriggerWorkload.Mix> result = new ArrayList<>();
+        for (String value : Arrays.asList(values.split(","))) {
+            result.add(TriggerWorkload.Mix.valueOf(value.trim()));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers.perf;
+
+import com.graphaware.module.triggers.PropertyTrigger;
+import com.graphaware.module.triggers.TriggerModule;
+import com.graphaware.module.triggers.TriggerModuleConfiguration;
+import com.graphaware.runtime.GraphAwareRuntime;
+import com.graphaware.runtime.GraphAwareRuntimeFactory;
+import com.graphaware.runtime.policy.InclusionPoliciesFactory;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write workload shared by the trigger benchmarks: transactions of a given size creating, changing and deleting nodes
+ * in a given mix, against a {@link TriggerModule} with a given number of registered {@link PropertyTrigger}s, each
+ * watching a different property. Every node carries one of those properties, so every operation is dispatched to
+ * exactly one trigger.
+ */
+final class TriggerWorkload {
+
+    /**
+     * Share of creates, changes and deletes, in percent.
+     */
+    enum Mix {
+        CREATE_HEAVY(80, 15, 5),
+        CHANGE_HEAVY(10, 85, 5),
+        DELETE_HEAVY(40, 10, 50);
+
+        final int creates;
+        final int changes;
+
+        Mix(int creates, int changes, int deletes) {
+            this.creates = creates;
+            this.changes = changes;
+        }
+    }
+
+    private final int triggers;
+    private final BeforeCommitTimer timer = new BeforeCommitTimer();
+
+    /**
+     * Register the trigger module with the given number of triggers, and a timer around the runtime's beforeCommit.
+     */
+    TriggerWorkload(GraphDatabaseService database, int triggers) {
+        this.triggers = triggers;
+
+        TriggerModule module = new TriggerModule(TriggerModule.DEFAULT_MODULE_ID, TriggerModuleConfiguration.defaultConfiguration(), database);
+        for (int i = 0; i < triggers; i++) {
+            module.registerTrigger(new WorkloadTrigger(property(i)).handlesEvent(PropertyTrigger.CREATE).handlesEvent(PropertyTrigger.MODIFY)
+                    .handlesEvent(PropertyTrigger.DELETE).whenPropertiesChange(property(i)));
+        }
+
+        // Transaction event handlers are called in registration order, so these two enclose the runtime's
+        database.registerTransactionEventHandler(timer.start);
+        GraphAwareRuntime runtime = GraphAwareRuntimeFactory.createRuntime(database);
+        runtime.registerModule(module);
+        runtime.start();
+        database.registerTransactionEventHandler(timer.stop);
+    }
+
+    BeforeCommitTimer timer() {
+        return timer;
+    }
+
+    /**
+     * Create nodes for a thread to change and delete.
+     */
+    List<Long> seed(GraphDatabaseService database, Random random, int nodes) {
+        List<Long> result = new ArrayList<>(nodes);
+        try (Transaction tx = database.beginTx()) {
+            for (int i = 0; i < nodes; i++) {
+                Node node = database.createNode();
+                node.setProperty(property(random), i);
+                result.add(node.getId());
+            }
+            tx.success();
+        }
+        return result;
+    }
+
+    /**
+     * Run one transaction. Only the given nodes are changed or deleted, so that threads with their own nodes never
+     * contend for locks.
+     *
+     * @param nodes of the calling thread; updated with the created and deleted nodes.
+     */
+    void transaction(GraphDatabaseService database, Random random, List<Long> nodes, int txSize, Mix mix) {
+        try (Transaction tx = database.beginTx()) {
+            for (int i = 0; i < txSize; i++) {
+                int dice = random.nextInt(100);
+                if (dice < mix.creates || nodes.isEmpty()) {
+                    Node node = database.createNode();
+                    node.setProperty(property(random), i);
+                    nodes.add(node.getId());
+                } else if (dice < mix.creates + mix.changes) {
+                    Node node = database.getNodeById(nodes.get(random.nextInt(nodes.size())));
+                    node.setProperty(property(random), random.nextInt());
+                } else {
+                    int index = random.nextInt(nodes.size());
+                    long nodeId = nodes.get(index);
+                    nodes.set(index, nodes.get(nodes.size() - 1));
+                    nodes.remove(nodes.size() - 1);
+                    database.getNodeById(nodeId).delete();
+                }
+            }
+            tx.success();
+        }
+    }
+
+    private String property(Random random) {
+        return property(triggers == 0 ? 0 : random.nextInt(triggers));
+    }
+
+    private static String property(int index) {
+        return "p" + index;
+    }
+
+    /**
+     * Time spent in the GraphAware runtime's beforeCommit, which is where the trigger module runs.
+     */
+    static final class BeforeCommitTimer {
+
+        private final ThreadLocal<Long> started = new ThreadLocal<>();
+        private final ThreadLocal<Long> last = new ThreadLocal<>();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong transactions = new AtomicLong();
+
+        final TransactionEventHandler<Void> start = new TransactionEventHandler.Adapter<Void>() {
+            @Override
+            public Void beforeCommit(TransactionData data) {
+                started.set(System.nanoTime());
+                return null;
+            }
+        };
+
+        final TransactionEventHandler<Void> stop = new TransactionEventHandler.Adapter<Void>() {
+            @Override
+            public Void beforeCommit(TransactionData data) {
+                Long start = started.get();
+                if (start != null) {
+                    long nanos = System.nanoTime() - start;
+                    last.set(nanos);
+                    totalNanos.addAndGet(nanos);
+                    transactions.incrementAndGet();
+                    started.remove();
+                }
+                return null;
+            }
+        };
+
+        /**
+         * @return beforeCommit time of the calling thread's last transaction, in nanoseconds.
+         */
+        long lastNanos() {
+            Long nanos = last.get();
+            return nanos == null ? 0 : nanos;
+        }
+
+        long totalNanos() {
+            return totalNanos.get();
+        }
+
+        long transactions() {
+            return transactions.get();
+        }
+    }
+
+    /**
+     * Trigger doing a minimal amount of work per call, safe to call from several threads.
+     */
+    static class WorkloadTrigger extends PropertyTrigger {
+
+        WorkloadTrigger(String name) {
+            super(InclusionPoliciesFactory.allBusiness(), name);
+        }
+
+        @Override
+        public Boolean OnCreate(Node node) {
+            return true;
+        }
+
+        @Override
+        public Boolean OnModify(Node _previous, Node _current) {
+            return true;
+        }
+
+        @Override
+        public Boolean OnDelete(Node node) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.triggers.perf;
+
+import com.graphaware.module.triggers.PropertyTrigger;
+import com.graphaware.module.triggers.TriggerModule;
+import com.graphaware.module.triggers.TriggerModuleConfiguration;
+import com.graphaware.runtime.GraphAwareRuntime;
+import com.graphaware.runtime.GraphAwareRuntimeFactory;
+import com.graphaware.runtime.policy.InclusionPoliciesFactory;
+import com.graphaware.test.performance.ObjectParameter;
+import com.graphaware.test.performance.Parameter;
+import com.graphaware.test.performance.PerformanceTest;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.tooling.GlobalGraphOperations;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Measures the time (in microseconds) of a transaction modifying a property on a varying number of nodes, checked by a
+ * CPU-bound read-only validator, with a varying validation parallelism (1 validates on the committing thread).
+ */
+public class ValidationPerformanceTest implements PerformanceTest {
+
+    private static final int MAX_NODES = 50000;
+    private static final String TX_SIZE = "txSize";
+    private static final String PARALLELISM = "parallelism";
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String shortName() {
+        return "parallel-validation";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String longName() {
+        return "Read-only validation of modified nodes";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Parameter> parameters() {
+        List<Parameter> result = new LinkedList<>();
+        result.add(new ObjectParameter<>(TX_SIZE, 100, 1000, 10000, MAX_NODES));
+        result.add(new ObjectParameter<>(PARALLELISM, 1, 2, 4, 8));
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int dryRuns(Map<String, Object> params) {
+        return 5;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int measuredRuns() {
+        return 20;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, String> databaseParameters(Map<String, Object> params) {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prepareDatabase(GraphDatabaseService database, Map<String, Object> params) {
+        TriggerModuleConfiguration configuration = TriggerModuleConfiguration.defaultConfiguration().withValidationParallelism((Integer) params.get(PARALLELISM));
+        TriggerModule module = new TriggerModule(TriggerModule.DEFAULT_MODULE_ID, configuration, database);
+        module.registerTrigger(new EmailValidator().validatesReadOnly().handlesEvent(PropertyTrigger.MODIFY).whenPropertiesChange("email"));
+
+        GraphAwareRuntime runtime = GraphAwareRuntimeFactory.createRuntime(database);
+        runtime.registerModule(module);
+        runtime.start();
+
+        try (Transaction tx = database.beginTx()) {
+            for (int i = 0; i < MAX_NODES; i++) {
+                database.createNode().setProperty("email", "person" + i + "@graphaware.com");
+            }
+            tx.success();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RebuildDatabase rebuildDatabase() {
+        return RebuildDatabase.AFTER_PARAM_CHANGE;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean rebuildDatabase(Map<String, Object> params) {
+        throw new UnsupportedOperationException("never");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long run(GraphDatabaseService database, Map<String, Object> params) {
+        int txSize = (Integer) params.get(TX_SIZE);
+        String domain = "@" + System.nanoTime() + ".graphaware.com";
+        long start = System.nanoTime();
+
+        try (Transaction tx = database.beginTx()) {
+            int i = 0;
+            for (Node node : GlobalGraphOperations.at(database).getAllNodes()) {
+                if (i++ >= txSize) {
+                    break;
+                }
+                node.setProperty("email", "person" + i + domain);
+            }
+            tx.success();
+        }
+
+        return (System.nanoTime() - start) / 1000;
+    }
+
+    /**
+     * Validator doing a moderately expensive check of an e-mail property.
+     */
+    static class EmailValidator extends PropertyTrigger {
+
+        private static final Pattern EMAIL = Pattern.compile("^[a-z0-9._%+-]+@([a-z0-9-]+\\.)+[a-z]{2,}$", Pattern.CASE_INSENSITIVE);
+
+        EmailValidator() {
+            super(InclusionPoliciesFactory.allBusiness(), "email");
+        }
+
+        @Override
+        public Boolean Validate(int Event, long nodeId, Map<String, Object> properties) {
+            String email = (String) properties.get("email");
+            return email == null || (EMAIL.matcher(email).matches() && email.toLowerCase().hashCode() != 0);
+        }
+    }
+}
@@ -17,21 +17,31 @@ package com.graphaware.module.uuid;
 
 import com.graphaware.common.policy.NodeInclusionPolicy;
 import com.graphaware.common.util.IterableUtils;
+import com.graphaware.module.uuid.policy.LabelSetNodeInclusionPolicy;
 import com.graphaware.runtime.GraphAwareRuntime;
 import com.graphaware.runtime.GraphAwareRuntimeFactory;
 import com.graphaware.runtime.policy.all.IncludeAllBusinessNodes;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.neo4j.graphdb.*;
 import org.neo4j.test.TestGraphDatabaseFactory;
 import org.neo4j.tooling.GlobalGraphOperations;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
 import static org.junit.Assert.*;
 
 
 public class UuidModuleEmbeddedProgrammaticTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private GraphDatabaseService database;
     private final Label testLabel = DynamicLabel.label("test");
     private final Label personLabel = DynamicLabel.label("Person");
@@ -75,6 +85,34 @@ public class UuidModuleEmbeddedProgrammaticTest {
         }
     }
 
+    @Test
+    public void moduleWithLabelSetPolicyShouldInitializeOnlyLabeledNodes() {
+        try (Transaction tx = database.beginTx()) {
+            database.createNode(personLabel);
+            database.createNode(DynamicLabel.label("Company"));
+            database.createNode(personLabel, DynamicLabel.label("Company"));
+            database.createNode(testLabel);
+            database.createNode();
+            tx.success();
+        }
+
+        registerModule(UuidConfiguration.defaultConfiguration().with(new LabelSetNodeInclusionPolicy(Arrays.asList("Person", "Company"))));
+
+        try (Transaction tx = database.beginTx()) {
+            int withUuid = 0;
+            for (Node node : GlobalGraphOperations.at(database).getAllNodes()) {
+                boolean included = node.hasLabel(personLabel) || node.hasLabel(DynamicLabel.label("Company"));
+                assertEquals(included, node.hasProperty("uuid"));
+                if (included) {
+                    assertEquals(node, uuidReader.getNodeByUuid((String) node.getProperty("uuid")));
+                    withUuid++;
+                }
+            }
+            assertEquals(3, withUuid);
+            tx.success();
+        }
+    }
+
     @Test
     public void newNodesWithLabelShouldBeAssignedUuid() {
         //Given
@@ -1058,6 +1096,155 @@ public class UuidModuleEmbeddedProgrammaticTest {
         }
     }
 
+    @Test
+    public void nodesShouldBeFoundInHashShardedIndexes() {
+        registerModule(UuidConfiguration.defaultConfiguration().withIndexSharding(IndexSharding.HASH, 4));
+
+        try (Transaction tx = database.beginTx()) {
+            for (int i = 0; i < 20; i++) {
+                database.createNode(personLabel);
+            }
+            tx.success();
+        }
+
+        try (Transaction tx = database.beginTx()) {
+            assertFalse(database.index().existsForNodes("uuidIndex"));
+            for (Node node : GlobalGraphOperations.at(database).getAllNodes()) {
+                String uuid = (String) node.getProperty("uuid");
+                assertEquals(node, uuidReader.getNodeByUuid(uuid));
+                assertEquals(node, uuidReader.getNodeByUuid(uuid, "Person"));
+            }
+            int shards = 0;
+            for (String indexName : database.index().nodeIndexNames()) {
+                if (indexName.startsWith("uuidIndex_")) {
+                    shards++;
+                }
+            }
+            assertTrue(shards > 1 && shards <= 4);
+            tx.success();
+        }
+    }
+
+    @Test
+    public void labelShardedIndexesShouldFollowLabelChanges() {
+        registerModule(UuidConfiguration.defaultConfiguration().withIndexSharding(IndexSharding.LABEL, 1));
+
+        long nodeId;
+        try (Transaction tx = database.beginTx()) {
+            nodeId = database.createNode(personLabel).getId();
+            database.createNode();
+            tx.success();
+        }
+
+        String uuid;
+        try (Transaction tx = database.beginTx()) {
+            Node node = database.getNodeById(nodeId);
+            uuid = (String) node.getProperty("uuid");
+            assertTrue(database.index().existsForNodes("uuidIndex_Person"));
+            assertEquals(node, uuidReader.getNodeByUuid(uuid));
+            assertEquals(node, uuidReader.getNodeByUuid(uuid, "Person"));
+            node.addLabel(testLabel);
+            node.removeLabel(personLabel);
+            tx.success();
+        }
+
+        try (Transaction tx = database.beginTx()) {
+            Node node = database.getNodeById(nodeId);
+            assertEquals(node, uuidReader.getNodeByUuid(uuid, "test"));
+            assertEquals(node, uuidReader.getNodeByUuid(uuid));
+            try {
+                uuidReader.getNodeByUuid(uuid, "Person");
+                fail();
+            } catch (NotFoundException e) {
+                //ok
+            }
+            node.removeLabel(testLabel);
+            tx.success();
+        }
+
+        try (Transaction tx = database.beginTx()) {
+            Node node = database.getNodeById(nodeId);
+            assertEquals(node, uuidReader.getNodeByUuid(uuid));
+            node.delete();
+            tx.success();
+        }
+
+        try (Transaction tx = database.beginTx()) {
+            try {
+                uuidReader.getNodeByUuid(uuid);
+                fail();
+            } catch (NotFoundException e) {
+                //ok
+            }
+            tx.success();
+        }
+    }
+
+    @Test
+    public void nodesIndexedBeforeShardingChangesShouldBeFoundAfterwards() {
+        String path = temporaryFolder.getRoot().getAbsolutePath();
+        restart(path, UuidConfiguration.defaultConfiguration());
+
+        Map<Long, String> uuids = new HashMap<>();
+        try (Transaction tx = database.beginTx()) {
+            for (int i = 0; i < 20; i++) {
+                Node node = i % 4 == 0 ? database.createNode() : database.createNode(personLabel);
+                uuids.put(node.getId(), null);
+            }
+            tx.success();
+        }
+        try (Transaction tx = database.beginTx()) {
+            for (Long nodeId : uuids.keySet()) {
+                uuids.put(nodeId, (String) database.getNodeById(nodeId).getProperty("uuid"));
+            }
+            tx.success();
+        }
+
+        restart(path, UuidConfiguration.defaultConfiguration().withIndexSharding(IndexSharding.HASH, 4));
+        assertFoundByUuid(uuids);
+        try (Transaction tx = database.beginTx()) {
+            assertFalse(database.index().existsForNodes("uuidIndex"));
+            tx.success();
+        }
+
+        restart(path, UuidConfiguration.defaultConfiguration().withIndexSharding(IndexSharding.LABEL, 1));
+        assertFoundByUuid(uuids);
+
+        restart(path, UuidConfiguration.defaultConfiguration().withIndexSharding(IndexSharding.HASH, 2));
+        assertFoundByUuid(uuids);
+        try (Transaction tx = database.beginTx()) {
+            assertFalse(database.index().existsForNodes("uuidIndex_3"));
+            assertFalse(database.index().existsForNodes("uuidIndex_Person"));
+            tx.success();
+        }
+
+        restart(path, UuidConfiguration.defaultConfiguration());
+        assertFoundByUuid(uuids);
+        try (Transaction tx = database.beginTx()) {
+            assertFalse(database.index().existsForNodes("uuidIndex_0"));
+            tx.success();
+        }
+    }
+
+    private void restart(String path, UuidConfiguration configuration) {
+        database.shutdown();
+        database = new TestGraphDatabaseFactory().newEmbeddedDatabase(path);
+        registerModule(configuration);
+    }
+
+    private void assertFoundByUuid(Map<Long, String> uuids) {
+        try (Transaction tx = database.beginTx()) {
+            for (Map.Entry<Long, String> entry : uuids.entrySet()) {
+                Node node = database.getNodeById(entry.getKey());
+                assertEquals(node, uuidReader.getNodeByUuid(entry.getValue()));
+                if (node.hasLabel(personLabel)) {
+                    assertEquals(node, uuidReader.getNodeByUuid(entry.getValue(), "Person"));
+                }
+            }
+            tx.success();
+        }
+    }
+
     private void registerModuleWithNoLabels() {
         uuidConfiguration = UuidConfiguration.defaultConfiguration().withUuidProperty("uuid");
         GraphAwareRuntime runtime = GraphAwareRuntimeFactory.createRuntime(database);
@@ -1086,5 +1273,11 @@ public class UuidModuleEmbeddedProgrammaticTest {
 
     }
 
-
+    private void registerModule(UuidConfiguration configuration) {
+        uuidConfiguration = configuration;
+        GraphAwareRuntime runtime = GraphAwareRuntimeFactory.createRuntime(database);
+        runtime.registerModule(new UuidModule("UUIDM", uuidConfiguration, database));
+        runtime.start();
+        uuidReader = new UuidReader(uuidConfiguration, database);
+    }
 }
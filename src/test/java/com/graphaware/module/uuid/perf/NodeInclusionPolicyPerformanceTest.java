@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.uuid.perf;
+
+import com.graphaware.common.policy.NodeInclusionPolicy;
+import com.graphaware.module.uuid.policy.StringToCompiledNodeInclusionPolicy;
+import com.graphaware.runtime.config.function.StringToNodeInclusionPolicy;
+import com.graphaware.test.performance.EnumParameter;
+import com.graphaware.test.performance.ObjectParameter;
+import com.graphaware.test.performance.Parameter;
+import com.graphaware.test.performance.PerformanceTest;
+import org.neo4j.graphdb.DynamicLabel;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.tooling.GlobalGraphOperations;
+
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures the cost of evaluating a node inclusion policy, in nanoseconds per node, for the framework's SpEL policies
+ * and for the policies produced by {@link StringToCompiledNodeInclusionPolicy}. Policies are evaluated past SpEL's
+ * compile threshold before timing, so that compiled expressions are measured compiled.
+ */
+public class NodeInclusionPolicyPerformanceTest implements PerformanceTest {
+
+    private static final int NODES = 10000;
+    private static final int SPEL_COMPILE_THRESHOLD = 100; // SpelExpression.INTERPRETED_COUNT_THRESHOLD
+    private static final Label[] LABELS = {DynamicLabel.label("Person"), DynamicLabel.label("Company"), DynamicLabel.label("Movie"), DynamicLabel.label("Place")};
+
+    private static final String POLICY = "policy";
+    private static final String EXPRESSION = "expression";
+
+    enum PolicyType {
+        SPEL, COMPILED
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String shortName() {
+        return "node-inclusion-policy";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String longName() {
+        return "Node inclusion policy evaluation cost per node";
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Parameter> parameters() {
+        List<Parameter> result = new LinkedList<>();
+        result.add(new EnumParameter(POLICY, PolicyType.class));
+        result.add(new ObjectParameter<>(EXPRESSION,
+                "hasLabel('Person') || hasLabel('Company')",
+                "hasLabel('Person') || hasLabel('Company') || hasLabel('Movie')",
+                "hasLabel('Person') && getProperty('age', 0) > 30",
+                "!hasLabel('Place')"));
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int dryRuns(Map<String, Object> params) {
+        return 20;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int measuredRuns() {
+        return 50;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<String, String> databaseParameters(Map<String, Object> params) {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prepareDatabase(GraphDatabaseService database, Map<String, Object> params) {
+        try (Transaction tx = database.beginTx()) {
+            for (int i = 0; i < NODES; i++) {
+                Node node = database.createNode(LABELS[i % LABELS.length]);
+                node.setProperty("age", RANDOM.nextInt(60));
+            }
+            tx.success();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RebuildDatabase rebuildDatabase() {
+        return RebuildDatabase.NEVER;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean rebuildDatabase(Map<String, Object> params) {
+        throw new UnsupportedOperationException("never");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long run(GraphDatabaseService database, Map<String, Object> params) {
+        String expression = (String) params.get(EXPRESSION);
+        NodeInclusionPolicy policy;
+        if (PolicyType.COMPILED.equals(params.get(POLICY))) {
+            policy = StringToCompiledNodeInclusionPolicy.getInstance().apply(expression);
+        } else {
+            policy = StringToNodeInclusionPolicy.getInstance().apply(expression);
+        }
+
+        long elapsed;
+        int evaluated = 0;
+        try (Transaction tx = database.beginTx()) {
+            Iterable<Node> nodes = GlobalGraphOperations.at(database).getAllNodes();
+            Node first = nodes.iterator().next();
+            for (int i = 0; i < 2 * SPEL_COMPILE_THRESHOLD; i++) {
+                policy.include(first);
+            }
+
+            long start = System.nanoTime();
+            for (Node node : nodes) {
+                policy.include(node);
+                evaluated++;
+            }
+            elapsed = System.nanoTime() - start;
+            tx.success();
+        }
+
+        return elapsed / evaluated;
+    }
+}
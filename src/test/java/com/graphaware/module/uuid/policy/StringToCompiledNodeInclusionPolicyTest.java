@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2015 GraphAware
+ *
+ * This file is part of GraphAware.
+ *
+ * GraphAware is free software: you can redistribute it and/or modify it under the terms of
+ * the GNU General Public License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ *  without even the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details. You should have received a copy of
+ * the GNU General Public License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/>.
+ */
+package com.graphaware.module.uuid.policy;
+
+import com.graphaware.common.policy.NodeInclusionPolicy;
+import com.graphaware.runtime.config.function.StringToNodeInclusionPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.neo4j.graphdb.*;
+import org.neo4j.test.TestGraphDatabaseFactory;
+import org.neo4j.tooling.GlobalGraphOperations;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public class StringToCompiledNodeInclusionPolicyTest {
+
+    // SpEL compiles an expression once it has been interpreted this many times (SpelExpression.INTERPRETED_COUNT_THRESHOLD)
+    private static final int SPEL_COMPILE_THRESHOLD = 100;
+
+    private GraphDatabaseService database;
+
+    @Before
+    public void setUp() {
+        database = new TestGraphDatabaseFactory().newImpermanentDatabase();
+
+        try (Transaction tx = database.beginTx()) {
+            database.createNode();
+            database.createNode(DynamicLabel.label("Person")).setProperty("age", 40);
+            database.createNode(DynamicLabel.label("Company"));
+            database.createNode(DynamicLabel.label("Person"), DynamicLabel.label("_GA_Internal"));
+            Node other = database.createNode(DynamicLabel.label("Other"));
+            other.createRelationshipTo(database.createNode(), DynamicRelationshipType.withName("KNOWS"));
+            tx.success();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    public void labelDisjunctionsShouldBeRecognised() {
+        assertEquals(new HashSet<>(Arrays.asList("Person", "Company")), LabelSetNodeInclusionPolicy.parse("hasLabel('Person') || hasLabel('Company')").getLabels());
+        assertEquals(new HashSet<>(Arrays.asList("Person", "Company")), LabelSetNodeInclusionPolicy.parse(" hasLabel(\"Person\") or hasLabel( 'Company' ) ").getLabels());
+        assertEquals(new HashSet<>(Arrays.asList("Person")), LabelSetNodeInclusionPolicy.parse("hasLabel('Person')").getLabels());
+
+        assertNull(LabelSetNodeInclusionPolicy.parse("hasLabel('Person') && hasLabel('Company')"));
+        assertNull(LabelSetNodeInclusionPolicy.parse("!hasLabel('Person')"));
+        assertNull(LabelSetNodeInclusionPolicy.parse("hasLabel('Person') || getDegree() > 1"));
+        assertNull(LabelSetNodeInclusionPolicy.parse("hasProperty('name')"));
+    }
+
+    @Test
+    public void labelDisjunctionsShouldBecomeLabelSetPolicies() {
+        assertTrue(StringToCompiledNodeInclusionPolicy.getInstance().apply("hasLabel('Person') || hasLabel('Company')") instanceof LabelSetNodeInclusionPolicy);
+        assertFalse(StringToCompiledNodeInclusionPolicy.getInstance().apply("hasLabel('Person') && hasLabel('Company')") instanceof LabelSetNodeInclusionPolicy);
+    }
+
+    @Test
+    public void compiledPoliciesShouldBehaveLikeSpelPolicies() {
+        for (String expression : Arrays.asList(
+                "hasLabel('Person') || hasLabel('Company')",
+                "hasLabel('Person') && getProperty('age', 0) > 30",
+                "!hasLabel('Person')",
+                "getDegree('KNOWS') > 0 || getDegree('OUTGOING') > 0",
+                "hasProperty('age')",
+                "com.graphaware.runtime.policy.all.IncludeAllBusinessNodes")) {
+
+            NodeInclusionPolicy expected = StringToNodeInclusionPolicy.getInstance().apply(expression);
+            NodeInclusionPolicy actual = StringToCompiledNodeInclusionPolicy.getInstance().apply(expression);
+
+            try (Transaction tx = database.beginTx()) {
+                //evaluate past the compile threshold, so that both the interpreted and the compiled expression are checked
+                int evaluations = 0;
+                while (evaluations < 2 * SPEL_COMPILE_THRESHOLD) {
+                    for (Node node : GlobalGraphOperations.at(database).getAllNodes()) {
+                        assertEquals(expression, expected.include(node), actual.include(node));
+                        evaluations++;
+                    }
+                }
+                tx.success();
+            }
+        }
+    }
+
+    @Test
+    public void equalPoliciesShouldBeEqual() {
+        assertEquals(StringToCompiledNodeInclusionPolicy.getInstance().apply("hasLabel('Person') || hasLabel('Company')"), StringToCompiledNodeInclusionPolicy.getInstance().apply("hasLabel('Company') || hasLabel('Person')"));
+        assertEquals(StringToCompiledNodeInclusionPolicy.getInstance().apply("hasProperty('age')"), StringToCompiledNodeInclusionPolicy.getInstance().apply("hasProperty('age')"));
+        assertNotEquals(StringToCompiledNodeInclusionPolicy.getInstance().apply("hasProperty('age')"), StringToCompiledNodeInclusionPolicy.getInstance().apply("hasProperty('name')"));
+    }
+}